@@ -0,0 +1,9 @@
+-- The v2 hosts search pages through the hosts in uuid_hex order
+ALTER TABLE `mw_hosts` 
+ADD INDEX `idx_host_uuid_hex` (`uuid_hex` ASC) ;
+
+-- Adding the index on the description for the descriptionStartsWith search
+ALTER TABLE `mw_hosts` 
+ADD INDEX `idx_host_description` (`Description` ASC) ;
+
+INSERT INTO `mw_changelog` (`ID`, `APPLIED_AT`, `DESCRIPTION`) VALUES (20161017120000,NOW(),'Patch for creating mw_hosts indexes for paged searches.');
@@ -0,0 +1,8 @@
+-- The v2 hosts search pages through the hosts in uuid_hex order
+CREATE INDEX idx_host_uuid_hex ON mw_hosts (uuid_hex ASC);
+
+-- LIKE 'prefix%' can only use an index with the pattern operator class unless the database uses the C locale
+CREATE INDEX idx_host_name_pattern ON mw_hosts (name varchar_pattern_ops);
+CREATE INDEX idx_host_description_pattern ON mw_hosts (description varchar_pattern_ops);
+
+INSERT INTO mw_changelog (ID, APPLIED_AT, DESCRIPTION) VALUES (20161017120000,NOW(),'Patch for creating mw_hosts indexes for paged searches.');
@@ -0,0 +1,7 @@
+-- The asset tag trust of each attestation, for the v2 trust summary; null for attestations made before this patch
+ALTER TABLE mw_saml_assertion ADD COLUMN asset_tag_trust BOOLEAN DEFAULT NULL;
+
+-- The trust summary finds the latest attestation of each host with MAX(ID) grouped by host_id
+CREATE INDEX idx_saml_host_id_id ON mw_saml_assertion (host_id ASC, id ASC);
+
+INSERT INTO mw_changelog (ID, APPLIED_AT, DESCRIPTION) VALUES (20161018120000,NOW(),'Patch for adding the asset tag trust to mw_saml_assertion.');
@@ -112,6 +112,18 @@ public interface AttestationService {
 
     BulkHostTrustResponse getTrustForMultipleHosts(Set<Hostname> hostnames, boolean forceVerify) throws IOException, ApiException, SignatureException;
 
+    /**
+     * Returns the trust status of all hosts from their latest attestations,
+     * without attesting them or returning their SAML assertions.
+     * 
+     * @param limit the maximum number of hosts to return, or null for all of them
+     * @param offset the number of hosts to skip, or null
+     * @param after the next value of the previous page, or null for the first page
+     * @return the number of hosts in each trust state and one page of hosts
+     * @since 3.0
+     */
+    TrustSummary getTrustSummary(Integer limit, Integer offset, String after) throws IOException, ApiException, SignatureException;
+
     // this method is used only by OpenSourceVMMHelper which is being replaced by IntelHostAgent; also the service implementation of this method only supports hosts with trust agents (even though vmware hosts also have their own attestation report)
     //String getHostAttestationReport(Hostname hostname) throws IOException, ApiException, SignatureException; 
     
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.datatypes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Date;
+
+/**
+ * The trust status of one host from its latest attestation, without the
+ * SAML assertion or the trust report. The bios, vmm, asset_tag and trusted
+ * fields are null when the status is unknown: the host was never attested,
+ * its latest attestation failed (see error_code), or, for the asset tag,
+ * the host is not provisioned with an asset tag certificate. After expires
+ * they are kept as they were attested, but the host is counted as unknown.
+ */
+public class HostTrustSummary {
+    @JsonProperty("host_uuid") public String hostUuid = null;
+    @JsonProperty("host_name") public String hostName = null;
+    @JsonProperty("location") public String location = null;
+    @JsonProperty("os_name") public String osName = null;
+    @JsonProperty("os_version") public String osVersion = null;
+    @JsonProperty("vmm_name") public String vmmName = null;
+    @JsonProperty("bios") public Boolean bios = null;
+    @JsonProperty("vmm") public Boolean vmm = null;
+    @JsonProperty("asset_tag") public Boolean assetTag = null;
+    @JsonProperty("trusted") public Boolean trusted = null;
+    @JsonProperty("error_code") public String errorCode = null;
+    @JsonProperty("error_message") public String errorMessage = null;
+    @JsonProperty("created") public Date created = null;
+    @JsonProperty("expires") public Date expires = null;
+}
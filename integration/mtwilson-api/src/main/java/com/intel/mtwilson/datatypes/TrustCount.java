@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.datatypes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The number of hosts in each state of one trust marker in a TrustSummary.
+ * A host is unknown when it has not been attested, when its latest
+ * attestation failed or has expired, or, for the asset tag, when it is not
+ * provisioned with an asset tag certificate.
+ */
+public class TrustCount {
+    @JsonProperty("trusted") public int trusted = 0;
+    @JsonProperty("untrusted") public int untrusted = 0;
+    @JsonProperty("unknown") public int unknown = 0;
+
+    public TrustCount() {
+    }
+
+    public TrustCount(TrustCount copy) {
+        this.trusted = copy.trusted;
+        this.untrusted = copy.untrusted;
+        this.unknown = copy.unknown;
+    }
+
+    /**
+     *
+     * @param trust the state of the marker, or null if it is unknown
+     */
+    public void add(Boolean trust) {
+        if (trust == null) {
+            unknown++;
+        } else if (trust) {
+            trusted++;
+        } else {
+            untrusted++;
+        }
+    }
+}
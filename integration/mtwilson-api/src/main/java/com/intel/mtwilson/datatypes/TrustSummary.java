@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.datatypes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The trust status of all hosts, for dashboards: the number of hosts in
+ * each state of the BIOS, VMM and asset tag markers and of the overall
+ * trust, and one page of the hosts in host UUID order.
+ *
+ * The counts always cover all hosts. To get the next page, pass the value
+ * of next as the after parameter, or increase the offset parameter by the
+ * limit; next is null on the last page.
+ *
+ * @since 3.0
+ */
+public class TrustSummary {
+    @JsonProperty("total") public int total = 0;
+    @JsonProperty("bios") public TrustCount bios = new TrustCount();
+    @JsonProperty("vmm") public TrustCount vmm = new TrustCount();
+    @JsonProperty("asset_tag") public TrustCount assetTag = new TrustCount();
+    @JsonProperty("trusted") public TrustCount trusted = new TrustCount();
+    @JsonProperty("hosts") public List<HostTrustSummary> hosts = new ArrayList<HostTrustSummary>();
+    @JsonProperty("next") public String next = null;
+    @JsonProperty("created") public Date created = null;
+}
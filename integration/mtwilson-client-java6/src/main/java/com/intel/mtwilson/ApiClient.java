@@ -415,6 +415,24 @@ public class ApiClient implements MtWilson, AttestationService, WhitelistService
         return baseURL.toExternalForm().concat(attestationServicePath).concat(apiPath).concat("?").concat(querystring(query));
     }
 
+    /**
+     * The v2 API is under /mtwilson/v2 whether the base URL is the server
+     * or the v1 API, https://server:8443/mtwilson/v1
+     */
+    protected String v2url(String apiPath, MultivaluedMap<String,String> query) {
+        String base = baseURL.toExternalForm();
+        if( base.endsWith("/") ) {
+            base = base.substring(0, base.length() - 1);
+        }
+        if( base.endsWith("/mtwilson/v1") ) {
+            base = base.substring(0, base.length() - "/v1".length()).concat("/v2");
+        }
+        else if( !base.endsWith("/mtwilson/v2") ) {
+            base = base.concat("/mtwilson/v2");
+        }
+        return base.concat(apiPath).concat("?").concat(querystring(query));
+    }
+
     protected String wlmurl(String apiPath) {
         return baseURL.toExternalForm().concat(whitelistServicePath).concat(apiPath);
     }
@@ -1063,6 +1081,22 @@ public class ApiClient implements MtWilson, AttestationService, WhitelistService
             HostTrustXmlResponseList list = xml(httpGet(asurl("/hosts/bulk/trust/saml", query)), HostTrustXmlResponseList.class);
             return list.getHost(); // get the list of <Host> elements inside the root <Hosts> element... it's an automatically generated method name. would have been nice if they named it getHostList()
         }
+
+    @Override
+    public TrustSummary getTrustSummary(Integer limit, Integer offset, String after) throws IOException, ApiException, SignatureException {
+        MultivaluedMap<String,String> query = new MultivaluedMapImpl();
+        if( limit != null ) {
+            query.add("limit", limit.toString());
+        }
+        if( offset != null ) {
+            query.add("offset", offset.toString());
+        }
+        if( after != null ) {
+            query.add("after", after);
+        }
+        TrustSummary summary = fromJSON(httpGet(v2url("/trust-summary", query)), TrustSummary.class);
+        return summary;
+    }
     
     /**
      *  this method is used only by OpenSourceVMMHelper which is being replaced by IntelHostAgent; also the service implementation of this method only supports hosts with trust agents (even though vmware hosts also have their own attestation report)
@@ -5,9 +5,10 @@
 package com.intel.mtwilson;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp.BasicDataSource;
 
 /**
  *
@@ -16,6 +17,10 @@ import java.util.Properties;
 public class MyJdbc {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MyJdbc.class);
 
+    private static final Object poolLock = new Object();
+    private static BasicDataSource pool = null;
+    private static String poolKey = null;
+
     private MyConfiguration config;
     public MyJdbc(MyConfiguration config) {
         this.config = config;
@@ -88,16 +93,91 @@ public class MyJdbc {
     }
     
     /**
-     * Caller must close() the connection.
+     * Caller must close() the connection, which returns it to the shared pool.
      * @return
      * @throws ClassNotFoundException
      * @throws SQLException 
      */
     public Connection connection() throws ClassNotFoundException, SQLException {
-        String driver = driver();
-        log.debug("JDBC Driver: {}", driver);
-        Class.forName(driver);
-        Connection c = DriverManager.getConnection(url(), config.getDatabaseUsername(), config.getDatabasePassword());
+        BasicDataSource ds = (BasicDataSource)dataSource();
+        long start = System.currentTimeMillis();
+        Connection c = ds.getConnection();
+        log.trace("performance: jdbc pool borrow {}ms active {} idle {}", System.currentTimeMillis() - start, ds.getNumActive(), ds.getNumIdle());
         return c;
     }
+
+    /**
+     * The connection pool shared by all JDBI DAOs and by connection(). It is
+     * created from the same properties as the ASDataPU persistence unit,
+     * including the dbcp.* settings, and is replaced when the database
+     * url or credentials in the configuration change (for example during setup).
+     * 
+     * Additional settings:
+     * dbcp.pool.prepared.statements (default true)
+     * dbcp.max.open.prepared.statements (default 100)
+     * 
+     * @return the shared pooled data source; callers must not close it
+     */
+    public DataSource dataSource() {
+        Properties jpaProperties = MyPersistenceManager.getASDataJpaProperties(config);
+        String driver = jpaProperties.getProperty("javax.persistence.jdbc.driver");
+        String url = jpaProperties.getProperty("javax.persistence.jdbc.url");
+        String username = jpaProperties.getProperty("javax.persistence.jdbc.user");
+        String password = jpaProperties.getProperty("javax.persistence.jdbc.password");
+        String key = driver + "|" + url + "|" + username + "|" + password;
+        synchronized(poolLock) {
+            if( pool != null && key.equals(poolKey) ) {
+                return pool;
+            }
+            if( pool != null ) {
+                log.debug("Database configuration changed, closing previous connection pool");
+                try {
+                    pool.close();
+                }
+                catch(SQLException e) {
+                    log.warn("Cannot close previous connection pool: {}", e.getMessage());
+                }
+            }
+            BasicDataSource ds = new BasicDataSource();
+            ds.setDriverClassName(driver);
+            ds.setUrl(url);
+            ds.setUsername(username);
+            ds.setPassword(password);
+            ds.setMaxActive(Integer.valueOf(jpaProperties.getProperty("dbcp.max.active")));
+            ds.setMaxIdle(Integer.valueOf(jpaProperties.getProperty("dbcp.max.idle")));
+            ds.setMinIdle(Integer.valueOf(jpaProperties.getProperty("dbcp.min.idle")));
+            String validationQuery = jpaProperties.getProperty("dbcp.validation.query", "");
+            if( !validationQuery.isEmpty() ) {
+                ds.setValidationQuery(validationQuery);
+            }
+            ds.setTestOnBorrow(Boolean.valueOf(jpaProperties.getProperty("dbcp.validation.on.borrow")));
+            ds.setTestOnReturn(Boolean.valueOf(jpaProperties.getProperty("dbcp.validation.on.return")));
+            ds.setPoolPreparedStatements(config.getConfiguration().getBoolean("dbcp.pool.prepared.statements", true));
+            ds.setMaxOpenPreparedStatements(config.getConfiguration().getInt("dbcp.max.open.prepared.statements", 100));
+            log.debug("Created connection pool for {} with max active {}", url, ds.getMaxActive());
+            pool = ds;
+            poolKey = key;
+            return pool;
+        }
+    }
+
+    /**
+     * 
+     * @return number of connections currently borrowed from the shared pool, or 0 if the pool has not been created
+     */
+    public static int getActiveConnections() {
+        synchronized(poolLock) {
+            return pool == null ? 0 : pool.getNumActive();
+        }
+    }
+
+    /**
+     * 
+     * @return number of idle connections in the shared pool, or 0 if the pool has not been created
+     */
+    public static int getIdleConnections() {
+        synchronized(poolLock) {
+            return pool == null ? 0 : pool.getNumIdle();
+        }
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package test.saml;
+
+import com.intel.dcsg.cpg.configuration.PropertiesConfiguration;
+import com.intel.dcsg.cpg.crypto.RsaUtil;
+import com.intel.dcsg.cpg.io.UUID;
+import com.intel.mtwilson.datatypes.HostTrustStatus;
+import com.intel.mtwilson.datatypes.TxtHost;
+import com.intel.mtwilson.datatypes.TxtHostRecord;
+import com.intel.mtwilson.saml.IssuerConfiguration;
+import com.intel.mtwilson.saml.SamlAssertion;
+import com.intel.mtwilson.saml.SamlGenerator;
+import com.intel.mtwilson.saml.TxtHostWithAssetTag;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Ignore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Measures single-host and multi-host assertion generation with one shared
+ * SamlGenerator, from one thread and from several threads at once.
+ * Ignored in the regular build because it only reports timings; remove the
+ * annotation to run it by hand.
+ */
+@Ignore("timing benchmark, run manually")
+public class SamlGeneratorBenchmarkTest {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SamlGeneratorBenchmarkTest.class);
+    private static final int ITERATIONS = 200;
+    private static final int THREADS = 8;
+    private static final int HOSTS = 100;
+
+    private IssuerConfiguration createIssuerConfiguration() throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.set("saml.issuer", "junit-test");
+        KeyPair issuerKey = RsaUtil.generateRsaKeyPair(1024); // weak key for testing only
+        X509Certificate issuerCert = RsaUtil.generateX509Certificate("CN=test", issuerKey, 1); // test cert valid for 1 day
+        return new IssuerConfiguration(issuerKey.getPrivate(), issuerCert, configuration);
+    }
+
+    private TxtHost createHost(int i) {
+        HostTrustStatus trust = new HostTrustStatus();
+        trust.asset_tag = false;
+        trust.bios = true;
+        trust.location = false;
+        trust.vmm = true;
+        TxtHostRecord data = new TxtHostRecord();
+        data.BIOS_Name = "Generic BIOS";
+        data.BIOS_Version = "1.0";
+        data.BIOS_Oem = "Generic OEM";
+        data.Hardware_Uuid = new UUID().toString();
+        data.HostName = "host" + i;
+        data.IPAddress = "10.0." + (i / 256) + "." + (i % 256);
+        data.VMM_Name = "Generic VMM";
+        data.VMM_Version = "1.0";
+        data.VMM_OSName = "Generic OS";
+        data.VMM_OSVersion = "1.0";
+        return new TxtHost(data, trust);
+    }
+
+    private List<TxtHostWithAssetTag> createHosts(int count) {
+        ArrayList<TxtHostWithAssetTag> hosts = new ArrayList<>();
+        for(int i=0; i<count; i++) {
+            hosts.add(new TxtHostWithAssetTag(createHost(i), null));
+        }
+        return hosts;
+    }
+
+    private void report(String name, int assertions, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        log.debug("{}: {} assertions in {}ms, {} per second", name, assertions, elapsed, assertions * 1000L / elapsed);
+    }
+
+    @Test
+    public void testSingleHostAssertions() throws Exception {
+        SamlGenerator generator = new SamlGenerator(createIssuerConfiguration());
+        TxtHost host = createHost(1);
+        generator.generateHostAssertion(host, null, null); // warm up
+        long start = System.currentTimeMillis();
+        for(int i=0; i<ITERATIONS; i++) {
+            SamlAssertion assertion = generator.generateHostAssertion(host, null, null);
+            assertNotNull(assertion.assertion);
+        }
+        report("single host", ITERATIONS, start);
+    }
+
+    @Test
+    public void testConcurrentSingleHostAssertions() throws Exception {
+        final SamlGenerator generator = new SamlGenerator(createIssuerConfiguration());
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            ArrayList<Future<SamlAssertion>> futures = new ArrayList<>();
+            long start = System.currentTimeMillis();
+            for(int i=0; i<ITERATIONS; i++) {
+                final TxtHost host = createHost(i);
+                futures.add(threads.submit(new Callable<SamlAssertion>() {
+                    @Override
+                    public SamlAssertion call() throws Exception {
+                        return generator.generateHostAssertion(host, null, null);
+                    }
+                }));
+            }
+            for(int i=0; i<ITERATIONS; i++) {
+                // each assertion is about its own host even though the generator is shared
+                assertTrue(futures.get(i).get().assertion.contains(">host" + i + "<"));
+            }
+            report("concurrent single host", ITERATIONS, start);
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMultiHostAssertions() throws Exception {
+        SamlGenerator generator = new SamlGenerator(createIssuerConfiguration());
+        List<TxtHostWithAssetTag> hosts = createHosts(HOSTS);
+        String sequential = generator.generateHostAssertions(hosts).assertion;
+        long start = System.currentTimeMillis();
+        for(int i=0; i<ITERATIONS / 10; i++) {
+            generator.generateHostAssertions(hosts);
+        }
+        report("multi host sequential", ITERATIONS / 10, start);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            generator.setExecutor(threads);
+            String parallel = generator.generateHostAssertions(hosts).assertion;
+            // the host statements are in the same order
+            assertTrue(parallel.indexOf(">host1<") < parallel.indexOf(">host99<"));
+            assertEquals(sequential.split("AttributeStatement").length, parallel.split("AttributeStatement").length);
+            start = System.currentTimeMillis();
+            for(int i=0; i<ITERATIONS / 10; i++) {
+                generator.generateHostAssertions(hosts);
+            }
+            report("multi host parallel", ITERATIONS / 10, start);
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -4,14 +4,28 @@
  */
 package com.intel.mtwilson.plugin;
 
-import com.intel.mtwilson.as.business.trust.BulkHostTrustBO;
+import com.intel.mtwilson.as.business.trust.HostTrustBO;
 import com.intel.mtwilson.as.controller.TblSamlAssertionJpaController;
 import com.intel.mtwilson.plugin.api.Plugin;
 import com.intel.mtwilson.My;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,14 +47,12 @@ public class AutoRefreshTrust implements Runnable, Plugin {
     private int refreshTimeBeforeSamlExpiry = 300; // seconds
     private long interval = 120; // seconds
     private TimeUnit intervalUnits = TimeUnit.SECONDS;
-    private BulkHostTrustBO bulkHostTrustBO = null;
     private TblSamlAssertionJpaController samlJpa = null;
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
     public void setMaxCacheDuration(long maxCacheDuration) { this.maxCacheDuration = maxCacheDuration; }
     public void setMaxCacheDurationUnits(TimeUnit maxCacheDurationUnits) { this.maxCacheDurationUnits = maxCacheDurationUnits; }
     public void setInterval(long interval) { this.interval = interval; }
     public void setIntervalUnits(TimeUnit intervalUnits) { this.intervalUnits = intervalUnits; }
-    public void setBulkHostTrustBO(BulkHostTrustBO bulkHostTrustBO) { this.bulkHostTrustBO = bulkHostTrustBO; }
     public void setTblSamlAssertionJpaController(TblSamlAssertionJpaController samlJpa) { this.samlJpa = samlJpa; }
     private volatile boolean running;
 
@@ -52,43 +64,252 @@ public class AutoRefreshTrust implements Runnable, Plugin {
     
     public void cancel() {
         running = false;
+        synchronized(completed) {
+            completed.notifyAll();
+        }
     }
     
+    /**
+     * Refreshes each host shortly before its SAML assertion expires instead of
+     * refreshing every expired host at once on each interval.
+     * 
+     * Hosts are kept in a queue ordered by their refresh deadline, which is the
+     * creation time of the latest assertion plus the SAML validity, less
+     * refreshTimeBeforeSamlExpiry and a random jitter of up to
+     * mtwilson.auto.refresh.trust.spread.seconds. Hosts that are already overdue,
+     * for example at startup, are spread over that same period. The list of
+     * hosts and their latest assertions is reloaded every interval, and the
+     * thread otherwise sleeps until the next deadline.
+     * 
+     * Refreshes run in a separate pool of mtwilson.auto.refresh.trust.threads.max
+     * threads (default 4) so they do not compete with API requests in the
+     * attestation pool. A refresh that does not complete within
+     * mtwilson.ms.registration.hostTimeout (default 60 seconds) is cancelled
+     * and counts as a failure, so hosts that hang do not hold the pool. A host
+     * whose refresh fails is retried with exponential backoff starting at the
+     * interval, up to mtwilson.auto.refresh.trust.backoff.max.seconds
+     * (default 3600).
+     */
     @Override
     public void run() {
+        Configuration configuration = My.configuration().getConfiguration();
+        int maxThreads = configuration.getInt("mtwilson.auto.refresh.trust.threads.max", 4);
+        long hostTimeoutMillis = 1000L * configuration.getLong("mtwilson.ms.registration.hostTimeout", 60);
+        spreadMillis = 1000L * configuration.getLong("mtwilson.auto.refresh.trust.spread.seconds", refreshTimeBeforeSamlExpiry * 4 / 5);
+        maxBackoffMillis = 1000L * configuration.getLong("mtwilson.auto.refresh.trust.backoff.max.seconds", 3600);
+        validityMillis = 1000L * (My.configuration().getSamlValidityTimeInSeconds() - refreshTimeBeforeSamlExpiry);
+        refreshLoop(maxThreads, hostTimeoutMillis);
+    }
+    
+    void refreshLoop(int maxThreads, long hostTimeoutMillis) {
         running = true;
-        while (running) {
-            // make a list of hosts whose last trust status check is more than max cache duration ago
-            List<String> hostsToRefresh = findHostnamesWithExpiredCache();
-            if (hostsToRefresh != null && hostsToRefresh.size() > 0) {
-                log.info("AutoRefreshTrust got {} hosts to refresh", hostsToRefresh.size());
-                HashSet<String> hosts = new HashSet<>(hostsToRefresh);
-                long bulkBOTimeout = My.configuration().getConfiguration().getLong("mtwilson.ms.registration.hostTimeout", 60); // Default is 60 seconds
-                bulkHostTrustBO = new BulkHostTrustBO((int)bulkBOTimeout);
-                String saml = bulkHostTrustBO.getBulkTrustSaml(hosts, true);
-                log.info("Auto bulk refresh SAML: {}", saml);
-            } else {
-                log.info("AutoRefreshTrust: No hosts for bulk refresh");
+        this.hostTimeoutMillis = hostTimeoutMillis;
+        long intervalMillis = TimeUnit.MILLISECONDS.convert(interval, intervalUnits);
+        ExecutorService refreshExecutor = Executors.newFixedThreadPool(maxThreads, new AutoRefreshTrustThreadFactory());
+        // the refreshes themselves, which may hang and are abandoned after hostTimeoutMillis
+        workerExecutor = Executors.newCachedThreadPool(new AutoRefreshTrustThreadFactory());
+        try {
+            long nextSync = 0;
+            while (running) {
+                long now = System.currentTimeMillis();
+                processCompleted(now, intervalMillis);
+                if( now >= nextSync ) {
+                    sync(now);
+                    nextSync = now + intervalMillis;
+                }
+                while( inProgress.size() < maxThreads && !queue.isEmpty() && queue.peek().deadline <= now ) {
+                    ScheduledRefresh next = queue.poll();
+                    if( scheduled.get(next.hostname) != next ) {
+                        continue; // host was rescheduled or deleted
+                    }
+                    scheduled.remove(next.hostname);
+                    inProgress.add(next.hostname);
+                    refreshExecutor.submit(new RefreshTask(next.hostname));
+                }
+                long wakeup = nextSync;
+                if( inProgress.size() < maxThreads && !queue.isEmpty() ) {
+                    wakeup = Math.min(wakeup, queue.peek().deadline);
+                }
+                synchronized(completed) {
+                    if( running && completed.isEmpty() && wakeup > now ) {
+                        completed.wait(wakeup - now);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            log.info("AutoRefreshTrust: Interrupted while waiting for the next refresh: {}", ex.getMessage());
+        } finally {
+            refreshExecutor.shutdownNow();
+            workerExecutor.shutdownNow();
+        }
+    }
+    
+    private static class ScheduledRefresh implements Comparable<ScheduledRefresh> {
+        private final String hostname;
+        private final Date lastCreated;
+        private final long deadline;
+
+        public ScheduledRefresh(String hostname, Date lastCreated, long deadline) {
+            this.hostname = hostname;
+            this.lastCreated = lastCreated;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(ScheduledRefresh o) {
+            return Long.compare(deadline, o.deadline);
+        }
+    }
+    
+    private final Random random = new Random();
+    private final PriorityQueue<ScheduledRefresh> queue = new PriorityQueue<>();
+    private final HashMap<String,ScheduledRefresh> scheduled = new HashMap<>();
+    private final HashSet<String> inProgress = new HashSet<>();
+    private final HashMap<String,Integer> failures = new HashMap<>();
+    private final LinkedList<RefreshTask> completed = new LinkedList<>();
+    private long spreadMillis;
+    private long maxBackoffMillis;
+    private long validityMillis;
+    private long hostTimeoutMillis;
+    private ExecutorService workerExecutor;
+    
+    private long jitter() {
+        return spreadMillis > 0 ? (long)(random.nextDouble() * spreadMillis) : 0;
+    }
+    
+    private void schedule(String hostname, Date lastCreated, long deadline) {
+        ScheduledRefresh entry = new ScheduledRefresh(hostname, lastCreated, deadline);
+        scheduled.put(hostname, entry);
+        queue.add(entry);
+    }
+    
+    /**
+     * Reloads the hosts and the creation time of their latest SAML assertion.
+     * Hosts whose assertion did not change keep their deadline, and hosts in
+     * backoff keep their retry time. Deleted hosts are dropped from the queue
+     * when their deadline comes.
+     */
+    private void sync(long now) {
+        Map<String,Date> hosts = findHostnamesWithLastSamlCreated();
+        if( hosts == null ) {
+            return;
+        }
+        scheduled.keySet().retainAll(hosts.keySet());
+        failures.keySet().retainAll(hosts.keySet());
+        for(Map.Entry<String,Date> host : hosts.entrySet()) {
+            String hostname = host.getKey();
+            Date lastCreated = host.getValue();
+            if( inProgress.contains(hostname) || failures.containsKey(hostname) ) {
+                continue;
+            }
+            ScheduledRefresh current = scheduled.get(hostname);
+            if( current != null && (current.lastCreated == null ? lastCreated == null : current.lastCreated.equals(lastCreated)) ) {
+                continue;
+            }
+            long deadline = lastCreated == null ? now : lastCreated.getTime() + validityMillis - jitter();
+            if( deadline <= now ) {
+                deadline = now + jitter();
             }
-            if( !running ) { break; }
+            schedule(hostname, lastCreated, deadline);
+        }
+        // discard entries for hosts that were rescheduled or deleted so the queue does not grow
+        if( queue.size() > 2 * scheduled.size() + 16 ) {
+            queue.retainAll(new HashSet<>(scheduled.values())); // entries compare by identity
+        }
+        log.debug("AutoRefreshTrust: {} hosts scheduled, {} in progress, {} in backoff", scheduled.size(), inProgress.size(), failures.size());
+    }
+    
+    private void processCompleted(long now, long intervalMillis) {
+        ArrayList<RefreshTask> tasks;
+        synchronized(completed) {
+            tasks = new ArrayList<>(completed);
+            completed.clear();
+        }
+        for(RefreshTask task : tasks) {
+            inProgress.remove(task.hostname);
+            if( task.success ) {
+                // the next sync schedules the host from its new assertion
+                failures.remove(task.hostname);
+            }
+            else {
+                Integer count = failures.get(task.hostname);
+                int failureCount = count == null ? 1 : count + 1;
+                failures.put(task.hostname, failureCount);
+                long backoff = Math.min(maxBackoffMillis, intervalMillis << Math.min(failureCount - 1, 16));
+                log.debug("AutoRefreshTrust: Refresh of {} failed {} times, retrying in {} seconds", task.hostname, failureCount, backoff / 1000);
+                schedule(task.hostname, null, now + backoff);
+            }
+        }
+    }
+    
+    private class RefreshTask implements Runnable {
+        private final String hostname;
+        private boolean success = false;
+
+        public RefreshTask(String hostname) {
+            this.hostname = hostname;
+        }
+
+        @Override
+        public void run() {
+            Future<Void> refresh = null;
             try {
-                log.info("AutoRefreshTrust: Auto refresh thread would sleep for {} seconds.", TimeUnit.SECONDS.convert(interval, intervalUnits));
-                Thread.sleep(TimeUnit.MILLISECONDS.convert(interval, intervalUnits));
-            } catch (InterruptedException ex) {
-                log.info("AutoRefreshTrust: Error during waiting for the next process: {}", ex.getMessage());
+                refresh = workerExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        refresh(hostname);
+                        return null;
+                    }
+                });
+                refresh.get(hostTimeoutMillis, TimeUnit.MILLISECONDS);
+                success = true;
+            } catch (TimeoutException e) {
+                log.warn("AutoRefreshTrust: Refresh of {} did not complete in {} seconds", hostname, hostTimeoutMillis / 1000);
+                refresh.cancel(true);
+            } catch (ExecutionException e) {
+                log.debug("AutoRefreshTrust: Cannot refresh trust status of {}: {}", hostname, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                refresh.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.debug("AutoRefreshTrust: Cannot refresh trust status of {}: {}", hostname, e.getMessage()); // the pool was shut down
+            } finally {
+                synchronized(completed) {
+                    completed.add(this);
+                    completed.notifyAll();
+                }
             }
         }
     }
     
-    public List<String> findHostnamesWithExpiredCache() {
+    public static class AutoRefreshTrustThreadFactory implements ThreadFactory {
+        private static final AtomicLong sequence = new AtomicLong(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread newThread = new Thread(r, "AutoRefreshTrust-" + sequence.incrementAndGet());
+            newThread.setDaemon(true);
+            return newThread;
+        }
+    }
+    
+    /**
+     * Refreshes the trust status of the host; the assertion is stored by
+     * HostTrustBO, so we only need to know if the refresh succeeded.
+     */
+    protected void refresh(String hostname) throws Exception {
+        new HostTrustBO().getTrustWithSaml(hostname, true);
+    }
+    
+    public Map<String,Date> findHostnamesWithLastSamlCreated() {
         try {
-            return My.jpa().mwSamlAssertion().findHostnamesWithExpiredCache(My.configuration().getSamlValidityTimeInSeconds() - refreshTimeBeforeSamlExpiry);
+            return My.jpa().mwSamlAssertion().findHostnamesWithLastSamlCreated();
         } catch (Exception ex) {
-            log.error("AutoRefreshTrust:findHostnamesWithExpiredCache - Error during retrieval of hosts with expired cache.", ex);
+            log.error("AutoRefreshTrust:findHostnamesWithLastSamlCreated - Error during retrieval of hosts.", ex);
             return null;
         }
     }
-
+    
     public static class ExpiredHostStatus {
         String hostname;
         Date lastChecked; // alwasys more than maxCacheDuration ago...
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.plugin;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the refresh loop with hosts that are refreshed in memory instead of
+ * attested.
+ */
+public class AutoRefreshTrustTest {
+
+    @Test
+    public void testHungHostDoesNotBlockOtherHosts() throws Exception {
+        final CountDownLatch refreshed = new CountDownLatch(3);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Map<String,Date> hosts = new HashMap<>();
+        // the hung host is due first and takes the only refresh thread
+        hosts.put("hung", null);
+        Date later = new Date(System.currentTimeMillis() + 300);
+        hosts.put("host1", later);
+        hosts.put("host2", later);
+        hosts.put("host3", later);
+        final AutoRefreshTrust autoRefreshTrust = new AutoRefreshTrust(1, TimeUnit.HOURS) {
+            @Override
+            protected void refresh(String hostname) throws Exception {
+                if (hostname.equals("hung")) {
+                    try {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } catch (InterruptedException e) {
+                        cancelled.countDown();
+                        throw e;
+                    }
+                }
+                refreshed.countDown();
+            }
+
+            @Override
+            public Map<String,Date> findHostnamesWithLastSamlCreated() {
+                return hosts;
+            }
+        };
+        Thread loop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                autoRefreshTrust.refreshLoop(1, 200);
+            }
+        });
+        loop.start();
+        try {
+            assertTrue("Hosts were not refreshed while one host was hung", refreshed.await(10, TimeUnit.SECONDS));
+            assertTrue("The hung refresh was not cancelled", cancelled.await(10, TimeUnit.SECONDS));
+        } finally {
+            autoRefreshTrust.cancel();
+            loop.join(10000);
+        }
+        assertFalse(loop.isAlive());
+    }
+}
@@ -17,7 +17,9 @@ import com.intel.mtwilson.api.*;
 import com.intel.mtwilson.datatypes.AttestationReport;
 import com.intel.mtwilson.datatypes.ConnectionString;
 import com.intel.mtwilson.datatypes.PcrLogReport;
+import com.intel.mtwilson.datatypes.HostTrustSummary;
 import com.intel.mtwilson.datatypes.PortalUserLocale;
+import com.intel.mtwilson.datatypes.TrustSummary;
 import com.intel.mtwilson.datatypes.TxtHost;
 import com.intel.mtwilson.datatypes.Vendor;
 import com.intel.mtwilson.datatypes.xml.HostTrustXmlResponse;
@@ -48,73 +50,37 @@ public class DemoPortalServicesImpl implements IDemoPortalServices {
 	
 	
 	/**
-	 * This method is used to get host trust status from REST services and convert that data into TrustedHostVO Object.
+	 * This method is used to get the trust status of one page of hosts, as reported by the server from the latest
+	 * attestation of each host, instead of retrieving and verifying the SAML assertion of each host.
 	 * 
-	 * @param hostList (List contains all Host information for which trust status is needed.)
+	 * @param pageNo (page to return, starting at 1)
+	 * @param hostsPerPage
 	 * @param apiClientServices
-	 * @param trustedCertificates
-	 * @return List of TrustedHostVO Objects.
+	 * @return TrustSummary with the counts for all hosts and the hosts on the page.
 	 * @throws DemoPortalException
 	 */
 	@Override
-	public List<TrustedHostVO> getTrustStatusForHost(List<HostDetailsEntityVO> hostList, AttestationService apiClientServices,X509Certificate[] trustedCertificates) throws DemoPortalException {
-		//List contains data to be return.
-		List<TrustedHostVO> hostVOs = new ArrayList<TrustedHostVO>();
-		Map<String,HostDetailsEntityVO> hostTempMap = new HashMap<String, HostDetailsEntityVO>();
-		
-		//check size of List of Host for which Trust is required if its empty Throw Exception with specific message to Controller.
-		if (hostList!=null && hostList.size() > 0) {
-			Set<Hostname> listOfHostName = new HashSet<Hostname>();
-			for (HostDetailsEntityVO hostDetailsEntityVO : hostList) {
-                log.debug("getTrustStatusForHost: Adding host to list: {}", hostDetailsEntityVO.getHostName());
-                listOfHostName.add(new Hostname(hostDetailsEntityVO.getHostName()));
-                hostTempMap.put(hostDetailsEntityVO.getHostName(), hostDetailsEntityVO);
-			}
-			
-            try {
-            	
-            	//call to REST Services, for trust status data by passing Set of all Host Name.
-                List<HostTrustXmlResponse> trust = apiClientServices.getSamlForMultipleHosts(listOfHostName, false);
-                for (HostTrustXmlResponse hostTrustXmlResponse : trust) {
-                	
-                	//get HostDetailsEntityVO for current host for which we are checking Trust Status.
-                	HostDetailsEntityVO hostDetails = hostTempMap.get(hostTrustXmlResponse.getName());
-                        if (hostDetails == null) {
-                            throw new IllegalArgumentException("Host entity search yielded no results.");
-                        }
-	                try {
-	                	log.debug("getTrustStatusForHost: Getting trust Information for Host "+hostTrustXmlResponse.getName());
-	                	if (hostTrustXmlResponse.getAssertion() != null) {
-                                        log.debug("There is an assertion from hostTrustXmlResponse");
-	                		TrustAssertion trustAssertion = new TrustAssertion(trustedCertificates, hostTrustXmlResponse.getAssertion());
-	                		if( trustAssertion.isValid() ) {
-                                log.info("getTrustStatusForHost: Trust assertion is valid");
-	                			hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustAssertion(hostDetails, trustAssertion,null));
-	                		}
-	                		else {
-	                			log.debug("getTrustStatusForHost: Trust Assertion is NOT valid "+hostTrustXmlResponse.getName()+". "+ trustAssertion.error().getMessage());
-	                			hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustAssertion(hostDetails, null,"Cannot verify trust assertion"));
-	                		}
-	                	}else {
-	                		log.debug("getTrustStatusForHost: Trust Assertion is NOT valid "+hostTrustXmlResponse.getName()+". "+ hostTrustXmlResponse.getErrorCode()+". "+hostTrustXmlResponse.getErrorMessage());
-	                		hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustAssertion(hostDetails, null,hostTrustXmlResponse.getErrorCode()+". "+hostTrustXmlResponse.getErrorMessage()));
-	                	}
-	                } catch (Exception e) {
-	                	hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustAssertion(hostDetails, null,StringEscapeUtils.escapeHtml(e.getMessage())));
-	                	log.error("getTrustStatusForHost: Exception while getting trust status "+hostTrustXmlResponse.getName()+". "+ e.getMessage());
-	                	throw ConnectionUtil.handleDemoPortalException(e);
-	                }
-                 }
-                
-            } catch (Exception e) {
-                    log.error("getTrustStatusForHost: Exception while getting trust status All Host."+ e.getMessage());
-                    throw ConnectionUtil.handleDemoPortalException(e);
-            }
-		}else {
+	public TrustSummary getTrustSummary(int pageNo, int hostsPerPage, AttestationService apiClientServices) throws DemoPortalException {
+		TrustSummary summary;
+		try {
+			summary = apiClientServices.getTrustSummary(hostsPerPage, (pageNo - 1) * hostsPerPage, null);
+		} catch (Exception e) {
+			log.error("getTrustSummary: Exception while getting trust summary."+ e.getMessage());
+			throw ConnectionUtil.handleDemoPortalException(e);
+		}
+		if (summary.total == 0) {
 			throw new DemoPortalException(ErrorCode.AS_NO_HOSTS_CONFIGURED.getMessage());
 		}
-       
-       return hostVOs;
+		return summary;
+	}
+	
+	@Override
+	public List<TrustedHostVO> getTrustStatusForHost(TrustSummary summary) {
+		List<TrustedHostVO> hostVOs = new ArrayList<TrustedHostVO>();
+		for (HostTrustSummary host : summary.hosts) {
+			hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustSummary(host));
+		}
+		return hostVOs;
 	}
 	
 	
@@ -15,6 +15,7 @@ import com.intel.mountwilson.datamodel.TrustedHostVO;
 import com.intel.mtwilson.ApiClient;
 import com.intel.mtwilson.api.*;
 import com.intel.mtwilson.datatypes.PcrLogReport;
+import com.intel.mtwilson.datatypes.TrustSummary;
 
 /**
  * @author yuvrajsx
@@ -23,13 +24,19 @@ import com.intel.mtwilson.datatypes.PcrLogReport;
 public interface IDemoPortalServices {
 
 	/**
-	 * @param hostList
+	 * @param pageNo the page, starting at 1
+	 * @param hostsPerPage
 	 * @param apiClientServices
-	 * @param trustedCertificates
-	 * @return
+	 * @return the trust status counts of all hosts and the hosts on the page
 	 * @throws DemoPortalException
 	 */
-	public List<TrustedHostVO> getTrustStatusForHost(List<HostDetailsEntityVO> hostList,AttestationService apiClientServices,X509Certificate[] trustedCertificates) throws DemoPortalException;
+	public TrustSummary getTrustSummary(int pageNo, int hostsPerPage, AttestationService apiClientServices) throws DemoPortalException;
+
+	/**
+	 * @param summary
+	 * @return the hosts in the trust summary
+	 */
+	public List<TrustedHostVO> getTrustStatusForHost(TrustSummary summary);
 
 	/**
 	 * @param hostName
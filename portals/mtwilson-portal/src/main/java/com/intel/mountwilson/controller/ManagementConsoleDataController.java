@@ -37,6 +37,7 @@ import com.intel.mtwilson.api.*;
 import com.intel.mtwilson.datatypes.HostConfigData;
 import com.intel.mtwilson.datatypes.HostVMMType;
 import com.intel.mtwilson.datatypes.HostWhiteListTarget;
+import com.intel.mtwilson.datatypes.TrustSummary;
 import com.intel.mtwilson.datatypes.TxtHostRecord;
 import com.intel.mtwilson.ms.common.MSConfig;
 import com.intel.dcsg.cpg.tls.policy.TlsConnection;
@@ -1478,17 +1479,10 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
      */
     public ModelAndView getDashBoardData(HttpServletRequest req, HttpServletResponse res) {
         //log.info("DemoPortalDataController.getDashBoardData >>");
-        Map<Integer, List<HostDetailsEntityVO>> map;
         ModelAndView responseView = new ModelAndView(new JSONView());
         try {
-            //Get map view for All Host based on the value of Page_NO(this values is available from TDPConfig) 
-            map = getAllHostDetailsFromDB(req);
-
-            //calling into a Service layer to get trust status for Host on Page No 1(using map.get(1)).
-            responseView.addObject("hostVo", demoPortalServices.getTrustStatusForHost(map.get(1), getAttestationService(req, AttestationService.class), getTrustedCertificates(req)));
-
-            //setting no of page required to show all Host data while applying pagination in JSP
-            responseView.addObject("noOfPages", map.size());
+            //calling into a Service layer to get trust status for Host on Page No 1, and the number of pages required to show all Host data while applying pagination in JSP
+            addTrustSummaryForPage(req, responseView, 1);
         } catch (Exception e) {
             log.error(e.toString());
             responseView.addObject("hostVo", "");
@@ -1531,14 +1525,9 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
         try {
             //getting selected Page No.
             int selectedPage = Integer.parseInt(req.getParameter("pageNo"));
-            HttpSession session = req.getSession();
-            @SuppressWarnings("unchecked")
-            //getting Map view of all Host stored into session while calling getDashBoardData().
-            Map<Integer, List<HostDetailsEntityVO>> mapOfData = (Map<Integer, List<HostDetailsEntityVO>>) session.getAttribute("HostVoList");
 
             //calling into a Service layer to get trust status of Host for selected Page No.
-            responseView.addObject("hostVo", demoPortalServices.getTrustStatusForHost(mapOfData.get(selectedPage), getAttestationService(req, AttestationService.class), getTrustedCertificates(req)));
-            responseView.addObject("noOfPages", mapOfData.size());
+            addTrustSummaryForPage(req, responseView, selectedPage);
         } catch (Exception e) {
             log.error(e.toString());
             e.printStackTrace();
@@ -1922,9 +1911,7 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
         ModelAndView responseView = new ModelAndView(new JSONView());
         try {
             int selectedPage = Integer.parseInt(req.getParameter("pageNo"));
-            HttpSession session = req.getSession();
-            @SuppressWarnings("unchecked")
-            Map<Integer, List<HostDetailsEntityVO>> mapOfData = (Map<Integer, List<HostDetailsEntityVO>>) session.getAttribute("HostVoList");
+            Map<Integer, List<HostDetailsEntityVO>> mapOfData = getAllHostDetailsFromDB(req);
             responseView.addObject("hostVo", mapOfData.get(selectedPage));
         } catch (Exception e) {
             log.error(e.toString());
@@ -2053,9 +2040,28 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
         this.demoPortalServices = demoPortalServices;
     }
 
+    /**
+     * The dashboard shows the trust status reported by the server for each
+     * host, so it does not need the host list or the SAML assertion of each
+     * host.
+     *
+     * @param req
+     * @param responseView to add the "hostVo" and "noOfPages" objects to
+     * @param pageNo starting at 1
+     * @throws DemoPortalException
+     */
+    private void addTrustSummaryForPage(HttpServletRequest req, ModelAndView responseView, int pageNo) throws DemoPortalException {
+        int no_row_per_page = Integer.parseInt(TDPConfig.getConfiguration().getString("mtwilson.tdbp.paginationRowCount", "10")); // providing default value because it's not a critical configuration setting
+        TrustSummary summary = demoPortalServices.getTrustSummary(pageNo, no_row_per_page, getAttestationService(req, AttestationService.class));
+        responseView.addObject("hostVo", demoPortalServices.getTrustStatusForHost(summary));
+        responseView.addObject("noOfPages", (summary.total + no_row_per_page - 1) / no_row_per_page);
+    }
+
     /**
      * This method is used as a utility method to get Map Views for all host
-     * based on Page_no value.
+     * based on Page_no value. These are the host registration records (address,
+     * port, connection string, description) shown by the view, edit and report
+     * pages; the trust status of the hosts comes from addTrustSummaryForPage.
      *
      * @param req
      * @return Map<Integer, List<HostDetailsEntityVO>> @throws
@@ -2077,10 +2083,6 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
             map.put(i, listForMap);
             i++;
         }
-
-        //setting map into session attribute;
-        HttpSession session = req.getSession();
-        session.setAttribute("HostVoList", map);
         return map;
     }
 
@@ -16,6 +16,7 @@ import java.util.Iterator;
 import com.intel.mountwilson.datamodel.OSDataVO;
 import com.intel.mountwilson.datamodel.TrustedHostVO;
 import com.intel.mtwilson.TrustAssertion;
+import com.intel.mtwilson.datatypes.HostTrustSummary;
 import com.intel.mtwilson.datatypes.ManifestData;
 import com.intel.mtwilson.datatypes.MleData;
 import com.intel.mtwilson.datatypes.OemData;
@@ -47,6 +48,7 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.lang.StringEscapeUtils;
 
 
 /**
@@ -187,6 +189,61 @@ public class ConverterUtil {
                         hostVO.setErrorCode(1);                        
 		}
 		
+		setHostImages(hostVO, hostDetailsEntityVO);
+		
+		return hostVO;
+	}
+
+	/**
+	 * Same as getTrustedHostVoFromTrustAssertion for the status reported by
+	 * the trust summary, which the server has taken from a verified assertion.
+	 */
+	public static TrustedHostVO getTrustedHostVoFromTrustSummary(HostTrustSummary host) {
+		HostDetailsEntityVO hostDetailsEntityVO = new HostDetailsEntityVO();
+		hostDetailsEntityVO.setHostId(getConvertedHostName(host.hostName));
+		hostDetailsEntityVO.setHostName(host.hostName);
+		hostDetailsEntityVO.setLocation(host.location);
+		hostDetailsEntityVO.setVmmName(host.osName+" "+host.osVersion+HelperConstant.OS_VMM_INFORMATION_SEPERATOR+host.vmmName);
+		// an expired assertion no longer tells whether the host is trusted
+		boolean expired = host.expires != null && host.expires.before(new Date());
+		Boolean bios = expired ? null : host.bios;
+		Boolean vmm = expired ? null : host.vmm;
+		Boolean assetTag = expired ? null : host.assetTag;
+		Boolean trusted = expired ? null : host.trusted;
+		TrustedHostVO hostVO = new TrustedHostVO();
+		hostVO.setHostName(host.hostName);
+		hostVO.setBiosStatus(getTrustImage(bios));
+		hostVO.setVmmStatus(getTrustImage(vmm));
+		hostVO.setOverAllStatus(getTrustImage(trusted));
+		hostVO.setOverAllStatusBoolean(trusted != null && trusted);
+		hostVO.setAssetTagStatus(getTrustImage(assetTag));
+		if (assetTag == null) {
+			hostVO.setAssetTagDetails("Not verified");
+		} else if (!assetTag) {
+			hostVO.setAssetTagDetails("Un-Trusted");
+		}
+		DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
+		df.setTimeZone(TimeZone.getTimeZone("UTC"));
+		if (host.created == null || host.errorCode != null) {
+			hostVO.setErrorMessage(host.errorCode == null ? "Host has not been attested" : StringEscapeUtils.escapeHtml(host.errorCode+". "+host.errorMessage));
+			hostVO.setErrorCode(1);
+		} else if (expired) {
+			hostVO.setErrorMessage("Host attestation has expired");
+			hostVO.setErrorCode(1);
+		}
+		hostVO.setUpdatedOn(df.format(host.created == null ? new Date() : host.created));
+		setHostImages(hostVO, hostDetailsEntityVO);
+		return hostVO;
+	}
+
+	private static String getTrustImage(Boolean trusted) {
+		if (trusted == null) {
+			return TDPConfig.getConfiguration().getString(HelperConstant.IMAGE_TRUSTED_UNKNOWN);
+		}
+		return TDPConfig.getConfiguration().getString(trusted ? HelperConstant.IMAGE_TRUSTED_TRUE : HelperConstant.IMAGE_TRUSTED_FALSE);
+	}
+
+	private static void setHostImages(TrustedHostVO hostVO, HostDetailsEntityVO hostDetailsEntityVO) {
 		if (hostDetailsEntityVO.getVmmName() != null) {
 			
 			hostVO.setLocation(hostDetailsEntityVO.getLocation());
@@ -238,8 +295,6 @@ public class ConverterUtil {
                             
 			hostVO.setHostID(hostDetailsEntityVO.getHostId());
 		}
-		
-		return hostVO;
 	}
         
     public static String formateXMLString(String inputXML){
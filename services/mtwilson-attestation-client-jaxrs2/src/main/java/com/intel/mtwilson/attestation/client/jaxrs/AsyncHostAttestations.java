@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.attestation.client.jaxrs;
+
+import com.intel.mtwilson.as.rest.v2.model.HostAttestation;
+import com.intel.mtwilson.as.rest.v2.model.HostAttestationCollection;
+import com.intel.mtwilson.as.rest.v2.model.HostAttestationFilterCriteria;
+import com.intel.mtwilson.jaxrs2.client.MtWilsonClient;
+import com.intel.mtwilson.jaxrs2.mediatype.CryptoMediaType;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * The asynchronous form of <code>HostAttestations</code>. Each method sends
+ * the same request as the method of the same name in HostAttestations and
+ * returns without waiting for the response, so a caller can attest many
+ * hosts without a thread for each one.
+ *
+ * The requests are limited and coalesced as described in AsyncInvocations.
+ * The properties mtwilson.api.async.concurrency (default 16) and
+ * mtwilson.api.async.timeout (milliseconds, default 0 for the client's own
+ * timeouts) configure the limit and the default timeout of each call.
+ *
+ * @mtwSampleApiCall
+ * <pre>
+ *   AsyncHostAttestations client = new AsyncHostAttestations(My.configuration().getClientProperties());
+ *   HostAttestation hostAttestation = new HostAttestation();
+ *   hostAttestation.setHostUuid("de07c08a-7fc6-4c07-be08-0ecb2f803681");
+ *   Future&lt;String&gt; saml = client.createHostAttestationSaml(hostAttestation);
+ *   TrustAssertion assertion = new HostAttestations(My.configuration().getClientProperties()).verifyTrustAssertion(saml.get());
+ * </pre>
+ */
+public class AsyncHostAttestations extends MtWilsonClient {
+
+    private final AsyncInvocations invocations;
+
+    public AsyncHostAttestations(URL url) throws Exception {
+        super(url);
+        invocations = new AsyncInvocations(16, 0);
+    }
+
+    public AsyncHostAttestations(Properties properties) throws Exception {
+        super(properties);
+        invocations = new AsyncInvocations(Integer.parseInt(properties.getProperty("mtwilson.api.async.concurrency", "16")), Long.parseLong(properties.getProperty("mtwilson.api.async.timeout", "0")));
+    }
+
+    public AsyncInvocations getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * @see HostAttestations#createHostAttestation(HostAttestation)
+     */
+    public Future<HostAttestation> createHostAttestation(HostAttestation obj) {
+        return createHostAttestation(obj, 0, null);
+    }
+
+    /**
+     *
+     * @param obj HostAttestation object with the UUID of the host for which the attestation has to be done.
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the attestation when it completes, may be null
+     * @return HostAttestation object with the details trust report.
+     * @mtwRequiresPermissions host_attestations:create
+     */
+    public Future<HostAttestation> createHostAttestation(HostAttestation obj, long timeoutMillis, InvocationCallback<HostAttestation> callback) {
+        return invocations.post(getTarget().path("host-attestations"), MediaType.APPLICATION_JSON, Entity.json(obj), HostAttestation.class, timeoutMillis, callback);
+    }
+
+    /**
+     * @see HostAttestations#createHostAttestationSaml(HostAttestation)
+     */
+    public Future<String> createHostAttestationSaml(HostAttestation obj) {
+        return createHostAttestationSaml(obj, 0, null);
+    }
+
+    /**
+     *
+     * @param obj HostAttestation object with the UUID of the host for which the attestation has to be done.
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the SAML assertion when it completes, may be null
+     * @return String having the SAML assertion that was just created.
+     * @mtwRequiresPermissions host_attestations:create
+     */
+    public Future<String> createHostAttestationSaml(HostAttestation obj, long timeoutMillis, InvocationCallback<String> callback) {
+        return invocations.post(getTarget().path("host-attestations"), CryptoMediaType.APPLICATION_SAML, Entity.json(obj), String.class, timeoutMillis, callback);
+    }
+
+    /**
+     * @see HostAttestations#retrieveHostAttestation(String)
+     */
+    public Future<HostAttestation> retrieveHostAttestation(String uuid) {
+        return retrieveHostAttestation(uuid, 0, null);
+    }
+
+    /**
+     *
+     * @param uuid UUID of the cached attestation to be retrieved
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the attestation when it arrives, may be null
+     * @return HostAttestation object with the details of the attestation
+     * @mtwRequiresPermissions host_attestations:retrieve
+     */
+    public Future<HostAttestation> retrieveHostAttestation(String uuid, long timeoutMillis, InvocationCallback<HostAttestation> callback) {
+        HashMap<String,Object> map = new HashMap<>();
+        map.put("id", uuid);
+        return invocations.get(getTarget().path("host-attestations/{id}").resolveTemplates(map), MediaType.APPLICATION_JSON, HostAttestation.class, timeoutMillis, callback);
+    }
+
+    /**
+     * @see HostAttestations#searchHostAttestations(HostAttestationFilterCriteria)
+     */
+    public Future<HostAttestationCollection> searchHostAttestations(HostAttestationFilterCriteria criteria) {
+        return searchHostAttestations(criteria, 0, null);
+    }
+
+    /**
+     *
+     * @param criteria HostAttestationFilterCriteria object that specifies the search criteria.
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the attestations when they arrive, may be null
+     * @return HostAttestationCollection object with a list of attestations for the hosts that match the filter criteria.
+     * @mtwRequiresPermissions host_attestations:search
+     */
+    public Future<HostAttestationCollection> searchHostAttestations(HostAttestationFilterCriteria criteria, long timeoutMillis, InvocationCallback<HostAttestationCollection> callback) {
+        return invocations.get(getTargetPathWithQueryParams("host-attestations", criteria), MediaType.APPLICATION_JSON, HostAttestationCollection.class, timeoutMillis, callback);
+    }
+
+    /**
+     * @see HostAttestations#searchHostAttestationsSaml(HostAttestationFilterCriteria)
+     */
+    public Future<String> searchHostAttestationsSaml(HostAttestationFilterCriteria criteria) {
+        return searchHostAttestationsSaml(criteria, 0, null);
+    }
+
+    /**
+     *
+     * @param criteria HostAttestationFilterCriteria object that specifies the search criteria.
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the SAML assertion when it arrives, may be null
+     * @return String object having the SAML assertion contents.
+     * @mtwRequiresPermissions host_attestations:search
+     */
+    public Future<String> searchHostAttestationsSaml(HostAttestationFilterCriteria criteria, long timeoutMillis, InvocationCallback<String> callback) {
+        return invocations.get(getTargetPathWithQueryParams("host-attestations", criteria), CryptoMediaType.APPLICATION_SAML, String.class, timeoutMillis, callback);
+    }
+}
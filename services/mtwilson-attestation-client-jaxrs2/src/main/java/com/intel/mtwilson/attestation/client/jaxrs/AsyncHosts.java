@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.attestation.client.jaxrs;
+
+import com.intel.dcsg.cpg.tls.policy.TlsConnection;
+import com.intel.mtwilson.as.rest.v2.model.Host;
+import com.intel.mtwilson.as.rest.v2.model.HostCollection;
+import com.intel.mtwilson.as.rest.v2.model.HostFilterCriteria;
+import com.intel.mtwilson.jaxrs2.client.MtWilsonClient;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * The asynchronous form of the <code>Hosts</code> lookups, configured like
+ * AsyncHostAttestations.
+ *
+ * @mtwSampleApiCall
+ * <pre>
+ *   AsyncHosts client = new AsyncHosts(My.configuration().getClientProperties());
+ *   HostFilterCriteria criteria = new HostFilterCriteria();
+ *   criteria.nameContains = "192";
+ *   Future&lt;HostCollection&gt; hosts = client.searchHosts(criteria);
+ * </pre>
+ */
+public class AsyncHosts extends MtWilsonClient {
+
+    private final AsyncInvocations invocations;
+
+    public AsyncHosts(URL url) throws Exception {
+        super(url);
+        invocations = new AsyncInvocations(16, 0);
+    }
+
+    public AsyncHosts(Properties properties) throws Exception {
+        super(properties);
+        invocations = new AsyncInvocations(Integer.parseInt(properties.getProperty("mtwilson.api.async.concurrency", "16")), Long.parseLong(properties.getProperty("mtwilson.api.async.timeout", "0")));
+    }
+
+    public AsyncHosts(Properties properties, TlsConnection tlsConnection) throws Exception {
+        super(properties, tlsConnection);
+        invocations = new AsyncInvocations(Integer.parseInt(properties.getProperty("mtwilson.api.async.concurrency", "16")), Long.parseLong(properties.getProperty("mtwilson.api.async.timeout", "0")));
+    }
+
+    public AsyncInvocations getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * @see Hosts#retrieveHost(String)
+     */
+    public Future<Host> retrieveHost(String uuid) {
+        return retrieveHost(uuid, 0, null);
+    }
+
+    /**
+     *
+     * @param uuid UUID of the host to be retrieved
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the host when it arrives, may be null
+     * @return Host object matching the specified UUID
+     * @mtwRequiresPermissions hosts:retrieve
+     */
+    public Future<Host> retrieveHost(String uuid, long timeoutMillis, InvocationCallback<Host> callback) {
+        HashMap<String,Object> map = new HashMap<>();
+        map.put("id", uuid);
+        return invocations.get(getTarget().path("hosts/{id}").resolveTemplates(map), MediaType.APPLICATION_JSON, Host.class, timeoutMillis, callback);
+    }
+
+    /**
+     * @see Hosts#searchHosts(HostFilterCriteria)
+     */
+    public Future<HostCollection> searchHosts(HostFilterCriteria criteria) {
+        return searchHosts(criteria, 0, null);
+    }
+
+    /**
+     *
+     * @param criteria HostFilterCriteria object that specifies the search criteria.
+     * @param timeoutMillis the timeout for this call, 0 for the default
+     * @param callback called with the hosts when they arrive, may be null
+     * @return HostCollection object with a list of Hosts that match the filter criteria.
+     * @mtwRequiresPermissions hosts:search
+     */
+    public Future<HostCollection> searchHosts(HostFilterCriteria criteria, long timeoutMillis, InvocationCallback<HostCollection> callback) {
+        return invocations.get(getTargetPathWithQueryParams("hosts", criteria), MediaType.APPLICATION_JSON, HostCollection.class, timeoutMillis, callback);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.attestation.client.jaxrs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Future;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends requests with the JAX-RS asynchronous invoker so the caller gets a
+ * Future, or a callback, instead of waiting for the response.
+ *
+ * At most maxConcurrent requests are sent at a time; the others wait in a
+ * queue, without holding a thread, until an earlier request completes. A
+ * GET for the same resource, media type and response type as a GET that is
+ * queued or in progress is not sent again: the caller receives the same
+ * entity when it arrives. A GET for a Response is always sent, because a
+ * Response can be read only once and must be closed by its caller.
+ *
+ * The timeout of a call is applied as the connect and read timeout of its
+ * request. A coalesced GET completes with the response to the first
+ * request, and therefore with that request's timeout.
+ */
+public class AsyncInvocations {
+    private static final Logger log = LoggerFactory.getLogger(AsyncInvocations.class);
+    private final int maxConcurrent;
+    private final long timeoutMillis;
+    private final ArrayDeque<Call<?>> queue = new ArrayDeque<>();
+    private final HashMap<String,Call<?>> gets = new HashMap<>(); // queued or in progress, by resource
+    private int active = 0;
+
+    /**
+     *
+     * @param maxConcurrent the maximum number of requests in progress at a time
+     * @param timeoutMillis the default timeout for each request, 0 to use the timeout configured for the client
+     */
+    public AsyncInvocations(int maxConcurrent, long timeoutMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private class Call<T> {
+        private final String key; // null for requests that are not coalesced
+        private final WebTarget target;
+        private final String mediaType;
+        private final String method;
+        private final Entity<?> entity;
+        private final Class<T> responseType;
+        private final long timeoutMillis;
+        private final List<AsyncResult<T>> results = new ArrayList<>();
+        private boolean finished = false;
+
+        private Call(String key, WebTarget target, String mediaType, String method, Entity<?> entity, Class<T> responseType, long timeoutMillis) {
+            this.key = key;
+            this.target = target;
+            this.mediaType = mediaType;
+            this.method = method;
+            this.entity = entity;
+            this.responseType = responseType;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        private void start() {
+            log.debug("{} {}", method, target.getUri());
+            InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+                @Override
+                public void completed(Response response) {
+                    T value;
+                    try {
+                        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                            response.bufferEntity();
+                            failed(new WebApplicationException(response));
+                            return;
+                        }
+                        value = responseType == Response.class ? responseType.cast(response) : response.readEntity(responseType);
+                    } catch (RuntimeException e) {
+                        failed(e);
+                        return;
+                    }
+                    finish(Call.this, value, null);
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    finish(Call.this, null, throwable);
+                }
+            };
+            try {
+                Invocation.Builder request = target.request(mediaType);
+                if (timeoutMillis > 0) {
+                    int timeout = (int) Math.min(timeoutMillis, Integer.MAX_VALUE);
+                    request.property(ClientProperties.CONNECT_TIMEOUT, timeout);
+                    request.property(ClientProperties.READ_TIMEOUT, timeout);
+                }
+                if (entity == null) {
+                    request.async().method(method, callback);
+                } else {
+                    request.async().method(method, entity, callback);
+                }
+            } catch (RuntimeException e) {
+                finish(this, null, e);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param target the resource
+     * @param mediaType for the Accept header
+     * @param responseType the class of the response entity, or Response to send the request even if the same GET is in progress
+     * @param timeoutMillis the timeout for this request, 0 for the default
+     * @param callback called when the response arrives, may be null
+     * @return the response entity
+     */
+    public <T> Future<T> get(WebTarget target, String mediaType, Class<T> responseType, long timeoutMillis, InvocationCallback<T> callback) {
+        AsyncResult<T> result = new AsyncResult<>(callback);
+        if (responseType == Response.class) {
+            Call<T> call = new Call<>(null, target, mediaType, "GET", null, responseType, timeout(timeoutMillis));
+            call.results.add(result);
+            synchronized (this) {
+                queue.add(call);
+            }
+            dispatch();
+            return result;
+        }
+        String key = mediaType + " " + responseType.getName() + " " + target.getUri().toString();
+        synchronized (this) {
+            @SuppressWarnings("unchecked")
+            Call<T> call = (Call<T>) gets.get(key);
+            if (call != null) {
+                log.debug("Waiting for response to GET {} in progress", target.getUri());
+                call.results.add(result);
+                return result;
+            }
+            call = new Call<>(key, target, mediaType, "GET", null, responseType, timeout(timeoutMillis));
+            call.results.add(result);
+            gets.put(key, call);
+            queue.add(call);
+        }
+        dispatch();
+        return result;
+    }
+
+    /**
+     *
+     * @param target the resource
+     * @param mediaType for the Accept header
+     * @param entity the request entity
+     * @param responseType the class of the response entity, or Response
+     * @param timeoutMillis the timeout for this request, 0 for the default
+     * @param callback called when the response arrives, may be null
+     * @return the response entity
+     */
+    public <T> Future<T> post(WebTarget target, String mediaType, Entity<?> entity, Class<T> responseType, long timeoutMillis, InvocationCallback<T> callback) {
+        AsyncResult<T> result = new AsyncResult<>(callback);
+        Call<T> call = new Call<>(null, target, mediaType, "POST", entity, responseType, timeout(timeoutMillis));
+        call.results.add(result);
+        synchronized (this) {
+            queue.add(call);
+        }
+        dispatch();
+        return result;
+    }
+
+    private long timeout(long timeoutMillis) {
+        return timeoutMillis > 0 ? timeoutMillis : this.timeoutMillis;
+    }
+
+    private void dispatch() {
+        ArrayList<Call<?>> ready = new ArrayList<>();
+        synchronized (this) {
+            while (active < maxConcurrent && !queue.isEmpty()) {
+                ready.add(queue.poll());
+                active++;
+            }
+        }
+        for (Call<?> call : ready) {
+            call.start();
+        }
+    }
+
+    private <T> void finish(Call<T> call, T value, Throwable failure) {
+        ArrayList<AsyncResult<T>> results;
+        synchronized (this) {
+            if (call.finished) {
+                return;
+            }
+            call.finished = true;
+            active--;
+            if (call.key != null) {
+                gets.remove(call.key);
+            }
+            // callers that join after this point send a new request
+            results = new ArrayList<>(call.results);
+        }
+        for (AsyncResult<T> result : results) {
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.fail(failure);
+            }
+        }
+        dispatch();
+    }
+
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.attestation.client.jaxrs;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.client.InvocationCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The result of one call made through AsyncInvocations. Callers that
+ * asked for the same resource while it was being retrieved each get their
+ * own AsyncResult, so cancelling one of them does not affect the others.
+ *
+ * The callback, if any, is called once by the thread that completes the
+ * result.
+ */
+class AsyncResult<T> implements Future<T> {
+    private static final Logger log = LoggerFactory.getLogger(AsyncResult.class);
+    private final InvocationCallback<T> callback;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private volatile T value = null;
+    private volatile Throwable failure = null;
+    private volatile boolean cancelled = false;
+
+    AsyncResult(InvocationCallback<T> callback) {
+        this.callback = callback;
+    }
+
+    boolean complete(T value) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        this.value = value;
+        done.countDown();
+        if (callback != null) {
+            try {
+                callback.completed(value);
+            } catch (RuntimeException e) {
+                log.debug("Callback failed: {}", e.toString());
+            }
+        }
+        return true;
+    }
+
+    boolean fail(Throwable failure) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        this.failure = failure;
+        done.countDown();
+        if (callback != null) {
+            try {
+                callback.failed(failure);
+            } catch (RuntimeException e) {
+                log.debug("Callback failed: {}", e.toString());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The request itself is not aborted, because other callers may be
+     * waiting for the same response; it ends when the response arrives or
+     * the call times out.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        cancelled = true;
+        done.countDown();
+        if (callback != null) {
+            try {
+                callback.failed(new CancellationException());
+            } catch (RuntimeException e) {
+                log.debug("Callback failed: {}", e.toString());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return value;
+    }
+}
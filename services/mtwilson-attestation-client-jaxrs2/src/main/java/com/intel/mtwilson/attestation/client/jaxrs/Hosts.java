@@ -209,8 +209,11 @@ public class Hosts extends MtWilsonClient {
     /**
      * Searches for the hosts with the specified criteria.
      * @param criteria HostFilterCriteria object that specifies the search criteria.
-     * The possible search options include id, nameEqualTo, nameContains and descriptionContains.
+     * The possible search options include id, nameEqualTo, nameContains, descriptionContains, nameStartsWith and descriptionStartsWith.
      * If in case the caller needs the list of all records, filter option can to be set to false. [Ex: /hosts?filter=false]
+     * The list of all records and the nameStartsWith and descriptionStartsWith searches can be read in pages ordered by host id
+     * with the limit and after options, where after is the id of the last host in the previous page. Setting summary to true
+     * leaves out the connection url and the AIK certificate. [Ex: /hosts?filter=false&summary=true&limit=500&after=de07c08a-7fc6-4c07-be08-0ecb2f803681]
      * @return HostCollection object with a list of Hosts that match the filter criteria.
      * @since Mt.Wilson 2.0
      * @mtwRequiresPermissions hosts:search
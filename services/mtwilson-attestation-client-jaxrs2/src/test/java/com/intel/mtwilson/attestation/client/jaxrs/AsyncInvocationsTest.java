@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.attestation.client.jaxrs;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.AsyncInvoker;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Response;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the queueing, coalescing and failure handling of AsyncInvocations
+ * without a server: the requests are recorded by a fake WebTarget and
+ * completed by each test.
+ */
+public class AsyncInvocationsTest {
+    private List<Sent> sent;
+
+    private static class Sent {
+        private String method;
+        private URI uri;
+        private InvocationCallback<Response> callback;
+    }
+
+    private static class Recorder<T> implements InvocationCallback<T> {
+        private T value = null;
+        private Throwable failure = null;
+
+        @Override
+        public void completed(T response) {
+            value = response;
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            failure = throwable;
+        }
+    }
+
+    /**
+     * A received response with the given status and entity.
+     */
+    private static class FakeResponse extends Response {
+        private final int status;
+        private final Object entity;
+        private int reads = 0;
+
+        private FakeResponse(int status, Object entity) {
+            this.status = status;
+            this.entity = entity;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public StatusType getStatusInfo() {
+            return Response.Status.fromStatusCode(status);
+        }
+
+        @Override
+        public Object getEntity() {
+            return entity;
+        }
+
+        @Override
+        public <T> T readEntity(Class<T> entityType) {
+            reads++;
+            return entityType.cast(entity);
+        }
+
+        @Override
+        public <T> T readEntity(GenericType<T> entityType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T readEntity(Class<T> entityType, Annotation[] annotations) {
+            return readEntity(entityType);
+        }
+
+        @Override
+        public <T> T readEntity(GenericType<T> entityType, Annotation[] annotations) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasEntity() {
+            return entity != null;
+        }
+
+        @Override
+        public boolean bufferEntity() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return null;
+        }
+
+        @Override
+        public Locale getLanguage() {
+            return null;
+        }
+
+        @Override
+        public int getLength() {
+            return -1;
+        }
+
+        @Override
+        public Set<String> getAllowedMethods() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Map<String, NewCookie> getCookies() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public EntityTag getEntityTag() {
+            return null;
+        }
+
+        @Override
+        public Date getDate() {
+            return null;
+        }
+
+        @Override
+        public Date getLastModified() {
+            return null;
+        }
+
+        @Override
+        public URI getLocation() {
+            return null;
+        }
+
+        @Override
+        public Set<Link> getLinks() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public boolean hasLink(String relation) {
+            return false;
+        }
+
+        @Override
+        public Link getLink(String relation) {
+            return null;
+        }
+
+        @Override
+        public Link.Builder getLinkBuilder(String relation) {
+            return null;
+        }
+
+        @Override
+        public MultivaluedMap<String, Object> getMetadata() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getStringHeaders() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getHeaderString(String name) {
+            return null;
+        }
+    }
+
+    @Before
+    public void init() {
+        sent = Collections.synchronizedList(new ArrayList<Sent>());
+    }
+
+    /**
+     * A WebTarget that records each asynchronous request instead of sending it.
+     */
+    private WebTarget target(String uri) {
+        final URI location = URI.create(uri);
+        final AsyncInvoker invoker = (AsyncInvoker) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncInvoker.class }, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (!method.getName().equals("method")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                Sent request = new Sent();
+                request.method = (String) args[0];
+                request.uri = location;
+                request.callback = (InvocationCallback<Response>) args[args.length - 1];
+                sent.add(request);
+                return null;
+            }
+        });
+        final Invocation.Builder builder = (Invocation.Builder) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Invocation.Builder.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "property":
+                        return proxy;
+                    case "async":
+                        return invoker;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+        return (WebTarget) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebTarget.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getUri":
+                        return location;
+                    case "request":
+                        return builder;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    private Throwable failure(Future<?> result) throws Exception {
+        try {
+            result.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Expected the call to fail");
+        return null;
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        AsyncInvocations invocations = new AsyncInvocations(2, 0);
+        Future<String> first = invocations.post(target("https://server/a"), MediaType.APPLICATION_JSON, Entity.json("a"), String.class, 0, null);
+        Future<String> second = invocations.post(target("https://server/b"), MediaType.APPLICATION_JSON, Entity.json("b"), String.class, 0, null);
+        Future<String> third = invocations.get(target("https://server/c"), MediaType.APPLICATION_JSON, String.class, 0, null);
+        assertEquals(2, sent.size());
+        assertEquals(2, invocations.getActiveCount());
+        assertEquals(1, invocations.getQueuedCount());
+        assertFalse(third.isDone());
+
+        // the queued request is sent when one in progress completes
+        sent.get(0).callback.completed(new FakeResponse(200, "a"));
+        assertEquals("a", first.get(1, TimeUnit.SECONDS));
+        assertEquals(3, sent.size());
+        assertEquals("GET", sent.get(2).method);
+        assertEquals(URI.create("https://server/c"), sent.get(2).uri);
+        assertEquals(2, invocations.getActiveCount());
+        assertEquals(0, invocations.getQueuedCount());
+
+        sent.get(1).callback.completed(new FakeResponse(200, "b"));
+        sent.get(2).callback.completed(new FakeResponse(200, "c"));
+        assertEquals("b", second.get(1, TimeUnit.SECONDS));
+        assertEquals("c", third.get(1, TimeUnit.SECONDS));
+        assertEquals(0, invocations.getActiveCount());
+    }
+
+    @Test
+    public void testCoalescedGet() throws Exception {
+        AsyncInvocations invocations = new AsyncInvocations(4, 0);
+        Recorder<String> callback = new Recorder<>();
+        Future<String> first = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, null);
+        Future<String> second = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, callback);
+        assertEquals(1, sent.size());
+        // a different media type is a different request
+        invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_XML, String.class, 0, null);
+        assertEquals(2, sent.size());
+
+        FakeResponse response = new FakeResponse(200, "host");
+        sent.get(0).callback.completed(response);
+        assertEquals("host", first.get(1, TimeUnit.SECONDS));
+        assertEquals("host", second.get(1, TimeUnit.SECONDS));
+        assertEquals("host", callback.value);
+        assertEquals(1, response.reads);
+
+        // a GET after the response arrived is sent again
+        invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, null);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void testResponseIsNotCoalesced() throws Exception {
+        AsyncInvocations invocations = new AsyncInvocations(4, 0);
+        Future<Response> first = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, Response.class, 0, null);
+        Future<Response> second = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, Response.class, 0, null);
+        assertEquals(2, sent.size());
+        FakeResponse response1 = new FakeResponse(200, "host");
+        FakeResponse response2 = new FakeResponse(200, "host");
+        sent.get(0).callback.completed(response1);
+        sent.get(1).callback.completed(response2);
+        assertSame(response1, first.get(1, TimeUnit.SECONDS));
+        assertSame(response2, second.get(1, TimeUnit.SECONDS));
+        assertEquals(0, response1.reads);
+    }
+
+    @Test
+    public void testErrorStatusFailsAllCallers() throws Exception {
+        AsyncInvocations invocations = new AsyncInvocations(1, 0);
+        Recorder<String> callback = new Recorder<>();
+        Future<String> first = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, callback);
+        Future<String> second = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, null);
+        Future<String> queued = invocations.get(target("https://server/hosts/2"), MediaType.APPLICATION_JSON, String.class, 0, null);
+        assertEquals(1, sent.size());
+
+        FakeResponse response = new FakeResponse(404, "not found");
+        sent.get(0).callback.completed(response);
+        for (Throwable failure : new Throwable[] { failure(first), failure(second) }) {
+            assertTrue(failure instanceof WebApplicationException);
+            assertSame(response, ((WebApplicationException) failure).getResponse());
+        }
+        assertTrue(callback.failure instanceof WebApplicationException);
+        assertNull(callback.value);
+        assertEquals(0, response.reads);
+
+        // the failure frees the slot for the queued request
+        assertEquals(2, sent.size());
+        assertFalse(queued.isDone());
+    }
+
+    @Test
+    public void testFailureFailsAllCallers() throws Exception {
+        AsyncInvocations invocations = new AsyncInvocations(1, 0);
+        Recorder<String> callback = new Recorder<>();
+        Future<String> first = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, null);
+        Future<String> second = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, callback);
+
+        IOException refused = new IOException("Connection refused");
+        sent.get(0).callback.failed(refused);
+        assertSame(refused, failure(first));
+        assertSame(refused, failure(second));
+        assertSame(refused, callback.failure);
+        assertEquals(0, invocations.getActiveCount());
+    }
+
+    @Test
+    public void testCancelOneCaller() throws Exception {
+        AsyncInvocations invocations = new AsyncInvocations(1, 0);
+        Recorder<String> callback = new Recorder<>();
+        Future<String> first = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, callback);
+        Future<String> second = invocations.get(target("https://server/hosts/1"), MediaType.APPLICATION_JSON, String.class, 0, null);
+
+        assertTrue(first.cancel(true));
+        assertTrue(first.isCancelled());
+        assertTrue(callback.failure instanceof CancellationException);
+        assertFalse(second.isDone());
+
+        sent.get(0).callback.completed(new FakeResponse(200, "host"));
+        assertEquals("host", second.get(1, TimeUnit.SECONDS));
+        assertNull(callback.value);
+        try {
+            first.get(1, TimeUnit.SECONDS);
+            fail("Expected the cancelled call to stay cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+}
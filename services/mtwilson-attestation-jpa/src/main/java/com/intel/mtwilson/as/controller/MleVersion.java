@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counters for the whitelist of each MLE (its mw_mle record and the
+ * related mw_pcr_manifest, mw_module_manifest, and mw_measurement_xml records).
+ *
+ * Every whitelist write must call increment(mleId), or incrementAll() if the
+ * affected MLE is not known. Anything built from whitelist data, such as the
+ * trust policy cache, records the version when it is built and is stale when
+ * the version returned by get(mleId) is different.
+ *
+ * The counters are kept in memory so they only cover writes made by this
+ * process.
+ */
+public class MleVersion {
+    private static final AtomicLong all = new AtomicLong(0);
+    private static final ConcurrentHashMap<Integer,AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param mleId primary key of the mw_mle record, may be null
+     * @return the current version of the whitelist for the given MLE
+     */
+    public static long get(Integer mleId) {
+        if( mleId == null ) { return all.get(); }
+        AtomicLong version = versions.get(mleId);
+        return all.get() + (version == null ? 0 : version.get());
+    }
+
+    public static void increment(Integer mleId) {
+        if( mleId == null ) {
+            incrementAll();
+            return;
+        }
+        AtomicLong version = versions.get(mleId);
+        if( version == null ) {
+            AtomicLong created = new AtomicLong(0);
+            version = versions.putIfAbsent(mleId, created);
+            if( version == null ) { version = created; }
+        }
+        version.incrementAndGet();
+    }
+
+    public static void incrementAll() {
+        all.incrementAndGet();
+    }
+}
@@ -7,6 +7,7 @@ package com.intel.mtwilson.as.controller;
 import com.intel.mtwilson.as.controller.exceptions.ASDataException;
 import com.intel.mtwilson.as.controller.exceptions.IllegalOrphanException;
 import com.intel.mtwilson.as.controller.exceptions.NonexistentEntityException;
+import com.intel.mtwilson.as.data.HostConnectionCache;
 import com.intel.mtwilson.as.data.TblHosts;
 import java.io.Serializable;
 import javax.persistence.Query;
@@ -166,6 +167,7 @@ public class TblHostsJpaController implements Serializable {
 //                }
 //            }
             em.getTransaction().commit();
+            HostConnectionCache.invalidate(tblHosts.getId());
         } catch (Exception ex) {
             String msg = ex.getLocalizedMessage();
             if (msg == null || msg.length() == 0) {
@@ -214,6 +216,7 @@ public class TblHostsJpaController implements Serializable {
             }
             em.remove(tblHosts);
             em.getTransaction().commit();
+            HostConnectionCache.invalidate(id);
         } finally {
             em.close();
         }
@@ -399,10 +402,9 @@ public class TblHostsJpaController implements Serializable {
             Query query = em.createNamedQuery("TblHosts.findByNameSearchCriteria");
             query.setParameter("search", "%"+searchCriteria+"%");
             
-            if (query.getResultList() != null && !query.getResultList().isEmpty()) {
-                 
-                hostList = query.getResultList();
-               
+            List<TblHosts> results = query.getResultList();
+            if (results != null && !results.isEmpty()) {
+                hostList = results;
             }
             
         } finally {
@@ -439,10 +441,9 @@ public class TblHostsJpaController implements Serializable {
             Query query = em.createNamedQuery("TblHosts.findByDescriptionSearchCriteria");
             query.setParameter("search", "%"+searchCriteria+"%");
             
-            if (query.getResultList() != null && !query.getResultList().isEmpty()) {
-                 
-                hostList = query.getResultList();
-               
+            List<TblHosts> results = query.getResultList();
+            if (results != null && !results.isEmpty()) {
+                hostList = results;
             }
             
         } finally {
@@ -452,6 +453,87 @@ public class TblHostsJpaController implements Serializable {
         return hostList;      
     }
     
+    /**
+     * Returns one page of hosts ordered by uuid_hex. The prefixes are
+     * matched with LIKE 'prefix%' so the indexes on name and description
+     * can be used.
+     * 
+     * When summary is true only the identifying columns are selected, and
+     * the returned records are not managed: they have no connection info,
+     * AIK certificate, or MLE references, and must not be used to edit
+     * the host.
+     * 
+     * @param namePrefix null to match any name
+     * @param descriptionPrefix null to match any description
+     * @param afterUuid null for the first page, or the uuid_hex of the last host in the previous page
+     * @param maxResults the page size, or 0 or less for all remaining hosts
+     * @param summary true to select only the identifying columns
+     * @return the hosts in the page, possibly empty
+     */
+    public List<TblHosts> findHostsPage(String namePrefix, String descriptionPrefix, String afterUuid, int maxResults, boolean summary) {
+        EntityManager em = getEntityManager();
+        try {
+            StringBuilder jpql = new StringBuilder();
+            if (summary) {
+                jpql.append("SELECT t.id, t.uuid_hex, t.name, t.description, t.email, t.bios_mle_uuid_hex, t.vmm_mle_uuid_hex, t.aikSha1, t.hardware_uuid, t.tlsPolicyId FROM TblHosts t");
+            } else {
+                jpql.append("SELECT t FROM TblHosts t");
+            }
+            String where = " WHERE ";
+            if (namePrefix != null) {
+                jpql.append(where).append("t.name LIKE :namePrefix ESCAPE '!'");
+                where = " AND ";
+            }
+            if (descriptionPrefix != null) {
+                jpql.append(where).append("t.description LIKE :descriptionPrefix ESCAPE '!'");
+                where = " AND ";
+            }
+            if (afterUuid != null) {
+                jpql.append(where).append("t.uuid_hex > :afterUuid");
+            }
+            jpql.append(" ORDER BY t.uuid_hex");
+            Query query = em.createQuery(jpql.toString());
+            if (namePrefix != null) {
+                query.setParameter("namePrefix", escapeLike(namePrefix) + "%");
+            }
+            if (descriptionPrefix != null) {
+                query.setParameter("descriptionPrefix", escapeLike(descriptionPrefix) + "%");
+            }
+            if (afterUuid != null) {
+                query.setParameter("afterUuid", afterUuid);
+            }
+            if (maxResults > 0) {
+                query.setMaxResults(maxResults);
+            }
+            if (!summary) {
+                return query.getResultList();
+            }
+            List<Object[]> rows = query.getResultList();
+            ArrayList<TblHosts> hosts = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                TblHosts host = new TblHosts();
+                host.setId((Integer) row[0]);
+                host.setUuid_hex((String) row[1]);
+                host.setName((String) row[2]);
+                host.setDescription((String) row[3]);
+                host.setEmail((String) row[4]);
+                host.setBios_mle_uuid_hex((String) row[5]);
+                host.setVmm_mle_uuid_hex((String) row[6]);
+                host.setAikSha1((String) row[7]);
+                host.setHardwareUuid((String) row[8]);
+                host.setTlsPolicyId((String) row[9]);
+                hosts.add(host);
+            }
+            return hosts;
+        } finally {
+            em.close();
+        }
+    }
+    
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+    
     public TblHosts findHostById(Integer id) {
         EntityManager em = getEntityManager();
         try {
@@ -13,10 +13,14 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 import com.intel.mtwilson.as.data.TblHosts;
 import com.intel.mtwilson.as.data.TblSamlAssertion;
+import com.intel.mtwilson.datatypes.HostTrustSummary;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import org.slf4j.Logger;
@@ -281,4 +285,86 @@ public class TblSamlAssertionJpaController implements Serializable {
             em.close();
         }
     }
+
+    /**
+     * Used by AutoRefreshTrust to schedule each host's refresh from the time
+     * its latest SAML assertion was created, in one query for all hosts.
+     * 
+     * @return map of host name to the creation time of its latest SAML assertion, or null if the host has none
+     */
+    public Map<String,Date> findHostnamesWithLastSamlCreated() {
+        EntityManager em = getEntityManager();
+        try {
+            Query query = em.createNativeQuery("SELECT h.Name, MAX(t.created_ts) FROM mw_hosts as h LEFT JOIN mw_saml_assertion as t ON h.ID = t.host_id GROUP BY h.Name");
+            List<Object[]> results = query.getResultList();
+            HashMap<String,Date> map = new HashMap<>(results.size() * 2);
+            for(Object[] result : results) {
+                map.put((String)result[0], (Date)result[1]);
+            }
+            return map;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Used by the v2 trust summary to report the status of every host from
+     * its latest SAML assertion, in one query for all hosts. The latest
+     * assertion is the one with the highest ID, which is found with the
+     * (host_id, ID) index instead of comparing timestamps.
+     * 
+     * @return the trust status of each host in host UUID order
+     */
+    public List<HostTrustSummary> findLatestTrustSummaryOfEachHost() {
+        EntityManager em = getEntityManager();
+        try {
+            Query query = em.createNativeQuery("SELECT h.uuid_hex, h.Name, h.Location, m.Name, o.NAME, o.VERSION, "
+                    + "t.ID, t.bios_trust, t.vmm_trust, t.asset_tag_trust, t.error_code, t.error_message, t.created_ts, t.expiry_ts "
+                    + "FROM mw_hosts as h "
+                    + "LEFT JOIN mw_mle as m ON h.VMM_MLE_ID = m.ID "
+                    + "LEFT JOIN mw_os as o ON m.OS_ID = o.ID "
+                    + "LEFT JOIN (SELECT host_id, MAX(ID) as ID FROM mw_saml_assertion GROUP BY host_id) as latest ON h.ID = latest.host_id "
+                    + "LEFT JOIN mw_saml_assertion as t ON latest.ID = t.ID "
+                    + "ORDER BY h.uuid_hex");
+            List<Object[]> results = query.getResultList();
+            ArrayList<HostTrustSummary> list = new ArrayList<>(results.size());
+            for(Object[] result : results) {
+                HostTrustSummary host = new HostTrustSummary();
+                host.hostUuid = (String)result[0];
+                host.hostName = (String)result[1];
+                host.location = (String)result[2];
+                host.vmmName = (String)result[3];
+                host.osName = (String)result[4];
+                host.osVersion = (String)result[5];
+                if( result[6] != null ) {
+                    host.errorCode = (String)result[10];
+                    host.errorMessage = (String)result[11];
+                    host.created = (Date)result[12];
+                    host.expires = (Date)result[13];
+                    // a failed attestation is recorded as untrusted with an error code, but its status is unknown
+                    if( host.errorCode == null ) {
+                        host.bios = toBoolean(result[7]);
+                        host.vmm = toBoolean(result[8]);
+                        host.assetTag = toBoolean(result[9]);
+                        host.trusted = host.bios && host.vmm;
+                    }
+                }
+                list.add(host);
+            }
+            return list;
+        } finally {
+            em.close();
+        }
+    }
+
+    // mysql returns TINYINT(1) columns as Boolean or Integer depending on the driver configuration
+    private static Boolean toBoolean(Object value) {
+        if( value == null ) {
+            return null;
+        }
+        if( value instanceof Number ) {
+            return ((Number)value).intValue() != 0;
+        }
+        return (Boolean)value;
+    }
 }
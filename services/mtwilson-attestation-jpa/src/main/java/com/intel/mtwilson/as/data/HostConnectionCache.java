@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.data;
+
+import com.intel.mtwilson.datatypes.ConnectionString;
+import com.intel.mtwilson.datatypes.TxtHostRecord;
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The decrypted connection info and the parsed ConnectionString of each
+ * host, by host id. Every attestation loads a new TblHosts instance, which
+ * would otherwise decrypt the connection info and parse it again.
+ *
+ * An entry is used only while the host record still has the same
+ * ciphertext, name, address and port, so a record that was changed by
+ * another server is decrypted and parsed again. TblHostsJpaController
+ * removes the entry when the host is edited or deleted. Hosts that are not
+ * saved yet are not cached.
+ */
+public class HostConnectionCache {
+    private static final Logger log = LoggerFactory.getLogger(HostConnectionCache.class);
+    private static final int MAX_ENTRIES = 20000;
+    private static final Map<Integer,Entry> cache = Collections.synchronizedMap(new LinkedHashMap<Integer,Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer,Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+
+    private static class Entry {
+        private final String cipherText;
+        private final String plainText;
+        private final String name;
+        private final String ipAddress;
+        private final int port;
+        private final ConnectionString connectionString; // null until the connection info is parsed
+
+        public Entry(String cipherText, String plainText, String name, String ipAddress, int port, ConnectionString connectionString) {
+            this.cipherText = cipherText;
+            this.plainText = plainText;
+            this.name = name;
+            this.ipAddress = ipAddress;
+            this.port = port;
+            this.connectionString = connectionString;
+        }
+
+        private boolean isCurrent(TblHosts host) {
+            return cipherText.equals(host.getAddOnConnectionInfoCipherText()) && equals(name, host.getName()) && equals(ipAddress, host.getIPAddress()) && port == host.getPort();
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     *
+     * @param hostId
+     * @param cipherText the encrypted connection info from the host record
+     * @return the decrypted connection info, or null if it is not cached
+     */
+    static String getAddOnConnectionInfo(Integer hostId, String cipherText) {
+        if( hostId == null ) {
+            return null;
+        }
+        Entry entry = cache.get(hostId);
+        if( entry != null && entry.cipherText.equals(cipherText) ) {
+            return entry.plainText;
+        }
+        return null;
+    }
+
+    static void putAddOnConnectionInfo(TblHosts host, String cipherText, String plainText) {
+        if( host.getId() == null ) {
+            return;
+        }
+        cache.put(host.getId(), new Entry(cipherText, plainText, host.getName(), host.getIPAddress(), host.getPort(), null));
+    }
+
+    /**
+     *
+     * @param host
+     * @return the parsed connection info of the host
+     * @throws MalformedURLException if the connection info cannot be parsed
+     */
+    public static ConnectionString getConnectionString(TblHosts host) throws MalformedURLException {
+        if( host.getId() != null && host.getAddOnConnectionInfoCipherText() != null ) {
+            Entry entry = cache.get(host.getId());
+            if( entry != null && entry.connectionString != null && entry.isCurrent(host) ) {
+                hits.incrementAndGet();
+                return entry.connectionString;
+            }
+            misses.incrementAndGet();
+        }
+        TxtHostRecord txtHostRecord = new TxtHostRecord();
+        txtHostRecord.AddOn_Connection_String = host.getAddOnConnectionInfo();
+        txtHostRecord.HostName = host.getName();
+        txtHostRecord.Port = host.getPort();
+        txtHostRecord.IPAddress = host.getIPAddress();
+        ConnectionString connectionString = ConnectionString.from(txtHostRecord);
+        if( host.getId() != null && host.getAddOnConnectionInfoCipherText() != null && connectionString != null ) {
+            cache.put(host.getId(), new Entry(host.getAddOnConnectionInfoCipherText(), txtHostRecord.AddOn_Connection_String, host.getName(), host.getIPAddress(), host.getPort(), connectionString));
+        }
+        return connectionString;
+    }
+
+    public static void invalidate(Integer hostId) {
+        if( hostId != null ) {
+            cache.remove(hostId);
+        }
+    }
+
+    public static void invalidateAll() {
+        cache.clear();
+        log.debug("Host connection cache cleared, hits {} misses {}", hits.get(), misses.get());
+    }
+}
@@ -221,9 +221,14 @@ public class TblHosts implements Serializable {
 
     public String getAddOnConnectionInfo() {
         if (addOnConnectionInfo_plainText == null && addOnConnectionInfo_cipherText != null) {
+            addOnConnectionInfo_plainText = HostConnectionCache.getAddOnConnectionInfo(id, addOnConnectionInfo_cipherText);
+            if (addOnConnectionInfo_plainText != null) {
+                return addOnConnectionInfo_plainText;
+            }
             try {
                 //log.info("TblHosts ASDataCipher ref = {}", ASDataCipher.cipher.hashCode());
                 addOnConnectionInfo_plainText = ASDataCipher.cipher.decryptString(addOnConnectionInfo_cipherText);
+                HostConnectionCache.putAddOnConnectionInfo(this, addOnConnectionInfo_cipherText, addOnConnectionInfo_plainText);
                 //log.info("TblHosts ASDataCipher plainText = {}", addOnConnectionInfo_plainText);
                 //log.info("TblHosts ASDataCipher cipherText = {}", addOnConnectionInfo_cipherText);
             } catch (Exception e) {
@@ -240,6 +245,10 @@ public class TblHosts implements Serializable {
         return addOnConnectionInfo_plainText;
     }
 
+    String getAddOnConnectionInfoCipherText() {
+        return addOnConnectionInfo_cipherText;
+    }
+
     public void setAddOnConnectionInfo(String addOnConnectionInfo) {
         this.addOnConnectionInfo_plainText = addOnConnectionInfo;
         if (addOnConnectionInfo == null) {
@@ -58,6 +58,8 @@ public class TblSamlAssertion implements Serializable {
     @Basic(optional = false)
     @Column(name = "vmm_trust")
     private boolean vmmTrust;
+    @Column(name = "asset_tag_trust")
+    private Boolean assetTagTrust;
     @Column(name = "error_code")
     private String errorCode;
     @Column(name = "error_message")
@@ -139,6 +141,18 @@ public class TblSamlAssertion implements Serializable {
         this.vmmTrust = vmmTrust;
     }
 
+    /**
+     *
+     * @return the asset tag trust, or null if the attestation was made before it was recorded
+     */
+    public Boolean getAssetTagTrust() {
+        return assetTagTrust;
+    }
+
+    public void setAssetTagTrust(Boolean assetTagTrust) {
+        this.assetTagTrust = assetTagTrust;
+    }
+
     public String getErrorCode() {
         return errorCode;
     }
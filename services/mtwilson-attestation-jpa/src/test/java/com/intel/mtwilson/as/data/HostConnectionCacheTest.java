@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.data;
+
+import com.intel.mtwilson.as.controller.TblHostsJpaController;
+import com.intel.mtwilson.datatypes.ConnectionString;
+import com.intel.mtwilson.util.ASDataCipher;
+import com.intel.mtwilson.util.DataCipher;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * The cached connection info and ConnectionString of a host are used only
+ * while the host record still matches them, and are dropped when the host
+ * is edited or deleted.
+ */
+public class HostConnectionCacheTest {
+    private DataCipher cipher;
+
+    @Before
+    public void setUp() {
+        cipher = ASDataCipher.cipher;
+        ASDataCipher.cipher = new PrefixCipher();
+        HostConnectionCache.invalidateAll();
+    }
+
+    @After
+    public void tearDown() {
+        ASDataCipher.cipher = cipher;
+        HostConnectionCache.invalidateAll();
+    }
+
+    private TblHosts createHost(Integer id, String name, String ipAddress, int port, String connectionInfo) {
+        TblHosts host = new TblHosts(id);
+        host.setName(name);
+        host.setIPAddress(ipAddress);
+        host.setPort(port);
+        host.setAddOnConnectionInfo(connectionInfo);
+        return host;
+    }
+
+    private TblHosts createHost() {
+        return createHost(1, "host1", "10.1.1.1", 1443, "intel:https://10.1.1.1:1443");
+    }
+
+    @Test
+    public void testConnectionStringIsCached() throws Exception {
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(createHost());
+        assertSame(connectionString, HostConnectionCache.getConnectionString(createHost()));
+    }
+
+    @Test
+    public void testChangedConnectionInfoIsParsedAgain() throws Exception {
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(createHost());
+        ConnectionString changed = HostConnectionCache.getConnectionString(createHost(1, "host1", "10.1.1.1", 1443, "intel:https://10.1.1.2:1443"));
+        assertNotSame(connectionString, changed);
+        assertEquals("intel:https://10.1.1.2:1443", changed.getConnectionStringWithPrefix());
+    }
+
+    @Test
+    public void testChangedNameIsParsedAgain() throws Exception {
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(createHost());
+        assertNotSame(connectionString, HostConnectionCache.getConnectionString(createHost(1, "host2", "10.1.1.1", 1443, "intel:https://10.1.1.1:1443")));
+    }
+
+    @Test
+    public void testChangedAddressIsParsedAgain() throws Exception {
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(createHost());
+        assertNotSame(connectionString, HostConnectionCache.getConnectionString(createHost(1, "host1", "10.1.1.2", 1443, "intel:https://10.1.1.1:1443")));
+    }
+
+    @Test
+    public void testChangedPortIsParsedAgain() throws Exception {
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(createHost());
+        assertNotSame(connectionString, HostConnectionCache.getConnectionString(createHost(1, "host1", "10.1.1.1", 1444, "intel:https://10.1.1.1:1443")));
+    }
+
+    @Test
+    public void testUnsavedHostIsNotCached() throws Exception {
+        TblHosts host = createHost(null, "host1", "10.1.1.1", 1443, "intel:https://10.1.1.1:1443");
+        assertNotSame(HostConnectionCache.getConnectionString(host), HostConnectionCache.getConnectionString(host));
+    }
+
+    @Test
+    public void testDecryptedConnectionInfoNeedsSameCipherText() {
+        TblHosts host = createHost();
+        HostConnectionCache.putAddOnConnectionInfo(host, "cipher1", "plain1");
+        assertEquals("plain1", HostConnectionCache.getAddOnConnectionInfo(1, "cipher1"));
+        assertNull(HostConnectionCache.getAddOnConnectionInfo(1, "cipher2"));
+        assertNull(HostConnectionCache.getAddOnConnectionInfo(2, "cipher1"));
+        assertNull(HostConnectionCache.getAddOnConnectionInfo(null, "cipher1"));
+    }
+
+    @Test
+    public void testEditRemovesHost() throws Exception {
+        TblHosts host = createHost();
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(host);
+        new TblHostsJpaController(createEntityManagerFactory(host)).edit(host);
+        assertNotSame(connectionString, HostConnectionCache.getConnectionString(createHost()));
+    }
+
+    @Test
+    public void testDestroyRemovesHost() throws Exception {
+        TblHosts host = createHost();
+        ConnectionString connectionString = HostConnectionCache.getConnectionString(host);
+        new TblHostsJpaController(createEntityManagerFactory(host)).destroy(host.getId());
+        assertNotSame(connectionString, HostConnectionCache.getConnectionString(createHost()));
+    }
+
+    /**
+     * An entity manager factory whose entity managers find the given host
+     * and do nothing else.
+     */
+    private EntityManagerFactory createEntityManagerFactory(final TblHosts host) {
+        final EntityTransaction transaction = proxy(EntityTransaction.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return null;
+            }
+        });
+        final EntityManager entityManager = proxy(EntityManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getTransaction":
+                        return transaction;
+                    case "find":
+                    case "getReference":
+                        return host;
+                    case "merge":
+                        return args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+        return proxy(EntityManagerFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("createEntityManager")) {
+                    return entityManager;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static class PrefixCipher implements DataCipher {
+        @Override
+        public String encryptString(String plaintext) {
+            return "encrypted:" + plaintext;
+        }
+
+        @Override
+        public String decryptString(String ciphertext) {
+            return ciphertext.substring("encrypted:".length());
+        }
+    }
+}
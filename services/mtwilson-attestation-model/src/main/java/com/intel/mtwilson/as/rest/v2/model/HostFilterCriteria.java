@@ -23,4 +23,20 @@ public class HostFilterCriteria extends DefaultFilterCriteria implements FilterC
     public String nameContains;
     @QueryParam("descriptionContains")
     public String descriptionContains;
+    @QueryParam("nameStartsWith")
+    public String nameStartsWith; // uses the index on the host name, unlike nameContains
+    @QueryParam("descriptionStartsWith")
+    public String descriptionStartsWith;
+    /**
+     * The following apply to filter=false, nameStartsWith and
+     * descriptionStartsWith. Results are ordered by host id; to get the
+     * next page, set after to the id of the last host in the current page.
+     * Without a limit all matching hosts are returned.
+     */
+    @QueryParam("after")
+    public UUID after;
+    @QueryParam("limit")
+    public Integer limit;
+    @QueryParam("summary")
+    public boolean summary; // true to leave out the connection url and the aik certificate
 }
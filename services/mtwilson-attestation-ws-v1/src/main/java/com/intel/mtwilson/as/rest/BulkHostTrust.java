@@ -8,11 +8,15 @@ import com.intel.mtwilson.as.business.trust.BulkHostTrustBO;
 import com.intel.mtwilson.datatypes.BulkHostTrustResponse;
 import com.intel.mtwilson.datatypes.HostConfigResponse;
 import com.intel.mtwilson.datatypes.HostConfigResponseList;
+import com.intel.mtwilson.datatypes.HostTrust;
 import com.intel.dcsg.cpg.validation.ValidationUtil;
 import com.intel.mtwilson.datatypes.TxtHostRecord;
 import com.intel.mtwilson.datatypes.TxtHostRecordList;
 import com.intel.mtwilson.launcher.ws.ext.V1;
 import com.intel.mtwilson.model.Nonce;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -25,6 +29,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +48,7 @@ import org.slf4j.LoggerFactory;
 public class BulkHostTrust {
 
         private Logger log = LoggerFactory.getLogger(getClass());
+        private static final ObjectMapper mapper = new ObjectMapper();
 
         /**
          * REST Web Service Example: GET /hosts/trust?hosts=host_name_1
@@ -134,6 +140,82 @@ public class BulkHostTrust {
                 return bulkHostTrustBO.getBulkTrustJson(hostSet, forceVerify);
         }
 
+        /**
+         * Streaming variant of getTrustJson. The response is one JSON HostTrust
+         * object per line, written as soon as each host's trust status is
+         * available, so a slow host does not hold the results of the others.
+         * Each host has its own timeout; hosts that exceed it are cancelled and
+         * reported with an AS_ASYNC_TIMEOUT error. Hosts that have not completed
+         * when the deadline passes are reported the same way, even if they were
+         * still waiting for a thread. If the client disconnects the remaining
+         * hosts are cancelled.
+         *
+         * REST Web Service Example: GET /hosts/bulk/trust/stream?hosts=host_name_1
+         * ,host_name_2,host_name_3&force_verify=true
+         *
+         * @param hosts
+         * @param challengeHex
+         * @param forceVerify
+         * @param timeout for each host, in seconds
+         * @param deadline for all hosts, in seconds; defaults to the timeout
+         * @return
+         */
+        @Path("/trust/stream")
+        @GET
+        @Produces({"application/x-json-stream"})
+        @RequiresPermissions("host_attestations:create,retrieve")        
+        public StreamingOutput getTrustJsonStream(
+                @QueryParam("hosts") String hosts,
+                @QueryParam("challenge") String challengeHex,
+                @QueryParam("force_verify") @DefaultValue("false") Boolean forceVerify,
+                @QueryParam("timeout") @DefaultValue("600") Integer timeout,
+                @QueryParam("deadline") Integer deadline) {
+
+                ValidationUtil.validate(hosts);
+                if (hosts == null || hosts.length() == 0) {
+                        throw new ASException(com.intel.mtwilson.i18n.ErrorCode.AS_MISSING_INPUT,
+                                "hosts");
+                }
+
+                final Set<String> hostSet = new HashSet<>();
+                for(String host : Arrays.asList(hosts.split(","))) {
+                    if( !host.trim().isEmpty() ) {
+                        hostSet.add(host.trim());
+                    }
+                }
+                final Nonce challenge;
+                if( challengeHex == null || challengeHex.isEmpty() ) {
+                    challenge = null;
+                }
+                else {
+                    if( !Digest.sha1().isValidHex(challengeHex) ) {
+                        throw new ASException(com.intel.mtwilson.i18n.ErrorCode.AS_INVALID_INPUT, "challenge");
+                    }
+                    challenge = new Nonce(Digest.sha1().valueHex(challengeHex).getBytes());
+                }
+                final boolean force = forceVerify;
+                final BulkHostTrustBO bulkHostTrustBO = new BulkHostTrustBO(timeout, deadline == null ? timeout : deadline);
+                return new StreamingOutput() {
+                    @Override
+                    public void write(final OutputStream out) throws IOException {
+                        try {
+                            bulkHostTrustBO.streamBulkTrustJson(hostSet, force, challenge, new BulkHostTrustBO.BulkHostTrustListener<HostTrust>() {
+                                @Override
+                                public void result(HostTrust result) throws IOException {
+                                    out.write(mapper.writeValueAsBytes(result));
+                                    out.write('\n');
+                                    out.flush();
+                                }
+                            });
+                        }
+                        catch(InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while waiting for trust status", e);
+                        }
+                    }
+                };
+        }
+
         /**
          * This function support bulk host registration.
          *
@@ -47,12 +47,7 @@ public class HostRepository implements DocumentRepository<Host,HostCollection,Ho
         try {
             TblHostsJpaController jpaController = My.jpa().mwHosts();
             if (criteria.filter == false) {
-                List<TblHosts> objList = jpaController.findTblHostsEntities();
-                if (objList != null && !objList.isEmpty()) {
-                    for(TblHosts obj : objList) {
-                        objCollection.getHosts().add(convert(obj));
-                    }
-                }                
+                addHostsPage(objCollection, jpaController, null, null, criteria);
             } else if (criteria.id != null) {
                 TblHosts obj = jpaController.findHostByUuid(criteria.id.toString());
                 if (obj != null) {
@@ -63,6 +58,10 @@ public class HostRepository implements DocumentRepository<Host,HostCollection,Ho
                 if (obj != null) {
                     objCollection.getHosts().add(convert(obj));
                 }
+            } else if (criteria.nameStartsWith != null && !criteria.nameStartsWith.isEmpty()) {
+                addHostsPage(objCollection, jpaController, criteria.nameStartsWith, null, criteria);
+            } else if (criteria.descriptionStartsWith != null && !criteria.descriptionStartsWith.isEmpty()) {
+                addHostsPage(objCollection, jpaController, null, criteria.descriptionStartsWith, criteria);
             } else if (criteria.nameContains != null && !criteria.nameContains.isEmpty()) {
                 List<TblHosts> objList = jpaController.findHostsByNameSearchCriteria(criteria.nameContains);
                 if (objList != null && !objList.isEmpty()) {
@@ -78,6 +77,8 @@ public class HostRepository implements DocumentRepository<Host,HostCollection,Ho
                     }
                 }                
             }
+        } catch (RepositoryException re) {
+            throw re;
         } catch (Exception ex) {
             log.error("Host:Search - Error during search for hosts.", ex);
             throw new RepositorySearchException(ex, criteria);
@@ -85,6 +86,19 @@ public class HostRepository implements DocumentRepository<Host,HostCollection,Ho
         log.debug("Host:Search - Returning back {} of results.", objCollection.getHosts().size());                
         return objCollection;
     }
+    
+    private void addHostsPage(HostCollection objCollection, TblHostsJpaController jpaController, String namePrefix, String descriptionPrefix, HostFilterCriteria criteria) {
+        if (criteria.limit != null && criteria.limit <= 0) {
+            log.error("Host:Search - Invalid limit {}.", criteria.limit);
+            throw new RepositoryInvalidInputException();
+        }
+        List<TblHosts> objList = jpaController.findHostsPage(namePrefix, descriptionPrefix,
+                criteria.after == null ? null : criteria.after.toString(),
+                criteria.limit == null ? 0 : criteria.limit, criteria.summary);
+        for(TblHosts obj : objList) {
+            objCollection.getHosts().add(convert(obj));
+        }
+    }
 
     @Override
     @RequiresPermissions("hosts:retrieve")    
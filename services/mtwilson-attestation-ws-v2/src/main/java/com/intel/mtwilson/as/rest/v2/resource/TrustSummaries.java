@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.resource;
+
+import com.intel.dcsg.cpg.io.UUID;
+import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.as.business.trust.TrustSummaryBO;
+import com.intel.mtwilson.datatypes.TrustSummary;
+import com.intel.mtwilson.i18n.ErrorCode;
+import com.intel.mtwilson.launcher.ws.ext.V2;
+import com.intel.mtwilson.repository.RepositoryInvalidInputException;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+/**
+ * The trust status of all hosts, computed on the server from the latest
+ * attestation of each host, so that dashboards do not need to retrieve
+ * and verify the SAML assertion of every host.
+ */
+@V2
+@Path("/trust-summary")
+public class TrustSummaries {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustSummaries.class);
+
+    /**
+     * Returns the number of hosts in each trust state and one page of hosts.
+     * The summary may be a few seconds old; see TrustSummaryBO.
+     *
+     * Sample request:
+     * GET https://server.com:8443/mtwilson/v2/trust-summary?limit=10
+     *
+     * Sample response:
+     * {"total":2,"bios":{"trusted":2,"untrusted":0,"unknown":0},"vmm":{"trusted":1,"untrusted":1,"unknown":0},
+     *  "asset_tag":{"trusted":0,"untrusted":0,"unknown":2},"trusted":{"trusted":1,"untrusted":1,"unknown":0},
+     *  "hosts":[{"host_uuid":"2b0ef0e4-0e1c-4ff2-a1b5-76b33e35d0a6","host_name":"192.168.0.2","location":null,
+     *  "os_name":"RHEL","os_version":"6.4","vmm_name":"QEMU","bios":true,"vmm":true,"asset_tag":null,"trusted":true,
+     *  "error_code":null,"error_message":null,"created":1476784800000,"expires":1476788400000},...],
+     *  "next":null,"created":1476784805000}
+     *
+     * @param limit the maximum number of hosts to return, or omit for all of them
+     * @param offset the number of hosts to skip, or omit
+     * @param after the next value of the previous page, or omit for the first page
+     * @return the trust summary
+     * @mtwRequiresPermissions host_attestations:search
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @RequiresPermissions("host_attestations:search")
+    public TrustSummary getTrustSummary(@QueryParam("limit") Integer limit, @QueryParam("offset") Integer offset, @QueryParam("after") String after) {
+        if (after != null && !after.isEmpty() && !UUID.isValid(after)) {
+            log.error("Invalid host uuid {} for the after parameter.", after);
+            throw new RepositoryInvalidInputException();
+        }
+        try {
+            TrustSummary summary = new TrustSummaryBO().getTrustSummary(limit, offset, after);
+            log.debug("Returning trust summary of {} hosts with {} on this page", summary.total, summary.hosts.size());
+            return summary;
+        } catch (Exception ex) {
+            log.error("Error during retrieval of the trust summary.", ex);
+            throw new ASException(ErrorCode.AS_HOST_TRUST_ERROR, ex.getClass().getSimpleName());
+        }
+    }
+}
@@ -15,23 +15,19 @@ import com.intel.mtwilson.api.ApiException;
 import com.intel.mtwilson.api.ApiResponse;
 import com.intel.mtwilson.as.data.MwAssetTagCertificate;
 import com.intel.mtwilson.as.data.TblHosts;
-import com.intel.dcsg.cpg.x509.X509Util;
 import com.intel.mtwilson.datatypes.AssetTagCertAssociateRequest;
 import com.intel.mtwilson.datatypes.AssetTagCertCreateRequest;
 import com.intel.mtwilson.datatypes.AssetTagCertRevokeRequest;
 import com.intel.mtwilson.i18n.ErrorCode;
 import com.intel.mtwilson.security.http.apache.ApacheBasicHttpAuthorization;
 import com.intel.dcsg.cpg.tls.policy.impl.InsecureTlsPolicy;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.cert.X509Certificate;
 import java.util.List;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.commons.io.IOUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intel.dcsg.cpg.crypto.CryptographyException;
 import java.security.cert.CertificateException;
@@ -97,6 +93,7 @@ public class AssetTagCertBO {
 
             log.debug("assetTag writing cert to DB");
             My.jpa().mwAssetTagCertificate().create(atagCert);
+            AssetTagCertCache.invalidateAll();
             
             result = true;
             
@@ -216,6 +213,7 @@ public class AssetTagCertBO {
 
                     atagCert.setPCREvent(expectedHash.toByteArray());
                     My.jpa().mwAssetTagCertificate().edit(atagCert);
+                    AssetTagCertCache.invalidateAll();
                     
                     result = true;
                 }
@@ -262,6 +260,7 @@ public class AssetTagCertBO {
                         // if (validateAssetTagCert(atagTempCert)) {
                         atagTempCert.setHostID(null);
                         My.jpa().mwAssetTagCertificate().edit(atagTempCert);
+                        AssetTagCertCache.invalidateAll();
                         log.debug("Successfully upmapped the host with id {} from the asset tag certificate.", atagObj.getHostID());
                         return true;
                         //}
@@ -312,6 +311,7 @@ public class AssetTagCertBO {
                 MwAssetTagCertificate atagCert = atagCerts.get(0);
                 atagCert.setRevoked(true);
                 My.jpa().mwAssetTagCertificate().edit(atagCert);
+                AssetTagCertCache.invalidateAll();
                 result = true;
             }
         } catch (ASException ase) {
@@ -330,6 +330,18 @@ public class AssetTagCertBO {
      * @return 
      */
     public MwAssetTagCertificate findValidAssetTagCertForHost(String uuid){
+        AssetTagCertCache.ValidAssetTagCert atagCert = findValidAssetTagForHost(uuid);
+        return atagCert == null ? null : atagCert.getRecord();
+    }
+
+    /**
+     * Finds a valid asset tag certificate for the specified host and returns it
+     * together with the parsed attribute certificate. The result is cached, see
+     * AssetTagCertCache.
+     * @param uuid hardware UUID of the host
+     * @return the valid certificate, or null if the host does not have one
+     */
+    public AssetTagCertCache.ValidAssetTagCert findValidAssetTagForHost(String uuid){
         uuid = uuid.replace("\n", "");
 
         try {
@@ -338,21 +350,27 @@ public class AssetTagCertBO {
             // The below query has been modified to return back the results ordered by the insert date with the latest one first
             // So if the host has been provisioned multiple times, we will pick up the latest one.
             if (uuid != null && !uuid.isEmpty()) {
+                String key = AssetTagCertCache.hardwareUuidKey(uuid);
+                AssetTagCertCache.ValidAssetTagCert cached = AssetTagCertCache.get(key);
+                if (cached != null) {
+                    return cached == AssetTagCertCache.NONE ? null : cached;
+                }
+                long generation = AssetTagCertCache.generation();
+                AssetTagCertCache.ValidAssetTagCert found = AssetTagCertCache.NONE;
                 List<MwAssetTagCertificate> atagCerts = My.jpa().mwAssetTagCertificate().findAssetTagCertificatesByHostUUID(uuid.toLowerCase());
                 if (atagCerts.isEmpty()) {
                     log.info("Asset tag certificate has not been provisioned for the host with UUID : {}.", uuid);
-                    return null;
                 } else {
                     // For each of the asset tag certs that are returned back, we need to validate the certificate first.
-                    for (MwAssetTagCertificate atagTempCert : atagCerts){
-                        if (validateAssetTagCert(atagTempCert)) {
-                            log.debug("Valid asset tag certificate found for host with UUID {}.", uuid);
-                            return atagTempCert;
-                        }
+                    found = findValidAssetTagCert(atagCerts);
+                    if (found != AssetTagCertCache.NONE) {
+                        log.debug("Valid asset tag certificate found for host with UUID {}.", uuid);
+                    } else {
+                        log.info("No valid asset tag certificate found for host with UUID {}.", uuid);
                     }
-                    log.info("No valid asset tag certificate found for host with UUID {}.", uuid);
-                    return null;
                 }
+                AssetTagCertCache.put(key, found, generation, getCacheMaxAgeMillis());
+                return found == AssetTagCertCache.NONE ? null : found;
             } else {
                 log.error("UUID specified for the host is not valid.");
                 throw new ASException(ErrorCode.AS_HOST_NOT_FOUND);
@@ -367,27 +385,46 @@ public class AssetTagCertBO {
     }
     
     public MwAssetTagCertificate findValidAssetTagCertForHost(Integer hostID){
+        AssetTagCertCache.ValidAssetTagCert atagCert = findValidAssetTagForHost(hostID);
+        return atagCert == null ? null : atagCert.getRecord();
+    }
+
+    /**
+     * Finds a valid asset tag certificate for the specified host and returns it
+     * together with the parsed attribute certificate. The result is cached, see
+     * AssetTagCertCache.
+     * @param hostID
+     * @return the valid certificate, or null if the host does not have one
+     */
+    public AssetTagCertCache.ValidAssetTagCert findValidAssetTagForHost(Integer hostID){
         try {
             // Find the asset tag certificates for the specified UUID of the host. Note that this might return back multiple
             // values. We need to evaluate each of the certificates to make sure that they are valid
             // The below query has been modified to return back the results ordered by the insert date with the latest one first
             // So if the host has been provisioned multiple times, we will pick up the latest one.
             if (hostID != 0) {
+                String key = AssetTagCertCache.hostIdKey(hostID);
+                AssetTagCertCache.ValidAssetTagCert cached = AssetTagCertCache.get(key);
+                if (cached != null) {
+                    return cached == AssetTagCertCache.NONE ? null : cached;
+                }
+                long generation = AssetTagCertCache.generation();
+                AssetTagCertCache.ValidAssetTagCert found = AssetTagCertCache.NONE;
                 List<MwAssetTagCertificate> atagCerts = My.jpa().mwAssetTagCertificate().findAssetTagCertificatesByHostID(hostID);
                 if (atagCerts.isEmpty()) {
                     log.info("Asset tag certificate has not been provisioned for the host with ID : {}.", hostID);
-                    return null;
                 } else {
                     // For each of the asset tag certs that are returned back, we need to validate the certificate first.
                     // Ideally there should be only one that is valid.
-                    for (MwAssetTagCertificate atagTempCert : atagCerts){
-                        if (validateAssetTagCert(atagTempCert)) {
-                            log.debug("Valid asset tag certificate found for host with ID {}.", hostID);
-                            return atagTempCert;
-                        }
+                    found = findValidAssetTagCert(atagCerts);
+                    if (found != AssetTagCertCache.NONE) {
+                        log.debug("Valid asset tag certificate found for host with ID {}.", hostID);
+                    } else {
+                        log.info("No valid asset tag certificate found for host with ID {}.", hostID);
                     }
-                    log.info("No valid asset tag certificate found for host with ID {}.", hostID);
                 }
+                AssetTagCertCache.put(key, found, generation, getCacheMaxAgeMillis());
+                return found == AssetTagCertCache.NONE ? null : found;
             } else {
                 log.error("ID specified for the host is not valid.");
                 throw new ASException(ErrorCode.AS_HOST_NOT_FOUND);
@@ -399,23 +436,38 @@ public class AssetTagCertBO {
             log.error("Unexpected error during querying of valid asset tag certificate using host ID. Error Details - {}.", ex.getMessage());
             throw new ASException(ex);
         }
-        
-        return null;
+    }
+
+    private long getCacheMaxAgeMillis() {
+        return My.configuration().getConfiguration().getLong("mtwilson.as.asset.tag.cache.seconds", 60) * 1000;
     }
 
     /**
-     * Validates the asset tag certificate and returns back true/false accordingly.
+     * 
+     * @param atagCerts ordered with the latest one first
+     * @return the first valid certificate, or NONE
+     */
+    private AssetTagCertCache.ValidAssetTagCert findValidAssetTagCert(List<MwAssetTagCertificate> atagCerts) {
+        for (MwAssetTagCertificate atagTempCert : atagCerts){
+            X509AttributeCertificate atagAttrCert = validateAssetTagCert(atagTempCert);
+            if (atagAttrCert != null) {
+                return new AssetTagCertCache.ValidAssetTagCert(atagTempCert, atagAttrCert);
+            }
+        }
+        return AssetTagCertCache.NONE;
+    }
+
+    /**
+     * Validates the asset tag certificate and returns back the parsed certificate if it is valid.
      * 
      * @param atagObj
-     * @return 
+     * @return the parsed certificate, or null if it is not valid
      */
-    private boolean validateAssetTagCert(MwAssetTagCertificate atagObj){
-        boolean isValid = false;
-        
+    private X509AttributeCertificate validateAssetTagCert(MwAssetTagCertificate atagObj){
         try {
             // First let us verify if the revoked flag is set
             if (atagObj.getRevoked() == true)
-                return false;
+                return null;
             
             // X509AttributeCertificate provides a helper function that validates both the dates and the signature.
             // For that we need to first get the CA certificate that signed the Attribute Certificate. We need to
@@ -423,10 +475,8 @@ public class AssetTagCertBO {
             X509AttributeCertificate atagAttrCertForHost = X509AttributeCertificate.valueOf(atagObj.getCertificate());
             
             List<X509Certificate> atagCaCerts = null;
-            try (InputStream atagCaIn = new FileInputStream(My.configuration().getAssetTagCaCertificateFile())) {
-                atagCaCerts = X509Util.decodePemCertificates(IOUtils.toString(atagCaIn));
-                //IOUtils.closeQuietly(atagCaIn);
-                log.debug("Added {} certificates from AssetTagCA.pem", atagCaCerts.size());
+            try {
+                atagCaCerts = AssetTagCertCache.getTagAuthorities();
             } catch(IOException | CertificateException ex) {
                 log.error("Error loading the Asset Tag pem file to extract the CA certificate(s).",ex);
             }
@@ -435,7 +485,7 @@ public class AssetTagCertBO {
             if (atagCaCerts != null ) {
                 for (X509Certificate atagCACert : atagCaCerts) {
                     if (atagAttrCertForHost.isValid(atagCACert))
-                        return true;
+                        return atagAttrCertForHost;
                 }
             }
             
@@ -443,7 +493,7 @@ public class AssetTagCertBO {
             throw new ASException (ex);
         }
                 
-        return isValid;        
+        return null;        
     }
     
     protected static final ObjectMapper mapper = new ObjectMapper();
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business;
+
+import com.intel.dcsg.cpg.x509.X509Util;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.data.MwAssetTagCertificate;
+import com.intel.mtwilson.tag.model.X509AttributeCertificate;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The valid asset tag certificate of each host, by host id and by hardware
+ * UUID, together with the parsed attribute certificate. One attestation
+ * looks up the tag certificate for the trust policy, for the trust report,
+ * and again for the SAML assertion, so keeping the result avoids repeating
+ * the query, the ASN.1 parsing, and the signature check each time.
+ *
+ * Hosts without a valid certificate are cached too, as NONE. AssetTagCertBO
+ * calls invalidateAll() whenever a certificate is imported, mapped, unmapped
+ * or revoked; a lookup that started before the invalidation is not cached.
+ * Entries also expire after a maximum age, to pick up changes made by
+ * another server, and never outlive the certificate itself.
+ *
+ * The tag CA certificates in AssetTagCA.pem are also kept here, and read
+ * again only when the file changes.
+ */
+public class AssetTagCertCache {
+    private static final Logger log = LoggerFactory.getLogger(AssetTagCertCache.class);
+    private static final ConcurrentHashMap<String,Entry> cache = new ConcurrentHashMap<>();
+    private static final AtomicLong generation = new AtomicLong(0);
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+    public static final ValidAssetTagCert NONE = new ValidAssetTagCert(null, null);
+    private static volatile TagAuthorities tagAuthorities = null;
+
+    public static class ValidAssetTagCert {
+        private final MwAssetTagCertificate record;
+        private final X509AttributeCertificate certificate;
+
+        public ValidAssetTagCert(MwAssetTagCertificate record, X509AttributeCertificate certificate) {
+            this.record = record;
+            this.certificate = certificate;
+        }
+
+        public MwAssetTagCertificate getRecord() {
+            return record;
+        }
+
+        public X509AttributeCertificate getCertificate() {
+            return certificate;
+        }
+    }
+
+    private static class Entry {
+        private final ValidAssetTagCert value;
+        private final long expires;
+
+        public Entry(ValidAssetTagCert value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private static class TagAuthorities {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final List<X509Certificate> certificates;
+
+        public TagAuthorities(String path, long lastModified, long length, List<X509Certificate> certificates) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.certificates = Collections.unmodifiableList(certificates);
+        }
+
+        private boolean isCurrent(File file) {
+            return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified() && length == file.length();
+        }
+    }
+
+    /**
+     *
+     * @return the certificates in the configured AssetTagCA.pem file
+     * @throws IOException
+     * @throws CertificateException
+     */
+    public static List<X509Certificate> getTagAuthorities() throws IOException, CertificateException {
+        File file = My.configuration().getAssetTagCaCertificateFile();
+        TagAuthorities current = tagAuthorities;
+        if( current != null && current.isCurrent(file) ) {
+            return current.certificates;
+        }
+        // read the file attributes before the content so a concurrent change is picked up by the next call
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try (FileInputStream in = new FileInputStream(file)) {
+            current = new TagAuthorities(file.getAbsolutePath(), lastModified, length, X509Util.decodePemCertificates(IOUtils.toString(in)));
+        }
+        log.debug("Loaded {} certificates from {}", current.certificates.size(), file.getAbsolutePath());
+        tagAuthorities = current;
+        return current.certificates;
+    }
+
+    public static String hostIdKey(Integer hostId) {
+        return "id:" + hostId;
+    }
+
+    public static String hardwareUuidKey(String hardwareUuid) {
+        return "uuid:" + hardwareUuid.toLowerCase();
+    }
+
+    /**
+     *
+     * @param key from hostIdKey or hardwareUuidKey
+     * @return the cached certificate, NONE if the host is known to have no valid certificate, or null if it is not cached
+     */
+    public static ValidAssetTagCert get(String key) {
+        Entry entry = cache.get(key);
+        if( entry == null ) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if( System.currentTimeMillis() >= entry.expires ) {
+            cache.remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Call before querying the database, and pass the result to put.
+     * @return the current generation
+     */
+    public static long generation() {
+        return generation.get();
+    }
+
+    /**
+     *
+     * @param key from hostIdKey or hardwareUuidKey
+     * @param value the certificate found, or NONE
+     * @param loadedGeneration the value of generation() before the certificate was loaded
+     * @param maxAgeMillis how long to keep the entry; 0 or less does not cache it
+     */
+    public static void put(String key, ValidAssetTagCert value, long loadedGeneration, long maxAgeMillis) {
+        if( maxAgeMillis <= 0 ) {
+            return;
+        }
+        long expires = System.currentTimeMillis() + maxAgeMillis;
+        if( value.getCertificate() != null && value.getCertificate().getNotAfter() != null ) {
+            expires = Math.min(expires, value.getCertificate().getNotAfter().getTime());
+        }
+        cache.put(key, new Entry(value, expires));
+        if( generation.get() != loadedGeneration ) {
+            // a certificate was changed while this one was loaded
+            cache.remove(key);
+        }
+    }
+
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+        log.debug("Asset tag certificate cache cleared, hits {} misses {}", hits.get(), misses.get());
+    }
+}
@@ -35,6 +35,7 @@ import com.intel.mtwilson.datatypes.*;
 import com.intel.mtwilson.model.*;
 import com.intel.mtwilson.model.PcrIndex;
 import com.intel.mtwilson.tls.policy.TlsPolicyChoice;
+import com.intel.mtwilson.tls.policy.factory.TlsPolicyFactory;
 import com.intel.mtwilson.tls.policy.factory.impl.TblHostsTlsPolicyFactory;
 import com.intel.mtwilson.tls.policy.jdbi.TlsPolicyDAO;
 import com.intel.mtwilson.tls.policy.jdbi.TlsPolicyJdbiFactory;
@@ -368,6 +369,7 @@ public class HostBO {
         try(TlsPolicyDAO tlsPolicyDao = TlsPolicyJdbiFactory.tlsPolicyDAO()) {
             tlsPolicyDao.deletePrivateTlsPolicyByHostId(target.getUuid_hex());
         }        
+        TlsPolicyFactory.invalidateCache();
     }
 
         private void setTlsPolicyFields(TblHosts target, TxtHost from) throws IOException {
@@ -436,6 +438,7 @@ public class HostBO {
                 }
             }
         }
+        TlsPolicyFactory.invalidateCache();
     }
 
         public HostResponse updateHost(TxtHost host, PcrManifest pcrManifest, HostAgent agent, String uuid) {
@@ -634,6 +637,9 @@ public class HostBO {
 
                         My.jpa().mwHosts().destroy(tblHosts.getId());
                         log.info("Deleted host: {}", hostName.toString());
+
+                        // log out of any session that was kept for the host
+                        new HostAgentFactory().removeHost(tblHosts);
                         
                         // Now that the host is deleted, we need to remove any asset tag certificate mapped to this host
                         unmapAssetTagCertFromHost(tblHosts.getId(), tblHosts.getName());
@@ -10,11 +10,17 @@ import com.intel.mtwilson.i18n.ErrorCode;
 import com.intel.mtwilson.datatypes.HostTrust;
 import com.intel.mtwilson.model.Nonce;
 import com.intel.mtwilson.threads.Attestation;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.StringUtils;
@@ -30,9 +36,25 @@ public class BulkHostTrustBO {
     private Logger log = LoggerFactory.getLogger(getClass());
 //    private HostTrustBO hostTrustBO = ASComponentFactory.getHostTrustBO(); 
     private int timeout;
+    private int deadline;
 
+    /**
+     * All hosts must complete within the timeout, as with invokeAll.
+     * 
+     * @param timeout in seconds
+     */
     public BulkHostTrustBO(int timeout) {
+        this(timeout, timeout);
+    }
+
+    /**
+     * 
+     * @param timeout for each host, in seconds from when its task starts
+     * @param deadline for all hosts, in seconds from when the tasks are submitted
+     */
+    public BulkHostTrustBO(int timeout, int deadline) {
         this.timeout = timeout;
+        this.deadline = deadline;
     }
 
     public String getBulkTrustSaml(Set<String> hosts, boolean forceVerify) {
@@ -42,29 +64,20 @@ public class BulkHostTrustBO {
     public String getBulkTrustSaml(Set<String> hosts, boolean forceVerify, Nonce challenge) {
         try {
             log.debug("getBulkTrustSaml started at {}", System.currentTimeMillis());
-            Set<HostQuoteSaml> tasks = new HashSet<>();
+            List<HostQuoteSaml> tasks = new ArrayList<>();
             for (String host : hosts) {
                 HostQuoteSaml task = new HostQuoteSaml(host, forceVerify, challenge);
                 tasks.add(task);
             }
             
-            log.debug("getBulkTrustSaml invokeAll with timeout: {} seconds", timeout);
-            Attestation.getExecutor().invokeAll(tasks, timeout, TimeUnit.SECONDS);
-            List<String> results = new ArrayList<>();
-            for (HostQuoteSaml task : tasks) {
-                // Bug:547 - Since the comment mentioned that the return value will not be used and the java.util.concurrent.TimeoutException was being thrown
-                // by the get statement, we are ignoring the exception and continuing.
-                if (task.getResult() == null) {
-                    log.debug("getBulkTrustSaml null for {}", task.hostname);
-                    results.add(task.getTimeoutResult());
-                } else if (task.isError()) {
-                    log.debug("getBulkTrustSaml error for {}", task.hostname);
-                    results.add(task.getResult()); // already an error response
-                } else {
-                    log.debug("getBulkTrustSaml result for {}", task.hostname);
-                    results.add(task.getResult());
+            log.debug("getBulkTrustSaml with timeout: {} seconds", timeout);
+            final List<String> results = new ArrayList<>();
+            collect(tasks, new BulkHostTrustListener<String>() {
+                @Override
+                public void result(String result) {
+                    results.add(result);
                 }
-            }
+            });
 
             String report = String.format("<Hosts>%s</Hosts>", StringUtils.join(results, ""));
             log.debug("getBulkTrustSaml finished at {}", System.currentTimeMillis());
@@ -84,69 +97,145 @@ public class BulkHostTrustBO {
 
     public BulkHostTrustResponse getBulkTrustJson(Set<String> hosts, boolean forceVerify, Nonce challenge) {
         try {
+            final BulkHostTrustResponse report = new BulkHostTrustResponse();
+            streamBulkTrustJson(hosts, forceVerify, challenge, new BulkHostTrustListener<HostTrust>() {
+                @Override
+                public void result(HostTrust result) {
+                    report.getHosts().add(result);
+                }
+            });
+            return report;
+        } catch (Exception ex) {
+            // throw new ASException(ex);
+            // Bug: 1038 - prevent leaks in error messages to client
+            log.error("Error during bulk host trust retrieval.", ex);
+            throw new ASException(ErrorCode.AS_BULK_HOST_TRUST_ERROR, ex.getClass().getSimpleName());
+        }
+    }
 
-            Set<HostQuoteJson> tasks = new HashSet<HostQuoteJson>();
-//            ExecutorService scheduler = Executors.newFixedThreadPool(maxThreads);
-            ArrayList<Future<?>> taskStatus = new ArrayList<Future<?>>();
+    /**
+     * Receives each host's result as soon as it is available. If the listener
+     * throws an exception, for example because the client disconnected, the
+     * remaining hosts are cancelled.
+     */
+    public static interface BulkHostTrustListener<T> {
+        void result(T result) throws IOException;
+    }
 
-            List<HostTrust> results = new ArrayList<HostTrust>();
+    /**
+     * Like getBulkTrustJson but each host's result is passed to the listener
+     * as soon as it completes instead of after all hosts have completed.
+     * 
+     * @param hosts
+     * @param forceVerify
+     * @param challenge may be null
+     * @param listener
+     * @throws IOException if the listener throws IOException
+     * @throws InterruptedException if the calling thread is interrupted; remaining hosts are cancelled
+     */
+    public void streamBulkTrustJson(Set<String> hosts, boolean forceVerify, Nonce challenge, BulkHostTrustListener<HostTrust> listener) throws IOException, InterruptedException {
+        List<HostQuoteJson> tasks = new ArrayList<>();
+        for (String host : hosts) {
+            tasks.add(new HostQuoteJson(host, forceVerify, challenge));
+        }
+        collect(tasks, listener);
+    }
 
-            for (String host : hosts) {
-                HostQuoteJson task = new HostQuoteJson(host, forceVerify, challenge);
-                tasks.add(task);
-                Future<?> status = Attestation.getExecutor().submit(task);
-                taskStatus.add(status);
+    /**
+     * Submits the tasks to the attestation thread pool and passes each result
+     * to the listener in order of completion. Each host has its own timeout,
+     * counted from when its task starts running, so hosts waiting for a
+     * thread are not timed out by slower hosts ahead of them. A task that
+     * exceeds the timeout is cancelled (interrupted) and reported with its
+     * timeout result. The deadline, counted from submission, bounds the whole
+     * call even when the attestation pool is saturated: when it passes, every
+     * remaining task, queued or running, is cancelled and reported with its
+     * timeout result. When this method returns, no task is left running.
+     */
+    private <T> void collect(List<? extends HostQuote<T>> tasks, BulkHostTrustListener<T> listener) throws IOException, InterruptedException {
+        CompletionService<T> completionService = new ExecutorCompletionService<>(Attestation.getExecutor());
+        HashMap<Future<T>, HostQuote<T>> pending = new HashMap<>();
+        long timeoutMillis = TimeUnit.MILLISECONDS.convert(timeout, TimeUnit.SECONDS);
+        long deadlineMillis = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(deadline, TimeUnit.SECONDS);
+        try {
+            for (HostQuote<T> task : tasks) {
+                pending.put(completionService.submit(task), task);
             }
-
-            for (Future<?> status : taskStatus) {
-                try {
-                    status.get(timeout, TimeUnit.SECONDS); // return value will always be null because we submitted "Runnable" tasks
-                } catch (Exception e) {
-                    log.error("Error while waiting for task to complete: {}", e);
+            while (!pending.isEmpty()) {
+                long now = System.currentTimeMillis();
+                if (now >= deadlineMillis) {
+                    log.debug("Cancelling trust status of {} hosts after the deadline of {} seconds", pending.size(), deadline);
+                    for (Map.Entry<Future<T>, HostQuote<T>> entry : pending.entrySet()) {
+                        entry.getKey().cancel(true);
+                    }
+                    ArrayList<HostQuote<T>> remaining = new ArrayList<>(pending.values());
+                    pending.clear();
+                    for (HostQuote<T> task : remaining) {
+                        listener.result(task.getTimeoutResult());
+                    }
+                    break;
                 }
-            }
-
-//            scheduler.shutdown();
-
-//            if( scheduler.awaitTermination(timeout, TimeUnit.SECONDS) ) {
-//                log.info("All tasks completed on time");
-//            }
-//            else {
-//                log.info("Timeout reached before all tasks completed"); // should set the error code ErrorCode.AS_ASYNC_TIMEOUT on the ones that timed out (no result available)
-//            }
-
-
-            for (HostQuoteJson task : tasks) {
-                if (task.getResult() == null) {
-                    results.add(task.getTimeoutResult());
-                } else if (task.isError()) {
-                    results.add(task.getResult()); // already in error format
-                } else {
-                    results.add(task.getResult());
+                long wait = Math.min(timeoutMillis, deadlineMillis - now);
+                Iterator<Map.Entry<Future<T>, HostQuote<T>>> it = pending.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Future<T>, HostQuote<T>> entry = it.next();
+                    long started = entry.getValue().getStarted();
+                    if (started == 0) {
+                        continue; // still waiting for a thread
+                    }
+                    long remaining = started + timeoutMillis - now;
+                    if (remaining <= 0) {
+                        log.debug("Cancelling trust status of {} after {} seconds", entry.getValue().getHostname(), timeout);
+                        entry.getKey().cancel(true);
+                        it.remove();
+                        listener.result(entry.getValue().getTimeoutResult());
+                    } else {
+                        wait = Math.min(wait, remaining);
+                    }
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                Future<T> done = completionService.poll(wait, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    continue;
+                }
+                HostQuote<T> task = pending.remove(done);
+                if (task == null) {
+                    continue; // cancelled above
+                }
+                try {
+                    T result = done.get();
+                    listener.result(result == null ? task.getTimeoutResult() : result);
+                } catch (ExecutionException e) {
+                    log.error("Error while getting trust status of {}", task.getHostname(), e);
+                    listener.result(task.getTimeoutResult());
                 }
             }
-
-            BulkHostTrustResponse report = new BulkHostTrustResponse();
-            for (HostTrust result : results) {
-                report.getHosts().add(result);
+        } finally {
+            for (Future<T> future : pending.keySet()) {
+                future.cancel(true);
             }
-
-            return report;
-        } catch (Exception ex) {
-            // throw new ASException(ex);
-            // Bug: 1038 - prevent leaks in error messages to client
-            log.error("Error during bulk host trust retrieval.", ex);
-            throw new ASException(ErrorCode.AS_BULK_HOST_TRUST_ERROR, ex.getClass().getSimpleName());
         }
     }
 
-    private class HostQuoteSaml implements Runnable, Callable<String> {
+    private static interface HostQuote<T> extends Callable<T> {
+        String getHostname();
+        /**
+         * @return the time the task started running, or 0 if it is still queued
+         */
+        long getStarted();
+        T getTimeoutResult();
+    }
+
+    private class HostQuoteSaml implements Runnable, HostQuote<String> {
 
         private String hostname = null; // example: "10.1.71.174"
         private boolean forceVerify;
         private String result = null;
         private boolean isError = false;
         private Nonce challenge = null;
+        private volatile long started = 0;
 
         public HostQuoteSaml(String hostname, boolean forceVerify, Nonce challenge) {
             this.hostname = hostname;
@@ -156,6 +245,7 @@ public class BulkHostTrustBO {
 
         @Override
         public void run() {
+            started = System.currentTimeMillis();
             if (isError()) {
                 return;
             } // avoid clobbering previous error
@@ -185,10 +275,17 @@ public class BulkHostTrustBO {
             return result;
         }
 
+        @Override
         public String getHostname() {
             return hostname;
         }
 
+        @Override
+        public long getStarted() {
+            return started;
+        }
+
+        @Override
         public String getTimeoutResult() {
             return String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", hostname, ErrorCode.AS_ASYNC_TIMEOUT.toString(), "Exceeded timeout of " + timeout + " seconds");
         }
@@ -196,17 +293,18 @@ public class BulkHostTrustBO {
         @Override
         public String call() throws Exception {
             run();
-            return null;
+            return result;
         }
     }
 
-    private class HostQuoteJson implements Runnable {
+    private class HostQuoteJson implements Runnable, HostQuote<HostTrust> {
 
         private String hostname = null; // example: "10.1.71.174"
         private boolean forceVerify;
         private HostTrust result = null;
         private boolean isError = false;
         private Nonce challenge = null;
+        private volatile long started = 0;
 
         public HostQuoteJson(String hostname, boolean forceVerify, Nonce challenge) {
             this.hostname = hostname;
@@ -216,6 +314,7 @@ public class BulkHostTrustBO {
 
         @Override
         public void run() {
+            started = System.currentTimeMillis();
             if (isError()) {
                 return;
             } // avoid clobbering previous error
@@ -243,12 +342,25 @@ public class BulkHostTrustBO {
             return result;
         }
 
+        @Override
         public String getHostname() {
             return hostname;
         }
 
+        @Override
+        public long getStarted() {
+            return started;
+        }
+
+        @Override
         public HostTrust getTimeoutResult() {
             return new HostTrust(ErrorCode.AS_ASYNC_TIMEOUT, "Exceeded timeout of " + timeout + " seconds", hostname, null, null);
         }
+
+        @Override
+        public HostTrust call() throws Exception {
+            run();
+            return result;
+        }
     }
 }
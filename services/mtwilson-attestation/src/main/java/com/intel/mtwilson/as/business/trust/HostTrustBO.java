@@ -9,12 +9,12 @@ import com.intel.mountwilson.as.common.ASException;
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.agent.*;
 import com.intel.mtwilson.as.business.AssetTagCertBO;
+import com.intel.mtwilson.as.business.AssetTagCertCache;
 import com.intel.mtwilson.as.business.HostBO;
 import com.intel.mtwilson.as.controller.TblLocationPcrJpaController;
 import com.intel.mtwilson.as.controller.TblMleJpaController;
 import com.intel.mtwilson.as.controller.TblModuleManifestLogJpaController;
 import com.intel.mtwilson.as.controller.TblTaLogJpaController;
-import com.intel.mtwilson.as.data.MwAssetTagCertificate;
 import com.intel.mtwilson.as.data.TblHosts;
 import com.intel.mtwilson.as.data.TblLocationPcr;
 import com.intel.mtwilson.as.data.TblMle;
@@ -32,9 +32,6 @@ import com.intel.mtwilson.datatypes.*;
 import com.intel.dcsg.cpg.io.FileResource;
 import com.intel.dcsg.cpg.io.Resource;
 import com.intel.dcsg.cpg.io.UUID;
-import com.intel.mtwilson.as.controller.exceptions.ASDataException;
-import com.intel.mtwilson.as.controller.exceptions.IllegalOrphanException;
-import com.intel.mtwilson.as.controller.exceptions.NonexistentEntityException;
 import com.intel.mtwilson.as.data.TblPcrManifest;
 import com.intel.mtwilson.as.rest.v2.model.HostAttestation;
 import com.intel.mtwilson.jaxrs2.provider.JacksonObjectMapperProvider;
@@ -738,8 +735,7 @@ public class HostTrustBO {
         trust.asset_tag = trustReport.isTrustedForMarker(TrustMarker.ASSET_TAG.name());
         
         Date today = new Date(System.currentTimeMillis()); // create the date here and pass it down, in order to ensure that all created records use the same timestamp
-        logOverallTrustStatus(tblHosts, trust, today);
-        logPcrTrustStatus(tblHosts, trustReport, today);
+        logTrustStatus(tblHosts, trust, trustReport, today);
         
 
         String userName = new AuditLogger().getAuditUserName();
@@ -763,8 +759,7 @@ public class HostTrustBO {
         trust.asset_tag = trustReport.isTrustedForMarker(TrustMarker.ASSET_TAG.name());
         
         Date today = new Date(System.currentTimeMillis()); // create the date here and pass it down, in order to ensure that all created records use the same timestamp
-        logOverallTrustStatus(tblHosts, trust, today);
-        logPcrTrustStatus(tblHosts, trustReport, today);
+        logTrustStatus(tblHosts, trust, trustReport, today);
         
     }
     
@@ -827,10 +822,10 @@ public class HostTrustBO {
             log.debug("Checking if there are any asset tag certificates mapped to host with ID : {}", tblHosts.getId());
             // Load the asset tag certificate only if it is associated and valid.
             AssetTagCertBO atagCertBO = new AssetTagCertBO();
-            MwAssetTagCertificate atagCertForHost = atagCertBO.findValidAssetTagCertForHost(tblHosts.getId());            
+            AssetTagCertCache.ValidAssetTagCert atagCertForHost = atagCertBO.findValidAssetTagForHost(tblHosts.getId());            
             if (atagCertForHost != null) {
-                log.debug("Asset tag certificate is associated to host {} with status {}.", tblHosts.getName(), atagCertForHost.getRevoked());
-                hostReport.tagCertificate = X509AttributeCertificate.valueOf(atagCertForHost.getCertificate());
+                log.debug("Asset tag certificate is associated to host {} with status {}.", tblHosts.getName(), atagCertForHost.getRecord().getRevoked());
+                hostReport.tagCertificate = atagCertForHost.getCertificate();
             }
             else {
                 log.debug("Asset tag certificate is either not associated or valid for host {}.", tblHosts.getName());
@@ -972,48 +967,58 @@ public class HostTrustBO {
 
     }
     * */
-    private void logOverallTrustStatus(TblHosts host, HostTrustStatus status, Date today) {
+    /**
+     * Collects the overall and per-PCR trust log records of this attestation
+     * and hands them to the TrustLogWriter to be written in one transaction.
+     * Records collected before an error (for example missing PCRs) are still
+     * written, the same as when each record was created immediately.
+     */
+    private void logTrustStatus(TblHosts host, HostTrustStatus status, TrustReport report, Date today) {
+        TrustLogBatch trustLog = new TrustLogBatch();
         try {
-            TblTaLog taLog = new TblTaLog();
-            taLog.setHostID(host.getId());
-            taLog.setMleId(0);
-            taLog.setTrustStatus(status.bios && status.vmm); 
-            taLog.setError(toString(status));
-            taLog.setManifestName(" ");
-            taLog.setManifestValue(" ");
-            taLog.setHost_uuid_hex(host.getUuid_hex());
-            taLog.setUuid_hex(new UUID().toString());
-            taLog.setUpdatedOn(today);
-
-            TblTaLogJpaController talog = My.jpa().mwTaLog();
-            
-            talog.create(taLog); // overall status
-    /*        
-            // bios
-            TblTaLog taLogBios = new TblTaLog();
-            taLogBios.setHostID(host.getId());
-            taLogBios.setMleId(host.getBiosMleId().getId());
-            taLogBios.setTrustStatus(status.bios); 
-            taLogBios.setError(toString(status));
-            taLogBios.setManifestName(" "); 
-            taLogBios.setManifestValue(" ");
-            taLogBios.setUpdatedOn(today);
-            talog.create(taLogBios);
-            
-            TblTaLog taLogVmm = new TblTaLog();
-            taLogVmm.setHostID(host.getId());
-            taLogVmm.setMleId(host.getVmmMleId().getId());
-            taLogVmm.setTrustStatus(status.vmm); 
-            taLogVmm.setError(toString(status));
-            taLogVmm.setManifestName(" ");
-            taLogVmm.setManifestValue(" ");
-            taLogVmm.setUpdatedOn(today);
-            talog.create(taLogVmm);
-            */
-        } catch (IOException ex) {
-            log.error("Error during logging of the overall trust status", ex);
-            throw new ASException(ErrorCode.SYSTEM_ERROR, ex.getClass().getSimpleName());
+            logOverallTrustStatus(host, status, today, trustLog);
+            logPcrTrustStatus(host, report, today, trustLog);
         }
+        finally {
+            TrustLogWriter.getInstance().submit(trustLog);
+        }
+    }
+    
+    private void logOverallTrustStatus(TblHosts host, HostTrustStatus status, Date today, TrustLogBatch trustLog) {
+        TblTaLog taLog = new TblTaLog();
+        taLog.setHostID(host.getId());
+        taLog.setMleId(0);
+        taLog.setTrustStatus(status.bios && status.vmm); 
+        taLog.setError(toString(status));
+        taLog.setManifestName(" ");
+        taLog.setManifestValue(" ");
+        taLog.setHost_uuid_hex(host.getUuid_hex());
+        taLog.setUuid_hex(new UUID().toString());
+        taLog.setUpdatedOn(today);
+
+        trustLog.create(taLog); // overall status
+    /*        
+        // bios
+        TblTaLog taLogBios = new TblTaLog();
+        taLogBios.setHostID(host.getId());
+        taLogBios.setMleId(host.getBiosMleId().getId());
+        taLogBios.setTrustStatus(status.bios); 
+        taLogBios.setError(toString(status));
+        taLogBios.setManifestName(" "); 
+        taLogBios.setManifestValue(" ");
+        taLogBios.setUpdatedOn(today);
+        talog.create(taLogBios);
+        
+        TblTaLog taLogVmm = new TblTaLog();
+        taLogVmm.setHostID(host.getId());
+        taLogVmm.setMleId(host.getVmmMleId().getId());
+        taLogVmm.setTrustStatus(status.vmm); 
+        taLogVmm.setError(toString(status));
+        taLogVmm.setManifestName(" ");
+        taLogVmm.setManifestValue(" ");
+        taLogVmm.setUpdatedOn(today);
+        talog.create(taLogVmm);
+        */
     }
     
     /**
@@ -1024,10 +1029,7 @@ public class HostTrustBO {
      * @param host
      * @param report 
      */
-    private void logPcrTrustStatus(TblHosts host, TrustReport report, Date today) {
-        try {
-            TblTaLogJpaController talogJpa = My.jpa().mwTaLog();
-            TblModuleManifestLogJpaController moduleLogJpa = My.jpa().mwModuleManifestLog();
+    private void logPcrTrustStatus(TblHosts host, TrustReport report, Date today, TrustLogBatch trustLog) {
             List<String> biosPcrList = Arrays.asList(host.getBiosMleId().getRequiredManifestList().split(","));
             List<String> vmmPcrList = Arrays.asList(host.getVmmMleId().getRequiredManifestList().split(","));
             List<RuleResult> results = report.getResults();
@@ -1191,7 +1193,7 @@ public class HostTrustBO {
                     if( vmmPcrList.contains(eventLogIntegrityRule.getPcrIndex().toString()) ) {
                         pcr.setMleId(host.getVmmMleId().getId());
                     }
-                    talogJpa.create(pcr);
+                    trustLog.create(pcr);
                     */
                 }
                 // in mtwilson-1.1, the mw_module_manifest_log table is used to record only when host module values do not match the whitelist
@@ -1226,26 +1228,13 @@ public class HostTrustBO {
                             }
                             
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Missing modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Missing modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.create(pcr);
                                 taLogMap.put(missingEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> missingEntries = missingEntriesFault.getMissingEntries();
@@ -1268,7 +1257,7 @@ public class HostTrustBO {
                                     event.setTaLogId(pcr);
                                     event.setValue( found == null ? "" : found.getValue().toString() ); // we don't know from our report what the "actual" value is since we only logged that an expected value was missing... so maybe there's a module with the same name and wrong value in the host report, which we don't know here... see comment above,  this probably needs to change.
                                     event.setWhitelistValue(m.getValue().toString());
-                                    moduleLogJpa.create(event);
+                                    trustLog.create(event);
                                 }
                             }
                         }
@@ -1300,26 +1289,13 @@ public class HostTrustBO {
                             PcrEventLogMissingExpectedEntries missingEntriesFault = (PcrEventLogMissingExpectedEntries)fault;
                             
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Missing modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Missing modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.create(pcr);
                                 taLogMap.put(missingEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> missingEntries = missingEntriesFault.getMissingEntries();
@@ -1348,24 +1324,20 @@ public class HostTrustBO {
                                         }
                                     }
                                     // does the host have a module with the same name but different value? if so, we should log it in TblModuleManifestLog... but from here we don't have access to the HostReport.
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, mInfo.get("ComponentName"));
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findByTaLogIdAndName(pcr, mInfo.get("ComponentName"));
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName(mInfo.get("ComponentName"));
                                         event.setTaLogId(pcr);
                                         event.setValue( found == null ? "" : found.getValue().toString() ); // we don't know from our report what the "actual" value is since we only logged that an expected value was missing... so maybe there's a module with the same name and wrong value in the host report, which we don't know here... see comment above,  this probably needs to change.
                                         event.setWhitelistValue(m.getValue().toString()); // since this is a additional module on the host, the white list would be null
-                                        moduleLogJpa.create(event);
+                                        trustLog.create(event);
                                     } else {
                                         if (findByTaLogIdAndName.getValue() == null || findByTaLogIdAndName.getValue().isEmpty())
                                             findByTaLogIdAndName.setValue(found == null ? "" : found.getValue().toString() );
                                         if (findByTaLogIdAndName.getWhitelistValue() == null || findByTaLogIdAndName.getWhitelistValue().isEmpty())
                                             findByTaLogIdAndName.setWhitelistValue(m.getValue().toString());
-                                        try {
-                                            moduleLogJpa.edit(findByTaLogIdAndName);
-                                        } catch (NonexistentEntityException | ASDataException ex) {
-                                            log.error("Exception while updating the module manifest log record.", ex);
-                                        }
+                                        // the record is in the trust log batch, which is written after all the rules are logged
                                     }
                                 }
                             }
@@ -1375,26 +1347,13 @@ public class HostTrustBO {
                             PcrEventLogContainsUnexpectedEntries unexpectedEntriesFault = (PcrEventLogContainsUnexpectedEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false);
                                 if (pcr.getError() == null || pcr.getError().isEmpty())
                                     pcr.setError("Additional modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + "Additional modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                } else {
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (Exception ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.create(pcr);
                                 taLogMap.put(unexpectedEntriesFault.getPcrIndex() + type, pcr);
 
                                 List<Measurement> unexpectedEntries = unexpectedEntriesFault.getUnexpectedEntries();
@@ -1423,24 +1382,20 @@ public class HostTrustBO {
                                         }
                                     }
                                     // does the host have a module with the same name but different value? if so, we should log it in TblModuleManifestLog... but from here we don't have access to the HostReport.
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, mInfo.get("ComponentName"));
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findByTaLogIdAndName(pcr, mInfo.get("ComponentName"));
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName(mInfo.get("FullComponentName"));
                                         event.setTaLogId(pcr);
                                         event.setValue( found == null ? "" : found.getValue().toString() ); // we don't know from our report what the "actual" value is since we only logged that an expected value was missing... so maybe there's a module with the same name and wrong value in the host report, which we don't know here... see comment above,  this probably needs to change.
                                         event.setWhitelistValue(""); // since this is a additional module on the host, the white list would be null
-                                        moduleLogJpa.create(event);
+                                        trustLog.create(event);
                                     } else {
                                         if (findByTaLogIdAndName.getValue() == null || findByTaLogIdAndName.getValue().isEmpty())
                                             findByTaLogIdAndName.setValue(found == null ? "" : found.getValue().toString() );
                                         if (findByTaLogIdAndName.getWhitelistValue() == null || findByTaLogIdAndName.getWhitelistValue().isEmpty())
                                             findByTaLogIdAndName.setWhitelistValue("");
-                                        try {
-                                            moduleLogJpa.edit(findByTaLogIdAndName);
-                                        } catch (NonexistentEntityException | ASDataException ex) {
-                                            log.error("Exception while updating the module manifest log record.", ex);
-                                        }
+                                        // the record is in the trust log batch, which is written after all the rules are logged
                                     }
                                 }
                             }
@@ -1478,27 +1433,13 @@ public class HostTrustBO {
                             XmlMeasurementLogValueMismatchEntries mismatchEntriesFault = (XmlMeasurementLogValueMismatchEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Mismatch of tbootxm modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Mismatch of tbootxm modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                    log.debug("TaTblLog ID created - {}", pcr.getId());
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID {} . {} - {}", pcr.getId(), pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.create(pcr);
                                 taLogMap.put(mismatchEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> mismatchEntries = mismatchEntriesFault.getMismatchEntries();
@@ -1510,14 +1451,14 @@ public class HostTrustBO {
                                         throw new ASException(ErrorCode.AS_MISSING_PCR_MANIFEST);
                                     }
 
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, m.getLabel());
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findByTaLogIdAndName(pcr, m.getLabel());
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName("tbootxm-" + m.getLabel());
                                         event.setTaLogId(pcr);
                                         event.setValue(mInfo.get("Actual_Value"));
                                         event.setWhitelistValue(m.getValue().toString());
-                                        moduleLogJpa.create(event);
+                                        trustLog.create(event);
                                     } 
                                 }
                             }
@@ -1527,27 +1468,13 @@ public class HostTrustBO {
                             XmlMeasurementLogMissingExpectedEntries missingEntriesFault = (XmlMeasurementLogMissingExpectedEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Missing tbootxm modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Missing tbootxm modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                    log.debug("TaTblLog ID created - {}", pcr.getId());
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID {} . {} - {}", pcr.getId(), pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.create(pcr);
                                 taLogMap.put(missingEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> missingEntries = missingEntriesFault.getMissingEntries();
@@ -1558,14 +1485,14 @@ public class HostTrustBO {
                                         throw new ASException(ErrorCode.AS_MISSING_PCR_MANIFEST);
                                     }
 
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, m.getLabel());
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findByTaLogIdAndName(pcr, m.getLabel());
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName("tbootxm-" + m.getLabel());
                                         event.setTaLogId(pcr);
                                         event.setValue(""); // Since the module is missing, there is no current value.
                                         event.setWhitelistValue(m.getValue().toString());
-                                        moduleLogJpa.create(event);
+                                        trustLog.create(event);
                                     } 
                                 }
                             }
@@ -1575,27 +1502,13 @@ public class HostTrustBO {
                             XmlMeasurementLogContainsUnexpectedEntries unexpectedEntriesFault = (XmlMeasurementLogContainsUnexpectedEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Containing unexpected tbootxm modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Containing unexpected tbootxm modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                    log.debug("TaTblLog ID created - {}", pcr.getId());
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID {} . {} - {}", pcr.getId(), pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.create(pcr);
                                 taLogMap.put(unexpectedEntriesFault.getPcrIndex() + type, pcr);
 
                                 List<Measurement> unexpectedEntries = unexpectedEntriesFault.getUnexpectedEntries();
@@ -1606,14 +1519,14 @@ public class HostTrustBO {
                                         throw new ASException(ErrorCode.AS_MISSING_PCR_MANIFEST);
                                     }
 
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, m.getLabel());
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findByTaLogIdAndName(pcr, m.getLabel());
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName("tbootxm-" + m.getLabel());
                                         event.setTaLogId(pcr);
                                         event.setValue(m.getValue().toString()); 
                                         event.setWhitelistValue(""); // Since this is an unexpected module, there will not be any whitelist associated.
-                                        moduleLogJpa.create(event);
+                                        trustLog.create(event);
                                     } 
                                 }
                             }
@@ -1624,15 +1537,9 @@ public class HostTrustBO {
             }
             // now create all those mw_ta_log records (one per pcr)
             for(TblTaLog pcr : taLogMap.values()) {
-                if( pcr.getId() == null ) {
-                    log.debug("Creating new entry for {}.", pcr.getManifestName());
-                    talogJpa.create(pcr);
-                }
+                log.debug("Creating new entry for {}.", pcr.getManifestName());
+                trustLog.create(pcr);
             }
-        } catch (IOException ex) {
-            log.error("Error during logging of the PCR trust status", ex);
-            throw new ASException(ErrorCode.SYSTEM_ERROR, ex.getClass().getSimpleName());
-        }
     }
 
     private TblHosts getHostByName(Hostname hostName) throws IOException { // datatype.Hostname
@@ -1822,9 +1729,9 @@ public class HostTrustBO {
                 // by verifying in the asset tag certificate table. 
                 X509AttributeCertificate tagCertificate; 
                 AssetTagCertBO atagCertBO = new AssetTagCertBO();
-                MwAssetTagCertificate atagCertForHost = atagCertBO.findValidAssetTagCertForHost(tblHosts.getHardwareUuid());
+                AssetTagCertCache.ValidAssetTagCert atagCertForHost = atagCertBO.findValidAssetTagForHost(tblHosts.getHardwareUuid());
                 if (atagCertForHost != null) {
-                    tagCertificate = X509AttributeCertificate.valueOf(atagCertForHost.getCertificate());
+                    tagCertificate = atagCertForHost.getCertificate();
                 } else {
                     tagCertificate = null;
                 }
@@ -1920,10 +1827,12 @@ public class HostTrustBO {
             // by verifying in the asset tag certificate table. 
             X509AttributeCertificate tagCertificate; 
             AssetTagCertBO atagCertBO = new AssetTagCertBO();
-            MwAssetTagCertificate atagCertForHost = atagCertBO.findValidAssetTagCertForHost(tblSamlAssertion.getHostId().getId());
+            AssetTagCertCache.ValidAssetTagCert atagCertForHost = atagCertBO.findValidAssetTagForHost(tblSamlAssertion.getHostId().getId());
             if (atagCertForHost != null) {
                 log.debug("Host has been provisioned in the system with a TAG.");
-                tagCertificate = X509AttributeCertificate.valueOf(atagCertForHost.getCertificate());
+                tagCertificate = atagCertForHost.getCertificate();
+                // the assertion reports the asset tag only for a provisioned host, so only then is it recorded
+                tblSamlAssertion.setAssetTagTrust(host.isAssetTagTrusted());
             } else {
                 log.debug("Host has not been provisioned in the system with a TAG.");
                 tagCertificate = null;
@@ -1968,8 +1877,7 @@ public class HostTrustBO {
 
     private SamlGenerator getSamlGenerator() throws UnknownHostException, ConfigurationException, IOException, GeneralSecurityException {
 //        String issuer = conf.getString("saml.issuer", defaultIssuer);
-        SamlGenerator saml = new SamlGenerator(Attestation.getIssuerConfiguration());
-        return saml;
+        return Attestation.getSamlGenerator();
     }
     
     public String getTrustWithSamlByAik(Sha1Digest aik, boolean forceVerify) throws IOException {
@@ -2126,7 +2034,7 @@ public class HostTrustBO {
         HostTrustStatus hostTrustStatus = new HostTrustStatus();
         hostTrustStatus.bios = tblSamlAssertion.getBiosTrust();
         hostTrustStatus.vmm = tblSamlAssertion.getVmmTrust();
-        //hostTrustStatus.asset_tag = tblSamlAssertion.getAssetTagTrust();
+        hostTrustStatus.asset_tag = tblSamlAssertion.getAssetTagTrust() != null && tblSamlAssertion.getAssetTagTrust();
         hostAttestation.setHostTrustResponse(new HostTrustResponse(new Hostname(tblHosts.getName()), hostTrustStatus));
         return hostAttestation;
     }
@@ -2142,7 +2050,7 @@ public class HostTrustBO {
             if(forceVerify != true){
                 TblHosts tblHosts = getHostByName(new Hostname(host));
                 if(tblHosts != null){
-                    TblTaLog tblTaLog = My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId() , getCacheStaleAfter() );
+                    TblTaLog tblTaLog = getLatestTrustStatus(tblHosts, getCacheStaleAfter());
 
                     // Bug 849: We need to ensure that we add the host name to the response as well. Otherwise it will just contain BIOS and VMM status.
                     if(tblTaLog != null) {
@@ -2189,7 +2097,7 @@ public class HostTrustBO {
             if(forceVerify != true){
                 TblHosts tblHosts = getHostByName(new Hostname(host));
                 if(tblHosts != null){
-                    TblTaLog tblTaLog = My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId() , getCacheStaleAfter() );
+                    TblTaLog tblTaLog = getLatestTrustStatus(tblHosts, getCacheStaleAfter());
 
                     // Bug 849: We need to ensure that we add the host name to the response as well. Otherwise it will just contain BIOS and VMM status.
                     if(tblTaLog != null) {
@@ -2216,6 +2124,18 @@ public class HostTrustBO {
 
     }
     
+    /**
+     * The latest overall trust status record of the host, including one that
+     * the TrustLogWriter has not written to mw_ta_log yet.
+     */
+    private TblTaLog getLatestTrustStatus(TblHosts tblHosts, Date staleAfter) throws IOException {
+        TblTaLog tblTaLog = TrustLogWriter.getInstance().getPendingTrustStatus(tblHosts.getId());
+        if( tblTaLog != null && tblTaLog.getUpdatedOn().after(staleAfter) ) {
+            return tblTaLog;
+        }
+        return My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId(), staleAfter);
+    }
+
     private Date getCacheStaleAfter(){
         return new DateTime().minusSeconds(Attestation.getIssuerConfiguration().getValiditySeconds()).toDate();
     }
@@ -2533,10 +2453,12 @@ public class HostTrustBO {
             // by verifying in the asset tag certificate table. 
             X509AttributeCertificate tagCertificate; 
             AssetTagCertBO atagCertBO = new AssetTagCertBO();
-            MwAssetTagCertificate atagCertForHost = atagCertBO.findValidAssetTagCertForHost(tblSamlAssertion.getHostId().getId());
+            AssetTagCertCache.ValidAssetTagCert atagCertForHost = atagCertBO.findValidAssetTagForHost(tblSamlAssertion.getHostId().getId());
             if (atagCertForHost != null) {
                 log.debug("Host has been provisioned in the system with a TAG.");
-                tagCertificate = X509AttributeCertificate.valueOf(atagCertForHost.getCertificate());
+                tagCertificate = atagCertForHost.getCertificate();
+                // the assertion reports the asset tag only for a provisioned host, so only then is it recorded
+                tblSamlAssertion.setAssetTagTrust(host.isAssetTagTrusted());
             } else {
                 log.debug("Host has not been provisioned in the system with a TAG.");
                 tagCertificate = null;
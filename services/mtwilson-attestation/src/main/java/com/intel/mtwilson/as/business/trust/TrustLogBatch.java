@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.as.data.TblModuleManifestLog;
+import com.intel.mtwilson.as.data.TblTaLog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the mw_ta_log and mw_module_manifest_log records of one
+ * attestation so they can be written together by TrustLogWriter instead of
+ * one transaction per record.
+ *
+ * The records are not persisted until the batch is written, so they do not
+ * have an id yet; the methods here replace the lookups that HostTrustBO used
+ * to make in the database for records created during the same attestation.
+ * TblTaLog and TblModuleManifestLog compare equal when their ids are null,
+ * so records are tracked by identity.
+ */
+public class TrustLogBatch {
+    private final List<TblTaLog> taLogs = new ArrayList<>();
+    private final Set<TblTaLog> taLogSet = Collections.newSetFromMap(new IdentityHashMap<TblTaLog,Boolean>());
+    private final List<TblModuleManifestLog> moduleManifestLogs = new ArrayList<>();
+    private TblTaLog trustStatus = null;
+
+    /**
+     * Adds the record to the batch; adding the same record again has no effect.
+     * @param taLog
+     */
+    public void create(TblTaLog taLog) {
+        if( taLogSet.add(taLog) ) {
+            taLogs.add(taLog);
+            if( taLog.getMleId() == 0 && trustStatus == null ) {
+                trustStatus = taLog;
+            }
+        }
+    }
+
+    public void create(TblModuleManifestLog moduleManifestLog) {
+        moduleManifestLogs.add(moduleManifestLog);
+        TblTaLog taLog = moduleManifestLog.getTaLogId();
+        if( taLog != null ) {
+            if( taLog.getTblModuleManifestLogCollection() == null ) {
+                taLog.setTblModuleManifestLogCollection(new ArrayList<TblModuleManifestLog>());
+            }
+            taLog.getTblModuleManifestLogCollection().add(moduleManifestLog);
+        }
+    }
+
+    /**
+     *
+     * @param taLog
+     * @param name
+     * @return the module manifest log record with the given name created in this batch for the given ta log record, or null
+     */
+    public TblModuleManifestLog findByTaLogIdAndName(TblTaLog taLog, String name) {
+        for(TblModuleManifestLog moduleManifestLog : moduleManifestLogs) {
+            if( moduleManifestLog.getTaLogId() == taLog && name != null && name.equals(moduleManifestLog.getName()) ) {
+                return moduleManifestLog;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @return the overall trust status record (mle id 0) of this batch, or null
+     */
+    public TblTaLog getTrustStatus() {
+        return trustStatus;
+    }
+
+    public List<TblTaLog> getTaLogs() {
+        return taLogs;
+    }
+
+    public List<TblModuleManifestLog> getModuleManifestLogs() {
+        return moduleManifestLogs;
+    }
+
+    public boolean isEmpty() {
+        return taLogs.isEmpty() && moduleManifestLogs.isEmpty();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.data.TblModuleManifestLog;
+import com.intel.mtwilson.as.data.TblTaLog;
+import com.intel.mtwilson.i18n.ErrorCode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Write-behind stage for the trust log records of each attestation.
+ *
+ * A background thread takes the batches submitted by concurrent attestations
+ * and writes up to mtwilson.ta.log.batch.max of them in a single transaction
+ * (ASDataPU is configured with eclipselink.jdbc.batch-writing). If the queue
+ * of mtwilson.ta.log.queue.max batches is full, submit blocks until there is
+ * room, so a bulk refresh is slowed down instead of running out of memory.
+ *
+ * With mtwilson.ta.log.async=false each batch is written by the calling
+ * thread, still in a single transaction.
+ *
+ * HostTrustBO answers trust status requests from the latest mw_ta_log record
+ * of the host, so until a queued batch is written its overall trust status
+ * record is available from getPendingTrustStatus; the entry is removed when
+ * the write completes.
+ */
+public class TrustLogWriter implements Runnable {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustLogWriter.class);
+    private static TrustLogWriter instance = null;
+    private final BlockingQueue<TrustLogBatch> queue;
+    private final ConcurrentHashMap<Integer, TrustLogBatch> pending = new ConcurrentHashMap<>();
+    private final int maxBatches;
+    private final boolean async;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public TrustLogWriter(boolean async, int queueSize, int maxBatches) {
+        this.async = async;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.maxBatches = maxBatches;
+    }
+
+    public static synchronized TrustLogWriter getInstance() {
+        if( instance == null ) {
+            Configuration configuration = My.configuration().getConfiguration();
+            instance = new TrustLogWriter(configuration.getBoolean("mtwilson.ta.log.async", true), configuration.getInt("mtwilson.ta.log.queue.max", 1000), configuration.getInt("mtwilson.ta.log.batch.max", 50));
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Writes any queued batches and stops the background thread.
+     */
+    public static synchronized void shutdown() {
+        if( instance != null ) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    private void start() {
+        if( async ) {
+            thread = new Thread(this, "TrustLogWriter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void stop() {
+        running = false;
+        if( thread != null ) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS));
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ArrayList<TrustLogBatch> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if( !remaining.isEmpty() ) {
+            write(remaining);
+        }
+    }
+
+    public void submit(TrustLogBatch batch) {
+        if( batch.isEmpty() ) {
+            return;
+        }
+        if( !async || !running ) {
+            write(Collections.singletonList(batch));
+            return;
+        }
+        TblTaLog trustStatus = batch.getTrustStatus();
+        if( trustStatus != null ) {
+            pending.put(trustStatus.getHostID(), batch);
+        }
+        try {
+            queue.put(batch);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.debug("Interrupted while waiting to queue trust log, writing it directly");
+            write(Collections.singletonList(batch));
+        }
+    }
+
+    /**
+     *
+     * @param hostId
+     * @return the overall trust status record of the latest batch of the host that has not been written yet, or null
+     */
+    public TblTaLog getPendingTrustStatus(int hostId) {
+        TrustLogBatch batch = pending.get(hostId);
+        if( batch == null ) {
+            return null;
+        }
+        return batch.getTrustStatus();
+    }
+
+    @Override
+    public void run() {
+        ArrayList<TrustLogBatch> batches = new ArrayList<>(maxBatches);
+        while(running) {
+            try {
+                TrustLogBatch first = queue.take();
+                batches.add(first);
+                queue.drainTo(batches, maxBatches - 1);
+                write(batches);
+            }
+            catch(InterruptedException e) {
+                log.debug("TrustLogWriter interrupted");
+            }
+            catch(Exception e) {
+                log.error("Cannot write trust log", e);
+            }
+            finally {
+                batches.clear();
+            }
+        }
+    }
+
+    private void write(List<TrustLogBatch> batches) {
+        try {
+            writeBatches(batches);
+        }
+        finally {
+            // a newer batch of the same host may already be queued, keep that one
+            for(TrustLogBatch batch : batches) {
+                TblTaLog trustStatus = batch.getTrustStatus();
+                if( trustStatus != null ) {
+                    pending.remove(trustStatus.getHostID(), batch);
+                }
+            }
+        }
+    }
+
+    private void writeBatches(List<TrustLogBatch> batches) {
+        long start = System.currentTimeMillis();
+        try {
+            persist(batches);
+        }
+        catch(Exception e) {
+            if( batches.size() == 1 ) {
+                log.error("Cannot write trust log", e);
+                return;
+            }
+            // write each attestation separately so one bad record does not lose the others
+            log.debug("Cannot write {} trust logs in one transaction, writing them separately", batches.size(), e);
+            for(TrustLogBatch batch : batches) {
+                try {
+                    persist(Collections.singletonList(batch));
+                }
+                catch(Exception e1) {
+                    log.error("Cannot write trust log", e1);
+                }
+            }
+        }
+        log.trace("performance: wrote {} trust logs in {}ms", batches.size(), System.currentTimeMillis() - start);
+    }
+
+    private void persist(List<TrustLogBatch> batches) {
+        EntityManager em;
+        try {
+            em = My.persistenceManager().getASData().createEntityManager();
+        }
+        catch(Exception e) {
+            throw new ASException(e, ErrorCode.SYSTEM_ERROR, e.getClass().getSimpleName());
+        }
+        try {
+            em.getTransaction().begin();
+            for(TrustLogBatch batch : batches) {
+                // batches only contain new records; clear ids assigned by a previous transaction that was rolled back
+                for(TblTaLog taLog : batch.getTaLogs()) {
+                    taLog.setId(null);
+                }
+                for(TblModuleManifestLog moduleManifestLog : batch.getModuleManifestLogs()) {
+                    moduleManifestLog.setId(null);
+                }
+                for(TblTaLog taLog : batch.getTaLogs()) {
+                    if( taLog.getTblModuleManifestLogCollection() == null ) {
+                        taLog.setTblModuleManifestLogCollection(new ArrayList<TblModuleManifestLog>());
+                    }
+                    em.persist(taLog);
+                }
+                for(TblModuleManifestLog moduleManifestLog : batch.getModuleManifestLogs()) {
+                    em.persist(moduleManifestLog);
+                }
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            if( em.getTransaction().isActive() ) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
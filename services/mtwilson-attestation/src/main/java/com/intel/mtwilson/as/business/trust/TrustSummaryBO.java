@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.datatypes.HostTrustSummary;
+import com.intel.mtwilson.datatypes.TrustCount;
+import com.intel.mtwilson.datatypes.TrustSummary;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The trust status of all hosts for the v2 trust summary. Dashboards used to
+ * list the hosts, request the SAML assertion of each one and verify it just
+ * to show its status; the summary is computed here from the latest SAML
+ * assertion record of each host with one query.
+ *
+ * The result is kept for mtwilson.trust.summary.cache.seconds (default 5)
+ * so that dashboards refreshing at the same time, and the pages of one
+ * dashboard, share one query. Requests that arrive while the query is
+ * running wait for it instead of starting another. Set it to 0 to query
+ * the database for every request.
+ *
+ * Pages are taken from the same result, so a client can iterate with after,
+ * which is stable when hosts are added, or go directly to a page with
+ * offset, as the portal dashboard does.
+ */
+public class TrustSummaryBO {
+    private static final Logger log = LoggerFactory.getLogger(TrustSummaryBO.class);
+    private static final Object loading = new Object();
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+    private static volatile Snapshot snapshot = null;
+
+    static class Snapshot {
+        private final TrustSummary counts; // without hosts
+        private final List<HostTrustSummary> hosts;
+        private final long expires;
+
+        Snapshot(List<HostTrustSummary> hosts, Date created, long expires) {
+            ArrayList<HostTrustSummary> sorted = new ArrayList<>(hosts);
+            // the database collation might not order the UUIDs the way the after parameter is compared
+            Collections.sort(sorted, new Comparator<HostTrustSummary>() {
+                @Override
+                public int compare(HostTrustSummary o1, HostTrustSummary o2) {
+                    return String.valueOf(o1.hostUuid).compareTo(String.valueOf(o2.hostUuid));
+                }
+            });
+            this.hosts = Collections.unmodifiableList(sorted);
+            this.counts = new TrustSummary();
+            this.counts.created = created;
+            for (HostTrustSummary host : sorted) {
+                counts.total++;
+                // an expired assertion no longer tells whether the host is trusted
+                if (host.expires != null && host.expires.before(created)) {
+                    counts.bios.add(null);
+                    counts.vmm.add(null);
+                    counts.assetTag.add(null);
+                    counts.trusted.add(null);
+                    continue;
+                }
+                counts.bios.add(host.bios);
+                counts.vmm.add(host.vmm);
+                counts.assetTag.add(host.assetTag);
+                counts.trusted.add(host.trusted);
+            }
+            this.expires = expires;
+        }
+
+        /**
+         *
+         * @param limit the maximum number of hosts to return, or null for all of them
+         * @param offset the number of hosts to skip, or null
+         * @param after the UUID of the last host of the previous page, or null for the first page
+         * @return the counts and the requested page of hosts
+         */
+        TrustSummary page(Integer limit, Integer offset, String after) {
+            int start = 0;
+            if (after != null && !after.isEmpty()) {
+                while (start < hosts.size() && String.valueOf(hosts.get(start).hostUuid).compareTo(after) <= 0) {
+                    start++;
+                }
+            }
+            if (offset != null && offset > 0) {
+                start = (int) Math.min((long) start + offset, hosts.size());
+            }
+            int end = hosts.size();
+            if (limit != null && limit > 0 && limit < end - start) {
+                end = start + limit;
+            }
+            TrustSummary summary = new TrustSummary();
+            summary.total = counts.total;
+            summary.bios = new TrustCount(counts.bios);
+            summary.vmm = new TrustCount(counts.vmm);
+            summary.assetTag = new TrustCount(counts.assetTag);
+            summary.trusted = new TrustCount(counts.trusted);
+            summary.created = counts.created;
+            summary.hosts = new ArrayList<>(hosts.subList(start, end));
+            if (end < hosts.size() && end > start) {
+                summary.next = hosts.get(end - 1).hostUuid;
+            }
+            return summary;
+        }
+    }
+
+    /**
+     *
+     * @param limit the maximum number of hosts to return, or null for all of them
+     * @param offset the number of hosts to skip, or null
+     * @param after the UUID of the last host of the previous page, or null for the first page
+     * @return the trust status counts of all hosts, and the requested page of hosts
+     * @throws IOException if the configuration cannot be loaded
+     */
+    public TrustSummary getTrustSummary(Integer limit, Integer offset, String after) throws IOException {
+        return getSnapshot().page(limit, offset, after);
+    }
+
+    private Snapshot getSnapshot() throws IOException {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() < current.expires) {
+            hits.incrementAndGet();
+            return current;
+        }
+        synchronized (loading) {
+            current = snapshot;
+            if (current != null && System.currentTimeMillis() < current.expires) {
+                hits.incrementAndGet();
+                return current;
+            }
+            misses.incrementAndGet();
+            long maxAgeMillis = My.configuration().getConfiguration().getInt("mtwilson.trust.summary.cache.seconds", 5) * 1000L;
+            Date created = new Date();
+            List<HostTrustSummary> hosts = My.jpa().mwSamlAssertion().findLatestTrustSummaryOfEachHost();
+            current = new Snapshot(hosts, created, created.getTime() + maxAgeMillis);
+            snapshot = current;
+            log.debug("Trust summary of {} hosts loaded in {}ms, hits {} misses {}", hosts.size(), System.currentTimeMillis() - created.getTime(), hits.get(), misses.get());
+            return current;
+        }
+    }
+}
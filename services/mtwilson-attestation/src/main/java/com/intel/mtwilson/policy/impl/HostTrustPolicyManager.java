@@ -42,6 +42,7 @@ public class HostTrustPolicyManager {
     
     private EntityManagerFactory entityManagerFactory;
     private JpaPolicyReader reader;
+    private TrustPolicyCache trustPolicyCache = null; // null when mtwilson.policy.cache.enabled=false
 
     private Map<String,VendorHostTrustPolicyFactory> vendorFactoryMap = new HashMap<String,VendorHostTrustPolicyFactory>();
     //private Logger log = LoggerFactory.getLogger(getClass());
@@ -54,6 +55,9 @@ public class HostTrustPolicyManager {
         vendorFactoryMap.put("microsoft", new MicrosoftHostTrustPolicyFactory(reader));
         vendorFactoryMap.put("intel-da", new IntelTpmDaHostTrustPolicyFactory(reader));
         this.entityManagerFactory = entityManagerFactory;
+        if( My.configuration().getConfiguration().getBoolean("mtwilson.policy.cache.enabled", true) ) {
+            trustPolicyCache = new TrustPolicyCache(reader, My.configuration().getConfiguration().getLong("mtwilson.policy.cache.max.age.seconds", 3600) * 1000);
+        }
     }
     
     /**
@@ -104,19 +108,18 @@ public class HostTrustPolicyManager {
      * This method delegates to vendor-specific factories for the work of instantiating the Rules, but
      * it does organize the work into bios, vmm, and location and adds the host-specific module values.
      * 
+     * The bios and vmm rules are shared by all hosts with the same MLEs so they are kept in the
+     * TrustPolicyCache, and only the host-specific modules and asset tag are loaded for each host.
+     * 
      */
     public Policy loadTrustPolicyForHost(TblHosts host, String hostId) {
         VendorHostTrustPolicyFactory factory = getVendorHostTrustPolicyFactoryForHost(host);        
         HashSet<Rule> rules = new HashSet<>();
-        // only add bios policy if the host is linked with a bios mle
-        if( host.getBiosMleId() != null ) {
-            Bios bios = new Bios(host.getBiosMleId().getName(), host.getBiosMleId().getVersion(), host.getBiosMleId().getOemId().getName());
-            rules.addAll(factory.loadTrustRulesForBios(bios, host));
+        if( trustPolicyCache == null ) {
+            rules.addAll(TrustPolicyCache.loadTrustRulesForMlesWithoutCache(factory, host));
         }
-        // only add vmm policy if the host is linked with a vmm mle
-        if( host.getVmmMleId() != null ) {
-            Vmm vmm = new Vmm(host.getVmmMleId().getName(), host.getVmmMleId().getVersion(), host.getVmmMleId().getOsId().getName(), host.getVmmMleId().getOsId().getVersion());
-            rules.addAll(factory.loadTrustRulesForVmm(vmm,host));
+        else {
+            rules.addAll(trustPolicyCache.loadTrustRulesForMles(factory, host));
         }
          // only add location policy if the host is expected to be somewhere specific... otherwise, an empty location will result in a policy that can't be met
         //if( host.getLocation() != null && !host.getLocation().trim().isEmpty() ) {
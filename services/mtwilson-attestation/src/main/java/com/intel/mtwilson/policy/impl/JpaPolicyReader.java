@@ -7,6 +7,7 @@ package com.intel.mtwilson.policy.impl;
 import com.intel.dcsg.cpg.crypto.AbstractDigest;
 import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
 import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.as.business.AssetTagCertCache;
 import com.intel.mtwilson.as.controller.TblHostSpecificManifestJpaController;
 import com.intel.mtwilson.as.controller.TblLocationPcrJpaController;
 import com.intel.mtwilson.as.controller.TblMleJpaController;
@@ -25,8 +26,6 @@ import com.intel.mtwilson.model.Pcr;
 import com.intel.mtwilson.model.PcrEventLog;
 import com.intel.mtwilson.model.PcrIndex;
 import com.intel.dcsg.cpg.crypto.Sha1Digest;
-import com.intel.dcsg.cpg.x509.X509Util;
-import com.intel.mtwilson.My;
 import com.intel.mtwilson.as.controller.MwMeasurementXmlJpaController;
 import com.intel.mtwilson.as.data.MwMeasurementXml;
 import com.intel.mtwilson.model.MeasurementFactory;
@@ -44,7 +43,6 @@ import com.intel.mtwilson.policy.rule.PcrMatchesConstant;
 import com.intel.mtwilson.policy.rule.TagCertificateTrusted;
 import com.intel.mtwilson.policy.rule.XmlMeasurementLogEquals;
 import com.intel.mtwilson.policy.rule.XmlMeasurementLogIntegrity;
-import java.io.FileInputStream;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -54,7 +52,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import javax.persistence.EntityManagerFactory;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -185,9 +182,8 @@ public class JpaPolicyReader {
     public Set<Rule> loadPcrMatchesConstantRulesForAssetTag(MwAssetTagCertificate atagCert, TblHosts tblHosts) {
         HashSet<Rule> rules = new HashSet<Rule>();
         // load the tag cacerts and create the tag trust rule  
-        try(FileInputStream in = new FileInputStream(My.configuration().getAssetTagCaCertificateFile())) {
-            String text = IOUtils.toString(in);
-            List<X509Certificate> tagAuthorities = X509Util.decodePemCertificates(text);
+        try {
+            List<X509Certificate> tagAuthorities = AssetTagCertCache.getTagAuthorities();
             TagCertificateTrusted tagTrustedRule = new TagCertificateTrusted(tagAuthorities.toArray(new X509Certificate[0]));
             tagTrustedRule.setMarkers(TrustMarker.ASSET_TAG.name());
             rules.add(tagTrustedRule);
@@ -225,9 +221,8 @@ public class JpaPolicyReader {
     public Set<Rule> loadMatchesRulesForAssetTag(MwAssetTagCertificate atagCert, TblHosts tblHosts) {
         HashSet<Rule> rules = new HashSet<Rule>();
         // load the tag cacerts and create the tag trust rule  
-        try(FileInputStream in = new FileInputStream(My.configuration().getAssetTagCaCertificateFile())) {
-            String text = IOUtils.toString(in);
-            List<X509Certificate> tagAuthorities = X509Util.decodePemCertificates(text);
+        try {
+            List<X509Certificate> tagAuthorities = AssetTagCertCache.getTagAuthorities();
             TagCertificateTrusted tagTrustedRule = new TagCertificateTrusted(tagAuthorities.toArray(new X509Certificate[0]));
             tagTrustedRule.setMarkers(TrustMarker.ASSET_TAG.name());
             rules.add(tagTrustedRule);
@@ -277,8 +272,13 @@ public class JpaPolicyReader {
                             //new MeasurementSha1(new Sha1Digest(hostSpecificModule.getDigestValue()), moduleInfo.getComponentName(), info);
                     return m;
                 }
-            } else
+            } else {
+                // the trust policy cache loads rules without the host-specific modules, and adds them for each host
+                if( host instanceof TrustPolicyCache.TemplateHost ) {
+                    ((TrustPolicyCache.TemplateHost)host).addHostSpecificModule(moduleInfo);
+                }
                 return null;
+            }
         }
         else {
             info.put("PackageName", moduleInfo.getPackageName());
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy.impl;
+
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.mtwilson.as.controller.MleVersion;
+import com.intel.mtwilson.as.data.TblHosts;
+import com.intel.mtwilson.as.data.TblMle;
+import com.intel.mtwilson.as.data.TblModuleManifest;
+import com.intel.mtwilson.model.Bios;
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.PcrEventLog;
+import com.intel.mtwilson.model.PcrEventLogFactory;
+import com.intel.mtwilson.model.Vmm;
+import com.intel.mtwilson.policy.Rule;
+import com.intel.mtwilson.policy.rule.PcrEventLogEqualsExcluding;
+import com.intel.mtwilson.policy.rule.PcrEventLogIncludes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thousands of hosts typically share the same few BIOS and VMM MLEs, so
+ * instead of loading the same whitelist rules from the database for every
+ * attestation, this cache keeps the BIOS and VMM rules for each combination
+ * of vendor policy factory, BIOS MLE, VMM MLE, and PCR bank.
+ *
+ * The cached rules are loaded for a TemplateHost that has the host's MLEs
+ * but no id, so they do not include any host-specific modules. The template
+ * records which host-specific modules it skipped, and when rules are
+ * requested for a registered host its own values for those modules are
+ * merged into the event log rules for the same PCR. The result is the same
+ * set of rules the vendor factory would have loaded for that host.
+ *
+ * An entry is reloaded when the MleVersion of its BIOS or VMM MLE changes or
+ * when it is older than the maximum age, which covers changes that are not
+ * made through MleBO such as a new Privacy CA certificate.
+ */
+public class TrustPolicyCache {
+    private static final Logger log = LoggerFactory.getLogger(TrustPolicyCache.class);
+    private static final ConcurrentHashMap<String,Entry> cache = new ConcurrentHashMap<>();
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+    private final JpaPolicyReader reader;
+    private final long maxAgeMillis;
+
+    public TrustPolicyCache(JpaPolicyReader reader, long maxAgeMillis) {
+        this.reader = reader;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * A copy of a host with only the attributes the vendor factories use
+     * to load whitelist rules, and no id, so the rules loaded for it can be
+     * shared by all hosts with the same MLEs and PCR bank.
+     */
+    public static class TemplateHost extends TblHosts {
+        private final HashMap<String,List<TblModuleManifest>> hostSpecificModules = new HashMap<>();
+
+        public TemplateHost(TblHosts host) {
+            super();
+            setName(host.getName());
+            setPcrBank(host.getPcrBank());
+            setTpmVersion(host.getTpmVersion());
+            setBiosMleId(host.getBiosMleId());
+            setVmmMleId(host.getVmmMleId());
+        }
+
+        /**
+         * Called by JpaPolicyReader for each host-specific module it skips
+         * while loading rules for this template.
+         * @param moduleInfo
+         */
+        public void addHostSpecificModule(TblModuleManifest moduleInfo) {
+            String marker = getBiosMleId() != null && getBiosMleId().getId().equals(moduleInfo.getMleId().getId()) ? TrustMarker.BIOS.name() : TrustMarker.VMM.name();
+            String key = key(marker, Integer.valueOf(moduleInfo.getExtendedToPCR()));
+            List<TblModuleManifest> modules = hostSpecificModules.get(key);
+            if( modules == null ) {
+                modules = new ArrayList<>();
+                hostSpecificModules.put(key, modules);
+            }
+            modules.add(moduleInfo);
+        }
+    }
+
+    private static class Entry {
+        private final long biosVersion;
+        private final long vmmVersion;
+        private final long created;
+        private final Set<Rule> rules;
+        private final Map<String,List<TblModuleManifest>> hostSpecificModules;
+
+        public Entry(long biosVersion, long vmmVersion, Set<Rule> rules, Map<String,List<TblModuleManifest>> hostSpecificModules) {
+            this.biosVersion = biosVersion;
+            this.vmmVersion = vmmVersion;
+            this.created = System.currentTimeMillis();
+            this.rules = Collections.unmodifiableSet(rules);
+            this.hostSpecificModules = hostSpecificModules;
+        }
+    }
+
+    private static String key(String marker, int pcrIndex) {
+        return marker + ":" + pcrIndex;
+    }
+
+    private static Integer mleId(TblMle mle) {
+        return mle == null ? null : mle.getId();
+    }
+
+    /**
+     * Returns the BIOS and VMM trust rules for the host, including its
+     * host-specific modules, the same as calling loadTrustRulesForBios and
+     * loadTrustRulesForVmm on the factory.
+     *
+     * @param factory the vendor factory for the host
+     * @param host
+     * @return
+     */
+    public Set<Rule> loadTrustRulesForMles(VendorHostTrustPolicyFactory factory, TblHosts host) {
+        Integer biosMleId = mleId(host.getBiosMleId());
+        Integer vmmMleId = mleId(host.getVmmMleId());
+        String key = String.format("%s:%s:%s:%s", factory.getClass().getName(), biosMleId, vmmMleId, host.getPcrBank());
+        long biosVersion = MleVersion.get(biosMleId);
+        long vmmVersion = MleVersion.get(vmmMleId);
+        Entry entry = cache.get(key);
+        if( entry != null && entry.biosVersion == biosVersion && entry.vmmVersion == vmmVersion && System.currentTimeMillis() - entry.created <= maxAgeMillis ) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+            TemplateHost template = new TemplateHost(host);
+            entry = new Entry(biosVersion, vmmVersion, loadTrustRulesForMlesWithoutCache(factory, template), template.hostSpecificModules);
+            cache.put(key, entry);
+            log.debug("Loaded {} trust rules for {}", entry.rules.size(), key);
+        }
+        log.trace("performance: trust policy cache hits {} misses {}", hits.get(), misses.get());
+        return addHostSpecificModules(entry, host);
+    }
+
+    /**
+     * Loads the BIOS and VMM trust rules from the database without
+     * using the cache.
+     *
+     * @param factory
+     * @param host
+     * @return
+     */
+    public static Set<Rule> loadTrustRulesForMlesWithoutCache(VendorHostTrustPolicyFactory factory, TblHosts host) {
+        HashSet<Rule> rules = new HashSet<>();
+        // only add bios policy if the host is linked with a bios mle
+        if( host.getBiosMleId() != null ) {
+            Bios bios = new Bios(host.getBiosMleId().getName(), host.getBiosMleId().getVersion(), host.getBiosMleId().getOemId().getName());
+            rules.addAll(factory.loadTrustRulesForBios(bios, host));
+        }
+        // only add vmm policy if the host is linked with a vmm mle
+        if( host.getVmmMleId() != null ) {
+            Vmm vmm = new Vmm(host.getVmmMleId().getName(), host.getVmmMleId().getVersion(), host.getVmmMleId().getOsId().getName(), host.getVmmMleId().getOsId().getVersion());
+            rules.addAll(factory.loadTrustRulesForVmm(vmm,host));
+        }
+        return rules;
+    }
+
+    private Set<Rule> addHostSpecificModules(Entry entry, TblHosts host) {
+        // JpaPolicyReader also skips host-specific modules when the host is not registered yet
+        if( entry.hostSpecificModules.isEmpty() || host.getId() == null || host.getId() == 0 ) {
+            return entry.rules;
+        }
+        HashSet<Rule> rules = new HashSet<>();
+        for(Rule rule : entry.rules) {
+            if( rule instanceof PcrEventLogIncludes ) {
+                PcrEventLogIncludes eventLogIncludesRule = (PcrEventLogIncludes)rule;
+                List<Measurement> measurements = getHostSpecificMeasurements(entry, rule.getMarkers(), eventLogIncludesRule.getPcrIndex().toInteger(), host);
+                if( !measurements.isEmpty() ) {
+                    HashSet<Measurement> expected = new HashSet<>(eventLogIncludesRule.getExpected());
+                    expected.addAll(measurements);
+                    PcrEventLogIncludes hostRule = new PcrEventLogIncludes(DigestAlgorithm.valueOf(host.getPcrBank()), eventLogIncludesRule.getPcrIndex(), expected);
+                    hostRule.setMarkers(rule.getMarkers());
+                    rule = hostRule;
+                }
+            }
+            else if( rule instanceof PcrEventLogEqualsExcluding ) {
+                PcrEventLog pcrEventLog = ((PcrEventLogEqualsExcluding)rule).getPcrModuleManifest();
+                List<Measurement> measurements = getHostSpecificMeasurements(entry, rule.getMarkers(), pcrEventLog.getPcrIndex().toInteger(), host);
+                if( !measurements.isEmpty() ) {
+                    ArrayList<Measurement> expected = new ArrayList<>(pcrEventLog.getEventLog());
+                    expected.addAll(measurements);
+                    PcrEventLogEqualsExcluding hostRule = new PcrEventLogEqualsExcluding(PcrEventLogFactory.newInstance(pcrEventLog.getPcrBank(), pcrEventLog.getPcrIndex(), expected));
+                    hostRule.setMarkers(rule.getMarkers());
+                    rule = hostRule;
+                }
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private List<Measurement> getHostSpecificMeasurements(Entry entry, String[] markers, int pcrIndex, TblHosts host) {
+        ArrayList<Measurement> measurements = new ArrayList<>();
+        if( markers == null || markers.length == 0 ) {
+            return measurements;
+        }
+        List<TblModuleManifest> modules = entry.hostSpecificModules.get(key(markers[0], pcrIndex));
+        if( modules == null ) {
+            return measurements;
+        }
+        for(TblModuleManifest moduleInfo : modules) {
+            Measurement m = reader.createMeasurementFromTblModuleManifest(moduleInfo, host);
+            if( m != null ) {
+                measurements.add(m);
+            }
+        }
+        return measurements;
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+}
@@ -8,8 +8,10 @@ import com.intel.dcsg.cpg.configuration.CommonsConfiguration;
 import com.intel.mountwilson.as.common.ASConfig;
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.as.business.trust.HostTrustBO;
+import com.intel.mtwilson.as.business.trust.TrustLogWriter;
 import com.intel.mtwilson.saml.IssuerConfiguration;
 import com.intel.mtwilson.saml.SamlConfiguration;
+import com.intel.mtwilson.saml.SamlGenerator;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.GeneralSecurityException;
@@ -22,6 +24,7 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 import org.apache.commons.configuration.Configuration;
+import org.opensaml.xml.ConfigurationException;
 
 /**
  * Initializes the data encryption key and the SAML issuer configuration
@@ -34,6 +37,8 @@ public class Attestation implements ServletContextListener {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Attestation.class);
     private static ExecutorService executor;
+    private static volatile SamlGenerator samlGenerator;
+    private static ExecutorService samlExecutor;
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
@@ -84,6 +89,15 @@ public class Attestation implements ServletContextListener {
                 Thread.currentThread().interrupt();
             }
         }
+        synchronized (Attestation.class) {
+            if (samlExecutor != null) {
+                samlExecutor.shutdownNow();
+                samlExecutor = null;
+            }
+            samlGenerator = null;
+        }
+        // write trust logs of attestations that completed before shutdown
+        TrustLogWriter.shutdown();
     }
 
     public static ExecutorService getExecutor() {
@@ -94,6 +108,34 @@ public class Attestation implements ServletContextListener {
         return IssuerConfigurationHolder.samlIssuerConfiguration;
     }
 
+    /**
+     * SamlGenerator is thread-safe, so concurrent attestations share one
+     * instance instead of loading the signature provider for every assertion.
+     * With saml.parallel.threads greater than 0, multi-host assertions build
+     * their host statements on a pool of that many threads.
+     *
+     * @return the shared SAML generator
+     * @throws ConfigurationException
+     */
+    public static SamlGenerator getSamlGenerator() throws ConfigurationException {
+        SamlGenerator generator = samlGenerator;
+        if (generator == null) {
+            synchronized (Attestation.class) {
+                if (samlGenerator == null) {
+                    SamlGenerator newGenerator = new SamlGenerator(getIssuerConfiguration());
+                    int threads = ASConfig.getConfiguration().getInt("saml.parallel.threads", 0);
+                    if (threads > 0) {
+                        samlExecutor = Executors.newFixedThreadPool(threads, new AttestationThreadFactory());
+                        newGenerator.setExecutor(samlExecutor);
+                    }
+                    samlGenerator = newGenerator;
+                }
+                generator = samlGenerator;
+            }
+        }
+        return generator;
+    }
+
     public static class AttestationThreadFactory implements ThreadFactory {
 
         private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AttestationThreadFactory.class);
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business;
+
+import com.intel.mtwilson.as.data.MwAssetTagCertificate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the lookup, invalidation and expiry rules of AssetTagCertCache
+ * without a database.
+ */
+public class AssetTagCertCacheTest {
+
+    @Test
+    public void testCacheByHostIdAndHardwareUuid() {
+        AssetTagCertCache.invalidateAll();
+        AssetTagCertCache.ValidAssetTagCert tag = new AssetTagCertCache.ValidAssetTagCert(new MwAssetTagCertificate(), null);
+        assertNull(AssetTagCertCache.get(AssetTagCertCache.hostIdKey(1)));
+        AssetTagCertCache.put(AssetTagCertCache.hostIdKey(1), tag, AssetTagCertCache.generation(), 60000);
+        AssetTagCertCache.put(AssetTagCertCache.hardwareUuidKey("ABCD"), AssetTagCertCache.NONE, AssetTagCertCache.generation(), 60000);
+        assertSame(tag, AssetTagCertCache.get(AssetTagCertCache.hostIdKey(1)));
+        assertSame(AssetTagCertCache.NONE, AssetTagCertCache.get(AssetTagCertCache.hardwareUuidKey("abcd")));
+        AssetTagCertCache.invalidateAll();
+        assertNull(AssetTagCertCache.get(AssetTagCertCache.hostIdKey(1)));
+        assertNull(AssetTagCertCache.get(AssetTagCertCache.hardwareUuidKey("abcd")));
+    }
+
+    @Test
+    public void testLookupStartedBeforeInvalidationIsNotCached() {
+        AssetTagCertCache.invalidateAll();
+        long generation = AssetTagCertCache.generation();
+        // the certificate is mapped to the host while the lookup is running
+        AssetTagCertCache.invalidateAll();
+        AssetTagCertCache.put(AssetTagCertCache.hostIdKey(2), AssetTagCertCache.NONE, generation, 60000);
+        assertNull(AssetTagCertCache.get(AssetTagCertCache.hostIdKey(2)));
+    }
+
+    @Test
+    public void testDisabledAndExpiredEntries() throws InterruptedException {
+        AssetTagCertCache.invalidateAll();
+        AssetTagCertCache.put(AssetTagCertCache.hostIdKey(3), AssetTagCertCache.NONE, AssetTagCertCache.generation(), 0);
+        assertNull(AssetTagCertCache.get(AssetTagCertCache.hostIdKey(3)));
+        AssetTagCertCache.put(AssetTagCertCache.hostIdKey(3), AssetTagCertCache.NONE, AssetTagCertCache.generation(), 1);
+        Thread.sleep(10);
+        assertNull(AssetTagCertCache.get(AssetTagCertCache.hostIdKey(3)));
+    }
+}
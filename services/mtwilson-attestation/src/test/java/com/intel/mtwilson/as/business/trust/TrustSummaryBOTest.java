@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.datatypes.HostTrustSummary;
+import com.intel.mtwilson.datatypes.TrustSummary;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the counts and paging of the trust summary without a database.
+ */
+public class TrustSummaryBOTest {
+
+    private HostTrustSummary host(String uuid, Boolean bios, Boolean vmm, Boolean assetTag) {
+        HostTrustSummary host = new HostTrustSummary();
+        host.hostUuid = uuid;
+        host.bios = bios;
+        host.vmm = vmm;
+        host.assetTag = assetTag;
+        host.trusted = bios == null || vmm == null ? null : bios && vmm;
+        return host;
+    }
+
+    private TrustSummaryBO.Snapshot snapshot() {
+        List<HostTrustSummary> hosts = new ArrayList<>();
+        hosts.add(host("c", true, false, null));
+        hosts.add(host("a", true, true, true));
+        hosts.add(host("d", null, null, null));
+        hosts.add(host("b", false, true, false));
+        return new TrustSummaryBO.Snapshot(hosts, new Date(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testCounts() {
+        TrustSummary summary = snapshot().page(null, null, null);
+        assertEquals(4, summary.total);
+        assertEquals(2, summary.bios.trusted);
+        assertEquals(1, summary.bios.untrusted);
+        assertEquals(1, summary.bios.unknown);
+        assertEquals(2, summary.vmm.trusted);
+        assertEquals(1, summary.assetTag.trusted);
+        assertEquals(1, summary.assetTag.untrusted);
+        assertEquals(2, summary.assetTag.unknown);
+        assertEquals(1, summary.trusted.trusted);
+        assertEquals(2, summary.trusted.untrusted);
+        assertEquals(1, summary.trusted.unknown);
+        assertEquals(4, summary.hosts.size());
+        assertNull(summary.next);
+    }
+
+    @Test
+    public void testExpiredHostsAreUnknown() {
+        Date now = new Date();
+        List<HostTrustSummary> hosts = new ArrayList<>();
+        HostTrustSummary expired = host("a", true, true, true);
+        expired.expires = new Date(now.getTime() - 1000);
+        hosts.add(expired);
+        HostTrustSummary valid = host("b", true, true, false);
+        valid.expires = new Date(now.getTime() + 1000);
+        hosts.add(valid);
+        TrustSummary summary = new TrustSummaryBO.Snapshot(hosts, now, Long.MAX_VALUE).page(null, null, null);
+        assertEquals(2, summary.total);
+        assertEquals(1, summary.bios.trusted);
+        assertEquals(1, summary.bios.unknown);
+        assertEquals(1, summary.vmm.trusted);
+        assertEquals(1, summary.vmm.unknown);
+        assertEquals(0, summary.assetTag.trusted);
+        assertEquals(1, summary.assetTag.untrusted);
+        assertEquals(1, summary.assetTag.unknown);
+        assertEquals(1, summary.trusted.trusted);
+        assertEquals(1, summary.trusted.unknown);
+        // the host keeps the status it was attested with
+        assertTrue(summary.hosts.get(0).trusted);
+    }
+
+    @Test
+    public void testPagesInUuidOrder() {
+        TrustSummaryBO.Snapshot snapshot = snapshot();
+        TrustSummary first = snapshot.page(3, null, null);
+        assertEquals(4, first.total);
+        assertEquals(3, first.hosts.size());
+        assertEquals("a", first.hosts.get(0).hostUuid);
+        assertEquals("c", first.next);
+        TrustSummary second = snapshot.page(3, null, first.next);
+        assertEquals(4, second.total);
+        assertEquals(1, second.hosts.size());
+        assertEquals("d", second.hosts.get(0).hostUuid);
+        assertNull(second.next);
+        assertTrue(snapshot.page(3, null, "d").hosts.isEmpty());
+    }
+
+    @Test
+    public void testPageByOffset() {
+        TrustSummaryBO.Snapshot snapshot = snapshot();
+        TrustSummary second = snapshot.page(2, 2, null);
+        assertEquals(2, second.hosts.size());
+        assertEquals("c", second.hosts.get(0).hostUuid);
+        assertNull(second.next);
+        assertTrue(snapshot.page(2, 10, null).hosts.isEmpty());
+    }
+}
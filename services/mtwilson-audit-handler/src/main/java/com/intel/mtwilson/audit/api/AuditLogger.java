@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
  */
 public class AuditLogger {
     private static Logger log = LoggerFactory.getLogger(AuditLogger.class);
+    private static final AuditWorker worker = new AuditAsyncWorker();
 //    private static boolean isAsyncEnabled = true; // AuditConfig.isAsyncEnabled();
     
     
@@ -47,8 +48,7 @@ public class AuditLogger {
     public void addLog(AuditLog log) throws AuditHandlerException{
         
         try {
-            AuditWorker worker = getAuditWorker();
-            worker.addLog(getAuditLogEntry(log));
+            getAuditWorker().addLog(getAuditLogEntry(log));
         } catch (Exception e) {
             throw new AuditHandlerException(e);
         }
@@ -85,7 +85,7 @@ public class AuditLogger {
 
     private AuditWorker getAuditWorker() throws NamingException {
         
-        return new AuditAsyncWorker();
+        return worker;
 //        if(isAsyncEnabled){
 //        	
 //            return (AuditWorker) new InitialContext().lookup(AUDIT_LOGGER_JNDI);
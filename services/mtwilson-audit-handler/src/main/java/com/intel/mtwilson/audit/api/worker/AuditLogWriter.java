@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.audit.api.worker;
+
+import com.intel.mtwilson.audit.data.AuditLogEntry;
+import com.intel.mtwilson.audit.helper.AuditConfig;
+import com.intel.mtwilson.audit.helper.AuditHandlerException;
+import com.intel.mtwilson.audit.helper.AuditPersistenceManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Write-behind stage for audit log entries.
+ *
+ * Entries are put in a bounded ring buffer (mountwilson.audit.queue.max) and
+ * a background thread inserts up to mountwilson.audit.batch.max of them
+ * with one JDBC batch in one transaction, so an audited write no longer
+ * waits for its own audit insert. When the buffer is full the entry is
+ * either dropped or the caller waits for room, according to
+ * mountwilson.audit.queue.full ("block" or "drop"). The counters are
+ * available from getSubmitted, getWritten, getDropped and getFailed.
+ *
+ * With mountwilson.audit.async=false each entry is inserted by the calling
+ * thread. Queued entries are written when the JVM shuts down.
+ */
+public class AuditLogWriter implements Runnable {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AuditLogWriter.class);
+    private static final String INSERT = "insert into mw_audit_log_entry (transaction_id, entity_id, entity_type, finger_print, create_dt, action, data) values (?,?,?,?,?,?,?)";
+    private static final AuditPersistenceManager persistenceManager = new AuditPersistenceManager();
+    private static AuditLogWriter instance = null;
+    private final BlockingQueue<AuditLogEntry> queue;
+    private final int maxBatch;
+    private final boolean async;
+    private final boolean drop;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public AuditLogWriter(boolean async, int queueSize, int maxBatch, boolean drop) {
+        this.async = async;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatch = maxBatch;
+        this.drop = drop;
+    }
+
+    public static synchronized AuditLogWriter getInstance() {
+        if( instance == null ) {
+            Configuration configuration = AuditConfig.getConfiguration();
+            instance = new AuditLogWriter(AuditConfig.isAsyncEnabled(), configuration.getInt("mountwilson.audit.queue.max", 10000), configuration.getInt("mountwilson.audit.batch.max", 100), "drop".equalsIgnoreCase(configuration.getString("mountwilson.audit.queue.full", "block")));
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Writes any queued entries and stops the background thread.
+     */
+    public static synchronized void shutdown() {
+        if( instance != null ) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    private void start() {
+        if( async ) {
+            thread = new Thread(this, "AuditLogWriter");
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    shutdown();
+                }
+            }, "AuditLogWriterShutdown"));
+        }
+    }
+
+    private void stop() {
+        running = false;
+        if( thread != null ) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS));
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ArrayList<AuditLogEntry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        while( !remaining.isEmpty() ) {
+            List<AuditLogEntry> batch = remaining.subList(0, Math.min(maxBatch, remaining.size()));
+            write(batch);
+            batch.clear();
+        }
+        log.debug("Audit log entries submitted {} written {} dropped {} failed {}", submitted.get(), written.get(), dropped.get(), failed.get());
+    }
+
+    public void submit(AuditLogEntry entry) throws AuditHandlerException {
+        submitted.incrementAndGet();
+        if( !async || !running ) {
+            try {
+                insert(Collections.singletonList(entry));
+                written.incrementAndGet();
+            }
+            catch(Exception e) {
+                failed.incrementAndGet();
+                throw new AuditHandlerException(e);
+            }
+            return;
+        }
+        if( queue.offer(entry) ) {
+            return;
+        }
+        if( drop ) {
+            long count = dropped.incrementAndGet();
+            if( count == 1 || count % 1000 == 0 ) {
+                log.warn("Audit log queue is full, dropped {} entries", count);
+            }
+            return;
+        }
+        try {
+            queue.put(entry);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            log.warn("Interrupted while waiting to queue audit log entry for {} {}", entry.getEntityType(), entry.getEntityId());
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void run() {
+        ArrayList<AuditLogEntry> batch = new ArrayList<>(maxBatch);
+        while(running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                write(batch);
+            }
+            catch(InterruptedException e) {
+                log.debug("AuditLogWriter interrupted");
+            }
+            catch(Exception e) {
+                log.error("Cannot write audit log", e);
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<AuditLogEntry> batch) {
+        long start = System.currentTimeMillis();
+        try {
+            insert(batch);
+            written.addAndGet(batch.size());
+        }
+        catch(Exception e) {
+            if( batch.size() == 1 ) {
+                failed.incrementAndGet();
+                log.error("Cannot write audit log", e);
+                return;
+            }
+            // write each entry separately so one bad entry does not lose the others
+            log.debug("Cannot write {} audit log entries in one transaction, writing them separately", batch.size(), e);
+            for(AuditLogEntry entry : batch) {
+                try {
+                    insert(Collections.singletonList(entry));
+                    written.incrementAndGet();
+                }
+                catch(Exception e1) {
+                    failed.incrementAndGet();
+                    log.error("Cannot write audit log", e1);
+                }
+            }
+        }
+        log.trace("performance: wrote {} audit log entries in {}ms", batch.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Inserts the entries with a JDBC batch on a connection from the
+     * AuditDataPU pool. The entity id is generated by the database and
+     * is not read back, which is what allows the batch (EclipseLink does
+     * not batch inserts with IDENTITY ids).
+     */
+    private void insert(List<AuditLogEntry> entries) throws SQLException {
+        EntityManager em = persistenceManager.getEntityManagerFactory("AuditDataPU").createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for(AuditLogEntry entry : entries) {
+                    statement.setString(1, entry.getTransactionId());
+                    if (entry.getEntityId() == null) {
+                        statement.setNull(2, Types.INTEGER);
+                    } else {
+                        statement.setInt(2, entry.getEntityId());
+                    }
+                    statement.setString(3, entry.getEntityType());
+                    statement.setString(4, entry.getFingerPrint());
+                    statement.setTimestamp(5, new Timestamp(entry.getCreateDt().getTime()));
+                    statement.setString(6, entry.getAction());
+                    statement.setString(7, entry.getData());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            if( em.getTransaction().isActive() ) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
@@ -14,7 +14,11 @@ import com.intel.mtwilson.audit.data.AuditLog;
 import com.intel.mtwilson.audit.data.AuditTableData;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import javax.persistence.Column;
@@ -59,16 +63,78 @@ public class AuditEventHandlerImpl extends DescriptorEventAdapter  {
 
     private static ObjectMapper mapper = new ObjectMapper();
 
-    private AuditColumnData getAuditColumnData(Column col, Field field, Object table, HashMap<String, Object> changedColumns) throws IllegalAccessException, IllegalArgumentException, SecurityException {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * The audited columns and the id field of an entity class. They are found
+     * once per class instead of walking the declared fields on every event.
+     */
+    private static class EntityAccessors {
+        private final List<ColumnAccessor> columns = new ArrayList<>();
+        private MethodHandle id = null;
+    }
+
+    private static class ColumnAccessor {
+        private final String column;
+        private final String field;
+        private final MethodHandle getter;
+
+        public ColumnAccessor(String column, String field, MethodHandle getter) {
+            this.column = column;
+            this.field = field;
+            this.getter = getter;
+        }
+    }
+
+    private static final ClassValue<EntityAccessors> accessors = new ClassValue<EntityAccessors>() {
+        @Override
+        protected EntityAccessors computeValue(Class<?> type) {
+            EntityAccessors entityAccessors = new EntityAccessors();
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                for (Field field : type.getDeclaredFields()) {
+                    Column col = field.getAnnotation(Column.class);
+                    boolean id = field.getAnnotation(Id.class) != null;
+                    log.trace("Is it required to log this column {}" , field.isAnnotationPresent(AuditIgnore.class));
+                    if ((col == null || field.isAnnotationPresent(AuditIgnore.class)) && !id) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    MethodHandle getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                    if (col != null && !field.isAnnotationPresent(AuditIgnore.class)) {
+                        entityAccessors.columns.add(new ColumnAccessor(col.name(), field.getName(), getter));
+                    }
+                    if (id) {
+                        log.trace("ID Column Field: " + field.getName());
+                        entityAccessors.id = getter;
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access fields of " + type.getName(), e);
+            }
+            return entityAccessors;
+        }
+    };
+
+    private static Object get(MethodHandle getter, Object table) {
+        try {
+            return (Object) getter.invokeExact(table);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private AuditColumnData getAuditColumnData(ColumnAccessor accessor, Object table, HashMap<String, Object> changedColumns) {
         AuditColumnData auditColumnData = new AuditColumnData();
-        log.trace("Column: " + col.name());
-        auditColumnData.setName(col.name());
-        log.trace("Field: " + field.getName());
-        field.setAccessible(true);
-        log.trace("Value: " + field.get(table));
-        auditColumnData.setValue(field.get(table));
-        field.setAccessible(false);
-        auditColumnData.setIsUpdated(changedColumns.containsKey(field.getName()));
+        log.trace("Column: " + accessor.column);
+        auditColumnData.setName(accessor.column);
+        log.trace("Field: " + accessor.field);
+        Object value = get(accessor.getter, table);
+        log.trace("Value: " + value);
+        auditColumnData.setValue(value);
+        auditColumnData.setIsUpdated(changedColumns.containsKey(accessor.field));
         return auditColumnData;
     }
 
@@ -110,22 +176,17 @@ public class AuditEventHandlerImpl extends DescriptorEventAdapter  {
         }
     }
 
-    private AuditTableData getTableData(DescriptorEvent event) throws IllegalAccessException, IllegalArgumentException, SecurityException {
+    private AuditTableData getTableData(DescriptorEvent event) {
         AuditTableData auditTableData = new AuditTableData();
         Object table = event.getObject();
 
         HashMap<String, Object> changedColumns = getChangedColumns(event);
 
-        for (Field field : table.getClass().getDeclaredFields()) {
-            Column col;
-            log.trace("Is it required to log this column {}" , field.isAnnotationPresent(AuditIgnore.class));
-            if ((col = field.getAnnotation(Column.class)) != null && !field.isAnnotationPresent(AuditIgnore.class)){
-                
-                if(isUnchangedColumnsRequired || event.getEventCode() != 7){ // Log all columns
-                     auditTableData.getColumns().add(getAuditColumnData(col, field, table, changedColumns));
-                }else if(changedColumns.containsKey(field.getName())){ // log only changed colmuns
-                     auditTableData.getColumns().add(getAuditColumnData(col, field, table, changedColumns));
-                }
+        for (ColumnAccessor accessor : accessors.get(table.getClass()).columns) {
+            if(isUnchangedColumnsRequired || event.getEventCode() != 7){ // Log all columns
+                 auditTableData.getColumns().add(getAuditColumnData(accessor, table, changedColumns));
+            }else if(changedColumns.containsKey(accessor.field)){ // log only changed colmuns
+                 auditTableData.getColumns().add(getAuditColumnData(accessor, table, changedColumns));
             }
         }
         return auditTableData;
@@ -149,10 +210,7 @@ public class AuditEventHandlerImpl extends DescriptorEventAdapter  {
         return changedColumns;
     }
 
-    private AuditLog getAuditLog(DescriptorEvent event, String action) throws IllegalAccessException,
-		    IllegalArgumentException, 
-		    SecurityException, 
-		    JsonGenerationException, 
+    private AuditLog getAuditLog(DescriptorEvent event, String action) throws JsonGenerationException, 
 		    JsonMappingException, 
 		    IOException 
 		    {
@@ -172,18 +230,14 @@ public class AuditEventHandlerImpl extends DescriptorEventAdapter  {
         }
     }
 
-    private Integer getPrimaryKey(DescriptorEvent event) throws  IllegalArgumentException, IllegalAccessException {
+    private Integer getPrimaryKey(DescriptorEvent event) {
         Integer pk = -1;
         
         Object table = event.getObject();
-        for (Field field : table.getClass().getDeclaredFields()) {
-            if ((field.getAnnotation(Id.class)) != null) {
-                log.trace("ID Column Field: " + field.getName());
-                field.setAccessible(true);
-                log.trace("ID Data Type :" + field.getType() +  "value: " + field.get(table));
-                pk = (Integer) field.get(table);
-                field.setAccessible(false);
-            }
+        MethodHandle id = accessors.get(table.getClass()).id;
+        if (id != null) {
+            pk = (Integer) get(id, table);
+            log.trace("ID value: " + pk);
         }
         return pk;
     }
@@ -31,7 +31,7 @@ public class AuditConfig  {
     }
     
     public static boolean isAsyncEnabled() {
-        if(getConfiguration().getString("mountwilson.audit.async", "false").equalsIgnoreCase("true") )
+        if(getConfiguration().getString("mountwilson.audit.async", "true").equalsIgnoreCase("true") )
                 return true;
         
         return false;        
@@ -46,7 +46,7 @@ public class AuditConfig  {
         defaults.setProperty("mountwilson.audit.db.schema", "mw_audit");
         defaults.setProperty("mountwilson.audit.enabled", "true");
         defaults.setProperty("mountwilson.audit.logunchangedcolumns", "true");
-        defaults.setProperty("mountwilson.audit.async", "false");
+        defaults.setProperty("mountwilson.audit.async", "true");
         return defaults;
     }
 
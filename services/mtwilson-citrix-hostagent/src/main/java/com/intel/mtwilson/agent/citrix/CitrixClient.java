@@ -9,10 +9,15 @@ import com.intel.mountwilson.as.common.ASConfig;
 import com.intel.mountwilson.as.common.ASException;
 import com.intel.mountwilson.as.helper.CommandUtil;
 import com.intel.mountwilson.ta.data.hostinfo.HostInfo;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.agent.intel.TpmQuoteVerifier;
 import com.intel.mtwilson.datatypes.ConnectionString;
 import com.intel.mtwilson.i18n.ErrorCode;
 import com.intel.mtwilson.model.Pcr;
 import com.intel.mtwilson.model.PcrIndex;
+import com.intel.dcsg.cpg.crypto.CryptographyException;
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.dcsg.cpg.crypto.RsaUtil;
 import com.intel.dcsg.cpg.crypto.Sha1Digest;
 import com.intel.dcsg.cpg.io.Platform;
 import com.intel.dcsg.cpg.tls.policy.TlsConnection;
@@ -25,6 +30,7 @@ import com.xensource.xenapi.APIVersion;
 import com.xensource.xenapi.Connection;
 import com.xensource.xenapi.Host;
 import com.xensource.xenapi.Session;
+import com.xensource.xenapi.Types;
 import com.xensource.xenapi.Types.BadServerResponse;
 import com.xensource.xenapi.Types.XenAPIException;
 import java.io.File;
@@ -35,7 +41,9 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.SecureRandom;
+import java.security.SignatureException;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -72,7 +80,10 @@ public class CitrixClient {
     private Pattern pcrValuePattern = Pattern.compile("[0-9a-fA-F]{40}"); // 40-character hex string
     private String pcrNumberUntaint = "[^0-9]";
     private String pcrValueUntaint = "[^0-9a-fA-F]";
-    private String AIKCert = null;
+    private final String sessionKey;
+    private CitrixSessionPool.PooledSession session = null;
+    private boolean verifyQuoteWithAikqverify = false; // mtwilson.tpm.quote.verifier=aikqverify selects the native command instead of the in-process TpmQuoteVerifier
+    private static final TpmQuoteVerifier tpmQuoteVerifier = new TpmQuoteVerifier();
     protected Connection connection;
 
     public CitrixClient(TlsConnection tlsConnection) {
@@ -89,6 +100,7 @@ public class CitrixClient {
             port = citrixConnection.getPort();
             userName = citrixConnection.getUsername();
             password = citrixConnection.getPassword();
+            sessionKey = CitrixSessionPool.key(hostIpAddress, port, userName, password);
         } catch (MalformedURLException e) {
             throw new IllegalArgumentException("Invalid Citrix Host URL", e); // NOTE: we are NOT providing the connection string in the error message because, since we can't parse it, we dn't know if there's a password in there. 
         }
@@ -115,11 +127,14 @@ public class CitrixClient {
             opensslCmd = aikverifyhomeBin + File.separator + config.getString("com.intel.mountwilson.as.openssl.cmd", "openssl.bat");
             aikverifyCmd = aikverifyhomeBin + File.separator + config.getString("com.intel.mountwilson.as.aikqverify.cmd", "aikqverify.exe");
         }
-
+        verifyQuoteWithAikqverify = "aikqverify".equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.verifier", "java"));
 
     }
 
     public void init() {
+        if (!verifyQuoteWithAikqverify) {
+            return; // quotes are verified in memory, the aikverify files are not needed
+        }
         boolean foundAllRequiredFiles = true;
         String required[] = new String[]{opensslCmd, aikverifyCmd, aikverifyhomeData};
         for (String filename : required) {
@@ -196,47 +211,109 @@ public class CitrixClient {
 
         Session.loginWithPassword(connection, userName, password, APIVersion.latest().toString());
 
+        session = new CitrixSessionPool.PooledSession(connection);
+        CitrixSessionPool.put(sessionKey, session);
     }
 
-    public boolean isConnected() {
-        return connection != null;
+    /**
+     * Uses the pooled session for this pool master if there is one, and
+     * logs in otherwise.
+     */
+    private void open() throws NoSuchAlgorithmException, KeyManagementException, BadServerResponse, XenAPIException, XmlRpcException {
+        if (isConnected()) {
+            return;
+        }
+        CitrixSessionPool.PooledSession pooled = CitrixSessionPool.get(sessionKey);
+        if (pooled == null) {
+            connect();
+            return;
+        }
+        log.debug("Reusing XenAPI session for {}", hostIpAddress);
+        // the https defaults are global, so apply this client's tls policy as connect() does
+        TlsUtil.setHttpsURLConnectionDefaults(tlsConnection);
+        session = pooled;
+        connection = pooled.getConnection();
     }
 
-    public void disconnect() throws BadServerResponse, XenAPIException, XmlRpcException {
-        Session.logout(connection);
-//        connection.dispose();
+    /**
+     * Logs out of and forgets a session that the server no longer accepts so
+     * the next call logs in again.
+     */
+    private void reset() {
+        if (session != null) {
+            CitrixSessionPool.remove(sessionKey, session);
+        }
+        session = null;
+        connection = null;
     }
 
     /**
-     * This is a Citrix-specific API, not implemented by vmware hosts ; trust
-     * agent will implement it when it's merged with provisioning agent from the
-     * asset tag branch
-     *
-     * @param tag
+     * The first host in the pool, as before; the reference is kept with the
+     * pooled session.
      */
-    public void setAssetTag(Sha1Digest tag) throws BadServerResponse, XenAPIException, XmlRpcException, NoSuchAlgorithmException, KeyManagementException {
-        if (!isConnected()) {
-            connect();
+    private Host getHost() throws NoSuchAlgorithmException, KeyManagementException, BadServerResponse, XenAPIException, XmlRpcException {
+        open();
+        Host h = session.getHost();
+        if (h != null) {
+            return h;
         }
         Set<Host> hostList = Host.getAll(connection);
         Iterator iter = hostList.iterator();
         // hasNext() will always be valid otherwise we will get an exception from the getAll method. So, we not need
         // to throw an exception if the hasNext is false.
-        Host h = null;
         if (iter.hasNext()) {
             h = (Host) iter.next();
         }
         if (h == null) {
             throw new IllegalStateException("Cannot find Citrix Xen host");
         }
+        session.setHost(h);
+        return h;
+    }
+
+    private String callPlugin(String fn, Map<String, String> args) throws NoSuchAlgorithmException, KeyManagementException, BadServerResponse, XenAPIException, XmlRpcException {
+        try {
+            return callHostPlugin(fn, args);
+        } catch (Types.SessionInvalid e) {
+            log.debug("XenAPI session for {} is no longer valid, logging in again", hostIpAddress);
+            reset();
+            return callHostPlugin(fn, args);
+        }
+    }
+
+    String callHostPlugin(String fn, Map<String, String> args) throws NoSuchAlgorithmException, KeyManagementException, BadServerResponse, XenAPIException, XmlRpcException {
+        return getHost().callPlugin(connection, "tpm", fn, args);
+    }
+
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    /**
+     * Removes the session from the pool and logs out of it. If another
+     * client already replaced or removed the session, that client logged out
+     * of it.
+     */
+    public void disconnect() throws BadServerResponse, XenAPIException, XmlRpcException {
+        reset();
+//        connection.dispose();
+    }
 
+    /**
+     * This is a Citrix-specific API, not implemented by vmware hosts ; trust
+     * agent will implement it when it's merged with provisioning agent from the
+     * asset tag branch
+     *
+     * @param tag
+     */
+    public void setAssetTag(Sha1Digest tag) throws BadServerResponse, XenAPIException, XmlRpcException, NoSuchAlgorithmException, KeyManagementException {
         Map<String, String> myMap = new HashMap<>();
         log.debug("sending the following to the xenserver: " + tag.toBase64());
         myMap.put("tag", Base64.encodeBase64String(tag.toByteArray()));
 
 
         //toByteArray()
-        String retval = h.callPlugin(connection, "tpm", "tpm_set_asset_tag", myMap);
+        String retval = callPlugin("tpm_set_asset_tag", myMap);
         log.debug("xenapi returned: {}", retval);
 
     }
@@ -249,10 +326,7 @@ public class CitrixClient {
         log.debug("getQuoteInformationForHost pcrList == " + pcrList);
         try {
 
-            // We cannot reuse the connections across different calls since they are tied to a particular host.
-            if (!isConnected()) {
-                connect();
-            }
+            open();
 
             String nonce;
             if( challenge == null ) {
@@ -261,78 +335,47 @@ public class CitrixClient {
             else {
                 nonce = Base64.encodeBase64String(challenge.toByteArray());
             }
-            
-            String sessionId = generateSessionId();
-            String aikCertificate = getAIKCertificate();
-
-            // We do not need to connect again. So, commenting it out.
-            // System.err.println("stdalex-error connecting with " + userName + " " + password);
-            // Session.loginWithPassword(connection, userName, password, APIVersion.latest().toString());
-
-            // System.err.println( "CitrixClient: connected to server ["+hostIpAddress+"]");	
-
-            Set<Host> hostList = Host.getAll(connection);
-            Iterator iter = hostList.iterator();
-            // hasNext() will always be valid otherwise we will get an exception from the getAll method. So, we not need
-            // to throw an exception if the hasNext is false.
-            File f, q, n;
-            Host h = null;
-            if (iter.hasNext()) {
-                h = (Host) iter.next();
-            }
-            if (h == null) {
-                throw new IllegalStateException("Cannot find Citrix Xen host");
-            }
-
-            /*
-             String aik = h.callPlugin(connection, "tpm", "tpm_get_attestation_identity", myMap);
-             int startP = aik.indexOf("<xentxt:TPM_Attestation_KEY_PEM>");
-             int endP = aik.indexOf("</xentxt:TPM_Attestation_KEY_PEM>");
-             // 32 is the size of the opening tag  <xentxt:TPM_Attestation_KEY_PEM>
-             String cert = aik.substring(startP + "<xentxt:TPM_Attestation_KEY_PEM>".length(), endP);
-             log.debug("aikCert == " + cert);
-             keys key = new keys();
-             key.tpmAttKeyPEM = cert;  // This is the actual value for AIK!!!!!
-             aikCertificate = key.tpmAttKeyPEM;
-             */
 
+            // the aik is kept with the pooled session and downloaded again only if the quote does not verify with it
+            String aikCertificate = session.getAikCertificate();
+            boolean cachedAik = aikCertificate != null;
+            if (!cachedAik) {
+                aikCertificate = downloadAIKCertificate();
+            }
             log.debug("extracted aik cert from response: " + aikCertificate);
 
             Map<String, String> myMap = new HashMap<>();
             myMap.put("nonce", nonce);
 
             long plugInCallStart = System.currentTimeMillis();
-            String quote = h.callPlugin(connection, "tpm", "tpm_get_quote", myMap);
+            String quote = callPlugin("tpm_get_quote", myMap);
             long plugInCallStop = System.currentTimeMillis();
             log.debug("Citrix PlugIn call: TPM quote retrieval time " + (plugInCallStop - plugInCallStart) + " milliseconds");
 
             log.debug("extracted quote from response: " + quote);
-            //saveFile(getCertFileName(sessionId), Base64.decodeBase64(aikCertificate));
-            f = saveFile(getCertFileName(sessionId), aikCertificate.getBytes());
-            log.debug("saved certificate with session id: " + sessionId);
-
-            q = saveQuote(quote, sessionId);
-
-            log.debug("saved quote with session id: " + sessionId);
-
-            n = saveNonce(nonce, sessionId);
-
-            log.debug("saved nonce with session id: " + sessionId);
-
-            //createRSAKeyFile(sessionId);
-
-            log.debug("created RSA key file for session id: " + sessionId);
 
-            HashMap<String, Pcr> pcrMap = verifyQuoteAndGetPcr(sessionId, pcrList);
+            HashMap<String, Pcr> pcrMap;
+            try {
+                pcrMap = verifyQuote(aikCertificate, quote, nonce, pcrList);
+            } catch (SignatureException | ASException e) {
+                if (!cachedAik) {
+                    throw e;
+                }
+                String currentAik = downloadAIKCertificate();
+                if (currentAik.equals(aikCertificate)) {
+                    throw e;
+                }
+                log.debug("AIK of host {} has changed, verifying quote again", hostIpAddress);
+                pcrMap = verifyQuote(currentAik, quote, nonce, pcrList);
+            }
 
             log.info("Got PCR map");
             //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
 
-            f.delete();
-            q.delete();
-            n.delete();
             return pcrMap;
 
+        } catch (SignatureException e) {
+            throw new ASException(e, ErrorCode.AS_HOST_TRUST_ERROR, e.getMessage());
         } catch (ASException e) {
             throw e;
 //        } catch(UnknownHostException e) {
@@ -451,6 +494,47 @@ public class CitrixClient {
     /*private String getRSAPubkeyFileName(String sessionId) {
      return "rsapubkey_" + sessionId + ".key";
      }*/
+    HashMap<String, Pcr> verifyQuote(String aikCertificate, String quote, String nonce, String pcrList) throws NoSuchAlgorithmException, IOException, SignatureException, CryptographyException {
+        if (verifyQuoteWithAikqverify) {
+            return verifyQuoteWithAikqverify(aikCertificate, quote, nonce, pcrList);
+        }
+        PublicKey aik = RsaUtil.decodePemPublicKey(aikCertificate);
+        List<Pcr> pcrs = tpmQuoteVerifier.verifyTpm12Quote(Base64.decodeBase64(quote), Base64.decodeBase64(nonce), aik).getPcrs(DigestAlgorithm.SHA1);
+        List<String> selected = Arrays.asList(pcrList.split(","));
+        HashMap<String, Pcr> pcrMap = new HashMap<>();
+        for (Pcr pcr : pcrs) {
+            String pcrNumber = String.valueOf(pcr.getIndex().toInteger());
+            if (selected.contains(pcrNumber)) {
+                pcrMap.put(pcrNumber, pcr);
+            }
+        }
+        return pcrMap;
+    }
+
+    private HashMap<String, Pcr> verifyQuoteWithAikqverify(String aikCertificate, String quote, String nonce, String pcrList) throws NoSuchAlgorithmException, IOException {
+        String sessionId = generateSessionId();
+        File f, q, n;
+        //saveFile(getCertFileName(sessionId), Base64.decodeBase64(aikCertificate));
+        f = saveFile(getCertFileName(sessionId), aikCertificate.getBytes());
+        log.debug("saved certificate with session id: " + sessionId);
+
+        q = saveQuote(quote, sessionId);
+
+        log.debug("saved quote with session id: " + sessionId);
+
+        n = saveNonce(nonce, sessionId);
+
+        log.debug("saved nonce with session id: " + sessionId);
+
+        try {
+            return verifyQuoteAndGetPcr(sessionId, pcrList);
+        } finally {
+            f.delete();
+            q.delete();
+            n.delete();
+        }
+    }
+
     private HashMap<String, Pcr> verifyQuoteAndGetPcr(String sessionId, String pcrList) {
         HashMap<String, Pcr> pcrMp = new HashMap<String, Pcr>();
         log.debug("verifyQuoteAndGetPcr for session " + sessionId);
@@ -504,29 +588,21 @@ public class CitrixClient {
         //log.info("stdalex-error getHostInfo IP:" + hostIpAddress + " port:" + port + " user: " + userName + " pw:" + password);
         HostInfo response = new HostInfo();
 
-        if (!isConnected()) {
-            connect();
-        }
+        Host h = getHost();
 
         log.debug("CitrixClient: connected to server [" + hostIpAddress + "]");
 
-
-        // Map<String, String> myMap = new HashMap<String, String>();
-        Set<Host> hostList = Host.getAll(connection);
-        Iterator iter = hostList.iterator();
-        // hasNext() will always be valid otherwise we will get an exception from the getAll method. So, we not need
-        // to throw an exception if the hasNext is false.
-        Host h = null;
-        if (iter.hasNext()) {
-            h = (Host) iter.next();
-        }
-        if (h == null) {
-            throw new IllegalStateException("Cannot find Citrix Xen host");
-        }
-
         response.setClientIp(hostIpAddress);
 
-        Map<String, String> map = h.getSoftwareVersion(connection);
+        Map<String, String> map;
+        try {
+            map = h.getSoftwareVersion(connection);
+        } catch (Types.SessionInvalid e) {
+            log.debug("XenAPI session for {} is no longer valid, logging in again", hostIpAddress);
+            reset();
+            h = getHost();
+            map = h.getSoftwareVersion(connection);
+        }
         response.setOsName(map.get("product_brand"));
         response.setOsVersion(map.get("product_version"));
         response.setVmmName("xen");
@@ -571,26 +647,9 @@ public class CitrixClient {
 
     public String getSystemUUID() throws NoSuchAlgorithmException, KeyManagementException, XenAPIException, BadServerResponse, XmlRpcException {
 
-        if (!isConnected()) {
-            connect();
-        }
-
-        log.debug("CitrixClient getSystemUUID: connected to server [" + hostIpAddress + "]");
-
         Map<String, String> myMap = new HashMap<String, String>();
-        Set<Host> hostList = Host.getAll(connection);
-        Iterator iter = hostList.iterator();
-        // hasNext() will always be valid otherwise we will get an exception from the getAll method. So, we not need
-        // to throw an exception if the hasNext is false.
-        Host h = null;
-        if (iter.hasNext()) {
-            h = (Host) iter.next();
-        }
-        if (h == null) {
-            throw new IllegalStateException("Cannot find Citrix Xen host");
-        }
-
-        String aik = h.callPlugin(connection, "tpm", "tpm_get_attestation_identity", myMap);
+        String aik = callPlugin("tpm_get_attestation_identity", myMap);
+        log.debug("CitrixClient getSystemUUID: connected to server [" + hostIpAddress + "]");
 
         int startP = aik.indexOf("<xentxt:System_UUID>");
         int endP = aik.indexOf("</xentxt:System_UUID>");
@@ -609,54 +668,37 @@ public class CitrixClient {
     public String getAIKCertificate() throws NoSuchAlgorithmException, KeyManagementException, BadServerResponse, XenAPIException, XmlRpcException {
 //        log.info("stdalex-error getAIKCert IP:" + hostIpAddress + " port:" + port + " user: " + userName + " pw:" + password); // removed to prevent leaking secrets
 
-        //log.debug("CitrixClient: AIKCert: " + AIKCert);
-        long startTime = System.currentTimeMillis();
-
-        if (AIKCert != null) {
-            log.debug("CitrixClient: AIKCert already generated: " + AIKCert);
-            return AIKCert;
-        } else {
-            if (!isConnected()) {
-                connect();
-            }
-            log.debug("CitrixClient: generating AIKCert");
-
-
-            Map<String, String> myMap = new HashMap<String, String>();
-            Set<Host> hostList = Host.getAll(connection);
-            Iterator iter = hostList.iterator();
-            // hasNext() will always be valid otherwise we will get an exception from the getAll method. So, we not need
-            // to throw an exception if the hasNext is false.
-            Host h = null;
-            if (iter.hasNext()) {
-                h = (Host) iter.next();
-            }
-            if (h == null) {
-                throw new IllegalStateException("Cannot find Citrix Xen host");
-            }
-
-            log.debug("TIMETAKEN: get host list: {}", System.currentTimeMillis() - startTime);
-            startTime = System.currentTimeMillis();
-
-            String aik = h.callPlugin(connection, "tpm", "tpm_get_attestation_identity", myMap);
-            log.debug("TIMETAKEN: citrix api: {}", System.currentTimeMillis() - startTime);
+        open();
+        String aikCertificate = session.getAikCertificate();
+        if (aikCertificate != null) {
+            log.debug("CitrixClient: AIKCert already retrieved: " + aikCertificate);
+            return aikCertificate;
+        }
+        return downloadAIKCertificate();
+    }
 
-            int startP = aik.indexOf("<xentxt:TPM_Attestation_KEY_PEM>");
-            int endP = aik.indexOf("</xentxt:TPM_Attestation_KEY_PEM>");
-            // 32 is the size of the opening tag  <xentxt:TPM_Attestation_KEY_PEM>
-            String cert = aik.substring(startP + "<xentxt:TPM_Attestation_KEY_PEM>".length(), endP);
-            log.debug("aikCert == " + cert);
+    /**
+     * Retrieves the AIK from the host and keeps it with the pooled session.
+     */
+    private String downloadAIKCertificate() throws NoSuchAlgorithmException, KeyManagementException, BadServerResponse, XenAPIException, XmlRpcException {
+        log.debug("CitrixClient: generating AIKCert");
+        long startTime = System.currentTimeMillis();
 
-            keys key = new keys();
+        Map<String, String> myMap = new HashMap<String, String>();
+        String aik = callPlugin("tpm_get_attestation_identity", myMap);
+        log.debug("TIMETAKEN: citrix api: {}", System.currentTimeMillis() - startTime);
 
-            key.tpmAttKeyPEM = cert;  // This is the actual value for AIK!!!!!
+        int startP = aik.indexOf("<xentxt:TPM_Attestation_KEY_PEM>");
+        int endP = aik.indexOf("</xentxt:TPM_Attestation_KEY_PEM>");
+        // 32 is the size of the opening tag  <xentxt:TPM_Attestation_KEY_PEM>
+        String cert = aik.substring(startP + "<xentxt:TPM_Attestation_KEY_PEM>".length(), endP);
+        log.debug("aikCert == " + cert);
 
-            //resp = new String( Base64.decodeBase64(key.tpmAttKeyPEM));
-            String resp = key.tpmAttKeyPEM;//new String(key.tpmAttKeyPEM);
+        keys key = new keys();
+        key.tpmAttKeyPEM = cert;  // This is the actual value for AIK!!!!!
 
-//       log.trace("stdalex-error getAIKCert: returning back: " + resp);
-            AIKCert = resp;
-            return AIKCert;
-        }
+        String resp = key.tpmAttKeyPEM;
+        session.setAikCertificate(resp);
+        return resp;
     }
 }
@@ -6,19 +6,21 @@ package com.intel.mtwilson.agent.citrix;
 
 import com.intel.mtwilson.agent.HostAgent;
 import com.intel.mtwilson.agent.VendorHostAgentFactory;
+import com.intel.mtwilson.agent.VendorSessionPool;
 import com.intel.mtwilson.model.InternetAddress;
 import com.intel.dcsg.cpg.tls.policy.TlsConnection;
 import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
 import com.intel.mtwilson.datatypes.ConnectionString;
 import com.intel.mtwilson.datatypes.Vendor;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
 
 /**
  *
  * @author stdalex
  */
-public class CitrixHostAgentFactory implements VendorHostAgentFactory {
+public class CitrixHostAgentFactory implements VendorHostAgentFactory, VendorSessionPool {
     private String citrixVendorConnectionString = "";
     
     @Override
@@ -59,5 +61,21 @@ public class CitrixHostAgentFactory implements VendorHostAgentFactory {
     public String getVendorConnectionString() {
         return citrixVendorConnectionString;
     }
+
+    /**
+     * Logs out of the pooled XenAPI session for the pool master and
+     * credentials in the connection string.
+     */
+    @Override
+    public void remove(String vendorConnectionString) {
+        try {
+            // the same parsing as CitrixClient, so that the key is the same
+            ConnectionString.CitrixConnectionString citrixConnection = ConnectionString.CitrixConnectionString.forURL("citrix:" + vendorConnectionString);
+            CitrixSessionPool.remove(CitrixSessionPool.key(citrixConnection.getHost().toString(), citrixConnection.getPort(), citrixConnection.getUsername(), citrixConnection.getPassword()));
+        }
+        catch(MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid Citrix Host URL", e);
+        }
+    }
     
 }
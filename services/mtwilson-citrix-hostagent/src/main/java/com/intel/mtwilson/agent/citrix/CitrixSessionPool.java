@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.citrix;
+
+import com.intel.dcsg.cpg.crypto.Sha256Digest;
+import com.xensource.xenapi.Connection;
+import com.xensource.xenapi.Host;
+import com.xensource.xenapi.Session;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The logged-in XenAPI sessions, by pool master address and credentials.
+ * CitrixHostAgentFactory creates a new CitrixClient for every request, and
+ * each client used to log in, list the hosts, and download the AIK before
+ * it could ask for a quote. A client now takes the session of an earlier
+ * client for the same pool master, together with the host reference and the
+ * AIK that were already retrieved.
+ *
+ * The AIK is kept until a quote fails to verify with it; CitrixClient then
+ * downloads it again. A session that the server no longer accepts is
+ * removed and the client logs in again. A session is logged out when it
+ * leaves the pool: when it is invalid, when a newer session replaces it, or
+ * when the host is deleted.
+ */
+public class CitrixSessionPool {
+    private static final Logger log = LoggerFactory.getLogger(CitrixSessionPool.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ConcurrentHashMap<String,PooledSession> sessions = new ConcurrentHashMap<>();
+
+    public static class PooledSession {
+        private final Connection connection;
+        private volatile Host host = null;
+        private volatile String aikCertificate = null;
+
+        public PooledSession(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public Host getHost() {
+            return host;
+        }
+
+        public void setHost(Host host) {
+            this.host = host;
+        }
+
+        public String getAikCertificate() {
+            return aikCertificate;
+        }
+
+        public void setAikCertificate(String aikCertificate) {
+            this.aikCertificate = aikCertificate;
+        }
+
+        /**
+         * Logs out of the server. A failure is only logged because the
+         * session is not used again either way.
+         */
+        public void logout() {
+            try {
+                Session.logout(connection);
+            } catch (Exception e) {
+                log.debug("Cannot log out of XenAPI session: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * The password is part of the key so that a changed password is not
+     * served by a session of the old one; only its digest is kept.
+     *
+     * @return the pool key for the given pool master and credentials
+     */
+    public static String key(String hostAddress, int port, String userName, String password) {
+        String credentials = hostAddress + ":" + port + ";" + userName + ";" + password;
+        return Sha256Digest.digestOf(credentials.getBytes(UTF8)).toHexString();
+    }
+
+    /**
+     *
+     * @param key from key()
+     * @return the session, or null if there is no session for the key
+     */
+    public static PooledSession get(String key) {
+        return sessions.get(key);
+    }
+
+    /**
+     * Logs out of the session that was in the pool for the key, if any.
+     */
+    public static void put(String key, PooledSession session) {
+        PooledSession replaced = sessions.put(key, session);
+        if (replaced != null && replaced != session) {
+            replaced.logout();
+        }
+    }
+
+    /**
+     * Removes and logs out of the session only if it is still the one in the
+     * pool, so that a client holding a stale session does not remove a newer
+     * one.
+     */
+    public static void remove(String key, PooledSession session) {
+        if (sessions.remove(key, session)) {
+            session.logout();
+            log.debug("Removed XenAPI session from pool, {} sessions remaining", sessions.size());
+        }
+    }
+
+    /**
+     * Removes and logs out of the session for the key, if any.
+     */
+    public static void remove(String key) {
+        PooledSession session = sessions.remove(key);
+        if (session != null) {
+            session.logout();
+            log.debug("Removed XenAPI session from pool, {} sessions remaining", sessions.size());
+        }
+    }
+
+    public static int size() {
+        return sessions.size();
+    }
+}
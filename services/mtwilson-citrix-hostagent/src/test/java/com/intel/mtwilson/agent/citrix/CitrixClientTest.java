@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.citrix;
+
+import com.intel.dcsg.cpg.tls.policy.TlsConnection;
+import com.intel.dcsg.cpg.tls.policy.impl.InsecureTlsPolicy;
+import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.model.Pcr;
+import com.xensource.xenapi.Types;
+import java.net.URL;
+import java.security.SignatureException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs CitrixClient against plugin calls and quote verification in memory,
+ * with a pooled session that is not connected to a server.
+ */
+public class CitrixClientTest {
+    private static final String CONNECTION = "https://127.0.0.1:443/;root;password";
+    private final String key = CitrixSessionPool.key("127.0.0.1", 443, "root", "password");
+
+    @Before
+    public void setUp() {
+        CitrixSessionPool.remove(key);
+    }
+
+    @After
+    public void tearDown() {
+        CitrixSessionPool.remove(key);
+    }
+
+    @Test
+    public void testSessionInvalidIsRetriedOnce() throws Exception {
+        FakeSession pooled = new FakeSession();
+        pooled.setAikCertificate("aik1");
+        CitrixSessionPool.put(key, pooled);
+        FakeCitrixClient client = new FakeCitrixClient();
+        client.invalidSessions = 1;
+        assertNotNull(client.getQuoteInformationForHost("0,17"));
+        assertEquals(2, client.quoteCalls);
+        assertEquals(1, pooled.logouts);
+        assertNull(CitrixSessionPool.get(key));
+    }
+
+    @Test
+    public void testSessionInvalidIsNotRetriedTwice() throws Exception {
+        FakeSession pooled = new FakeSession();
+        pooled.setAikCertificate("aik1");
+        CitrixSessionPool.put(key, pooled);
+        FakeCitrixClient client = new FakeCitrixClient();
+        client.invalidSessions = 2;
+        try {
+            client.getQuoteInformationForHost("0,17");
+            fail("Expected the second SessionInvalid to fail the quote");
+        } catch (ASException e) {
+            assertTrue(e.getCause() instanceof Types.SessionInvalid);
+        }
+        assertEquals(2, client.quoteCalls);
+    }
+
+    @Test
+    public void testCachedAikIsUsed() throws Exception {
+        FakeSession pooled = new FakeSession();
+        pooled.setAikCertificate("aik1");
+        CitrixSessionPool.put(key, pooled);
+        FakeCitrixClient client = new FakeCitrixClient();
+        client.getQuoteInformationForHost("0,17");
+        assertEquals(0, client.aikCalls);
+        assertEquals(1, client.verifications);
+    }
+
+    @Test
+    public void testChangedAikIsDownloadedOnce() throws Exception {
+        FakeSession pooled = new FakeSession();
+        pooled.setAikCertificate("aik1");
+        CitrixSessionPool.put(key, pooled);
+        FakeCitrixClient client = new FakeCitrixClient();
+        client.hostAik = "aik2";
+        assertNotNull(client.getQuoteInformationForHost("0,17"));
+        assertEquals(1, client.aikCalls);
+        assertEquals(2, client.verifications);
+        assertEquals("aik2", pooled.getAikCertificate());
+    }
+
+    @Test
+    public void testQuoteThatDoesNotVerifyWithCurrentAikFails() throws Exception {
+        FakeSession pooled = new FakeSession();
+        pooled.setAikCertificate("aik1");
+        CitrixSessionPool.put(key, pooled);
+        FakeCitrixClient client = new FakeCitrixClient();
+        client.forgedQuote = true;
+        try {
+            client.getQuoteInformationForHost("0,17");
+            fail("Expected the quote not to verify");
+        } catch (ASException e) {
+            assertTrue(e.getCause() instanceof SignatureException);
+        }
+        assertEquals(1, client.aikCalls);
+        assertEquals(1, client.verifications);
+    }
+
+    @Test
+    public void testReplacedSessionIsLoggedOut() {
+        FakeSession first = new FakeSession();
+        FakeSession second = new FakeSession();
+        CitrixSessionPool.put(key, first);
+        CitrixSessionPool.put(key, second);
+        assertEquals(1, first.logouts);
+        assertEquals(0, second.logouts);
+        // a client holding the replaced session does not remove the newer one
+        CitrixSessionPool.remove(key, first);
+        assertSame(second, CitrixSessionPool.get(key));
+        assertEquals(1, first.logouts);
+    }
+
+    @Test
+    public void testDeletedHostIsLoggedOut() {
+        FakeSession pooled = new FakeSession();
+        CitrixSessionPool.put(key, pooled);
+        new CitrixHostAgentFactory().remove(CONNECTION);
+        assertNull(CitrixSessionPool.get(key));
+        assertEquals(1, pooled.logouts);
+    }
+
+    private static class FakeSession extends CitrixSessionPool.PooledSession {
+        private int logouts = 0;
+
+        public FakeSession() {
+            super(null);
+        }
+
+        @Override
+        public void logout() {
+            logouts++;
+        }
+    }
+
+    /**
+     * The host has the AIK hostAik, and its quotes verify with that AIK
+     * unless forgedQuote is set.
+     */
+    private class FakeCitrixClient extends CitrixClient {
+        private String hostAik = "aik1";
+        private boolean forgedQuote = false;
+        private int invalidSessions = 0;
+        private int quoteCalls = 0;
+        private int aikCalls = 0;
+        private int verifications = 0;
+
+        public FakeCitrixClient() throws Exception {
+            super(new TlsConnection(new URL(CONNECTION), new InsecureTlsPolicy()));
+        }
+
+        @Override
+        String callHostPlugin(String fn, Map<String, String> args) throws Types.XenAPIException {
+            switch (fn) {
+                case "tpm_get_quote":
+                    quoteCalls++;
+                    if (invalidSessions > 0) {
+                        invalidSessions--;
+                        throw new Types.SessionInvalid("session");
+                    }
+                    return "quote";
+                case "tpm_get_attestation_identity":
+                    aikCalls++;
+                    return "<xentxt:TPM_Attestation_KEY_PEM>" + hostAik + "</xentxt:TPM_Attestation_KEY_PEM>";
+                default:
+                    throw new IllegalArgumentException(fn);
+            }
+        }
+
+        @Override
+        HashMap<String, Pcr> verifyQuote(String aikCertificate, String quote, String nonce, String pcrList) throws SignatureException {
+            verifications++;
+            if (forgedQuote || !aikCertificate.equals(hostAik)) {
+                throw new SignatureException("Quote does not verify with the AIK");
+            }
+            return new HashMap<>();
+        }
+    }
+}
@@ -4,9 +4,7 @@
  */
 package com.intel.mtwilson.feature.dao;
 
-import com.intel.dcsg.cpg.jpa.PersistenceManager;
 import com.intel.mtwilson.My;
-import com.intel.mtwilson.MyPersistenceManager;
 import com.intel.mtwilson.feature.dao.jdbi.FeaturePermissionDAO;
 import java.io.IOException;
 import java.sql.SQLException;
@@ -21,19 +19,16 @@ public class FeatureJdbi {
     public static DataSource ds = null;
     
     synchronized public static void createDataSource() throws IOException {
-        if( ds == null ) {
-            ds = PersistenceManager.createDataSource(MyPersistenceManager.getASDataJpaProperties(My.configuration()));
-       }
+        ds = My.jdbc().dataSource(); // shared pool, see MyJdbc
     }
 
     public static DataSource getDataSource() throws SQLException {        
-        if (ds == null) {
-            try {
-                createDataSource();
-            }
-            catch(IOException e) {
-                throw new SQLException(e);
-            }
+        // always ask MyJdbc because it replaces the pool when the database configuration changes
+        try {
+            createDataSource();
+        }
+        catch(IOException e) {
+            throw new SQLException(e);
         }
         return ds;
     }
@@ -5,6 +5,7 @@
 package com.intel.mtwilson.agent;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.mtwilson.as.data.HostConnectionCache;
 import com.intel.mtwilson.as.data.TblHosts;
 import com.intel.dcsg.cpg.extensions.Extensions;
 import com.intel.dcsg.cpg.extensions.Plugins;
@@ -73,17 +74,19 @@ public class HostAgentFactory {
      */
     public HostAgent getHostAgent(TblHosts host) {
         // debug only
-        try {
-        ObjectMapper mapper = new ObjectMapper();
-//        log.debug("getHostAgent TblHosts: {}", mapper.writeValueAsString(host)); // infinite recursion because of the automatic database links, tblHosts -> tblSamlAssertionCollection -> first item -> tblHosts again
-        log.debug("getHostAgent TblHosts tlsPolicyId: {}", host.getTlsPolicyId());
-        log.debug("getHostAgent TblHosts tlsPolicyDescriptor: {}", mapper.writeValueAsString(host.getTlsPolicyDescriptor()));
-        log.debug("getHostAgent TblHosts tlsPolicyName (deprecated): {}", host.getTlsPolicyName());
-        log.debug("getHostAgent TblHosts tlsKeystore (deprecated): {} bytes", (host.getTlsKeystore()==null?"null":host.getTlsKeystore().length));
-        } catch(Exception e) { log.error("getHostAgent cannot serialize TblHosts" ,e); }
+        if( log.isDebugEnabled() ) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+//                log.debug("getHostAgent TblHosts: {}", mapper.writeValueAsString(host)); // infinite recursion because of the automatic database links, tblHosts -> tblSamlAssertionCollection -> first item -> tblHosts again
+                log.debug("getHostAgent TblHosts tlsPolicyId: {}", host.getTlsPolicyId());
+                log.debug("getHostAgent TblHosts tlsPolicyDescriptor: {}", mapper.writeValueAsString(host.getTlsPolicyDescriptor()));
+                log.debug("getHostAgent TblHosts tlsPolicyName (deprecated): {}", host.getTlsPolicyName());
+                log.debug("getHostAgent TblHosts tlsKeystore (deprecated): {} bytes", (host.getTlsKeystore()==null?"null":host.getTlsKeystore().length));
+            } catch(Exception e) { log.error("getHostAgent cannot serialize TblHosts" ,e); }
+        }
         // debug only
         
-        return getHostAgent(convert(host));
+        return getHostAgent(convert(host), host);
     }
     
     public HostAgent getHostAgent(TxtHostRecord host) {
@@ -94,12 +97,22 @@ public class HostAgentFactory {
 //        } catch(Exception e) { log.error("getHostAgent cannot serialize TxtHostRecord" ,e); }
 //        // debug only
         
+        return getHostAgent(host, null);
+    }
+    
+    /**
+     * 
+     * @param host
+     * @param tblHosts the record the host was converted from, if any, to use its cached connection string
+     * @return 
+     */
+    private HostAgent getHostAgent(TxtHostRecord host, TblHosts tblHosts) {
         String address = host.HostName;
         if( address == null || address.isEmpty() ) { address = host.IPAddress; }
         try {
             
             InternetAddress hostAddress = new InternetAddress(address); // switching from Hostname to InternetAddress (better support for both hostname and ip address)
-            ConnectionString connectionString = ConnectionString.from(host);
+            ConnectionString connectionString = tblHosts == null ? ConnectionString.from(host) : HostConnectionCache.getConnectionString(tblHosts);
             log.debug("Retrieving TLS policy...");
             TlsPolicy tlsPolicy = getTlsPolicy(host);
             log.debug("Creating Host Agent for host: {}" , address);
@@ -165,5 +178,28 @@ public class HostAgentFactory {
         }
         throw new UnsupportedOperationException("No agent factory registered for this host");
     }
-    
+
+    /**
+     * Closes any session that the vendor factory keeps for the host, after
+     * the host was deleted. A failure is only logged because the host is
+     * already gone.
+     *
+     * @param host the deleted host record
+     */
+    public void removeHost(TblHosts host) {
+        try {
+            ConnectionString cs = HostConnectionCache.getConnectionString(host);
+            if( cs == null ) {
+                return;
+            }
+            VendorHostAgentFactory factory = Plugins.findByAttribute(VendorHostAgentFactory.class, "vendorProtocol", cs.getVendor().name().toLowerCase());
+            if( factory instanceof VendorSessionPool ) {
+                ((VendorSessionPool)factory).remove(cs.getConnectionString());
+            }
+        }
+        catch(IOException | RuntimeException e) {
+            log.warn("Cannot close the sessions of deleted host {}", host.getName(), e);
+        }
+    }
+
 }
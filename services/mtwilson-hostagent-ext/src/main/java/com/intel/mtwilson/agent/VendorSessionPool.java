@@ -0,0 +1,20 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent;
+
+/**
+ * Implemented by a VendorHostAgentFactory that keeps logged-in sessions to
+ * its servers after its HostAgent instances are done with them, so that
+ * HostAgentFactory can close them when a host is deleted.
+ */
+public interface VendorSessionPool {
+    /**
+     * Logs out and forgets the session kept for the connection string, if
+     * any.
+     *
+     * @param vendorConnectionString the connection string without the vendor prefix
+     */
+    void remove(String vendorConnectionString);
+}
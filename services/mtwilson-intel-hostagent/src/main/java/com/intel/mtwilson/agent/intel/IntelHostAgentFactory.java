@@ -28,6 +28,9 @@ import org.slf4j.LoggerFactory;
  */
 public class IntelHostAgentFactory implements VendorHostAgentFactory {
     private Logger log = LoggerFactory.getLogger(getClass());
+    protected static TrustAgentClientPool pool = new TrustAgentClientPool(
+            My.configuration().getConfiguration().getInt("mtwilson.trustagent.client.pool.max", TrustAgentClientPool.DEFAULT_MAX_SIZE),
+            My.configuration().getConfiguration().getLong("mtwilson.trustagent.client.pool.idle.ms", TrustAgentClientPool.DEFAULT_MAX_IDLE_MILLISECONDS));
     private String intelVendorConnectionString = "";
     
     @Override
@@ -80,7 +83,7 @@ public class IntelHostAgentFactory implements VendorHostAgentFactory {
                     log.debug("Rewritten intel host url: {}", url.toExternalForm());
                 }
                 
-                TrustAgentClient client = new TrustAgentClient(properties, new TlsConnection(url, tlsPolicy));
+                TrustAgentClient client = pool.getClientForConnection(properties, new TlsConnection(url, tlsPolicy));
                 return new IntelHostAgent2(client, hostAddress);
             }
             else /*if( url.getPort() == 9999 )*/ {
@@ -17,6 +17,7 @@ import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.SignatureException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -52,10 +53,11 @@ import com.intel.mtwilson.model.PcrEventLogFactory;
 import com.intel.mtwilson.model.PcrFactory;
 import com.intel.mtwilson.tls.policy.factory.V1TlsPolicyFactory;
 import com.intel.mtwilson.trustagent.client.jaxrs.TrustAgentClient;
+import com.intel.mtwilson.trustagent.model.BinaryEventLog;
 import com.intel.mtwilson.trustagent.model.HostInfo;
 import com.intel.mtwilson.trustagent.model.TpmQuoteResponse;
 import com.intel.mtwilson.util.exec.EscapeUtil;
-import java.io.StringReader;
+import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
@@ -116,6 +118,13 @@ public class TAHelper {
     private String[] openSourceHostSpecificModules = {"initrd","vmlinuz"};
     private TxtHostRecord host = null;
     boolean isHostWindows = false;
+    private boolean verifyQuoteWithAikqverify = false; // mtwilson.tpm.quote.verifier=aikqverify selects the native command instead of the in-process TpmQuoteVerifier
+    private static final TpmQuoteVerifier tpmQuoteVerifier = new TpmQuoteVerifier();
+    private String eventLogFormat = null; // mtwilson.tpm.quote.eventlog.format=binary requests a BinaryEventLog from v2 trust agents that support it
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
 
 
     public TAHelper(/*EntityManagerFactory entityManagerFactory*/) throws IOException {
@@ -140,23 +149,30 @@ public class TAHelper {
             aikverifyCmd = aikverifyhomeBin + File.separator + config.getString("com.intel.mountwilson.as.aikqverify.cmd", "aikqverify.exe");
         }
         quoteWithIPAddress = My.configuration().getConfiguration().getBoolean("mtwilson.tpm.quote.ipv4", true); // issue #1038
-        boolean foundAllRequiredFiles = true;
-        String required[] = new String[]{aikverifyCmd, aikverifyhomeData};
-        for (String filename : required) {
-            File file = new File(filename);
-            if (!file.exists()) {
-                log.warn(String.format("Invalid service configuration: Cannot find %s", filename));
-                foundAllRequiredFiles = false;
-            }
-        }
-        if (!foundAllRequiredFiles) {
-            throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, "Cannot find aikverify files");
+        if (BinaryEventLog.FORMAT.equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.eventlog.format", "xml"))) {
+            eventLogFormat = BinaryEventLog.FORMAT;
         }
+        // quotes from windows hosts are in the PCP format which only aikqverifywin and aikqverifywin2 understand
+        verifyQuoteWithAikqverify = isHostWindows || "aikqverify".equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.verifier", "java"));
+        if (verifyQuoteWithAikqverify) {
+            boolean foundAllRequiredFiles = true;
+            String required[] = new String[]{aikverifyCmd, aikverifyhomeData};
+            for (String filename : required) {
+                File file = new File(filename);
+                if (!file.exists()) {
+                    log.warn(String.format("Invalid service configuration: Cannot find %s", filename));
+                    foundAllRequiredFiles = false;
+                }
+            }
+            if (!foundAllRequiredFiles) {
+                throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, "Cannot find aikverify files");
+            }
 
-        // we must be able to write to the data folder in order to save certificates, nones, public keys, etc.
-        File datafolder = new File(aikverifyhomeData);
-        if (!datafolder.canWrite()) {
-            throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, String.format(" Cannot write to %s", aikverifyhomeData));
+            // we must be able to write to the data folder in order to save certificates, nones, public keys, etc.
+            File datafolder = new File(aikverifyhomeData);
+            if (!datafolder.canWrite()) {
+                throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, String.format(" Cannot write to %s", aikverifyhomeData));
+            }
         }
 
         //        this.setEntityManagerFactory(entityManagerFactory);
@@ -207,23 +223,30 @@ public class TAHelper {
             aikverifyCmd = aikverifyhomeBin + File.separator + config.getString("com.intel.mountwilson.as.aikqverify.cmd", "aikqverify.exe");
         }
         quoteWithIPAddress = My.configuration().getConfiguration().getBoolean("mtwilson.tpm.quote.ipv4", true); // issue #1038
-        boolean foundAllRequiredFiles = true;
-        String required[] = new String[]{aikverifyCmd, aikverifyhomeData};
-        for (String filename : required) {
-            File file = new File(filename);
-            if (!file.exists()) {
-                log.warn(String.format("Invalid service configuration: Cannot find %s", filename));
-                foundAllRequiredFiles = false;
-            }
-        }
-        if (!foundAllRequiredFiles) {
-            throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, "Cannot find aikverify files");
+        if (BinaryEventLog.FORMAT.equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.eventlog.format", "xml"))) {
+            eventLogFormat = BinaryEventLog.FORMAT;
         }
+        // quotes from windows hosts are in the PCP format which only aikqverifywin and aikqverifywin2 understand
+        verifyQuoteWithAikqverify = isHostWindows || "aikqverify".equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.verifier", "java"));
+        if (verifyQuoteWithAikqverify) {
+            boolean foundAllRequiredFiles = true;
+            String required[] = new String[]{aikverifyCmd, aikverifyhomeData};
+            for (String filename : required) {
+                File file = new File(filename);
+                if (!file.exists()) {
+                    log.warn(String.format("Invalid service configuration: Cannot find %s", filename));
+                    foundAllRequiredFiles = false;
+                }
+            }
+            if (!foundAllRequiredFiles) {
+                throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, "Cannot find aikverify files");
+            }
 
-        // we must be able to write to the data folder in order to save certificates, nones, public keys, etc.
-        File datafolder = new File(aikverifyhomeData);
-        if (!datafolder.canWrite()) {
-            throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, String.format(" Cannot write to %s", aikverifyhomeData));
+            // we must be able to write to the data folder in order to save certificates, nones, public keys, etc.
+            File datafolder = new File(aikverifyhomeData);
+            if (!datafolder.canWrite()) {
+                throw new ASException(ErrorCode.AS_CONFIGURATION_ERROR, String.format(" Cannot write to %s", aikverifyhomeData));
+            }
         }
 
         //        this.setEntityManagerFactory(entityManagerFactory);
@@ -385,10 +408,6 @@ public class TAHelper {
     public PcrManifest getQuoteInformationForHost(String hostname, TrustAgentSecureClient client, Nonce challenge) throws NoSuchAlgorithmException, PropertyException, JAXBException,
             UnknownHostException, IOException, KeyManagementException, CertificateException, XMLStreamException {
         //  BUG #497  START CODE SNIPPET MOVED TO INTEL HOST AGENT
-        File q;
-        File n;
-        File c;
-        File r;
         byte[] nonce;
         if( challenge == null ) {
             nonce = generateNonce(); // 20 random bytes
@@ -408,9 +427,6 @@ public class TAHelper {
             }
             verifyNonce = ByteArray.concat(ByteArray.subarray(nonce, 0, 16), ipaddress);
         }
-        String verifyNonceBase64 = Base64.encodeBase64String(verifyNonce);
-
-        String sessionId = generateSessionId();
 
         // FIrst let us ensure that we have an AIK cert created on the host before trying to retrieve the quote. The trust agent
         // would verify if a AIK is already present or not. If not it will create a new one.
@@ -424,39 +440,26 @@ public class TAHelper {
         String quote = clientRequestType.getQuote();
         log.debug("extracted quote from response: " + quote);
 
-        q = saveQuote(quote, sessionId);
-        log.debug("saved quote with session id: " + sessionId);
-
-        // we only need to save the certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        // we only need to use the host-provided certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        String aikCertificate;
         if (trustedAik == null) {
-            String aikCertificate = clientRequestType.getAikcert();
+            aikCertificate = clientRequestType.getAikcert();
             log.debug("extracted aik cert from response: " + aikCertificate);
-
-            c = saveCertificate(aikCertificate, sessionId);
-            log.debug("saved host-provided AIK certificate with session id: " + sessionId);
         } else {
-            c = saveCertificate(trustedAik, sessionId);
-            log.debug("saved database-provided trusted AIK certificate with session id: " + sessionId);
+            aikCertificate = trustedAik;
         }
 
-        n = saveNonce(verifyNonceBase64, sessionId);
-
-        log.debug("saved nonce with session id: " + sessionId);
-
-        r = createRSAKeyFile(sessionId);
-
-        log.debug("created RSA key file for session id: " + sessionId);
+        PcrManifest pcrManifest = verifyQuote("1.2", Base64.decodeBase64(quote), verifyNonce, aikCertificate);
+        log.info("Got PCR map");
 
         // Verify if there is TCBMeasurement Data. This data would be available if we are extending the root of trust to applications and data on the OS
         String tcbMeasurementString = clientRequestType.getTcbMeasurement();
         log.debug("TCB Measurement XML is {}", tcbMeasurementString);
 
-        log.debug("Event log: {}", clientRequestType.getEventLog()); // issue #879
-        byte[] eventLogBytes = Base64.decodeBase64(clientRequestType.getEventLog());// issue #879
+        byte[] eventLogBytes = clientRequestType.getEventLog() == null ? null : Base64.decodeBase64(clientRequestType.getEventLog());// issue #879
         log.debug("Decoded event log length: {}", eventLogBytes == null ? null : eventLogBytes.length);// issue #879
         if (eventLogBytes != null) { // issue #879
-            String decodedEventLog = new String(eventLogBytes);
-            log.debug("Event log retrieved from the host consists of: " + decodedEventLog);
+            log.trace("Event log retrieved from the host consists of: {}", clientRequestType.getEventLog());
 
             /*
              * Example output:
@@ -467,35 +470,11 @@ public class TAHelper {
              */
 
             // Since we need to add the event log details into the pcrManifest, we will pass in that information to the below function
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, decodedEventLog);
-            log.info("Got PCR map");
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            return pcrManifest;
-        } else {
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, null); // verify the quote but don't add any event log info to the PcrManifest. // issue #879
-            log.info("Got PCR map");
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            return pcrManifest;
+            addPcrEventLogs(pcrManifest, eventLogBytes, null);
         }
-
+        if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
+            pcrManifest.setMeasurementXml(tcbMeasurementString);
+        return pcrManifest;
     }
 
     public PcrManifest getQuoteInformationForHost(String hostname, TrustAgentClient client) throws NoSuchAlgorithmException, PropertyException, JAXBException,
@@ -509,10 +488,6 @@ public class TAHelper {
     public PcrManifest getQuoteInformationForHost(String hostname, TrustAgentClient client, Nonce challenge) throws NoSuchAlgorithmException, PropertyException, JAXBException,
             UnknownHostException, IOException, KeyManagementException, CertificateException, XMLStreamException {
         //  BUG #497  START CODE SNIPPET MOVED TO INTEL HOST AGENT
-        File q;
-        File n;
-        File c;
-        File r;
         byte[] nonce;        
         if( challenge == null ) {
             nonce = generateNonce(); // 20 random bytes
@@ -534,32 +509,24 @@ public class TAHelper {
         }
 //        String verifyNonceBase64 = Base64.encodeBase64String(verifyNonce);
 
-        String sessionId = generateSessionId();
-
         // FIrst let us ensure that we have an AIK cert created on the host before trying to retrieve the quote. The trust agent
         // would verify if a AIK is already present or not. If not it will create a new one.
         trustedAik = X509Util.encodePemCertificate(client.getAik());
 
         // to fix issue #1038 trust agent relay we send 20 random bytes nonce to the host (base64-encoded) but if mtwilson.tpm.quote.ipaddress is enabled then in our copy we replace the last 4 bytes with the host's ip address, and when the host generates the quote it does the same thing, and we can verify it later
         // we select best PCR bank but we will change to all PCR banks once it's supported
-        TpmQuoteResponse tpmQuoteResponse = client.getTpmQuote(nonce, new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23}, host.PcrBanks); // pcrList used to be a comma-separated list passed to this method... but now we are returning a quote with ALL the PCR's ALL THE TIME.
+        TpmQuoteResponse tpmQuoteResponse = client.getTpmQuote(nonce, new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23}, host.PcrBanks, eventLogFormat); // pcrList used to be a comma-separated list passed to this method... but now we are returning a quote with ALL the PCR's ALL THE TIME.
         log.debug("got response from server [" + hostname + "] ");
 
         log.debug("extracted quote from response: {}", Base64.encodeBase64String(tpmQuoteResponse.quote));
 
-        q = saveQuote(tpmQuoteResponse.quote, sessionId);
-        log.debug("saved quote with session id: " + sessionId);
-
-        // we only need to save the certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        // we only need to use the host-provided certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        String aikCertificate;
         if (trustedAik == null) {
-            String aikCertificate = X509Util.encodePemCertificate(tpmQuoteResponse.aik);
+            aikCertificate = X509Util.encodePemCertificate(tpmQuoteResponse.aik);
             log.debug("extracted aik cert from response: " + aikCertificate);
-
-            c = saveCertificate(aikCertificate, sessionId);
-            log.debug("saved host-provided AIK certificate with session id: " + sessionId);
         } else {
-            c = saveCertificate(trustedAik, sessionId);
-            log.debug("saved database-provided trusted AIK certificate with session id: " + sessionId);
+            aikCertificate = trustedAik;
         }
 
         // for Windows host, we generate a new nonce by sha1(nonce | tag)
@@ -568,57 +535,26 @@ public class TAHelper {
             log.debug("tpmQuoteResponse.isTagProvisioned is true");
             verifyNonce = Sha1Digest.digestOf(verifyNonce).extend(tpmQuoteResponse.assetTag).toByteArray();
         }
-        
-        n = saveNonce(verifyNonce, sessionId);
-
-        log.debug("saved nonce with session id: " + sessionId);
-
-        r = createRSAKeyFile(sessionId);
 
-        log.debug("created RSA key file for session id: " + sessionId);
+        PcrManifest pcrManifest = verifyQuote(host == null ? null : host.TpmVersion, tpmQuoteResponse.quote, verifyNonce, aikCertificate);
+        log.info("Got PCR map");
 
         // Verify if there is TCBMeasurement Data. This data would be available if we are extending the root of trust to applications and data on the OS
         String tcbMeasurementString = tpmQuoteResponse.tcbMeasurement;
         log.debug("TCB Measurement XML is {}", tcbMeasurementString);
 
-        log.debug("Event log: {}", tpmQuoteResponse.eventLog); // issue #879
-        byte[] eventLogBytes = Base64.decodeBase64(tpmQuoteResponse.eventLog);// issue #879
-        log.debug("Decoded event log length: {}", eventLogBytes == null ? null : eventLogBytes.length);// issue #879
+        byte[] eventLogBytes = tpmQuoteResponse.eventLog == null ? null : Base64.decodeBase64(tpmQuoteResponse.eventLog);// issue #879
+        log.debug("Decoded event log length: {} format: {}", eventLogBytes == null ? null : eventLogBytes.length, tpmQuoteResponse.eventLogFormat);// issue #879
         if (eventLogBytes != null) { // issue #879
-            String decodedEventLog = new String(eventLogBytes);
-            log.debug("Event log retrieved from the host consists of: " + decodedEventLog);
+            log.trace("Event log retrieved from the host consists of: {}", tpmQuoteResponse.eventLog);
 
             // Since we need to add the event log details into the pcrManifest, we will pass in that information to the below function
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, decodedEventLog);
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-            log.info("Got PCR map");
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            pcrManifest.setProvisionedTag(tpmQuoteResponse.assetTag);
-            return pcrManifest;
-        } else {
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, null); // verify the quote but don't add any event log info to the PcrManifest. // issue #879
-            log.info("Got PCR map");
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            pcrManifest.setProvisionedTag(tpmQuoteResponse.assetTag);
-            return pcrManifest;
+            addPcrEventLogs(pcrManifest, eventLogBytes, tpmQuoteResponse.eventLogFormat);
         }
-
+        if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
+            pcrManifest.setMeasurementXml(tcbMeasurementString);
+        pcrManifest.setProvisionedTag(tpmQuoteResponse.assetTag);
+        return pcrManifest;
     }
 
     // hostName == internetAddress.toString() or Hostname.toString() or IPAddress.toString()
@@ -854,7 +790,50 @@ public class TAHelper {
         return "rsapubkey_" + sessionId + ".key";
     }
 
-    private PcrManifest verifyQuoteAndGetPcr(String sessionId, String eventLog) {
+    /**
+     * Verifies the quote with the in-process {@link TpmQuoteVerifier}, or
+     * with the native aikqverify command when mtwilson.tpm.quote.verifier=aikqverify
+     * or the host is running Windows.
+     *
+     * @param tpmVersion "1.2" or "2.0"
+     * @param quote the quote bytes from the trust agent
+     * @param verifyNonce the nonce the quote must be bound to
+     * @param aikCertificate the AIK certificate in PEM format
+     * @return the verified PCR values
+     */
+    private PcrManifest verifyQuote(String tpmVersion, byte[] quote, byte[] verifyNonce, String aikCertificate) throws IOException, CertificateException, NoSuchAlgorithmException {
+        if (!verifyQuoteWithAikqverify) {
+            X509Certificate aikcert = X509Util.decodePemCertificate(aikCertificate);
+            try {
+                return tpmQuoteVerifier.verifyQuote(tpmVersion, quote, verifyNonce, aikcert.getPublicKey());
+            } catch (SignatureException e) {
+                log.error("Quote verification failed: {}", e.getMessage());
+                throw new ASException(e, ErrorCode.AS_HOST_TRUST_ERROR, e.getMessage());
+            }
+        }
+
+        String sessionId = generateSessionId();
+        File q = saveQuote(quote, sessionId);
+        log.debug("saved quote with session id: " + sessionId);
+        File c = saveCertificate(aikCertificate, sessionId);
+        log.debug("saved AIK certificate with session id: " + sessionId);
+        File n = saveNonce(verifyNonce, sessionId);
+        log.debug("saved nonce with session id: " + sessionId);
+        File r = createRSAKeyFile(sessionId);
+        log.debug("created RSA key file for session id: " + sessionId);
+        try {
+            return verifyQuoteAndGetPcr(sessionId);
+        } finally {
+            if (deleteTemporaryFiles) {
+                q.delete();
+                n.delete();
+                c.delete();
+                r.delete();
+            }
+        }
+    }
+
+    private PcrManifest verifyQuoteAndGetPcr(String sessionId) {
 //        HashMap<String,PcrManifest> pcrMp = new HashMap<String,PcrManifest>();        
         PcrManifest pcrManifest = new PcrManifest();
         log.debug("verifyQuoteAndGetPcr for session {}", sessionId);
@@ -913,6 +892,15 @@ public class TAHelper {
              */
         }
 
+        return pcrManifest;
+    }
+
+    /**
+     * Parses the event log directly from the decoded response bytes, with a
+     * streaming parser for the modules xml or with BinaryEventLog.Reader if
+     * the trust agent returned the binary format.
+     */
+    private void addPcrEventLogs(PcrManifest pcrManifest, byte[] eventLog, String format) {
         // Now that we captured the PCR details, we need to capture the module information also into the PcrManifest object
         // Sample Format:
         // <modules>
@@ -921,12 +909,20 @@ public class TAHelper {
         //<module><pcrNumber>19</pcrNumber><name>vmlinuz</name><value>d3f525b0dc6f7d7c9a3af165bcf6c3e3e02b2599</value></module>
         //<module><pcrNumber>19</pcrNumber><name>initrd</name><value>3dfa5762c78623ccfc778498ab4cb7136bb3f5ab</value></module>
         //</modules>
-        if (eventLog != null) { // issue #879
+        if (eventLog != null && BinaryEventLog.FORMAT.equals(format)) {
             try {
-                XMLInputFactory xif = XMLInputFactory.newInstance();
-                //FileInputStream fis = new FileInputStream("c:\\temp\\nbtest.txt");
-                StringReader sr = new StringReader(eventLog);
-                XMLStreamReader reader = xif.createXMLStreamReader(sr);
+                BinaryEventLog.Reader reader = new BinaryEventLog.Reader(eventLog);
+                while (reader.next()) {
+                    addPcrEventLog(pcrManifest, reader.getPcrIndex(), convertHostTpmEventLogEntryToMeasurement(reader.getName(), reader.getDigest(), reader.getPcrBank()), reader.getPcrBank());
+                }
+            } catch (IOException | IllegalArgumentException ex) {
+                // bug #2171 we need to throw an exception to prevent the host from being registered with an error manifest
+                throw new IllegalStateException("Invalid measurement log", ex);
+            }
+        }
+        else if (eventLog != null) { // issue #879
+            try {
+                XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(eventLog));
 
                 int extendedToPCR = -1;
                 String digestValue = "";
@@ -934,85 +930,94 @@ public class TAHelper {
                 String pcrBank = "SHA1";
 
                 while (reader.hasNext()) {
-                    if (reader.getEventType() == XMLStreamConstants.START_ELEMENT
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
                             && reader.getLocalName().equalsIgnoreCase("module")) {
-                        reader.next();
-                        
-                        if(reader.getLocalName().equalsIgnoreCase("pcrBank")) {
-                            pcrBank = reader.getElementText().toUpperCase();
-                            reader.next();
-                        }                       
-                        
-                        // Get the PCR Number to which the module is extended to
-                        if (reader.getLocalName().equalsIgnoreCase("pcrNumber")) {
-                            extendedToPCR = Integer.parseInt(reader.getElementText());
-                        }
-
-                        reader.next();
-                        // Get the Module name
-                        if (reader.getLocalName().equalsIgnoreCase("name")) {                            
-                            componentName = reader.getElementText();
+                        // the children are pcrBank (optional), pcrNumber, name, and value
+                        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            String element = reader.getLocalName();
+                            if (element.equalsIgnoreCase("pcrBank")) {
+                                pcrBank = reader.getElementText().toUpperCase();
+                            } else if (element.equalsIgnoreCase("pcrNumber")) {
+                                // Get the PCR Number to which the module is extended to
+                                extendedToPCR = Integer.parseInt(reader.getElementText());
+                            } else if (element.equalsIgnoreCase("name")) {
+                                // Get the Module name
+                                componentName = reader.getElementText();
+                            } else if (element.equalsIgnoreCase("value")) {
+                                // Get the Module hash value
+                                digestValue = reader.getElementText();
+                            } else {
+                                reader.getElementText();
+                            }
                         }
 
-                        reader.next();
-                        // Get the Module hash value
-                        if (reader.getLocalName().equalsIgnoreCase("value")) {
-                            digestValue = reader.getElementText();
-                        }                                                
-
-                        log.debug("Process module " + componentName + " getting extended to " + extendedToPCR);
+                        log.trace("Process module {} getting extended to {}", componentName, extendedToPCR);
 
                         // Attach the PcrEvent logs to the corresponding pcr indexes.
                         // Note: Since we will not be processing the even logs for 17 & 18, we will ignore them for now.                        
-                        Measurement m = convertHostTpmEventLogEntryToMeasurement(extendedToPCR, componentName, digestValue, pcrBank);
-                        if (pcrManifest.containsPcrEventLog(pcrBank, PcrIndex.valueOf(extendedToPCR))) {
-                            pcrManifest.getPcrEventLog(pcrBank, extendedToPCR).getEventLog().add(m);
-                        } else {
-                            ArrayList<Measurement> list = new ArrayList<Measurement>();
-                            list.add(m);
-                            pcrManifest.setPcrEventLog(PcrEventLogFactory.newInstance(pcrBank, PcrIndex.valueOf(extendedToPCR), list));
-                        }
+                        addPcrEventLog(pcrManifest, extendedToPCR, convertHostTpmEventLogEntryToMeasurement(componentName, digestValue, pcrBank), pcrBank);
                     }
-                    reader.next();
                 }
+                reader.close();
             } catch (FactoryConfigurationError | XMLStreamException | NumberFormatException ex) {
                 // bug #2171 we need to throw an exception to prevent the host from being registered with an error manifest
                 //log.error(ex.getMessage(), ex);
                 throw new IllegalStateException("Invalid measurement log", ex);
             }
         }
+    }
 
-        return pcrManifest;
-
+    private void addPcrEventLog(PcrManifest pcrManifest, int extendedToPCR, Measurement m, String pcrBank) {
+        if (pcrManifest.containsPcrEventLog(pcrBank, PcrIndex.valueOf(extendedToPCR))) {
+            pcrManifest.getPcrEventLog(pcrBank, extendedToPCR).getEventLog().add(m);
+        } else {
+            ArrayList<Measurement> list = new ArrayList<Measurement>();
+            list.add(m);
+            pcrManifest.setPcrEventLog(PcrEventLogFactory.newInstance(pcrBank, PcrIndex.valueOf(extendedToPCR), list));
+        }
     }
 
     /**
      * Helper method to create the Measurement Object.
      *
-     * @param extendedToPcr
      * @param moduleName
      * @param moduleHash
      * @return
      */
-    private static Measurement convertHostTpmEventLogEntryToMeasurement(int extendedToPcr, String moduleName, String moduleHash, String pcrBank) {
-        HashMap<String, String> info = new HashMap<String, String>();
-        info.put("EventName", "OpenSource.EventName");  // For OpenSource since we do not have any events associated, we are creating a dummy one.
-        // Removing the prefix of "OpenSource" as it is being captured in the event type
-        info.put("ComponentName", moduleName);
-        info.put("PackageName", "");
-        info.put("PackageVendor", "");
-        info.put("PackageVersion", "");
+    private static Measurement convertHostTpmEventLogEntryToMeasurement(String moduleName, String moduleHash, String pcrBank) {
+        DigestAlgorithm da = DigestAlgorithm.valueOf(pcrBank);        
+        switch(da) {
+            case SHA1:
+                return new MeasurementSha1(new Sha1Digest(moduleHash), moduleName, createEventLogEntryInfo(moduleName));                
+            case SHA256:                
+                return new MeasurementSha256(new Sha256Digest(moduleHash), moduleName, createEventLogEntryInfo(moduleName));                
+            default:
+                throw new UnsupportedOperationException("PCRBank: " + pcrBank + " not supported");
+        }        
+    }
 
+    private static Measurement convertHostTpmEventLogEntryToMeasurement(String moduleName, byte[] moduleHash, String pcrBank) {
         DigestAlgorithm da = DigestAlgorithm.valueOf(pcrBank);        
         switch(da) {
             case SHA1:
-                return new MeasurementSha1(new Sha1Digest(moduleHash), moduleName, info);                
+                return new MeasurementSha1(new Sha1Digest(moduleHash), moduleName, createEventLogEntryInfo(moduleName));                
             case SHA256:                
-                return new MeasurementSha256(new Sha256Digest(moduleHash), moduleName, info);                
+                return new MeasurementSha256(new Sha256Digest(moduleHash), moduleName, createEventLogEntryInfo(moduleName));                
             default:
                 throw new UnsupportedOperationException("PCRBank: " + pcrBank + " not supported");
         }        
     }
+
+    private static HashMap<String, String> createEventLogEntryInfo(String moduleName) {
+        HashMap<String, String> info = new HashMap<String, String>(8);
+        info.put("EventName", "OpenSource.EventName");  // For OpenSource since we do not have any events associated, we are creating a dummy one.
+        // Removing the prefix of "OpenSource" as it is being captured in the event type
+        info.put("ComponentName", moduleName);
+        info.put("PackageName", "");
+        info.put("PackageVendor", "");
+        info.put("PackageVersion", "");
+        return info;
+    }
     /*
      public EntityManagerFactory getEntityManagerFactory() {
      return entityManagerFactory;
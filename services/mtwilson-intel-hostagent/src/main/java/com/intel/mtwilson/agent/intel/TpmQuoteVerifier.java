@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.intel;
+
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.mtwilson.model.PcrFactory;
+import com.intel.mtwilson.model.PcrIndex;
+import com.intel.mtwilson.model.PcrManifest;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies TPM quotes in memory and returns the quoted PCR values. This is
+ * the Java equivalent of the native aikqverify (TPM 1.2) and aikqverify2
+ * (TPM 2.0) commands used for Linux hosts, without writing the quote, nonce
+ * and public key to temporary files or forking a process.
+ *
+ * TPM 1.2 quote format (produced by aikquote on the trust agent):
+ * <pre>
+ * UINT16 selectLen | BYTE[selectLen] pcrSelect | UINT32 pcrLen | BYTE[pcrLen] pcrValues | BYTE[] signature
+ * </pre>
+ * The signature is over a TPM_QUOTE_INFO structure containing the SHA1 of
+ * the composite (everything before the signature) and the SHA1 of the
+ * challenge.
+ *
+ * TPM 2.0 quote format (tpm2_quote output followed by tpm2_listpcrs output):
+ * <pre>
+ * TPM2B_ATTEST quoted | TPMT_SIGNATURE signature | BYTE[] pcrValues
+ * </pre>
+ * The size of the TPM2B_ATTEST and the sigAlg, hashAlg and size fields of
+ * the TPMT_SIGNATURE are in little-endian host order, as written by
+ * tpm2_quote; the TPMS_ATTEST structure itself is in network order.
+ * The PCR values are the concatenated digests of the selected PCRs in
+ * selection order; their digest must match the pcrDigest in the signed
+ * TPMS_QUOTE_INFO.
+ *
+ * Instances are stateless and thread-safe.
+ */
+public class TpmQuoteVerifier {
+
+    private static final Logger log = LoggerFactory.getLogger(TpmQuoteVerifier.class);
+    private static final byte[] TPM12_QUOTE_INFO_HEADER = new byte[]{1, 1, 0, 0, 'Q', 'U', 'O', 'T'};
+    private static final int TPM2_GENERATED_VALUE = 0xff544347;
+    private static final short TPM2_ST_ATTEST_QUOTE = (short) 0x8018;
+    private static final short TPM2_ALG_SHA1 = 0x0004;
+    private static final short TPM2_ALG_SHA256 = 0x000B;
+    private static final short TPM2_ALG_RSASSA = 0x0014;
+
+    /**
+     * Dispatches to the TPM 1.2 or TPM 2.0 verifier.
+     *
+     * @param tpmVersion "1.2" or "2.0"; null is treated as "1.2"
+     * @param quote the quote as returned by the trust agent
+     * @param challenge the nonce the quote must be bound to
+     * @param aikPublicKey the AIK public key of the host
+     * @return a PcrManifest containing all quoted PCR values
+     * @throws SignatureException if the quote signature or nonce does not verify
+     */
+    public PcrManifest verifyQuote(String tpmVersion, byte[] quote, byte[] challenge, PublicKey aikPublicKey) throws SignatureException {
+        if ("2.0".equals(tpmVersion)) {
+            return verifyTpm20Quote(quote, challenge, aikPublicKey);
+        }
+        return verifyTpm12Quote(quote, challenge, aikPublicKey);
+    }
+
+    /**
+     *
+     * @param quote
+     * @param challenge the nonce file content; like aikqverify its SHA1 is the external data of the quote; if null, 20 zero bytes are used
+     * @param aikPublicKey
+     * @return a PcrManifest containing the SHA1 bank PCR values from the quote
+     * @throws SignatureException if the quote signature does not verify
+     */
+    public PcrManifest verifyTpm12Quote(byte[] quote, byte[] challenge, PublicKey aikPublicKey) throws SignatureException {
+        if (quote == null || quote.length < 2) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(quote); // big-endian by default, same as ntohs/ntohl
+        int selectLen = buffer.getShort() & 0xffff;
+        if (2 + selectLen + 4 > quote.length) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        byte[] select = new byte[selectLen];
+        buffer.get(select);
+        long pcrLen = buffer.getInt() & 0xffffffffL;
+        if (2 + selectLen + 4 + pcrLen + 20 > quote.length) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        int compositeLength = 2 + selectLen + 4 + (int) pcrLen;
+        int pcrOffset = 2 + selectLen + 4;
+
+        MessageDigest sha1 = getMessageDigest("SHA-1");
+        byte[] challengeDigest = challenge == null ? new byte[20] : sha1.digest(challenge);
+        sha1.update(quote, 0, compositeLength);
+        byte[] compositeDigest = sha1.digest();
+        byte[] quoteInfo = new byte[TPM12_QUOTE_INFO_HEADER.length + 20 + 20];
+        System.arraycopy(TPM12_QUOTE_INFO_HEADER, 0, quoteInfo, 0, TPM12_QUOTE_INFO_HEADER.length);
+        System.arraycopy(compositeDigest, 0, quoteInfo, TPM12_QUOTE_INFO_HEADER.length, 20);
+        System.arraycopy(challengeDigest, 0, quoteInfo, TPM12_QUOTE_INFO_HEADER.length + 20, 20);
+
+        if (!verifyRsaSignature("SHA1withRSA", aikPublicKey, quoteInfo, 0, quoteInfo.length, quote, compositeLength, quote.length - compositeLength)) {
+            throw new SignatureException("Bad RSA signature in quote");
+        }
+
+        PcrManifest pcrManifest = new PcrManifest();
+        int pcri = 0;
+        for (int pcr = 0; pcr < 8 * selectLen; pcr++) {
+            if ((select[pcr / 8] & (1 << (pcr % 8))) != 0) {
+                int offset = pcrOffset + 20 * pcri;
+                if (offset + 20 > compositeLength) {
+                    throw new IllegalArgumentException("Input AIK quote incorrect format");
+                }
+                setPcr(pcrManifest, DigestAlgorithm.SHA1, pcr, quote, offset, 20);
+                pcri++;
+            }
+        }
+        return pcrManifest;
+    }
+
+    /**
+     *
+     * @param quote
+     * @param challenge must equal the extraData (qualifying data) of the quote
+     * @param aikPublicKey
+     * @return a PcrManifest containing the PCR values of every quoted bank
+     * @throws SignatureException if the quote signature, the nonce, or the PCR digest does not verify
+     */
+    public PcrManifest verifyTpm20Quote(byte[] quote, byte[] challenge, PublicKey aikPublicKey) throws SignatureException {
+        if (quote == null) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(quote);
+            // tpm2_quote writes the sizes and algorithms outside of TPMS_ATTEST in host (little-endian) order
+            int attestLength = getShortLittleEndian(buffer) & 0xffff;
+            int attestOffset = buffer.position();
+            // TPMS_ATTEST
+            if (buffer.getInt() != TPM2_GENERATED_VALUE || buffer.getShort() != TPM2_ST_ATTEST_QUOTE) {
+                throw new IllegalArgumentException("Input AIK quote is not a TPM 2.0 quote");
+            }
+            skipSized(buffer); // qualifiedSigner
+            byte[] extraData = readSized(buffer);
+            buffer.position(buffer.position() + 17 + 8); // clockInfo, firmwareVersion
+            // TPMS_QUOTE_INFO
+            int bankCount = buffer.getInt();
+            if (bankCount < 0 || bankCount > 16) {
+                throw new IllegalArgumentException("Input AIK quote incorrect format");
+            }
+            List<short[]> selections = new ArrayList<>(); // each entry is { hashAlg, pcrIndex }
+            for (int i = 0; i < bankCount; i++) {
+                short hashAlg = buffer.getShort();
+                int sizeOfSelect = buffer.get() & 0xff;
+                byte[] pcrSelect = new byte[sizeOfSelect];
+                buffer.get(pcrSelect);
+                for (int pcr = 0; pcr < 8 * sizeOfSelect; pcr++) {
+                    if ((pcrSelect[pcr / 8] & (1 << (pcr % 8))) != 0) {
+                        selections.add(new short[]{hashAlg, (short) pcr});
+                    }
+                }
+            }
+            byte[] pcrDigest = readSized(buffer);
+            if (buffer.position() != attestOffset + attestLength) {
+                throw new IllegalArgumentException("Input AIK quote incorrect format");
+            }
+            // TPMT_SIGNATURE
+            short sigAlg = getShortLittleEndian(buffer);
+            short sigHashAlg = getShortLittleEndian(buffer);
+            int signatureLength = getShortLittleEndian(buffer) & 0xffff;
+            int signatureOffset = buffer.position();
+            buffer.position(signatureOffset + signatureLength);
+            if (sigAlg != TPM2_ALG_RSASSA) {
+                throw new IllegalArgumentException(String.format("Unsupported quote signature algorithm: 0x%04x", sigAlg));
+            }
+            DigestAlgorithm signatureDigestAlgorithm = toDigestAlgorithm(sigHashAlg);
+
+            if (!verifyRsaSignature(signatureDigestAlgorithm == DigestAlgorithm.SHA1 ? "SHA1withRSA" : "SHA256withRSA", aikPublicKey, quote, attestOffset, attestLength, quote, signatureOffset, signatureLength)) {
+                throw new SignatureException("Bad RSA signature in quote");
+            }
+            if (challenge == null || !MessageDigest.isEqual(challenge, extraData)) {
+                throw new SignatureException("Quote nonce does not match challenge");
+            }
+
+            // the pcr values follow the signature in selection order
+            int pcrValuesOffset = buffer.position();
+            MessageDigest pcrDigestCalculator = getMessageDigest(signatureDigestAlgorithm == DigestAlgorithm.SHA1 ? "SHA-1" : "SHA-256");
+            PcrManifest pcrManifest = new PcrManifest();
+            int offset = pcrValuesOffset;
+            for (short[] selection : selections) {
+                DigestAlgorithm bank = toDigestAlgorithm(selection[0]);
+                int length = bank == DigestAlgorithm.SHA1 ? 20 : 32;
+                if (offset + length > quote.length) {
+                    throw new IllegalArgumentException("Input AIK quote is missing PCR values");
+                }
+                pcrDigestCalculator.update(quote, offset, length);
+                setPcr(pcrManifest, bank, selection[1], quote, offset, length);
+                offset += length;
+            }
+            if (!MessageDigest.isEqual(pcrDigest, pcrDigestCalculator.digest())) {
+                throw new SignatureException("PCR values do not match quoted PCR digest");
+            }
+            return pcrManifest;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format", e);
+        }
+    }
+
+    private static short getShortLittleEndian(ByteBuffer buffer) {
+        return Short.reverseBytes(buffer.getShort());
+    }
+
+    private void setPcr(PcrManifest pcrManifest, DigestAlgorithm bank, int pcr, byte[] source, int offset, int length) {
+        byte[] value = new byte[length];
+        System.arraycopy(source, offset, value, 0, length);
+        if (log.isDebugEnabled()) {
+            log.debug("Result PCR {} {}: {}", bank, pcr, Hex.encodeHexString(value));
+        }
+        pcrManifest.setPcr(PcrFactory.newInstance(bank, PcrIndex.valueOf(pcr), value));
+    }
+
+    private static DigestAlgorithm toDigestAlgorithm(short tpmAlgorithmId) {
+        switch (tpmAlgorithmId) {
+            case TPM2_ALG_SHA1:
+                return DigestAlgorithm.SHA1;
+            case TPM2_ALG_SHA256:
+                return DigestAlgorithm.SHA256;
+            default:
+                throw new IllegalArgumentException(String.format("Unsupported PCR bank: 0x%04x", tpmAlgorithmId));
+        }
+    }
+
+    private static byte[] readSized(ByteBuffer buffer) {
+        int size = buffer.getShort() & 0xffff;
+        byte[] data = new byte[size];
+        buffer.get(data);
+        return data;
+    }
+
+    private static void skipSized(ByteBuffer buffer) {
+        int size = buffer.getShort() & 0xffff;
+        buffer.position(buffer.position() + size);
+    }
+
+    private static boolean verifyRsaSignature(String algorithm, PublicKey publicKey, byte[] data, int dataOffset, int dataLength, byte[] signature, int signatureOffset, int signatureLength) {
+        try {
+            Signature rsa = Signature.getInstance(algorithm);
+            rsa.initVerify(publicKey);
+            rsa.update(data, dataOffset, dataLength);
+            return rsa.verify(signature, signatureOffset, signatureLength);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (InvalidKeyException | SignatureException e) {
+            log.debug("Cannot verify quote signature: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static MessageDigest getMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.intel;
+
+import com.intel.dcsg.cpg.tls.policy.TlsConnection;
+import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
+import com.intel.mtwilson.trustagent.client.jaxrs.TrustAgentClient;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps one TrustAgentClient per trust agent so that repeated attestations
+ * of the same host re-use its HTTP connections and TLS sessions instead of
+ * performing a full handshake every time.
+ *
+ * Clients are keyed by the trust agent URL and login. A pooled client is only
+ * returned when it was created with the same TlsPolicy instance as the
+ * caller's connection; TlsPolicyFactory returns the same instance for the
+ * same effective policy, so when the TLS policy record of the host changes
+ * the old client is evicted and a new one is created with the new policy.
+ *
+ * The pool is bounded: when it is full the least recently used client is
+ * evicted, and clients that have been idle for longer than the idle timeout
+ * are evicted when they are next requested. An evicted client is closed to
+ * release its connections.
+ *
+ * See also VMwareConnectionPool
+ */
+public class TrustAgentClientPool {
+    private Logger log = LoggerFactory.getLogger(getClass());
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_MAX_IDLE_MILLISECONDS = 300000L; // 5 minutes
+    private final int maxSize;
+    private final long maxIdleMilliseconds;
+    private final LinkedHashMap<String,PooledClient> pool;
+
+    public TrustAgentClientPool() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_IDLE_MILLISECONDS);
+    }
+
+    public TrustAgentClientPool(int maxSize, long maxIdleMilliseconds) {
+        this.maxSize = maxSize;
+        this.maxIdleMilliseconds = maxIdleMilliseconds;
+        this.pool = new LinkedHashMap<String,PooledClient>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,PooledClient> eldest) {
+                if( size() > TrustAgentClientPool.this.maxSize ) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static class PooledClient {
+        private final TrustAgentClient client;
+        private final TlsPolicy tlsPolicy;
+        private final String password;
+        private long lastAccess;
+
+        public PooledClient(TrustAgentClient client, TlsPolicy tlsPolicy, String password) {
+            this.client = client;
+            this.tlsPolicy = tlsPolicy;
+            this.password = password;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    private void close(PooledClient pooled) {
+        try {
+            pooled.client.getClient().close();
+        }
+        catch(RuntimeException e) {
+            log.debug("Cannot close trust agent client: {}", e.toString());
+        }
+    }
+
+    private String key(TlsConnection tlsConnection, Properties properties) {
+        return tlsConnection.getURL().toExternalForm() + "#" + properties.getProperty("mtwilson.api.username", "");
+    }
+
+    /**
+     * If a client is already open for the given connection and credentials,
+     * and it was created with the same TLS policy, it will be returned.
+     * Otherwise, a new client is created and added to the pool, replacing
+     * any previous client for the same trust agent.
+     *
+     * @param properties with the trust agent login mtwilson.api.username and mtwilson.api.password
+     * @param tlsConnection
+     * @return
+     * @throws Exception if the client cannot be created
+     */
+    public TrustAgentClient getClientForConnection(Properties properties, TlsConnection tlsConnection) throws Exception {
+        String key = key(tlsConnection, properties);
+        String password = properties.getProperty("mtwilson.api.password", "");
+        long now = System.currentTimeMillis();
+        synchronized(pool) {
+            PooledClient pooled = pool.get(key);
+            if( pooled != null ) {
+                if( pooled.tlsPolicy == tlsConnection.getTlsPolicy() && pooled.password.equals(password) && now - pooled.lastAccess <= maxIdleMilliseconds ) {
+                    log.debug("Reusing trust agent client for {}", tlsConnection.getURL().getHost());
+                    pooled.lastAccess = now;
+                    return pooled.client;
+                }
+                log.debug("Evicting stale trust agent client for {}", tlsConnection.getURL().getHost());
+                pool.remove(key);
+                close(pooled);
+            }
+        }
+        // create the client outside the lock; if two threads race for the same host the last one wins and the other client is closed
+        TrustAgentClient client = new TrustAgentClient(properties, tlsConnection);
+        synchronized(pool) {
+            PooledClient replaced = pool.put(key, new PooledClient(client, tlsConnection.getTlsPolicy(), password));
+            if( replaced != null ) {
+                close(replaced);
+            }
+        }
+        log.debug("Created trust agent client for {}", tlsConnection.getURL().getHost());
+        return client;
+    }
+
+    public void close() {
+        synchronized(pool) {
+            for(PooledClient pooled : pool.values()) {
+                close(pooled);
+            }
+            pool.clear();
+        }
+    }
+
+    public int size() {
+        synchronized(pool) {
+            return pool.size();
+        }
+    }
+}
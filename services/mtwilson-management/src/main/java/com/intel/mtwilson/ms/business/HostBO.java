@@ -12,6 +12,7 @@ import com.intel.dcsg.cpg.io.UUID;
 import com.intel.mtwilson.*;
 import com.intel.mtwilson.agent.*;
 import com.intel.mtwilson.api.*;
+import com.intel.mtwilson.as.controller.MleVersion;
 import com.intel.mtwilson.as.controller.MwProcessorMappingJpaController;
 import com.intel.mtwilson.as.controller.TblHostsJpaController;
 import com.intel.mtwilson.as.controller.TblLocationPcrJpaController;
@@ -1391,6 +1392,7 @@ public class HostBO {
                     mxJpa.edit(measurementXml);
                     log.debug("Succesfully updated the measurement xml log for Mle {}", tblMleObj.getName());
                 }
+                MleVersion.increment(tblMleObj.getId());
             }
         } catch (MSException me) {
             log.error("Error during measurement xml log configuration. " + me.getErrorCode() + " :" + me.getErrorMessage());
@@ -1484,6 +1486,7 @@ public class HostBO {
                             }
                             My.jpa().mwModuleManifest().destroy(moduleObj.getId());
                         }
+                        MleVersion.increment(tblMle.getId());
                     }
                 }
 
@@ -39,8 +39,9 @@ public class EndorseTpm implements Callable<X509Certificate> {
         String EndorsementP12Pass = My.configuration().getPrivacyCaEndorsementPassword();
         File TpmEndorsmentP12 = My.configuration().getPrivacyCaEndorsementP12();
         Integer validityDays = My.configuration().getPrivacyCaEndorsementValidityDays();
-        RSAPrivateKey cakey = TpmUtils.privKeyFromP12(TpmEndorsmentP12.getAbsolutePath(), EndorsementP12Pass);
-        X509Certificate cacert = TpmUtils.certFromP12(TpmEndorsmentP12.getAbsolutePath(), EndorsementP12Pass);
+        PrivacyCaCredential endorsementCa = PrivacyCaCredential.load(TpmEndorsmentP12, EndorsementP12Pass);
+        RSAPrivateKey cakey = endorsementCa.getPrivateKey();
+        X509Certificate cacert = endorsementCa.getCertificate();
         X509Certificate ekcert = TpmUtils.makeEkCert(ekModulus, cakey, cacert, validityDays);
         log.info("Endorsed EK sha1 {} serial {}", TpmUtils.sha1hash(ekcert.getEncoded()), ekcert.getSerialNumber());
         return ekcert;
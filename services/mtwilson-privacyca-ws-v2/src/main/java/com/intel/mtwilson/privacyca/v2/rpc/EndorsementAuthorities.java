@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import com.intel.dcsg.cpg.x509.X509Util;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
+
+/**
+ * The trusted endorsement CA certificates, indexed by subject key identifier
+ * and by subject DN.
+ *
+ * The PEM file is parsed once and then kept in memory. It is parsed again
+ * when its size or modification time changes, so adding a CA to the file
+ * does not require a restart.
+ */
+public class EndorsementAuthorities {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(EndorsementAuthorities.class);
+    private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35";
+    private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+    private static final Object lock = new Object();
+    private static volatile EndorsementAuthorities current = null;
+    private final String path;
+    private final long lastModified;
+    private final long length;
+    private final List<X509Certificate> authorities;
+    private final Map<String, List<X509Certificate>> bySubject = new HashMap<>();
+    private final Map<String, List<X509Certificate>> byKeyIdentifier = new HashMap<>();
+
+    private EndorsementAuthorities(String path, long lastModified, long length, List<X509Certificate> authorities) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.authorities = Collections.unmodifiableList(authorities);
+        for (X509Certificate authority : authorities) {
+            log.debug("Adding issuer {}", authority.getSubjectX500Principal().getName());
+            add(bySubject, authority.getSubjectDN().getName(), authority);
+            String keyIdentifier = getSubjectKeyIdentifier(authority);
+            if (keyIdentifier != null) {
+                add(byKeyIdentifier, keyIdentifier, authority);
+            }
+        }
+    }
+
+    private static void add(Map<String, List<X509Certificate>> index, String key, X509Certificate authority) {
+        List<X509Certificate> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            index.put(key, list);
+        }
+        list.add(authority);
+    }
+
+    private boolean isCurrent(File file) {
+        return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified() && length == file.length();
+    }
+
+    public List<X509Certificate> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     *
+     * @param ekCacertsPemFile
+     * @return the endorsement CA certificates in the file, parsed again only if the file changed
+     * @throws IOException
+     * @throws CertificateException
+     */
+    public static EndorsementAuthorities load(File ekCacertsPemFile) throws IOException, CertificateException {
+        EndorsementAuthorities authorities = current;
+        if (authorities != null && authorities.isCurrent(ekCacertsPemFile)) {
+            return authorities;
+        }
+        synchronized (lock) {
+            authorities = current;
+            if (authorities != null && authorities.isCurrent(ekCacertsPemFile)) {
+                return authorities;
+            }
+            long lastModified = ekCacertsPemFile.lastModified();
+            long length = ekCacertsPemFile.length();
+            try (FileInputStream in = new FileInputStream(ekCacertsPemFile)) {
+                String ekCacertsPem = IOUtils.toString(in); // throws IOException
+                List<X509Certificate> ekCacerts = X509Util.decodePemCertificates(ekCacertsPem); // throws CertificateException
+                authorities = new EndorsementAuthorities(ekCacertsPemFile.getAbsolutePath(), lastModified, length, ekCacerts);
+            }
+            log.debug("Loaded {} endorsement authorities from {}", authorities.authorities.size(), ekCacertsPemFile.getAbsolutePath());
+            current = authorities;
+            return authorities;
+        }
+    }
+
+    /**
+     * Looks up the issuer of the EK certificate by its authority key
+     * identifier and then by its issuer DN. Only if neither lookup finds a
+     * candidate is the signature checked against every authority.
+     *
+     * @param ekCert
+     * @return the authority that signed the EK certificate, or null if it was not signed by any of the authorities
+     */
+    public X509Certificate findIssuer(X509Certificate ekCert) {
+        boolean candidates = false;
+        String keyIdentifier = getAuthorityKeyIdentifier(ekCert);
+        if (keyIdentifier != null && byKeyIdentifier.containsKey(keyIdentifier)) {
+            candidates = true;
+            X509Certificate issuer = findVerifyingAuthority(ekCert, byKeyIdentifier.get(keyIdentifier));
+            if (issuer != null) {
+                return issuer;
+            }
+        }
+        String issuerName = ekCert.getIssuerDN().getName().replaceAll("\\x00", "");
+        if (bySubject.containsKey(issuerName)) {
+            candidates = true;
+            X509Certificate issuer = findVerifyingAuthority(ekCert, bySubject.get(issuerName));
+            if (issuer != null) {
+                return issuer;
+            }
+        }
+        if (candidates) {
+            return null;
+        }
+        return findVerifyingAuthority(ekCert, authorities);
+    }
+
+    private X509Certificate findVerifyingAuthority(X509Certificate ekCert, List<X509Certificate> candidates) {
+        for (X509Certificate authority : candidates) {
+            try {
+                ekCert.verify(authority.getPublicKey()); // throws SignatureException
+                log.debug("Verified EC with authority: {}", authority.getSubjectX500Principal().getName());
+                return authority;
+            } catch (Exception e) {
+                log.debug("Failed to verify EC with authority {}: {}", authority.getSubjectX500Principal().getName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static String getAuthorityKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID);
+        if (extension == null) {
+            return null;
+        }
+        try {
+            byte[] keyIdentifier = new AuthorityKeyIdentifierStructure(extension).getKeyIdentifier();
+            return keyIdentifier == null ? null : Hex.encodeHexString(keyIdentifier);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cannot read authority key identifier of {}: {}", certificate.getSubjectX500Principal().getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static String getSubjectKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+        if (extension == null) {
+            return null;
+        }
+        try {
+            byte[] keyIdentifier = new SubjectKeyIdentifierStructure(extension).getKeyIdentifier();
+            return keyIdentifier == null ? null : Hex.encodeHexString(keyIdentifier);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cannot read subject key identifier of {}: {}", certificate.getSubjectX500Principal().getName(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EK certificates found in mw_tpm_endorsement, by certificate SHA-256, so
+ * mass AIK provisioning does not query the table for every request.
+ *
+ * Only registered certificates are cached, so a certificate that is
+ * registered after a rejected request is accepted on the next one. Entries
+ * expire so that certificates removed from the table are rejected again.
+ */
+public class EndorsementRegistrations {
+    private final ConcurrentHashMap<String, Long> registered = new ConcurrentHashMap<>(); // expiry time by certificate SHA-256
+    private final int maxEntries;
+
+    public EndorsementRegistrations(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * @param sha256 of the EK certificate
+     * @param now current time in milliseconds
+     * @return true if the certificate was cached as registered and the entry has not expired
+     */
+    public boolean isRegistered(String sha256, long now) {
+        Long expires = registered.get(sha256);
+        if (expires == null) {
+            return false;
+        }
+        if (expires > now) {
+            return true;
+        }
+        registered.remove(sha256, expires);
+        return false;
+    }
+
+    /**
+     *
+     * @param sha256 of an EK certificate that was found in mw_tpm_endorsement
+     * @param expires time in milliseconds after which the table must be checked again
+     * @param now current time in milliseconds
+     */
+    public void add(String sha256, long expires, long now) {
+        if (registered.size() >= maxEntries) {
+            for (Map.Entry<String, Long> entry : registered.entrySet()) {
+                if (entry.getValue() <= now) {
+                    registered.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            if (registered.size() >= maxEntries) {
+                registered.clear();
+            }
+        }
+        registered.put(sha256, expires);
+    }
+
+    public int size() {
+        return registered.size();
+    }
+}
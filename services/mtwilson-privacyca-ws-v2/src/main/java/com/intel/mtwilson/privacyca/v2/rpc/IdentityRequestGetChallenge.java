@@ -4,7 +4,7 @@
  */
 package com.intel.mtwilson.privacyca.v2.rpc;
 
-import com.intel.dcsg.cpg.x509.X509Util;
+import com.intel.dcsg.cpg.crypto.Sha256Digest;
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.launcher.ws.ext.RPC;
 import com.intel.mtwilson.privacyca.v2.model.IdentityChallenge;
@@ -22,8 +22,6 @@ import gov.niarl.his.privacyca.TpmSymmetricKey;
 import gov.niarl.his.privacyca.TpmUtils;
 import gov.niarl.his.privacyca.TpmUtils.TpmUnsignedConversionException;
 import java.io.File;
-import java.util.List;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
@@ -34,14 +32,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.PublicKey;
 import java.security.SignatureException;
-import java.security.cert.CertificateException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -101,35 +97,23 @@ public class IdentityRequestGetChallenge implements Callable<IdentityChallenge>
         return endorsementCertificate;
     }
 
-    private Map<String, X509Certificate> getEndorsementCertificates() throws IOException, CertificateException {
-        Map<String, X509Certificate> endorsementCerts = new HashMap<>();
-        File ekCacertsPemFile = My.configuration().getPrivacyCaEndorsementCacertsFile();
-        try (FileInputStream in = new FileInputStream(ekCacertsPemFile)) {
-            String ekCacertsPem = IOUtils.toString(in); // throws IOException
-            List<X509Certificate> ekCacerts = X509Util.decodePemCertificates(ekCacertsPem); // throws CertificateException
-            for (X509Certificate ekCacert : ekCacerts) {
-                log.debug("Adding issuer {}", ekCacert.getSubjectX500Principal().getName());
-                endorsementCerts.put(ekCacert.getSubjectDN().getName(), ekCacert);
-            }
-        }
-        return endorsementCerts;
-    }
+    private static final EndorsementRegistrations registrations = new EndorsementRegistrations(10000);
 
     @Override
     @RequiresPermissions("host_aiks:certify")
     public IdentityChallenge call() throws Exception {
         log.debug("PrivacyCA.p12: {}", My.configuration().getPrivacyCaIdentityP12().getAbsolutePath());
-        RSAPrivateKey caPrivKey = TpmUtils.privKeyFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
-        X509Certificate caPubCert = TpmUtils.certFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
+        PrivacyCaCredential privacyCa = PrivacyCaCredential.load(My.configuration().getPrivacyCaIdentityP12(), My.configuration().getPrivacyCaIdentityPassword());
+        RSAPrivateKey caPrivKey = privacyCa.getPrivateKey();
+        X509Certificate caPubCert = privacyCa.getCertificate();
 
         // load the trusted ek cacerts
-        Map<String, X509Certificate> endorsementCerts = getEndorsementCertificates();
+        EndorsementAuthorities endorsementAuthorities = EndorsementAuthorities.load(My.configuration().getPrivacyCaEndorsementCacertsFile());
 
         TpmIdentityRequest tempEC = new TpmIdentityRequest(endorsementCertificate);
         X509Certificate ekCert = TpmUtils.certFromBytes(tempEC.decryptRaw(caPrivKey));
         log.debug("Validating endorsement certificate");
-        if (!isEkCertificateVerifiedByAuthority(ekCert, endorsementCerts.get(ekCert.getIssuerDN().getName().replaceAll("\\x00", "")))
-                && !isEkCertificateVerifiedByAnyAuthority(ekCert, endorsementCerts.values())
+        if (endorsementAuthorities.findIssuer(ekCert) == null
                 && !isEkCertificateRegistered(ekCert)) {
             // cannot trust the EC because it's not signed by any of our trusted EC CAs and is not in the mw_tpm_ec table
             log.debug("EC is not trusted");
@@ -343,38 +327,23 @@ public class IdentityRequestGetChallenge implements Callable<IdentityChallenge>
         return null;
     }
 
-    private boolean isEkCertificateVerifiedByAuthority(X509Certificate ekCert, X509Certificate authority) {
-        if (authority != null) {
-            try {
-                ekCert.verify(authority.getPublicKey()); // throws SignatureException
-                return true;
-            } catch (Exception e) {
-                log.debug("Failed to verify EC using CA {}: {}", ekCert.getIssuerDN().getName().replaceAll("\\x00", ""), e.getMessage());
-            }
-        }
-        return false;
-    }
-
-    private boolean isEkCertificateVerifiedByAnyAuthority(X509Certificate ekCert, Collection<X509Certificate> authorities) {
-        for (X509Certificate authority : authorities) {
-            try {
-                ekCert.verify(authority.getPublicKey()); // throws SignatureException
-                log.debug("Verified EC with authority: {}", authority.getSubjectX500Principal().getName());
-                return true;
-            } catch (Exception e) {
-                log.debug("Failed to verify EC with authority: {}", authority.getSubjectX500Principal().getName());
-            }
+    private boolean isEkCertificateRegistered(X509Certificate ekCert) throws CertificateEncodingException {
+        String sha256 = Sha256Digest.digestOf(ekCert.getEncoded()).toHexString();
+        long now = System.currentTimeMillis();
+        if (registrations.isRegistered(sha256, now)) {
+            log.debug("EC registration is cached");
+            return true;
         }
-        return false;
-    }
-
-    private boolean isEkCertificateRegistered(X509Certificate ekCert) {
         try (TpmEndorsementDAO dao = TpmEndorsementJdbiFactory.tpmEndorsementDAO()) {
             TpmEndorsement tpmEndorsement = dao.findTpmEndorsementByIssuerEqualTo(ekCert.getIssuerDN().getName().replaceAll("\\x00", "")); // SHOULD REALLY BE BY CERT SHA256
             if (tpmEndorsement == null) {
-                return false;
+                return false; // not cached, so a registration made now is accepted on the next request
             }
             log.debug("EC is registered: {}", tpmEndorsement.getId().toString());
+            int seconds = My.configuration().getConfiguration().getInt("mtwilson.privacyca.ek.registration.cache.seconds", 60);
+            if (seconds > 0) {
+                registrations.add(sha256, now + seconds * 1000L, now);
+            }
             return true;
         } catch (IOException e) {
             log.debug("Cannot check if EC is registered", e);
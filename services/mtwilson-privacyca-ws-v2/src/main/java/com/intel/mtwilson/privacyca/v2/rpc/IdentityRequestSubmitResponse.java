@@ -76,8 +76,9 @@ public class IdentityRequestSubmitResponse implements Callable<IdentityBlob> {
     @Override
     @RequiresPermissions("host_aiks:certify")
     public IdentityBlob call() throws Exception {
-        RSAPrivateKey caPrivKey = TpmUtils.privKeyFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
-        X509Certificate caPubCert = TpmUtils.certFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
+        PrivacyCaCredential privacyCa = PrivacyCaCredential.load(My.configuration().getPrivacyCaIdentityP12(), My.configuration().getPrivacyCaIdentityPassword());
+        RSAPrivateKey caPrivKey = privacyCa.getPrivateKey();
+        X509Certificate caPubCert = privacyCa.getCertificate();
         int validityDays = My.configuration().getPrivacyCaIdentityValidityDays();
 
         //decrypt response
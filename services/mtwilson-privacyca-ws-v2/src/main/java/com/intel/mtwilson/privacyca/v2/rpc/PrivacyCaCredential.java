@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The private key and certificate in a Privacy CA P12 file.
+ *
+ * The P12 file is read and decrypted once and then kept in memory. It is
+ * read again when its size or modification time changes, or when a
+ * different password is configured, so replacing the file does not
+ * require a restart.
+ */
+public class PrivacyCaCredential {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PrivacyCaCredential.class);
+    private static final ConcurrentHashMap<String,PrivacyCaCredential> cache = new ConcurrentHashMap<>();
+    private final String password;
+    private final long lastModified;
+    private final long length;
+    private final RSAPrivateKey privateKey;
+    private final X509Certificate certificate;
+
+    private PrivacyCaCredential(String password, long lastModified, long length, RSAPrivateKey privateKey, X509Certificate certificate) {
+        this.password = password;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.privateKey = privateKey;
+        this.certificate = certificate;
+    }
+
+    public RSAPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    private boolean isCurrent(File p12, String password) {
+        return this.password.equals(password) && lastModified == p12.lastModified() && length == p12.length();
+    }
+
+    /**
+     *
+     * @param p12
+     * @param password
+     * @return the private key and certificate in the P12 file; if there is more than one entry, the last entry is used like TpmUtils.privKeyFromP12
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static PrivacyCaCredential load(File p12, String password) throws IOException, GeneralSecurityException {
+        String path = p12.getAbsolutePath();
+        PrivacyCaCredential credential = cache.get(path);
+        if (credential != null && credential.isCurrent(p12, password)) {
+            return credential;
+        }
+        synchronized (cache) {
+            credential = cache.get(path);
+            if (credential != null && credential.isCurrent(p12, password)) {
+                return credential;
+            }
+            // read the file attributes before the content so a concurrent change is picked up by the next request
+            long lastModified = p12.lastModified();
+            long length = p12.length();
+            KeyStore keystore = KeyStore.getInstance("PKCS12");
+            try (FileInputStream in = new FileInputStream(p12)) {
+                keystore.load(in, password.toCharArray());
+            }
+            RSAPrivateKey privateKey = null;
+            X509Certificate certificate = null;
+            Enumeration<String> aliases = keystore.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                Key key = keystore.getKey(alias, password.toCharArray());
+                if (key instanceof RSAPrivateKey) {
+                    privateKey = (RSAPrivateKey) key;
+                }
+                Certificate entry = keystore.getCertificate(alias);
+                if (entry instanceof X509Certificate) {
+                    certificate = (X509Certificate) entry;
+                }
+            }
+            if (privateKey == null || certificate == null) {
+                throw new GeneralSecurityException("Cannot find private key and certificate in " + path);
+            }
+            log.debug("Loaded {}", path);
+            credential = new PrivacyCaCredential(password, lastModified, length, privateKey, certificate);
+            cache.put(path, credential);
+            return credential;
+        }
+    }
+}
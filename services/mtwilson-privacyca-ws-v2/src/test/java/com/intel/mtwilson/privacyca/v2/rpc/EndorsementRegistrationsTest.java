@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the expiry and size limit of the EK registration cache.
+ */
+public class EndorsementRegistrationsTest {
+
+    @Test
+    public void testUnknownCertificateIsNotRegistered() {
+        EndorsementRegistrations registrations = new EndorsementRegistrations(10);
+        assertFalse(registrations.isRegistered("aa", 1000));
+        assertEquals(0, registrations.size());
+    }
+
+    @Test
+    public void testRegistrationExpires() {
+        EndorsementRegistrations registrations = new EndorsementRegistrations(10);
+        registrations.add("aa", 2000, 1000);
+        assertTrue(registrations.isRegistered("aa", 1000));
+        assertTrue(registrations.isRegistered("aa", 1999));
+        assertFalse(registrations.isRegistered("aa", 2000));
+        assertEquals(0, registrations.size());
+    }
+
+    @Test
+    public void testFullCacheRemovesExpiredEntriesFirst() {
+        EndorsementRegistrations registrations = new EndorsementRegistrations(2);
+        registrations.add("aa", 1500, 1000);
+        registrations.add("bb", 5000, 1000);
+        registrations.add("cc", 5000, 2000);
+        assertFalse(registrations.isRegistered("aa", 2000));
+        assertTrue(registrations.isRegistered("bb", 2000));
+        assertTrue(registrations.isRegistered("cc", 2000));
+    }
+
+    @Test
+    public void testFullCacheIsClearedWhenNothingExpired() {
+        EndorsementRegistrations registrations = new EndorsementRegistrations(2);
+        registrations.add("aa", 5000, 1000);
+        registrations.add("bb", 5000, 1000);
+        registrations.add("cc", 5000, 1000);
+        assertEquals(1, registrations.size());
+        assertFalse(registrations.isRegistered("aa", 1000));
+        assertTrue(registrations.isRegistered("cc", 1000));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.joda.time.DateTime;
+
+/**
+ * Reads the issuer, dates and attribute statements of a SAML assertion with
+ * a StAX parser, without building the OpenSAML object tree.
+ *
+ * Only the statements that are direct children of the root Assertion
+ * element are read, which are the same statements TrustAssertion used to
+ * read from the OpenSAML Assertion. Attribute values are trimmed and an
+ * empty value is null, like the OpenSAML unmarshaller does. When an
+ * attribute has more than one value the last one is used.
+ *
+ * The reader does not check the signature, so it must only be used on xml
+ * that has already been verified.
+ */
+public class AssertionReader {
+    private static final String SAML2_ASSERTION_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+    private String issuer;
+    private Date issueInstant;
+    private Date notAfter;
+    private final List<Map<String, String>> attributeStatements = new ArrayList<>();
+
+    private AssertionReader() {
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public Date getIssueInstant() {
+        return issueInstant;
+    }
+
+    /**
+     *
+     * @return the earliest NotOnOrAfter of the subject confirmations, or null if there is none
+     */
+    public Date getNotAfter() {
+        return notAfter;
+    }
+
+    /**
+     *
+     * @return one map of attribute names to values for each AttributeStatement, in document order
+     */
+    public List<Map<String, String>> getAttributeStatements() {
+        return Collections.unmodifiableList(attributeStatements);
+    }
+
+    public static AssertionReader read(String xml) throws XMLStreamException {
+        AssertionReader assertion = new AssertionReader();
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+        try {
+            assertion.read(reader);
+        }
+        finally {
+            reader.close();
+        }
+        return assertion;
+    }
+
+    private void read(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 0;
+        String section = null; // the child of the Assertion element that is being read
+        boolean subjectConfirmation = false;
+        Map<String, String> attributes = null;
+        String attributeName = null;
+        StringBuilder text = null;
+        int textDepth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                boolean saml = SAML2_ASSERTION_NS.equals(reader.getNamespaceURI());
+                String name = reader.getLocalName();
+                if (depth == 1) {
+                    if (!saml || !"Assertion".equals(name)) {
+                        throw new XMLStreamException("Expected saml2:Assertion but found " + name);
+                    }
+                    issueInstant = parseDate(reader.getAttributeValue(null, "IssueInstant"));
+                } else if (depth == 2) {
+                    section = saml ? name : null;
+                    if ("Issuer".equals(section)) {
+                        text = new StringBuilder();
+                        textDepth = depth;
+                    } else if ("AttributeStatement".equals(section)) {
+                        attributes = new HashMap<>();
+                    }
+                } else if (depth == 3 && saml && "Subject".equals(section)) {
+                    subjectConfirmation = "SubjectConfirmation".equals(name);
+                } else if (depth == 3 && saml && "AttributeStatement".equals(section) && "Attribute".equals(name)) {
+                    attributeName = reader.getAttributeValue(null, "Name");
+                    attributes.put(attributeName, null);
+                } else if (depth == 4 && saml && subjectConfirmation && "SubjectConfirmationData".equals(name)) {
+                    Date subjectNotOnOrAfter = parseDate(reader.getAttributeValue(null, "NotOnOrAfter"));
+                    if (subjectNotOnOrAfter != null && (notAfter == null || notAfter.after(subjectNotOnOrAfter))) {
+                        notAfter = subjectNotOnOrAfter;
+                    }
+                } else if (depth == 4 && saml && attributeName != null && "AttributeValue".equals(name)) {
+                    text = new StringBuilder();
+                    textDepth = depth;
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                if (text != null && depth == textDepth) {
+                    text.append(reader.getText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (text != null && depth == textDepth) {
+                    String value = trimToNull(text.toString());
+                    if (depth == 2) {
+                        issuer = value;
+                    } else {
+                        attributes.put(attributeName, value);
+                    }
+                    text = null;
+                }
+                if (depth == 3) {
+                    subjectConfirmation = false;
+                    attributeName = null;
+                } else if (depth == 2) {
+                    if (attributes != null) {
+                        attributeStatements.add(attributes);
+                        attributes = null;
+                    }
+                    section = null;
+                }
+                depth--;
+            }
+        }
+    }
+
+    private static String trimToNull(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static Date parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return new DateTime(value).toDate();
+    }
+}
@@ -14,30 +14,23 @@ import java.security.KeyStoreException;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.dsig.XMLSignatureException;
 import javax.xml.parsers.ParserConfigurationException;
-import org.joda.time.DateTime;
 import org.opensaml.DefaultBootstrap;
 import org.opensaml.saml2.core.Assertion;
-import org.opensaml.saml2.core.Attribute;
-import org.opensaml.saml2.core.AttributeStatement;
-import org.opensaml.saml2.core.Statement;
-import org.opensaml.saml2.core.SubjectConfirmation;
-import org.opensaml.saml2.core.SubjectConfirmationData;
 import org.opensaml.xml.Configuration;
+import org.opensaml.xml.ConfigurationException;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.io.Unmarshaller;
 import org.opensaml.xml.io.UnmarshallerFactory;
 import org.opensaml.xml.io.UnmarshallingException;
-import org.opensaml.xml.schema.XSAny;
-import org.opensaml.xml.schema.XSString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -52,6 +45,11 @@ import org.xml.sax.SAXException;
  * getStringAttribute(), etc. If isValid() returns false, you can call error()
  * to get the Exception object that describes the validation error.
  *
+ * The attributes are read with a streaming parser after the signature is
+ * verified; the OpenSAML Assertion object is only built if getAssertion() is
+ * called. A valid TrustAssertion does not change after it is constructed, so
+ * it can be shared between threads, for example by TrustAssertionVerifier.
+ *
  * See also http://ws.apache.org/wss4j/config.html
  *
  * @author jbuhacoff
@@ -59,7 +57,11 @@ import org.xml.sax.SAXException;
 public class TrustAssertion {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private Assertion assertion;
+    private static boolean bootstrapped = false;
+    private String xml;
+    private Assertion assertion; // read from the xml when first requested
+    private Date issueInstant;
+    private Date notAfter;
     private HashMap<String, HostTrustAssertion> hostAssertionMap; //   host ->  Map of assertions about the host
 //    private HashMap<String,String> assertionMap;
     private boolean isValid;
@@ -93,13 +95,7 @@ public class TrustAssertion {
             if (isVerified) {
                 log.info("Validated signature in xml document");
                 // populate assertions map
-                DefaultBootstrap.bootstrap(); // required to load default configs that ship with opensaml that specify how to build and parse the xml (if you don't do this you will get a null unmarshaller when you try to parse xml)
-                assertion = readAssertion(document); // ParserConfigurationException, SAXException, IOException, UnmarshallingException
-//                assertionMap = new HashMap<String,String>();        
-                hostAssertionMap = new HashMap<String, HostTrustAssertion>();
-                populateAssertionMap();
-                isValid = true;
-                error = null;
+                load(xml, AssertionReader.read(xml)); // XMLStreamException
             } else {
                 throw new IllegalArgumentException("Cannot verify XML signature");
             }
@@ -107,12 +103,34 @@ public class TrustAssertion {
             log.error("Cannot verify trust assertion", e);
             isValid = false;
             error = e;
+            this.xml = null;
             assertion = null;
 //            assertionMap = null;
             hostAssertionMap = null;
         }
     }
 
+    /**
+     * For an assertion whose signature was already verified.
+     *
+     * @param xml the verified assertion
+     * @param reader the assertion read from the xml
+     */
+    TrustAssertion(String xml, AssertionReader reader) {
+        load(xml, reader);
+    }
+
+    private void load(String xml, AssertionReader reader) {
+        this.xml = xml;
+        issueInstant = reader.getIssueInstant();
+        notAfter = reader.getNotAfter();
+//        assertionMap = new HashMap<String,String>();
+        hostAssertionMap = new HashMap<String, HostTrustAssertion>();
+        populateAssertionMap(reader);
+        isValid = true;
+        error = null;
+    }
+
     public boolean isValid() {
         return isValid;
     }
@@ -127,10 +145,20 @@ public class TrustAssertion {
     }
 
     /**
+     * The OpenSAML object tree is built from the verified xml the first time
+     * this method is called.
      *
      * @return the OpenSAML Assertion object, or null if there was an error
      */
-    public Assertion getAssertion() {
+    public synchronized Assertion getAssertion() {
+        if (assertion == null && isValid) {
+            try {
+                bootstrap();
+                assertion = readAssertion(readXml(xml)); // ParserConfigurationException, SAXException, IOException, UnmarshallingException
+            } catch (Exception e) {
+                log.error("Cannot read assertion", e);
+            }
+        }
         return assertion;
     }
 
@@ -139,7 +167,7 @@ public class TrustAssertion {
      * @since 0.5.3
      */
     public Date getDate() {
-        return assertion.getIssueInstant().toDate();
+        return issueInstant;
     }
 
     /**
@@ -148,27 +176,11 @@ public class TrustAssertion {
      * included in the saml report, OR null if no such date was found
      */
     public Date getNotAfter() {
-        List<SubjectConfirmation> subjectConfirmations = assertion.getSubject().getSubjectConfirmations();
-        Date notAfter = null;
-        if (subjectConfirmations != null) {
-            for (SubjectConfirmation subjectConfirmation : subjectConfirmations) {
-                SubjectConfirmationData subjectConfirmationData = subjectConfirmation.getSubjectConfirmationData();
-                if (subjectConfirmationData != null) {
-                    DateTime subjectNotOnOrAfterDateTime = subjectConfirmationData.getNotOnOrAfter();
-                    if (subjectNotOnOrAfterDateTime != null) {
-                        Date subjectNotOnOrAfter = subjectNotOnOrAfterDateTime.toDate();
-                        if (notAfter == null || notAfter.after(subjectNotOnOrAfter)) {
-                            notAfter = subjectNotOnOrAfter;
-                        }
-                    }
-                }
-            }
-        }
         return notAfter;
     }
 
     public Set<String> getHosts() {
-        return hostAssertionMap.keySet();
+        return Collections.unmodifiableSet(hostAssertionMap.keySet());
     }
 
     public HostTrustAssertion getTrustAssertion(String hostname) {
@@ -178,11 +190,17 @@ public class TrustAssertion {
     public static class HostTrustAssertion {
 
         private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HostTrustAssertion.class);
-        private Assertion assertion;
+        private Date issueInstant;
+        private String issuer;
         private Map<String, String> assertionMap; // attributes for a single host
 
         public HostTrustAssertion(Assertion assertion, Map<String, String> assertionMap) {
-            this.assertion = assertion;
+            this(assertion.getIssueInstant() == null ? null : assertion.getIssueInstant().toDate(), assertion.getIssuer() == null ? null : assertion.getIssuer().getValue(), assertionMap);
+        }
+
+        public HostTrustAssertion(Date issueInstant, String issuer, Map<String, String> assertionMap) {
+            this.issueInstant = issueInstant;
+            this.issuer = issuer;
             this.assertionMap = assertionMap;
         }
 
@@ -191,7 +209,7 @@ public class TrustAssertion {
          * @since 0.5.3
          */
         public Date getDate() {
-            return assertion.getIssueInstant().toDate();
+            return issueInstant;
         }
 
         /**
@@ -220,7 +238,7 @@ public class TrustAssertion {
          * @throws NullPointerException if isValid() == false
          */
         public String getIssuer() {
-            return assertion.getIssuer().getValue();
+            return issuer;
         }
 
         /**
@@ -311,6 +329,19 @@ public class TrustAssertion {
         }
     }
 
+    /**
+     * Loads the default configs that ship with opensaml that specify how to
+     * build and parse the xml (if you don't do this you will get a null
+     * unmarshaller when you try to parse xml). They only need to be loaded
+     * once per JVM.
+     */
+    private static synchronized void bootstrap() throws ConfigurationException {
+        if (!bootstrapped) {
+            DefaultBootstrap.bootstrap();
+            bootstrapped = true;
+        }
+    }
+
     /**
      * See also {@code XML.parseDocumentElement} in mtwilson-util-xml
      */
@@ -341,26 +372,11 @@ public class TrustAssertion {
      * will only appear if Trusted_BIOS is true The VMM_* entries will only
      * appear if Trusted_VMM is true
      */
-    private void populateAssertionMap() {
-        for (Statement statement : assertion.getStatements()) {
-            if (statement instanceof AttributeStatement) {
-                HashMap<String, String> assertionMap = new HashMap<String, String>();
-                HostTrustAssertion hostTrustAssertion = new HostTrustAssertion(assertion, assertionMap);
-                for (Attribute attribute
-                        : ((AttributeStatement) statement).getAttributes()) {
-                    String attributeValue = null;
-                    for (XMLObject value : attribute.getAttributeValues()) {
-                        if (value instanceof XSAny) {
-                            attributeValue = (((XSAny) value).getTextContent()); // boolean attributes are the text "true" or "false"
-                        }
-                        if (value instanceof XSString) {
-                            attributeValue = (((XSString) value).getValue());
-                        }
-                    }
-                    assertionMap.put(attribute.getName(), attributeValue);
-                }
-                hostAssertionMap.put(assertionMap.get("Host_Name"), hostTrustAssertion);
-            }
+    private void populateAssertionMap(AssertionReader reader) {
+        for (Map<String, String> assertionMap : reader.getAttributeStatements()) {
+            // boolean attributes are the text "true" or "false"
+            HostTrustAssertion hostTrustAssertion = new HostTrustAssertion(reader.getIssueInstant(), reader.getIssuer(), Collections.unmodifiableMap(assertionMap));
+            hostAssertionMap.put(assertionMap.get("Host_Name"), hostTrustAssertion);
         }
     }
 }
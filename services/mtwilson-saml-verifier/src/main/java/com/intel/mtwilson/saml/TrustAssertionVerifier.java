@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import com.intel.dcsg.cpg.crypto.Sha256Digest;
+import java.nio.charset.Charset;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verifies SAML assertions against a fixed set of trusted signers and keeps
+ * each verified TrustAssertion until the assertion expires, so a client that
+ * checks the same assertion many times parses and verifies it only once.
+ *
+ * Entries are keyed by the SHA-256 of the assertion xml and are dropped at
+ * the assertion's NotOnOrAfter time. Assertions without a NotOnOrAfter and
+ * assertions that fail verification are not kept. When the cache is full
+ * the expired entries are removed, and if it is still full the new
+ * assertion is verified but not kept.
+ *
+ * Instances are safe to share between threads. Example:
+ * <pre>
+ * TrustAssertionVerifier verifier = new TrustAssertionVerifier(trustedSigners);
+ * TrustAssertion trustAssertion = verifier.verify(xml);
+ * if( trustAssertion.isValid() ) { ... }
+ * </pre>
+ */
+public class TrustAssertionVerifier {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustAssertionVerifier.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    private final X509Certificate[] trustedSigners;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Entry {
+        private final TrustAssertion trustAssertion;
+        private final long expires;
+
+        public Entry(TrustAssertion trustAssertion, long expires) {
+            this.trustAssertion = trustAssertion;
+            this.expires = expires;
+        }
+    }
+
+    public TrustAssertionVerifier(X509Certificate[] trustedSigners) {
+        this(trustedSigners, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     *
+     * @param trustedSigners the certificates that are trusted to sign assertions, see TrustAssertion
+     * @param maxEntries the maximum number of verified assertions to keep; 0 disables the cache
+     */
+    public TrustAssertionVerifier(X509Certificate[] trustedSigners, int maxEntries) {
+        this.trustedSigners = trustedSigners.clone();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * @param xml returned from attestation service
+     * @return the verified assertion; call isValid() before using it, like a TrustAssertion created directly
+     */
+    public TrustAssertion verify(String xml) {
+        String key = Sha256Digest.digestOf(xml.getBytes(UTF8)).toHexString();
+        long now = currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            if (now < entry.expires) {
+                hits.incrementAndGet();
+                return entry.trustAssertion;
+            }
+            cache.remove(key, entry);
+        }
+        misses.incrementAndGet();
+        TrustAssertion trustAssertion = createTrustAssertion(xml);
+        if (trustAssertion.isValid()) {
+            Date notAfter = trustAssertion.getNotAfter();
+            if (notAfter != null && notAfter.getTime() > now) {
+                if (cache.size() >= maxEntries) {
+                    removeExpired(now);
+                }
+                if (cache.size() < maxEntries) {
+                    cache.put(key, new Entry(trustAssertion, notAfter.getTime()));
+                } else {
+                    log.debug("Verified assertion cache is full with {} entries", cache.size());
+                }
+            }
+        }
+        return trustAssertion;
+    }
+
+    TrustAssertion createTrustAssertion(String xml) {
+        return new TrustAssertion(trustedSigners, xml);
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().expires <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.io.IOUtils;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Reads the sample assertions with the streaming reader.
+ */
+public class AssertionReaderTest {
+
+    private String getResource(String name) throws Exception {
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            return IOUtils.toString(in);
+        }
+    }
+
+    @Test
+    public void testReadMultihostAssertion() throws Exception {
+        AssertionReader assertion = AssertionReader.read(getResource("/saml.xml"));
+        assertEquals("https://127.0.0.1:8080", assertion.getIssuer());
+        assertEquals(new DateTime("2014-03-03T07:58:53.332Z").toDate(), assertion.getIssueInstant());
+        assertNull(assertion.getNotAfter());
+        List<Map<String, String>> hosts = assertion.getAttributeStatements();
+        assertTrue(hosts.size() > 1);
+        assertEquals("10.1.71.175", hosts.get(0).get("Host_Name"));
+        assertEquals("true", hosts.get(0).get("Trusted"));
+        assertEquals("false", hosts.get(0).get("Asset_Tag"));
+        assertEquals("Intel Corporation", hosts.get(0).get("BIOS_OEM"));
+    }
+
+    @Test
+    public void testReadSubjectConfirmation() throws Exception {
+        AssertionReader assertion = AssertionReader.read(getResource("/saml2.xml"));
+        assertEquals(new DateTime("2015-03-24T22:24:25.937Z").toDate(), assertion.getNotAfter());
+        assertEquals(1, assertion.getAttributeStatements().size());
+        assertEquals("10.1.71.180", assertion.getAttributeStatements().get(0).get("Host_Name"));
+    }
+
+    @Test
+    public void testNestedStatementsAreIgnored() throws Exception {
+        String xml = "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" IssueInstant=\"2016-01-01T00:00:00.000Z\">"
+                + "<saml2:Issuer> issuer </saml2:Issuer>"
+                + "<saml2:Advice><saml2:AttributeStatement><saml2:Attribute Name=\"Host_Name\"><saml2:AttributeValue>nested</saml2:AttributeValue></saml2:Attribute></saml2:AttributeStatement></saml2:Advice>"
+                + "<saml2:AttributeStatement><saml2:Attribute Name=\"Host_Name\"><saml2:AttributeValue>host1</saml2:AttributeValue></saml2:Attribute>"
+                + "<saml2:Attribute Name=\"Empty\"><saml2:AttributeValue> </saml2:AttributeValue></saml2:Attribute></saml2:AttributeStatement>"
+                + "</saml2:Assertion>";
+        AssertionReader assertion = AssertionReader.read(xml);
+        assertEquals("issuer", assertion.getIssuer());
+        assertEquals(1, assertion.getAttributeStatements().size());
+        assertEquals("host1", assertion.getAttributeStatements().get(0).get("Host_Name"));
+        assertTrue(assertion.getAttributeStatements().get(0).containsKey("Empty"));
+        assertNull(assertion.getAttributeStatements().get(0).get("Empty"));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void testRejectOtherDocuments() throws Exception {
+        AssertionReader.read("<Response xmlns=\"urn:oasis:names:tc:SAML:2.0:protocol\"/>");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import java.security.cert.X509Certificate;
+import javax.xml.stream.XMLStreamException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the verified assertion cache with unsigned assertions and a clock
+ * that the test moves.
+ */
+public class TrustAssertionVerifierTest {
+    private static final long START = 1451606400000L; // 2016-01-01T00:00:00Z
+    private static final long EXPIRES = START + 60000;
+
+    @Test
+    public void testSameAssertionIsVerifiedOnce() {
+        FakeVerifier verifier = new FakeVerifier(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES);
+        TrustAssertion trustAssertion = verifier.verify(assertion("host1", EXPIRES));
+        assertSame(trustAssertion, verifier.verify(assertion("host1", EXPIRES)));
+        assertEquals(1, verifier.created);
+        assertEquals(1, verifier.getHits());
+        assertEquals(1, verifier.getMisses());
+    }
+
+    @Test
+    public void testDifferentAssertionIsVerified() {
+        FakeVerifier verifier = new FakeVerifier(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES);
+        TrustAssertion trustAssertion = verifier.verify(assertion("host1", EXPIRES));
+        TrustAssertion other = verifier.verify(assertion("host2", EXPIRES));
+        assertNotSame(trustAssertion, other);
+        assertTrue(other.getHosts().contains("host2"));
+        assertEquals(2, verifier.created);
+        assertEquals(0, verifier.getHits());
+        assertEquals(2, verifier.size());
+    }
+
+    @Test
+    public void testAssertionExpiresAtNotOnOrAfter() {
+        FakeVerifier verifier = new FakeVerifier(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES);
+        TrustAssertion trustAssertion = verifier.verify(assertion("host1", EXPIRES));
+        verifier.now = EXPIRES - 1;
+        assertSame(trustAssertion, verifier.verify(assertion("host1", EXPIRES)));
+        verifier.now = EXPIRES;
+        assertNotSame(trustAssertion, verifier.verify(assertion("host1", EXPIRES)));
+        assertEquals(2, verifier.created);
+        // the expired assertion is verified again but not kept again
+        assertEquals(0, verifier.size());
+    }
+
+    @Test
+    public void testInvalidAssertionIsNotKept() {
+        TrustAssertionVerifier verifier = new TrustAssertionVerifier(new X509Certificate[0]);
+        String xml = assertion("host1", System.currentTimeMillis() + 60000);
+        assertFalse(verifier.verify(xml).isValid());
+        assertFalse(verifier.verify(xml).isValid());
+        assertEquals(2, verifier.getMisses());
+        assertEquals(0, verifier.size());
+    }
+
+    @Test
+    public void testAssertionWithoutNotOnOrAfterIsNotKept() {
+        FakeVerifier verifier = new FakeVerifier(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES);
+        assertTrue(verifier.verify(assertion("host1", null)).isValid());
+        verifier.verify(assertion("host1", null));
+        assertEquals(2, verifier.created);
+        assertEquals(0, verifier.size());
+    }
+
+    @Test
+    public void testFullCacheKeepsEntries() {
+        FakeVerifier verifier = new FakeVerifier(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES);
+        for (int i = 0; i < TrustAssertionVerifier.DEFAULT_MAX_ENTRIES; i++) {
+            verifier.verify(assertion("host" + i, EXPIRES));
+        }
+        assertEquals(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES, verifier.size());
+        // the new assertion is verified but not kept, and the kept ones are still used
+        assertTrue(verifier.verify(assertion("new", EXPIRES)).isValid());
+        assertEquals(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES, verifier.size());
+        verifier.verify(assertion("new", EXPIRES));
+        verifier.verify(assertion("host0", EXPIRES));
+        assertEquals(TrustAssertionVerifier.DEFAULT_MAX_ENTRIES + 2, verifier.created);
+        assertEquals(1, verifier.getHits());
+    }
+
+    @Test
+    public void testFullCacheRemovesExpiredEntries() {
+        FakeVerifier verifier = new FakeVerifier(2);
+        verifier.verify(assertion("host1", START + 1000));
+        verifier.verify(assertion("host2", EXPIRES));
+        verifier.now = START + 1000;
+        TrustAssertion trustAssertion = verifier.verify(assertion("host3", EXPIRES));
+        assertEquals(2, verifier.size());
+        assertSame(trustAssertion, verifier.verify(assertion("host3", EXPIRES)));
+    }
+
+    @Test
+    public void testZeroEntriesDisablesCache() {
+        FakeVerifier verifier = new FakeVerifier(0);
+        verifier.verify(assertion("host1", EXPIRES));
+        verifier.verify(assertion("host1", EXPIRES));
+        assertEquals(2, verifier.created);
+        assertEquals(0, verifier.size());
+    }
+
+    /**
+     * An assertion about one host that expires at notAfter, or that does not
+     * expire if notAfter is null.
+     */
+    private static String assertion(String hostname, Long notAfter) {
+        String subject = notAfter == null ? "" : "<saml2:Subject><saml2:SubjectConfirmation Method=\"urn:oasis:names:tc:SAML:2.0:cm:sender-vouches\">"
+                + "<saml2:SubjectConfirmationData NotOnOrAfter=\"" + new DateTime(notAfter, DateTimeZone.UTC) + "\"/>"
+                + "</saml2:SubjectConfirmation></saml2:Subject>";
+        return "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" IssueInstant=\"2016-01-01T00:00:00.000Z\">"
+                + "<saml2:Issuer>issuer</saml2:Issuer>"
+                + subject
+                + "<saml2:AttributeStatement><saml2:Attribute Name=\"Host_Name\"><saml2:AttributeValue>" + hostname + "</saml2:AttributeValue></saml2:Attribute></saml2:AttributeStatement>"
+                + "</saml2:Assertion>";
+    }
+
+    /**
+     * Accepts assertions without checking their signature.
+     */
+    private static class FakeVerifier extends TrustAssertionVerifier {
+        private long now = START;
+        private int created = 0;
+
+        public FakeVerifier(int maxEntries) {
+            super(new X509Certificate[0], maxEntries);
+        }
+
+        @Override
+        TrustAssertion createTrustAssertion(String xml) {
+            created++;
+            try {
+                return new TrustAssertion(xml, AssertionReader.read(xml));
+            } catch (XMLStreamException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
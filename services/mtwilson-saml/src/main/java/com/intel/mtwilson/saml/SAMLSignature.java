@@ -3,6 +3,10 @@ package com.intel.mtwilson.saml;
 import java.io.*;
 import java.security.*;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.dsig.CanonicalizationMethod;
 import javax.xml.crypto.dsig.DigestMethod;
@@ -30,12 +34,38 @@ import org.w3c.dom.NodeList;
  * Used with permission.
  *
  * http://capcourse.com/Library/OpenSAML
+ * 
+ * XMLSignatureFactory instances must not be used by concurrent threads, so
+ * each signing thread borrows a signing context with its own factory and
+ * the prepared signature parameters. Up to one context per processor is
+ * created, so instances of this class can be shared.
  */
 public class SAMLSignature {
 
-    private final XMLSignatureFactory factory;
     private final IssuerConfiguration issuerConfiguration;
-    private final KeyInfo keyInfo;
+    private final Provider provider;
+    private final int maxContexts;
+    private final BlockingQueue<SigningContext> contexts;
+    private final AtomicInteger created = new AtomicInteger();
+    
+    private static class SigningContext {
+        private final XMLSignatureFactory factory;
+        private final KeyInfo keyInfo;
+        private final DigestMethod digestMethod;
+        private final List<Transform> transforms;
+        private final CanonicalizationMethod canonicalizationMethod;
+        private final SignatureMethod signatureMethod;
+        
+        public SigningContext(Provider provider, IssuerConfiguration issuerConfiguration) throws GeneralSecurityException {
+            factory = XMLSignatureFactory.getInstance("DOM", provider);
+            KeyInfoFactory kFactory = factory.getKeyInfoFactory();
+            keyInfo = kFactory.newKeyInfo(Collections.singletonList(kFactory.newX509Data(Collections.singletonList(issuerConfiguration.getCertificate()))));
+            digestMethod = factory.newDigestMethod(DigestMethod.SHA1, null);
+            transforms = Collections.singletonList(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null));
+            canonicalizationMethod = factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, (C14NMethodParameterSpec) null);
+            signatureMethod = factory.newSignatureMethod(SignatureMethod.RSA_SHA1, null);
+        }
+    }
 
     /**
      * Loads a keystore and builds a stock key-info structure for use by base
@@ -49,11 +79,34 @@ public class SAMLSignature {
         this.issuerConfiguration = issuerConfiguration;
         
         String providerName = issuerConfiguration.getJsr105Provider();
-        factory = XMLSignatureFactory.getInstance("DOM", (Provider) Class.forName(providerName).newInstance());
-
-
-        KeyInfoFactory kFactory = factory.getKeyInfoFactory();
-        keyInfo = kFactory.newKeyInfo(Collections.singletonList(kFactory.newX509Data(Collections.singletonList(issuerConfiguration.getCertificate()))));
+        provider = (Provider) Class.forName(providerName).newInstance();
+        maxContexts = Math.max(1, Runtime.getRuntime().availableProcessors());
+        contexts = new ArrayBlockingQueue<>(maxContexts);
+        // create the first context now so configuration errors are reported by the constructor
+        contexts.add(new SigningContext(provider, issuerConfiguration));
+        created.incrementAndGet();
+    }
+    
+    private SigningContext borrowContext() throws GeneralSecurityException {
+        SigningContext context = contexts.poll();
+        if (context != null) {
+            return context;
+        }
+        if (created.incrementAndGet() <= maxContexts) {
+            try {
+                return new SigningContext(provider, issuerConfiguration);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                created.decrementAndGet();
+                throw e;
+            }
+        }
+        created.decrementAndGet();
+        try {
+            return contexts.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Interrupted while waiting for a signing context", e);
+        }
     }
 
     /**
@@ -68,20 +121,26 @@ public class SAMLSignature {
      */
     public void signSAMLObject(Element target)
             throws GeneralSecurityException, XMLSignatureException, MarshalException {
-        Reference ref = factory.newReference("#" + target.getAttribute("ID"),
-                factory.newDigestMethod(DigestMethod.SHA1, null),
-                Collections.singletonList(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)),
-                null,
-                null);
+        SigningContext context = borrowContext();
+        try {
+            XMLSignatureFactory factory = context.factory;
+            Reference ref = factory.newReference("#" + target.getAttribute("ID"),
+                    context.digestMethod,
+                    context.transforms,
+                    null,
+                    null);
 
-        SignedInfo signedInfo = factory.newSignedInfo(factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS,
-                (C14NMethodParameterSpec) null),
-                factory.newSignatureMethod(SignatureMethod.RSA_SHA1, null),
-                Collections.singletonList(ref));
+            SignedInfo signedInfo = factory.newSignedInfo(context.canonicalizationMethod,
+                    context.signatureMethod,
+                    Collections.singletonList(ref));
 
-        XMLSignature signature = factory.newXMLSignature(signedInfo, keyInfo);
-        DOMSignContext signContext = new DOMSignContext(issuerConfiguration.getPrivateKey(), target);
-        signature.sign(signContext);
+            XMLSignature signature = factory.newXMLSignature(signedInfo, context.keyInfo);
+            DOMSignContext signContext = new DOMSignContext(issuerConfiguration.getPrivateKey(), target);
+            signature.sign(signContext);
+        }
+        finally {
+            contexts.offer(context);
+        }
 
         // For the result to be schema-valid, we have to move the signature
         // element from its place at the end of the child list to live
@@ -13,6 +13,10 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.GeneralSecurityException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.dsig.XMLSignatureException;
 import org.apache.commons.codec.binary.Base64;
@@ -48,20 +52,30 @@ import org.w3c.dom.Element;
  * Pragma: no-cache
  * But there is no harm in the client caching the attestation results for as long as THEY feel comfortable with it.
  * 
+ * Instances are thread-safe and can be shared: the assertion being generated
+ * is passed along instead of kept in a field, the OpenSAML marshaller is
+ * stateless, and SAMLSignature lends each thread its own signing context.
+ * 
  * @author jbuhacoff
  */
 public class SamlGenerator {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SamlGenerator.class);
     private static final Object init = new Object();
+    /**
+     * Multi-host assertions with at least this many hosts build the host
+     * attribute statements in parallel when an executor is set
+     */
+    private static final int PARALLEL_HOSTS = 16;
     private final XMLObjectBuilderFactory builderFactory;
     private final IssuerConfiguration issuerConfiguration;
     private final Integer validitySeconds; // for example 3600 for one hour
     private final SAMLSignature signatureGenerator;
-    private SamlAssertion samlAssertion = null;
+    private volatile ExecutorService executor = null;
 //    private Resource keystoreResource = null;
     
     private static class XMLObjectBuilderFactoryHolder {
         private static final XMLObjectBuilderFactory builderFactory = createBuilderFactory();
+        private static final AssertionMarshaller marshaller = new AssertionMarshaller();
         
         private static XMLObjectBuilderFactory createBuilderFactory() {
             try {
@@ -112,6 +126,34 @@ public class SamlGenerator {
         this.keystoreResource = keystoreResource;
     }*/
     
+    /**
+     * 
+     * @param executor used by generateHostAssertions to build the statements of many hosts in parallel, or null to build them on the calling thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Marshals and signs the assertion. The unsigned assertion is only
+     * serialized when debug logging is enabled.
+     */
+    private SamlAssertion sign(Assertion assertion, SamlAssertion samlAssertion) throws MarshallingException, GeneralSecurityException, XMLSignatureException, MarshalException {
+        log.debug("Generating XML elements for assertion");
+        Element plaintextElement = XMLObjectBuilderFactoryHolder.marshaller.marshall(assertion);
+        
+        if( log.isDebugEnabled() ) {
+            log.debug("Assertion String: " + XMLHelper.nodeToString(plaintextElement));
+        }
+
+        // add signatures and/or encryption
+        signAssertion(plaintextElement);
+        
+        samlAssertion.assertion =  XMLHelper.nodeToString(plaintextElement);
+        log.debug("Signed Assertion String: {}", samlAssertion.assertion );
+        return samlAssertion;
+    }
+    
     /**
      * Input is a Host record with all the attributes to assert
      * Output is XML containing the SAML assertions
@@ -126,23 +168,9 @@ public class SamlGenerator {
      * @throws MarshallingException 
      */
     public SamlAssertion generateHostAssertion(TxtHost host, X509AttributeCertificate tagCertificate, Map<String, String> vmMetaData) throws MarshallingException, ConfigurationException, UnknownHostException, GeneralSecurityException, XMLSignatureException, MarshalException {
-        samlAssertion = new SamlAssertion();
-        Assertion assertion = createAssertion(host, tagCertificate, vmMetaData);
-
-        log.debug("Generating XML elements for assertion");
-        AssertionMarshaller marshaller = new AssertionMarshaller();
-        Element plaintextElement = marshaller.marshall(assertion);
-        
-        log.debug("Generating XML text for assertion");
-        String originalAssertionString = XMLHelper.nodeToString(plaintextElement);
-        log.debug("Assertion String: " + originalAssertionString);
-
-        // add signatures and/or encryption
-        signAssertion(plaintextElement);
-        
-        samlAssertion.assertion =  XMLHelper.nodeToString(plaintextElement);
-        log.debug("Signed Assertion String: " + samlAssertion.assertion );
-        return samlAssertion;
+        SamlAssertion samlAssertion = new SamlAssertion();
+        Assertion assertion = createAssertion(host, tagCertificate, vmMetaData, samlAssertion);
+        return sign(assertion, samlAssertion);
     }
     
     /**
@@ -159,22 +187,9 @@ public class SamlGenerator {
      */
     public SamlAssertion generateHostAssertions(Collection<TxtHostWithAssetTag> hosts) throws SamlException {
         try {
-            samlAssertion = new SamlAssertion();
+            SamlAssertion samlAssertion = new SamlAssertion();
             Assertion assertion = createAssertion(hosts);
-
-            AssertionMarshaller marshaller = new AssertionMarshaller();
-            Element plaintextElement = marshaller.marshall(assertion);
-
-            String originalAssertionString = XMLHelper.nodeToString(plaintextElement);
-            log.debug("Assertion String: " + originalAssertionString);
-
-            // add signatures and/or encryption
-            signAssertion(plaintextElement);
-
-            samlAssertion.assertion =  XMLHelper.nodeToString(plaintextElement);
-            log.debug("Signed Assertion String: " + samlAssertion.assertion );
-            
-            return samlAssertion;
+            return sign(assertion, samlAssertion);
         }
         catch(Exception e) {
             throw new SamlException(e);
@@ -209,11 +224,11 @@ public class SamlGenerator {
         
         // create the Subject and Subject Confirmation
         
-        private SubjectConfirmation createSubjectConfirmation(TxtHost host) throws ConfigurationException, UnknownHostException {
+        private SubjectConfirmation createSubjectConfirmation(TxtHost host, SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             SAMLObjectBuilder subjectConfirmationBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
             SubjectConfirmation subjectConfirmation = (SubjectConfirmation) subjectConfirmationBuilder.buildObject();
             subjectConfirmation.setMethod(SubjectConfirmation.METHOD_SENDER_VOUCHES); 
-            subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData());
+            subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData(samlAssertion));
             // Create the NameIdentifier
             SAMLObjectBuilder nameIdBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(NameID.DEFAULT_ELEMENT_NAME);
             NameID nameId = (NameID) nameIdBuilder.buildObject();
@@ -230,12 +245,12 @@ public class SamlGenerator {
          * 
          * See also section 2.4.1.2 Element <SubjectConfirmationData> of http://docs.oasis-open.org/security/saml/v2.0/saml-core-2.0-os.pdf
          * 
-         * @param host
+         * @param samlAssertion receives the creation and expiration times
          * @return
          * @throws ConfigurationException
          * @throws UnknownHostException 
          */
-        private SubjectConfirmationData createSubjectConfirmationData() throws ConfigurationException, UnknownHostException {
+        private SubjectConfirmationData createSubjectConfirmationData(SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             SAMLObjectBuilder confirmationMethodBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
             SubjectConfirmationData confirmationMethod = (SubjectConfirmationData) confirmationMethodBuilder.buildObject();
             DateTime now = new DateTime();
@@ -253,12 +268,12 @@ public class SamlGenerator {
             return confirmationMethod;
         }
         
-        private Subject createSubject(TxtHost host) throws ConfigurationException, UnknownHostException {
+        private Subject createSubject(TxtHost host, SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             // Create the Subject
             SAMLObjectBuilder subjectBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Subject.DEFAULT_ELEMENT_NAME);
             Subject subject = (Subject) subjectBuilder.buildObject();
             subject.setNameID(createNameID(host));
-            subject.getSubjectConfirmations().add(createSubjectConfirmation(host));
+            subject.getSubjectConfirmations().add(createSubjectConfirmation(host, samlAssertion));
             return subject;
         }
         
@@ -450,9 +465,10 @@ public class SamlGenerator {
          * ID attribute: see section 5.4.2  "References" of http://docs.oasis-open.org/security/saml/v2.0/saml-core-2.0-os.pdf
          * 
          * @param host
+         * @param samlAssertion receives the creation and expiration times
          * @return 
          */
-        private Assertion createAssertion(TxtHost host, X509AttributeCertificate tagCertificate, Map<String, String> vmMetaData) throws ConfigurationException, UnknownHostException {
+        private Assertion createAssertion(TxtHost host, X509AttributeCertificate tagCertificate, Map<String, String> vmMetaData, SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             // Create the assertion
             log.debug("createAssertion for hostname: {}", host.getHostName());
             SAMLObjectBuilder assertionBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Assertion.DEFAULT_ELEMENT_NAME);
@@ -462,7 +478,7 @@ public class SamlGenerator {
             DateTime now = new DateTime();
             assertion.setIssueInstant(now);
             assertion.setVersion(SAMLVersion.VERSION_20);
-            assertion.setSubject(createSubject(host));
+            assertion.setSubject(createSubject(host, samlAssertion));
             assertion.getAttributeStatements().add(createHostAttributes(host, tagCertificate, vmMetaData));
 
             return assertion;
@@ -489,13 +505,61 @@ public class SamlGenerator {
             assertion.setIssueInstant(now);
             assertion.setVersion(SAMLVersion.VERSION_20);
 //            assertion.setSubject(createSubject(host));
-            for(TxtHostWithAssetTag host : hosts) {
-                assertion.getAttributeStatements().add(createHostAttributes(host.getHost(), host.getTagCertificate(), null));            
+            ExecutorService hostExecutor = executor;
+            if( hostExecutor != null && hosts.size() >= PARALLEL_HOSTS ) {
+                // the assertion has a single signature, so the per-host statements are what can be built in parallel
+                assertion.getAttributeStatements().addAll(createHostAttributes(hosts, hostExecutor));
+            }
+            else {
+                for(TxtHostWithAssetTag host : hosts) {
+                    assertion.getAttributeStatements().add(createHostAttributes(host.getHost(), host.getTagCertificate(), null));            
+                }
             }
 
             return assertion;
         }
         
+        private List<AttributeStatement> createHostAttributes(Collection<TxtHostWithAssetTag> hosts, ExecutorService hostExecutor) throws ConfigurationException {
+            ArrayList<Future<AttributeStatement>> futures = new ArrayList<>(hosts.size());
+            for(final TxtHostWithAssetTag host : hosts) {
+                futures.add(hostExecutor.submit(new Callable<AttributeStatement>() {
+                    @Override
+                    public AttributeStatement call() throws ConfigurationException {
+                        return createHostAttributes(host.getHost(), host.getTagCertificate(), null);
+                    }
+                }));
+            }
+            ArrayList<AttributeStatement> statements = new ArrayList<>(hosts.size());
+            try {
+                for(Future<AttributeStatement> future : futures) {
+                    statements.add(future.get());
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConfigurationException("Interrupted while creating host attributes", e);
+            }
+            catch(ExecutionException e) {
+                Throwable cause = e.getCause();
+                if( cause instanceof ConfigurationException ) {
+                    throw (ConfigurationException)cause;
+                }
+                if( cause instanceof RuntimeException ) {
+                    throw (RuntimeException)cause;
+                }
+                if( cause instanceof Error ) {
+                    throw (Error)cause;
+                }
+                throw new ConfigurationException("Cannot create host attributes", e);
+            }
+            finally {
+                for(Future<AttributeStatement> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            return statements;
+        }
+        
  
         private void signAssertion(Element assertion) throws GeneralSecurityException, XMLSignatureException, MarshalException {
             // Signature
@@ -519,7 +583,7 @@ public class SamlGenerator {
         }
         
     public SamlAssertion generateVMAssertion(TxtHost host, Map<String, String> vmMetaData) throws MarshallingException, ConfigurationException, UnknownHostException, GeneralSecurityException, XMLSignatureException, MarshalException {
-        samlAssertion = new SamlAssertion();
+        SamlAssertion samlAssertion = new SamlAssertion();
 
         SAMLObjectBuilder assertionBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(Assertion.DEFAULT_ELEMENT_NAME);
         Assertion assertion = (Assertion) assertionBuilder.buildObject();
@@ -537,7 +601,7 @@ public class SamlGenerator {
         SAMLObjectBuilder subjectConfirmationBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
         SubjectConfirmation subjectConfirmation = (SubjectConfirmation) subjectConfirmationBuilder.buildObject();
         subjectConfirmation.setMethod(SubjectConfirmation.METHOD_SENDER_VOUCHES); 
-        subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData());
+        subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData(samlAssertion));
         // Create the NameIdentifier
         SAMLObjectBuilder nameIdBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(NameID.DEFAULT_ELEMENT_NAME);
         NameID nameId = (NameID) nameIdBuilder.buildObject();
@@ -551,18 +615,7 @@ public class SamlGenerator {
         assertion.setSubject(subject);
         assertion.getAttributeStatements().add(createVMAttributes(host, vmMetaData));
 
-        AssertionMarshaller marshaller = new AssertionMarshaller();
-        Element plaintextElement = marshaller.marshall(assertion);
-
-        String originalAssertionString = XMLHelper.nodeToString(plaintextElement);
-        log.debug("Assertion String: " + originalAssertionString);
-
-        // add signatures and/or encryption
-        signAssertion(plaintextElement);
-
-        samlAssertion.assertion = XMLHelper.nodeToString(plaintextElement);
-        log.debug("Signed Assertion String: " + samlAssertion.assertion);
-        return samlAssertion;
+        return sign(assertion, samlAssertion);
     }
 
     private AttributeStatement createVMAttributes(TxtHost host, Map<String, String> vmMetaData) throws ConfigurationException {
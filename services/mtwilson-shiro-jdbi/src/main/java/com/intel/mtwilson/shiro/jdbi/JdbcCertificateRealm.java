@@ -6,6 +6,7 @@ package com.intel.mtwilson.shiro.jdbi;
 
 import com.intel.dcsg.cpg.crypto.Sha1Digest;
 import com.intel.dcsg.cpg.crypto.Sha256Digest;
+import com.intel.mtwilson.My;
 import com.intel.mtwilson.shiro.*;
 import com.intel.dcsg.cpg.net.NetUtils;
 import com.intel.dcsg.cpg.rfc822.Rfc822Date;
@@ -28,6 +29,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.configuration.Configuration;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
@@ -68,6 +70,34 @@ public class JdbcCertificateRealm extends AuthorizingRealm {
         }
     }
     
+    /**
+     * The anti-replay cache and request log writer are shared by all realm
+     * instances in the server. Until the cache has been running for a full
+     * anti-replay window, or if it is disabled with
+     * mtwilson.api.replay.cache.enabled=false, each request is checked and
+     * inserted synchronously in mw_request_log. Servers behind a load balancer
+     * that need replay protection across nodes should disable the cache.
+     */
+    private static class ReplayProtectionHolder {
+        private static RequestLogCache cache;
+        private static RequestLogWriter writer;
+
+        static {
+            try {
+                Configuration configuration = My.configuration().getConfiguration();
+                if( configuration.getBoolean("mtwilson.api.replay.cache.enabled", true) ) {
+                    RequestLogCache requestLogCache = new RequestLogCache(My.configuration().getAntiReplayProtectionWindowMilliseconds(), configuration.getInt("mtwilson.api.replay.cache.buckets", 8));
+                    writer = new RequestLogWriter(configuration.getInt("mtwilson.request.log.batch.size", 100), configuration.getInt("mtwilson.request.log.queue.max", 10000));
+                    writer.start();
+                    cache = requestLogCache;
+                }
+            }
+            catch(Exception e) {
+                log.error("Cannot initialize anti-replay cache", e);
+            }
+        }
+    }
+    
     private String getRandomNodeId() {
         SecureRandom random = new SecureRandom();
         String id = String.valueOf(random.nextInt());
@@ -161,19 +191,41 @@ public class JdbcCertificateRealm extends AuthorizingRealm {
                             return null;
                         }
                     }
-                    // third, ensure that the request is not earlier than the start of our anti-replay protection window (represented by the earliest request received in the request log) 
                     Date requestDate = Rfc822Date.parse(xToken.getSignatureInput().headers.get("Date"));
-                    RequestLogEntry earliest = dao.findRequestLogEntryByEarliestDate();
-                    if( earliest != null && requestDate.before(earliest.getReceived()) ) {
-                        log.debug("request date is before anti-replay window; must be rejected");
-                        return null;
+                    long received = requestLogEntry.getReceived().getTime();
+                    RequestLogCache cache = ReplayProtectionHolder.cache;
+                    if( cache != null && cache.isAuthoritative(received) ) {
+                        // third, the in-memory cache holds every request received within the anti-replay window,
+                        // so a request dated before the window must be rejected and a request in the cache is a replay
+                        if( requestDate.getTime() < received - cache.getWindowMillis() ) {
+                            log.debug("request date is before anti-replay window; must be rejected");
+                            return null;
+                        }
+                        if( !cache.add(requestLogEntry.getDigest(), received) ) {
+                            log.debug("request digest {} already received; must be rejected", requestLogEntry.getDigest());
+                            return null;
+                        }
+                        // fourth, record the request in the database in the background
+                        ReplayProtectionHolder.writer.write(requestLogEntry);
+                    }
+                    else {
+                        // third, ensure that the request is not earlier than the start of our anti-replay protection window (represented by the earliest request received in the request log) 
+                        RequestLogEntry earliest = dao.findRequestLogEntryByEarliestDate();
+                        if( earliest != null && requestDate.before(earliest.getReceived()) ) {
+                            log.debug("request date is before anti-replay window; must be rejected");
+                            return null;
+                        }
+                        if( cache != null && !cache.add(requestLogEntry.getDigest(), received) ) {
+                            log.debug("request digest {} already received; must be rejected", requestLogEntry.getDigest());
+                            return null;
+                        }
+                        // fourth, try to insert the request into the log - it will fail if there is already a request with the same digest
+                        log.debug("inserting request log entry with digest {} from source {} received at {} by {}", requestLogEntry.getDigest(), requestLogEntry.getSource(), requestLogEntry.getReceived(), requestLogEntry.getInstance());
+                        dao.insertRequestLogEntry(requestLogEntry);
+                        // so at this point, we have inserted a new request into the request log 
+                        // and it's protected from replay because the request digest is in the log so
+                        // if a duplicate request comes in then it won't be able to insert (above)
                     }
-                    // fourth, try to insert the request into the log - it will fail if there is already a request with the same digest
-                    log.debug("inserting request log entry with digest {} from source {} received at {} by {}", requestLogEntry.getDigest(), requestLogEntry.getSource(), requestLogEntry.getReceived(), requestLogEntry.getInstance());
-                    dao.insertRequestLogEntry(requestLogEntry);
-                    // so at this point, we have inserted a new request into the request log 
-                    // and it's protected from replay because the request digest is in the log so
-                    // if a duplicate request comes in then it won't be able to insert (above)
                 }
                 catch(Exception e) {
                     log.debug("Cannot insert request log entry", e); // probably a duplicate, but could also be database connection issue
@@ -17,6 +17,7 @@ import java.io.Closeable;
 import java.util.Date;
 import java.util.List;
 import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterArgumentFactory;
@@ -286,6 +287,8 @@ public interface LoginDAO extends Closeable {
         
     @SqlUpdate("insert into mw_request_log (instance,received,source,digest,content) values (:instance,:received,:source,:digest,:content)")
     void insertRequestLogEntry(@BindBean RequestLogEntry requestLogEntry);
+    @SqlBatch("insert into mw_request_log (instance,received,source,digest,content) values (:instance,:received,:source,:digest,:content)")
+    void insertRequestLogEntries(@BindBean List<RequestLogEntry> requestLogEntries);
     @SqlQuery("select instance, received, source, digest from mw_request_log where digest=:digest")
     List<RequestLogEntry> findRequestLogEntryByDigest(@Bind("digest") String digestBase64);
     @SqlQuery("select instance, received, source, digest from mw_request_log where received is not null order by received asc limit 1")
@@ -4,13 +4,10 @@
  */
 package com.intel.mtwilson.shiro.jdbi;
 
-import com.intel.dcsg.cpg.jpa.PersistenceManager;
 import com.intel.mtwilson.My;
-import com.intel.mtwilson.MyPersistenceManager;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Properties;
 import javax.sql.DataSource;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.tweak.ConnectionFactory;
@@ -25,16 +22,6 @@ public class MyJdbi {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MyJdbi.class);
 
-    private static class DataSourceHolder {
-        private static final DataSource ds = createDataSource();
-
-        private static DataSource createDataSource() {
-            //#5820: Call to static method 'com.intel.mtwilson.MyPersistenceManager.getASDataJpaProperties' via instance reference.
-            Properties jpaProperties = MyPersistenceManager.getASDataJpaProperties(My.configuration());
-            return PersistenceManager.createDataSource(jpaProperties);
-        }
-    }
-
     /*
      public static <T> T openDAO(T clazz) {
      DBI dbi = new DBI(getDataSource());
@@ -66,8 +53,9 @@ public class MyJdbi {
          return dbi;
          */
         // issue #4978: creating new DBI instance for each request using connection pool
+        // the pool is shared with the other JDBI DAOs and follows database configuration changes
         log.debug("MyJdbi (mtwilson-shiro-jdbi) created new DBI instance");
-        return new DBI(new DataSourceConnectionFactory(DataSourceHolder.ds));
+        return new DBI(new DataSourceConnectionFactory(My.jdbc().dataSource()));
     }
     
     public static class DataSourceConnectionFactory implements ConnectionFactory {
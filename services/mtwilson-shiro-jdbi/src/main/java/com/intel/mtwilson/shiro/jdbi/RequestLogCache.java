@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.shiro.jdbi;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory anti-replay cache for signed requests, in front of the
+ * mw_request_log table.
+ *
+ * The anti-replay window is divided into time buckets; each bucket is a
+ * concurrent set of the request digests received during its time slice.
+ * A bucket is discarded and reused when its slot comes around again, so
+ * memory is bounded by the number of requests received in one window and
+ * there is no separate eviction pass. Check-and-add is atomic per digest
+ * using striped locks.
+ *
+ * The cache only knows about requests received since it was created. Until
+ * it has been running for a full window, callers must also check the
+ * database (see isAuthoritative).
+ */
+public class RequestLogCache {
+    private static final int STRIPES = 64;
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final long created;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final Object[] locks = new Object[STRIPES];
+
+    private static class Bucket {
+        private final long id;
+        private final Set<String> digests = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+        public Bucket(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     *
+     * @param windowMillis the anti-replay window, requests older than this are rejected by the caller
+     * @param bucketCount number of time buckets in the window
+     */
+    public RequestLogCache(long windowMillis, int bucketCount) {
+        this(windowMillis, bucketCount, System.currentTimeMillis());
+    }
+
+    protected RequestLogCache(long windowMillis, int bucketCount, long created) {
+        if( windowMillis <= 0 || bucketCount <= 0 ) {
+            throw new IllegalArgumentException("Window and bucket count must be positive");
+        }
+        this.windowMillis = windowMillis;
+        this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+        this.created = created;
+        // one extra slot so a full window is always covered by live buckets
+        this.buckets = new AtomicReferenceArray<>(bucketCount + 1);
+        for(int i=0; i<locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     *
+     * @param now
+     * @return true if the cache has been running for a full window, so a request that is not in the cache was not received within the window
+     */
+    public boolean isAuthoritative(long now) {
+        return now - created >= windowMillis;
+    }
+
+    /**
+     * Records the digest of a request received at the given time.
+     *
+     * @param digest
+     * @param received
+     * @return true if the digest was added, false if it was already received within the window (a replay)
+     */
+    public boolean add(String digest, long received) {
+        long current = received / bucketMillis;
+        synchronized(locks[(digest.hashCode() & 0x7fffffff) % STRIPES]) {
+            if( contains(digest, current) ) {
+                return false;
+            }
+            bucket(current).digests.add(digest);
+            return true;
+        }
+    }
+
+    private boolean contains(String digest, long current) {
+        int length = buckets.length();
+        for(int i=0; i<length; i++) {
+            Bucket bucket = buckets.get(i);
+            if( bucket != null && bucket.id > current - length && bucket.digests.contains(digest) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Bucket bucket(long id) {
+        int slot = (int)(id % buckets.length());
+        while(true) {
+            Bucket bucket = buckets.get(slot);
+            if( bucket != null && bucket.id >= id ) {
+                return bucket;
+            }
+            Bucket next = new Bucket(id);
+            if( buckets.compareAndSet(slot, bucket, next) ) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     *
+     * @return number of digests currently held in the cache, including expired buckets not yet reused
+     */
+    public int size() {
+        int size = 0;
+        for(int i=0; i<buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if( bucket != null ) {
+                size += bucket.digests.size();
+            }
+        }
+        return size;
+    }
+}
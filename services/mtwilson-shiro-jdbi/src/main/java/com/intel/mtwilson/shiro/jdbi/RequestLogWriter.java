@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.shiro.jdbi;
+
+import com.intel.mtwilson.shiro.RequestLogEntry;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes request log entries to mw_request_log in batches from a background
+ * thread, so authenticating a request does not wait for the insert.
+ *
+ * If the queue is full the entry is inserted by the caller, so the request
+ * log is never silently truncated under load.
+ *
+ * Configuration:
+ * mtwilson.request.log.batch.size (default 100)
+ * mtwilson.request.log.queue.max (default 10000)
+ */
+public class RequestLogWriter implements Runnable {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RequestLogWriter.class);
+    private final BlockingQueue<RequestLogEntry> queue;
+    private final int batchSize;
+
+    public RequestLogWriter(int batchSize, int queueSize) {
+        this.batchSize = batchSize;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Starts a daemon thread that drains the queue.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "RequestLogWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void write(RequestLogEntry entry) {
+        if( !queue.offer(entry) ) {
+            log.debug("Request log queue is full, inserting entry directly");
+            try (LoginDAO dao = MyJdbi.authz()) {
+                dao.insertRequestLogEntry(entry);
+            }
+            catch(Exception e) {
+                log.error("Cannot insert request log entry", e);
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void run() {
+        ArrayList<RequestLogEntry> batch = new ArrayList<>(batchSize);
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                RequestLogEntry first = queue.poll(1, TimeUnit.SECONDS);
+                if( first == null ) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(ArrayList<RequestLogEntry> batch) {
+        long start = System.currentTimeMillis();
+        try (LoginDAO dao = MyJdbi.authz()) {
+            try {
+                dao.insertRequestLogEntries(batch);
+            }
+            catch(Exception e) {
+                // one duplicate digest fails the whole batch, so retry one at a time to keep the others
+                log.debug("Cannot insert request log batch, inserting entries individually", e);
+                for(RequestLogEntry entry : batch) {
+                    try {
+                        dao.insertRequestLogEntry(entry);
+                    }
+                    catch(Exception e1) {
+                        log.debug("Cannot insert request log entry with digest {}", entry.getDigest(), e1);
+                    }
+                }
+            }
+        }
+        catch(Exception e) {
+            log.error("Cannot write {} request log entries", batch.size(), e);
+        }
+        log.trace("performance: request log batch of {} written in {}ms", batch.size(), System.currentTimeMillis() - start);
+    }
+}
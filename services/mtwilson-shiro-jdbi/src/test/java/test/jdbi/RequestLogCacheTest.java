@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package test.jdbi;
+
+import com.intel.mtwilson.shiro.jdbi.RequestLogCache;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RequestLogCacheTest {
+
+    @Test
+    public void testRejectReplayWithinWindow() {
+        RequestLogCache cache = new RequestLogCache(60000, 4);
+        long now = System.currentTimeMillis();
+        assertFalse(cache.isAuthoritative(now));
+        assertTrue(cache.isAuthoritative(now + 60000));
+        assertTrue(cache.add("digest1", now));
+        assertTrue(cache.add("digest2", now));
+        assertFalse(cache.add("digest1", now + 1000));
+        // still rejected in a later bucket of the same window
+        assertFalse(cache.add("digest1", now + 59000));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testForgetAfterWindow() {
+        RequestLogCache cache = new RequestLogCache(60000, 4);
+        long now = System.currentTimeMillis();
+        assertTrue(cache.add("digest1", now));
+        // one window and one bucket later the bucket is out of the window and its slot is reused
+        assertTrue(cache.add("digest1", now + 75000));
+        assertTrue(cache.add("digest2", now + 75000));
+        assertEquals(2, cache.size());
+    }
+}
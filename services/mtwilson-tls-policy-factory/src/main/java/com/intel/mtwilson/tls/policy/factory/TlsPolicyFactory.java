@@ -21,13 +21,19 @@ import com.intel.mtwilson.tls.policy.provider.GlobalTlsPolicyProvider;
 import com.intel.mtwilson.tls.policy.provider.StoredTlsPolicyProvider;
 import com.intel.mtwilson.tls.policy.provider.StoredVendorTlsPolicyProvider;
 import com.intel.mtwilson.tls.policy.codec.impl.JsonTlsPolicyReader;
+import com.intel.mtwilson.tls.policy.codec.impl.JsonTlsPolicyWriter;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 
 /**
  * You can instantiate subclasses directly:
@@ -68,6 +74,47 @@ public abstract class TlsPolicyFactory {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TlsPolicyFactory.class);
     private static final String INSECURE = "INSECURE";
     private static final String TRUST_FIRST_CERTIFICATE = "TRUST_FIRST_CERTIFICATE";
+    private static final int TLS_POLICY_CACHE_MAX_SIZE = 1000;
+    private static final int RESOLVED_CACHE_MAX_SIZE = 10000;
+    /**
+     * Built TlsPolicy instances keyed by a digest of their effective
+     * descriptor, so that callers asking for the same policy get the same
+     * instance and can re-use connections (and TLS sessions) made with it.
+     */
+    private static final Map<String,TlsPolicy> tlsPolicyCache = Collections.synchronizedMap(new LinkedHashMap<String,TlsPolicy>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,TlsPolicy> eldest) {
+            return size() > TLS_POLICY_CACHE_MAX_SIZE;
+        }
+    });
+    /**
+     * The choice report and TlsPolicy last resolved for each host, keyed by
+     * the host descriptor, the vendor, and the choice made by the object
+     * provider. Entries are removed by invalidateCache() when a stored tls
+     * policy is written, and expire after mtwilson.tls.policy.cache.seconds
+     * to pick up configuration changes to the global and default policies.
+     */
+    private static final Map<String,ResolvedTlsPolicy> resolvedCache = Collections.synchronizedMap(new LinkedHashMap<String,ResolvedTlsPolicy>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,ResolvedTlsPolicy> eldest) {
+            return size() > RESOLVED_CACHE_MAX_SIZE;
+        }
+    });
+    private static final AtomicLong generation = new AtomicLong(0);
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+    
+    private static class ResolvedTlsPolicy {
+        private final TlsPolicyChoiceReport report;
+        private final TlsPolicy tlsPolicy;
+        private final long expires;
+
+        public ResolvedTlsPolicy(TlsPolicyChoiceReport report, TlsPolicy tlsPolicy, long expires) {
+            this.report = report;
+            this.tlsPolicy = tlsPolicy;
+            this.expires = expires;
+        }
+    }
     
 //    protected abstract boolean accept(Object tlsPolicySubject);
     protected abstract TlsPolicyProvider getObjectTlsPolicyProvider();
@@ -85,14 +132,113 @@ public abstract class TlsPolicyFactory {
     }
     
     public TlsPolicy getTlsPolicy() {
+        String resolvedKey = getResolvedKey();
+        if( resolvedKey != null ) {
+            ResolvedTlsPolicy resolved = resolvedCache.get(resolvedKey);
+            if( resolved != null && System.currentTimeMillis() < resolved.expires ) {
+                hits.incrementAndGet();
+                selectTlsPolicyChoice(resolved.report);
+                return resolved.tlsPolicy;
+            }
+            misses.incrementAndGet();
+        }
+        long loadedGeneration = generation.get();
         TlsPolicyChoiceReport tlsPolicyChoiceReport = getTlsPolicyChoiceReport();
         if( tlsPolicyChoiceReport == null ) {
             throw new TlsPolicyNotFoundException(getHostDescriptor().getInternetAddress()); 
         }
-        TlsPolicy tlsPolicy = createTlsPolicy(tlsPolicyChoiceReport); // throws illegal argument exception if cannot create it
+        selectTlsPolicyChoice(tlsPolicyChoiceReport);
+        String tlsPolicyKey = getTlsPolicyKey(tlsPolicyChoiceReport);
+        if( tlsPolicyKey == null ) {
+            return createTlsPolicy(tlsPolicyChoiceReport);
+        }
+        TlsPolicy tlsPolicy = tlsPolicyCache.get(tlsPolicyKey);
+        if( tlsPolicy == null ) {
+            tlsPolicy = createTlsPolicy(tlsPolicyChoiceReport); // throws illegal argument exception if cannot create it
+            tlsPolicyCache.put(tlsPolicyKey, tlsPolicy);
+        }
+        long maxAgeMillis = getResolvedCacheMaxAgeMillis();
+        if( resolvedKey != null && maxAgeMillis > 0 ) {
+            resolvedCache.put(resolvedKey, new ResolvedTlsPolicy(tlsPolicyChoiceReport, tlsPolicy, System.currentTimeMillis() + maxAgeMillis));
+            if( generation.get() != loadedGeneration ) {
+                // a stored policy was changed while this one was resolved
+                resolvedCache.remove(resolvedKey);
+            }
+        }
         return tlsPolicy;
     }
     
+    /**
+     * Identifies the inputs of getTlsPolicyChoiceReport that come from the
+     * subject: the host, its vendor, and the policy id or descriptor in
+     * the subject itself. The stored policies and the configuration are
+     * covered by invalidateCache() and the maximum age.
+     * @return a key for the resolved policy cache, or null if the subject has no host address
+     */
+    private String getResolvedKey() {
+        StoredTlsPolicyProvider.HostDescriptor hostDescriptor = getHostDescriptor();
+        if( hostDescriptor == null || hostDescriptor.getInternetAddress() == null ) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(hostDescriptor.getHostId()).append('|').append(hostDescriptor.getInternetAddress().toString());
+        StoredVendorTlsPolicyProvider.VendorDescriptor vendorDescriptor = getVendorDescriptor();
+        key.append('|').append(vendorDescriptor == null ? null : vendorDescriptor.getVendorProtocol());
+        TlsPolicyProvider objectTlsPolicyProvider = getObjectTlsPolicyProvider();
+        TlsPolicyChoice objectChoice = objectTlsPolicyProvider == null ? null : objectTlsPolicyProvider.getTlsPolicyChoice();
+        if( objectChoice == null ) {
+            key.append("|none");
+        }
+        else if( objectChoice.getTlsPolicyDescriptor() != null ) {
+            key.append("|descriptor:").append(DigestUtils.sha256Hex(new JsonTlsPolicyWriter().write(objectChoice.getTlsPolicyDescriptor())));
+        }
+        else {
+            key.append("|id:").append(objectChoice.getTlsPolicyId());
+        }
+        return key.toString();
+    }
+    
+    /**
+     * 
+     * @return how long a resolved policy is kept, from mtwilson.tls.policy.cache.seconds; 0 to resolve it every time
+     */
+    protected long getResolvedCacheMaxAgeMillis() {
+        return My.configuration().getConfiguration().getLong("mtwilson.tls.policy.cache.seconds", 60) * 1000;
+    }
+    
+    /**
+     * Subclasses can override this method to save the selected choice back
+     * to the subject. It is called each time getTlsPolicy resolves the
+     * policy, including when the resolved policy is found in the cache.
+     * @param report 
+     */
+    protected void selectTlsPolicyChoice(TlsPolicyChoiceReport report) {
+    }
+    
+    /**
+     * Removes all resolved policies. Call after creating, updating, or
+     * deleting a stored tls policy or a host's link to one.
+     */
+    public static void invalidateCache() {
+        generation.incrementAndGet();
+        resolvedCache.clear();
+        log.debug("Resolved TLS policy cache cleared, hits {} misses {}", hits.get(), misses.get());
+    }
+    
+    /**
+     * The TRUST_FIRST_CERTIFICATE policy saves the host certificate back to
+     * the host record so it is never shared.
+     * @param report
+     * @return a digest of the effective descriptor, or null if the policy should not be shared
+     */
+    private String getTlsPolicyKey(TlsPolicyChoiceReport report) {
+        TlsPolicyDescriptor tlsPolicyDescriptor = report.getDescriptor();
+        if( tlsPolicyDescriptor == null || TRUST_FIRST_CERTIFICATE.equals(tlsPolicyDescriptor.getPolicyType()) ) {
+            return null;
+        }
+        return DigestUtils.sha256Hex(new JsonTlsPolicyWriter().write(tlsPolicyDescriptor));
+    }
+    
     public TlsPolicyChoiceReport getTlsPolicyChoiceReport() {
 //        TlsPolicyChoiceReport report = new TlsPolicyChoiceReport();
         // find out which policy types are allowed
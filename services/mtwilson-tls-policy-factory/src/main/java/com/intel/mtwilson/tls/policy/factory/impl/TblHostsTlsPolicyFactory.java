@@ -7,9 +7,9 @@ package com.intel.mtwilson.tls.policy.factory.impl;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intel.dcsg.cpg.net.InternetAddress;
 import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
+import com.intel.mtwilson.as.data.HostConnectionCache;
 import com.intel.mtwilson.as.data.TblHosts;
 import com.intel.mtwilson.datatypes.ConnectionString;
-import com.intel.mtwilson.datatypes.TxtHostRecord;
 import com.intel.mtwilson.tls.policy.TlsPolicyChoice;
 import com.intel.mtwilson.tls.policy.TlsPolicyDescriptor;
 import com.intel.mtwilson.tls.policy.factory.TlsPolicyChoiceReport;
@@ -58,9 +58,17 @@ public class TblHostsTlsPolicyFactory extends TlsPolicyFactory {
     protected TlsPolicy createTlsPolicy(TlsPolicyChoiceReport report) {
         try {ObjectMapper mapper = new ObjectMapper();        
         log.debug("TblHostsTlsPolicyFactory createTlsPolicy with report: {}", mapper.writeValueAsString(report));}catch(Exception e){ log.error("TblHostsTlsPolicyFactory createTlsPolicy with report"); }
-        objectTlsPolicyProvider.setTlsPolicyChoice(report.getChoice());
         return super.createTlsPolicy(report);
     }
+
+    @Override
+    protected void selectTlsPolicyChoice(TlsPolicyChoiceReport report) {
+        // the report may be shared with other hosts through the resolved policy cache, so the host record gets its own choice
+        TlsPolicyChoice tlsPolicyChoice = new TlsPolicyChoice();
+        tlsPolicyChoice.setTlsPolicyDescriptor(report.getChoice().getTlsPolicyDescriptor());
+        tlsPolicyChoice.setTlsPolicyId(report.getChoice().getTlsPolicyId());
+        objectTlsPolicyProvider.setTlsPolicyChoice(tlsPolicyChoice);
+    }
     
     /*
      @Override
@@ -200,13 +208,7 @@ public class TblHostsTlsPolicyFactory extends TlsPolicyFactory {
 
     protected static ConnectionString getConnectionString(TblHosts tblHosts) {
         try {
-            TxtHostRecord txtHostRecord = new TxtHostRecord();
-            txtHostRecord.AddOn_Connection_String = tblHosts.getAddOnConnectionInfo();
-            txtHostRecord.HostName = tblHosts.getName();
-            txtHostRecord.Port = tblHosts.getPort();
-            txtHostRecord.IPAddress = tblHosts.getIPAddress();
-            ConnectionString str = ConnectionString.from(txtHostRecord);
-            return str;
+            return HostConnectionCache.getConnectionString(tblHosts);
         } catch (MalformedURLException e) {
             log.error("Cannot determine connection string from host record", e);
             return null;
@@ -64,9 +64,17 @@ public class TxtHostRecordTlsPolicyFactory extends TlsPolicyFactory {
     protected TlsPolicy createTlsPolicy(TlsPolicyChoiceReport report) {
         try {ObjectMapper mapper = new ObjectMapper();        
         log.debug("TxtHostRecordTlsPolicyFactory createTlsPolicy with report: {}", mapper.writeValueAsString(report));}catch(Exception e){ log.error("TxtHostRecordTlsPolicyFactory createTlsPolicy with report"); }
-        objectTlsPolicyProvider.setTlsPolicyChoice(report.getChoice());
         return super.createTlsPolicy(report);
     }
+
+    @Override
+    protected void selectTlsPolicyChoice(TlsPolicyChoiceReport report) {
+        // the report may be shared with other hosts through the resolved policy cache, so the host record gets its own choice
+        TlsPolicyChoice tlsPolicyChoice = new TlsPolicyChoice();
+        tlsPolicyChoice.setTlsPolicyDescriptor(report.getChoice().getTlsPolicyDescriptor());
+        tlsPolicyChoice.setTlsPolicyId(report.getChoice().getTlsPolicyId());
+        objectTlsPolicyProvider.setTlsPolicyChoice(tlsPolicyChoice);
+    }
     
     
     /*
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.tls.policy.factory;
+
+import com.intel.dcsg.cpg.net.InternetAddress;
+import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
+import com.intel.dcsg.cpg.tls.policy.impl.InsecureTlsPolicy;
+import com.intel.mtwilson.tls.policy.TlsPolicyChoice;
+import com.intel.mtwilson.tls.policy.TlsPolicyDescriptor;
+import com.intel.mtwilson.tls.policy.provider.StoredTlsPolicyProvider;
+import com.intel.mtwilson.tls.policy.provider.StoredVendorTlsPolicyProvider;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the resolved policy cache of TlsPolicyFactory with a factory that
+ * resolves its policy without the database or configuration.
+ */
+public class TlsPolicyFactoryCacheTest {
+
+    private static class TestTlsPolicyFactory extends TlsPolicyFactory {
+        private final String hostId;
+        private TlsPolicyDescriptor descriptor;
+        private Runnable whileResolving = null;
+        private int resolved = 0;
+
+        public TestTlsPolicyFactory(String hostId, TlsPolicyDescriptor descriptor) {
+            this.hostId = hostId;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        protected TlsPolicyProvider getObjectTlsPolicyProvider() {
+            return null;
+        }
+
+        @Override
+        protected StoredTlsPolicyProvider.HostDescriptor getHostDescriptor() {
+            return new StoredTlsPolicyProvider.HostDescriptor() {
+                @Override
+                public String getHostId() {
+                    return hostId;
+                }
+
+                @Override
+                public InternetAddress getInternetAddress() {
+                    return new InternetAddress("192.168.1.1");
+                }
+            };
+        }
+
+        @Override
+        protected StoredVendorTlsPolicyProvider.VendorDescriptor getVendorDescriptor() {
+            return null;
+        }
+
+        @Override
+        public TlsPolicyChoiceReport getTlsPolicyChoiceReport() {
+            resolved++;
+            if( whileResolving != null ) {
+                whileResolving.run();
+            }
+            TlsPolicyChoice choice = new TlsPolicyChoice();
+            choice.setTlsPolicyDescriptor(descriptor);
+            TlsPolicyChoiceReport report = new TlsPolicyChoiceReport();
+            report.setChoice(choice);
+            report.setDescriptor(descriptor);
+            return report;
+        }
+
+        @Override
+        protected TlsPolicy createTlsPolicy(TlsPolicyChoiceReport report) {
+            return new InsecureTlsPolicy();
+        }
+
+        @Override
+        protected long getResolvedCacheMaxAgeMillis() {
+            return 60000;
+        }
+    }
+
+    private TlsPolicyDescriptor descriptor(String policyType, String data) {
+        TlsPolicyDescriptor descriptor = new TlsPolicyDescriptor();
+        descriptor.setPolicyType(policyType);
+        descriptor.setData(new ArrayList<String>());
+        if( data != null ) {
+            descriptor.getData().add(data);
+        }
+        return descriptor;
+    }
+
+    @Before
+    public void clearCache() {
+        TlsPolicyFactory.invalidateCache();
+    }
+
+    @Test
+    public void testResolvedPolicyIsCached() {
+        TestTlsPolicyFactory factory = new TestTlsPolicyFactory("host-cached", descriptor("certificate-digest", "aa"));
+        TlsPolicy first = factory.getTlsPolicy();
+        TlsPolicy second = factory.getTlsPolicy();
+        assertSame(first, second);
+        assertEquals(1, factory.resolved);
+    }
+
+    @Test
+    public void testHostsWithTheSamePolicyShareIt() {
+        TestTlsPolicyFactory factory1 = new TestTlsPolicyFactory("host-shared-1", descriptor("certificate-digest", "ab"));
+        TestTlsPolicyFactory factory2 = new TestTlsPolicyFactory("host-shared-2", descriptor("certificate-digest", "ab"));
+        assertSame(factory1.getTlsPolicy(), factory2.getTlsPolicy());
+        assertEquals(1, factory2.resolved);
+    }
+
+    @Test
+    public void testInvalidateCacheAfterPolicyChange() {
+        TestTlsPolicyFactory factory = new TestTlsPolicyFactory("host-changed", descriptor("certificate-digest", "ac"));
+        TlsPolicy before = factory.getTlsPolicy();
+        // the stored policy is updated; until the cache is invalidated the resolved policy is still used
+        factory.descriptor = descriptor("certificate-digest", "ad");
+        assertSame(before, factory.getTlsPolicy());
+        assertEquals(1, factory.resolved);
+        TlsPolicyFactory.invalidateCache();
+        TlsPolicy after = factory.getTlsPolicy();
+        assertNotSame(before, after);
+        assertEquals(2, factory.resolved);
+        assertSame(after, factory.getTlsPolicy());
+        assertEquals(2, factory.resolved);
+    }
+
+    @Test
+    public void testPolicyChangedWhileResolvingIsNotCached() {
+        TestTlsPolicyFactory factory = new TestTlsPolicyFactory("host-race", descriptor("certificate-digest", "ae"));
+        factory.whileResolving = new Runnable() {
+            @Override
+            public void run() {
+                TlsPolicyFactory.invalidateCache(); // a stored policy is written by another thread
+            }
+        };
+        assertNotNull(factory.getTlsPolicy());
+        factory.whileResolving = null;
+        factory.getTlsPolicy();
+        assertEquals(2, factory.resolved);
+        factory.getTlsPolicy();
+        assertEquals(2, factory.resolved);
+    }
+
+    @Test
+    public void testTrustFirstCertificateIsNotCached() {
+        TestTlsPolicyFactory factory = new TestTlsPolicyFactory("host-tofu", descriptor("TRUST_FIRST_CERTIFICATE", null));
+        TlsPolicy first = factory.getTlsPolicy();
+        TlsPolicy second = factory.getTlsPolicy();
+        assertNotSame(first, second);
+        assertEquals(2, factory.resolved);
+    }
+}
@@ -4,6 +4,7 @@
  */
 package com.intel.mtwilson.policy;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -45,4 +46,18 @@ public class HostReport {
     @JsonDeserialize(using=X509AttributeCertificateDeserializer.class)
     public X509AttributeCertificate tagCertificate;
     public byte[] assetTagReported; // This is asset tag hash reported from the host. mainly used on Windows host
+    private transient MeasurementIndex measurementIndex;
+
+    /**
+     * Rules should look up measurements in this index instead of parsing
+     * the pcrManifest themselves. It is rebuilt if pcrManifest is replaced.
+     * @return the measurement index for the current pcrManifest
+     */
+    @JsonIgnore
+    public synchronized MeasurementIndex getMeasurementIndex() {
+        if( measurementIndex == null || measurementIndex.getPcrManifest() != pcrManifest ) {
+            measurementIndex = new MeasurementIndex(pcrManifest);
+        }
+        return measurementIndex;
+    }
 }
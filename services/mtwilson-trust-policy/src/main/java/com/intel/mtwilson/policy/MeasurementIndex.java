@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy;
+
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.PcrEventLog;
+import com.intel.mtwilson.model.PcrIndex;
+import com.intel.mtwilson.model.PcrManifest;
+import com.intel.mtwilson.model.XmlMeasurementLog;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the measurements in a host's PcrManifest, built once per
+ * HostReport and shared by all the rules applied to it. The event log of
+ * each PCR and the XML measurement log are only parsed the first time a
+ * rule asks for them.
+ *
+ * Use HostReport.getMeasurementIndex() instead of creating an instance
+ * directly.
+ */
+public class MeasurementIndex {
+    private final PcrManifest pcrManifest;
+    private final HashMap<String,Entries> pcrEventLogs = new HashMap<>();
+    private Entries xmlMeasurementLog;
+
+    public MeasurementIndex(PcrManifest pcrManifest) {
+        this.pcrManifest = pcrManifest;
+    }
+
+    public PcrManifest getPcrManifest() {
+        return pcrManifest;
+    }
+
+    /**
+     *
+     * @param bank
+     * @param pcrIndex
+     * @return the indexed event log of the PCR, or null if the host did not report an event log for it
+     */
+    public synchronized Entries getPcrEventLog(DigestAlgorithm bank, PcrIndex pcrIndex) {
+        String key = bank.name() + ":" + pcrIndex.toInteger();
+        if( pcrEventLogs.containsKey(key) ) {
+            return pcrEventLogs.get(key);
+        }
+        PcrEventLog pcrEventLog = pcrManifest == null ? null : pcrManifest.getPcrEventLog(bank, pcrIndex);
+        Entries entries = pcrEventLog == null || pcrEventLog.getEventLog() == null ? null : new Entries(pcrEventLog.getEventLog());
+        pcrEventLogs.put(key, entries);
+        return entries;
+    }
+
+    /**
+     * The measurements in the XML log do not depend on the PCR they are
+     * extended into, so the log is parsed only once for all rules.
+     *
+     * @return the indexed XML measurement log, or null if the host did not report one
+     */
+    public synchronized Entries getXmlMeasurementLog() {
+        if( xmlMeasurementLog == null ) {
+            if( pcrManifest == null || pcrManifest.getMeasurementXml() == null || pcrManifest.getMeasurementXml().isEmpty() ) {
+                return null;
+            }
+            xmlMeasurementLog = new Entries(new XmlMeasurementLog(PcrIndex.PCR19, pcrManifest.getMeasurementXml()).getMeasurements());
+        }
+        return xmlMeasurementLog;
+    }
+
+    /**
+     * An immutable list of measurements with lookup by digest and by path
+     * (the measurement label, compared without case).
+     */
+    public static class Entries {
+        private final List<Measurement> measurements;
+        private final Set<Digest> digests;
+        private final Map<String,Measurement> paths;
+
+        public Entries(List<Measurement> measurements) {
+            this.measurements = Collections.unmodifiableList(new ArrayList<>(measurements));
+            this.digests = new HashSet<>(measurements.size() * 2);
+            this.paths = new HashMap<>(measurements.size() * 2);
+            for(Measurement m : measurements) {
+                digests.add(new Digest(m));
+                if( m.getLabel() != null ) {
+                    paths.put(m.getLabel().toLowerCase(), m);
+                }
+            }
+        }
+
+        public List<Measurement> getMeasurements() {
+            return measurements;
+        }
+
+        public boolean isEmpty() {
+            return measurements.isEmpty();
+        }
+
+        public int size() {
+            return measurements.size();
+        }
+
+        /**
+         * Measurements are compared by digest only, the same as Measurement.equals
+         * @param m
+         * @return true if a measurement with the same digest is in the list
+         */
+        public boolean contains(Measurement m) {
+            return m != null && m.getValue() != null && digests.contains(new Digest(m));
+        }
+
+        /**
+         *
+         * @param path
+         * @return the measurement with the given label, or null if there is none
+         */
+        public Measurement get(String path) {
+            return path == null ? null : paths.get(path.toLowerCase());
+        }
+
+        /**
+         *
+         * @param other
+         * @return the measurements in this list whose digest is not in the other list, in order
+         */
+        public List<Measurement> notIn(Entries other) {
+            ArrayList<Measurement> result = new ArrayList<>();
+            for(Measurement m : measurements) {
+                if( !other.contains(m) ) {
+                    result.add(m);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Digest {
+        private final byte[] value;
+        private final int hashCode;
+
+        public Digest(Measurement m) {
+            this.value = m.getValue() == null ? new byte[0] : m.getValue().toByteArray();
+            this.hashCode = Arrays.hashCode(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if( obj == null || obj.getClass() != getClass() ) { return false; }
+            return Arrays.equals(value, ((Digest)obj).value);
+        }
+    }
+}
@@ -6,15 +6,16 @@ package com.intel.mtwilson.policy.rule;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
 import com.intel.mtwilson.model.Measurement;
 import com.intel.mtwilson.model.PcrEventLog;
 import com.intel.mtwilson.policy.BaseRule;
 import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
 import com.intel.mtwilson.policy.RuleResult;
 import com.intel.mtwilson.policy.fault.PcrEventLogContainsUnexpectedEntries;
 import com.intel.mtwilson.policy.fault.PcrEventLogMissing;
 import com.intel.mtwilson.policy.fault.PcrEventLogMissingExpectedEntries;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +36,7 @@ import org.slf4j.LoggerFactory;
 public class PcrEventLogEquals extends BaseRule {
     private Logger log = LoggerFactory.getLogger(getClass());
     private PcrEventLog expected;
+    private transient MeasurementIndex.Entries expectedEntries; // rules are shared by all hosts with the same whitelist, so this is indexed only once
 
     protected PcrEventLogEquals() { } // for desearializing jackson
     
@@ -44,6 +46,15 @@ public class PcrEventLogEquals extends BaseRule {
     
     public PcrEventLog getPcrModuleManifest() { return expected; }
     
+    protected MeasurementIndex.Entries getExpectedEntries() {
+        MeasurementIndex.Entries entries = expectedEntries;
+        if( entries == null ) {
+            entries = new MeasurementIndex.Entries(expected.getEventLog());
+            expectedEntries = entries;
+        }
+        return entries;
+    }
+    
     @Override
     public RuleResult apply(HostReport hostReport) {
         RuleResult report = new RuleResult(this);
@@ -54,27 +65,24 @@ public class PcrEventLogEquals extends BaseRule {
             report.fault(new PcrEventLogMissing());
         }
         else {
-            PcrEventLog pcrEventLog = getPcrEventLog(hostReport); 
-            if( pcrEventLog == null ) {
+            MeasurementIndex.Entries moduleManifest = getPcrEventLog(hostReport); 
+            if( moduleManifest == null ) {
                 log.debug("PcrEventLog missing fault is being raised.");
                 report.fault(new PcrEventLogMissing(expected.getPcrIndex()));
             }
             else {
-                List<Measurement> moduleManifest = pcrEventLog.getEventLog();
                 log.debug("About to apply the PcrEventLogEquals policy for {} entries.", moduleManifest.size());
-                if( moduleManifest == null || moduleManifest.isEmpty() ) {
+                if( moduleManifest.isEmpty() ) {
                     report.fault(new PcrEventLogMissing(expected.getPcrIndex()));
                 }
                 else {                    
                     // we check that for the PCR defined in the policy, the HostReport's PcrModuleManifest contains the exact set of expected modules
-                    ArrayList<Measurement> hostActualUnexpected = new ArrayList<Measurement>(moduleManifest);
-                    hostActualUnexpected.removeAll(expected.getEventLog()); //  hostActualUnexpected = actual modules - expected modules = only extra modules that shouldn't be there;  comparison is done BY HASH VALUE,  not by name or any "other info"
+                    List<Measurement> hostActualUnexpected = moduleManifest.notIn(getExpectedEntries()); //  hostActualUnexpected = actual modules - expected modules = only extra modules that shouldn't be there;  comparison is done BY HASH VALUE,  not by name or any "other info"
                     if( !hostActualUnexpected.isEmpty() ) {
                         log.debug("PcrEventLogEquals : Host is having #{} additional modules compared to the white list.", hostActualUnexpected.size());
                         report.fault(new PcrEventLogContainsUnexpectedEntries(expected.getPcrIndex(), hostActualUnexpected));
                     }
-                    ArrayList<Measurement> hostActualMissing = new ArrayList<Measurement>(expected.getEventLog());
-                    hostActualMissing.removeAll(moduleManifest); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
+                    List<Measurement> hostActualMissing = getExpectedEntries().notIn(moduleManifest); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
                     if( !hostActualMissing.isEmpty() ) {
                         log.debug("PcrEventLogEquals : Host is missing #{} modules compared to the white list.", hostActualMissing.size());
                         report.fault(new PcrEventLogMissingExpectedEntries(expected.getPcrIndex(), new HashSet<Measurement>(hostActualMissing)));
@@ -85,8 +93,8 @@ public class PcrEventLogEquals extends BaseRule {
         return report;
     }
     
-    protected PcrEventLog getPcrEventLog(HostReport hostReport) {
-        return hostReport.pcrManifest.getPcrEventLog(expected.getPcrIndex());        
+    protected MeasurementIndex.Entries getPcrEventLog(HostReport hostReport) {
+        return hostReport.getMeasurementIndex().getPcrEventLog(DigestAlgorithm.SHA1, expected.getPcrIndex());        
     }
     
 }
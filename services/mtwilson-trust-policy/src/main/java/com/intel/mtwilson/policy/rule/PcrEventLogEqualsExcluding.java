@@ -8,9 +8,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.intel.mtwilson.model.Measurement;
 import com.intel.mtwilson.model.PcrEventLog;
-import com.intel.mtwilson.model.PcrEventLogFactory;
-import com.intel.mtwilson.model.PcrIndex;
 import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -43,8 +42,12 @@ public class PcrEventLogEqualsExcluding extends PcrEventLogEquals {
     
 
     @Override
-    protected PcrEventLog getPcrEventLog(HostReport hostReport) {
-        List<Measurement> modules = hostReport.pcrManifest.getPcrEventLog(getPcrModuleManifest().getPcrBank(), getPcrModuleManifest().getPcrIndex()).getEventLog();
+    protected MeasurementIndex.Entries getPcrEventLog(HostReport hostReport) {
+        MeasurementIndex.Entries eventLog = hostReport.getMeasurementIndex().getPcrEventLog(getPcrModuleManifest().getPcrBank(), getPcrModuleManifest().getPcrIndex());
+        if( eventLog == null ) {
+            return null;
+        }
+        List<Measurement> modules = eventLog.getMeasurements();
         ArrayList<Measurement> modulesExcluding = new ArrayList<Measurement>();
         Iterator<Measurement> it = modules.iterator();
         while(it.hasNext()) {
@@ -64,8 +67,7 @@ public class PcrEventLogEqualsExcluding extends PcrEventLogEquals {
             // Add the module to be verified.
             modulesExcluding.add(measurement);
         }
-        PcrEventLog updatedPcrEventLog = PcrEventLogFactory.newInstance(getPcrModuleManifest().getPcrBank(), PcrIndex.PCR19, modulesExcluding);
-        return updatedPcrEventLog; // the new instance 
+        return new MeasurementIndex.Entries(modulesExcluding); // the new instance 
     }
     
 }
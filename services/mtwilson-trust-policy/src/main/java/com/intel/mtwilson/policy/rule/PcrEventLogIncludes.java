@@ -8,16 +8,15 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
 import com.intel.mtwilson.model.Measurement;
-import com.intel.mtwilson.model.PcrEventLog;
 import com.intel.mtwilson.model.PcrIndex;
 import com.intel.mtwilson.policy.BaseRule;
 import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
 import com.intel.mtwilson.policy.RuleResult;
 import com.intel.mtwilson.policy.fault.PcrEventLogContainsUnexpectedEntries;
 import com.intel.mtwilson.policy.fault.PcrEventLogMissing;
 import com.intel.mtwilson.policy.fault.PcrEventLogMissingExpectedEntries;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -63,22 +62,20 @@ public class PcrEventLogIncludes extends BaseRule {
             report.fault(new PcrEventLogMissing());
         }
         else {
-            PcrEventLog pcrEventLog = hostReport.pcrManifest.getPcrEventLog(pcrBank, pcrIndex);
-            if( pcrEventLog == null  ) {
+            MeasurementIndex.Entries moduleManifest = hostReport.getMeasurementIndex().getPcrEventLog(pcrBank, pcrIndex);
+            if( moduleManifest == null || moduleManifest.isEmpty() ) {
                 report.fault(new PcrEventLogMissing(pcrIndex));
             }
             else {
-                List<Measurement> moduleManifest = pcrEventLog.getEventLog();
-                if( moduleManifest == null || moduleManifest.isEmpty() ) {
-                    report.fault(new PcrEventLogMissing(pcrIndex));
-                }
-                else {
-                    HashSet<Measurement> hostActualMissing = new HashSet<Measurement>(expected);
-                    hostActualMissing.removeAll(moduleManifest); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
-                    if( !hostActualMissing.isEmpty() ) {
-                        report.fault(new PcrEventLogMissingExpectedEntries(pcrIndex, hostActualMissing));
-                    }   
+                HashSet<Measurement> hostActualMissing = new HashSet<Measurement>();
+                for(Measurement m : expected) {
+                    if( !moduleManifest.contains(m) ) {
+                        hostActualMissing.add(m); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
+                    }
                 }
+                if( !hostActualMissing.isEmpty() ) {
+                    report.fault(new PcrEventLogMissingExpectedEntries(pcrIndex, hostActualMissing));
+                }   
             }
         }
         return report;
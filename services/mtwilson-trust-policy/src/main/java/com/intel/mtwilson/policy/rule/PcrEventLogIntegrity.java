@@ -10,7 +10,6 @@ import com.intel.dcsg.cpg.crypto.AbstractDigest;
 import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
 import com.intel.mtwilson.model.Measurement;
 import com.intel.mtwilson.model.Pcr;
-import com.intel.mtwilson.model.PcrEventLog;
 import com.intel.mtwilson.model.PcrIndex;
 //import com.intel.mtwilson.model.Sha1Digest;
 import com.intel.dcsg.cpg.crypto.Sha1Digest;
@@ -19,6 +18,7 @@ import com.intel.mtwilson.policy.BaseRule;
 import com.intel.mtwilson.policy.BaseRule;
 import com.intel.mtwilson.policy.HostReport;
 import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
 import com.intel.mtwilson.policy.RuleResult;
 import com.intel.mtwilson.policy.RuleResult;
 import com.intel.mtwilson.policy.fault.PcrEventLogMissing;
@@ -75,19 +75,16 @@ public class PcrEventLogIntegrity extends BaseRule {
                 report.fault(new PcrValueMissing(pcrIndex));
             }
             else {
-                PcrEventLog eventLog = hostReport.pcrManifest.getPcrEventLog(pcrBank, pcrIndex);
+                MeasurementIndex.Entries eventLog = hostReport.getMeasurementIndex().getPcrEventLog(pcrBank, pcrIndex);
                 if( eventLog == null ) {
                     report.fault(new PcrEventLogMissing(pcrIndex));
                 }
                 else {
-                    List<Measurement> measurements = eventLog.getEventLog();
-                    if( measurements != null ) {
-                        AbstractDigest expectedValue = computeHistory(measurements, pcrBank); // calculate expected' based on history
-                        log.debug("PcrEventLogIntegrity: About to compare {} with {}.", actualValue.getValue().toString(), expectedValue.toString());
-                        // make sure the expected pcr value matches the actual pcr value
-                        if( !expectedValue.equals(actualValue.getValue()) ) {
-                            report.fault(PcrValueMismatch.newInstance(pcrBank, pcrIndex, expectedValue, expectedValue));
-                        }
+                    AbstractDigest expectedValue = computeHistory(eventLog.getMeasurements(), pcrBank); // calculate expected' based on history
+                    log.debug("PcrEventLogIntegrity: About to compare {} with {}.", actualValue.getValue().toString(), expectedValue.toString());
+                    // make sure the expected pcr value matches the actual pcr value
+                    if( !expectedValue.equals(actualValue.getValue()) ) {
+                        report.fault(PcrValueMismatch.newInstance(pcrBank, pcrIndex, expectedValue, expectedValue));
                     }
                 }
             }
@@ -13,6 +13,7 @@ import com.intel.mtwilson.model.PcrIndex;
 import com.intel.mtwilson.model.XmlMeasurementLog;
 import com.intel.mtwilson.policy.BaseRule;
 import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
 import com.intel.mtwilson.policy.RuleResult;
 import com.intel.mtwilson.policy.fault.XmlMeasurementLogContainsUnexpectedEntries;
 import com.intel.mtwilson.policy.fault.XmlMeasurementLogMissing;
@@ -22,7 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Locale;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +51,7 @@ public class XmlMeasurementLogEquals extends BaseRule {
     private Logger log = LoggerFactory.getLogger(getClass());
     private XmlMeasurementLog expected;
     private PcrIndex pcrIndex; 
+    private transient MeasurementIndex.Entries expectedEntries; // rules are shared by all hosts with the same whitelist, so this is indexed only once
 
     protected XmlMeasurementLogEquals() {
         this.expected = new XmlMeasurementLog(PcrIndex.PCR19);
@@ -66,18 +68,27 @@ public class XmlMeasurementLogEquals extends BaseRule {
  
     public XmlMeasurementLog getXmlMeasurementLog() { return expected; }
     
+    protected MeasurementIndex.Entries getExpectedEntries() {
+        MeasurementIndex.Entries entries = expectedEntries;
+        if( entries == null ) {
+            entries = new MeasurementIndex.Entries(expected.getMeasurements());
+            expectedEntries = entries;
+        }
+        return entries;
+    }
+    
     @Override
     public RuleResult apply(HostReport hostReport) {
         log.debug("XmlMeasurementLogEquals: About to apply the XmlMeasurementLogEquals policy");
         RuleResult report = new RuleResult(this);
-        if( hostReport.pcrManifest.getMeasurementXml() == null || hostReport.pcrManifest.getMeasurementXml().isEmpty()) {
+        // Retrieve the list of modules as measurements from the XML log provided by the host
+        MeasurementIndex.Entries actualModules = hostReport.getMeasurementIndex().getXmlMeasurementLog();
+        if( actualModules == null ) {
             
             log.debug("XmlMeasurementLogEquals: XmlMeasurementLog missing fault is being raised.");
             report.fault(new XmlMeasurementLogMissing());
             
         } else {
-            // Retrieve the list of modules as measurements from the XML log provided by the host
-            List<Measurement> actualModules = new XmlMeasurementLog(expected.getPcrIndex(), hostReport.pcrManifest.getMeasurementXml()).getMeasurements();
             log.debug("XmlMeasurementLogEquals: About to apply the XmlMeasurementLogEquals policy for {} entries.", actualModules.size());
             if( actualModules.isEmpty() ) {
                 report.fault(new XmlMeasurementLogMissing());
@@ -86,16 +97,15 @@ public class XmlMeasurementLogEquals extends BaseRule {
                 // We will first check if the host provided any additional modules as part of the log
                 // hostActualUnexpected = actual modules - expected modules = only extra modules that shouldn't be there;  
                 // comparison is done BY HASH VALUE,  not by name or any "other info"
-                ArrayList<Measurement> hostActualUnexpected = new ArrayList<>(actualModules);
-                hostActualUnexpected.removeAll(expected.getMeasurements()); 
-
-                ArrayList<Measurement> hostActualMissing = new ArrayList<>(expected.getMeasurements());
+                ArrayList<Measurement> hostActualUnexpected = new ArrayList<>(actualModules.notIn(getExpectedEntries()));
 
                 log.debug("XmlMeasurementLogEquals: About to check host entries {} against the whitelist which has {} entries.", 
-                        actualModules.size(), hostActualMissing.size());
-                log.debug("XmlMeasurementLogEquals: Verifying {} against {}", expected.toString(), actualModules.toString());
+                        actualModules.size(), getExpectedEntries().size());
+                if( log.isTraceEnabled() ) {
+                    log.trace("XmlMeasurementLogEquals: Verifying {} against {}", expected.toString(), actualModules.getMeasurements().toString());
+                }
 
-                hostActualMissing.removeAll(actualModules); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
+                ArrayList<Measurement> hostActualMissing = new ArrayList<>(getExpectedEntries().notIn(actualModules)); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
 
                 raiseFaultForModifiedEntries(hostActualUnexpected, hostActualMissing, report);
                 
@@ -119,28 +129,33 @@ public class XmlMeasurementLogEquals extends BaseRule {
     
     private void raiseFaultForModifiedEntries(ArrayList<Measurement> hostActualUnexpected, ArrayList<Measurement> hostActualMissing, RuleResult report) {
         ArrayList<Measurement> hostModifiedModules = new ArrayList<>();
-        ArrayList<Measurement> tempHostActualUnexpected = new ArrayList<>(hostActualUnexpected);
-        ArrayList<Measurement> tempHostActualMissing = new ArrayList<>(hostActualMissing);
+        HashSet<Measurement> modifiedMissing = new HashSet<>();
         
         try {
-            for (Measurement tempUnexpected : tempHostActualUnexpected) {
-                for (Measurement tempMissing : tempHostActualMissing) {
-                    log.debug("RaiseFaultForModifiedEntries: Comparing module {} with hash {} to module {} with hash {}.", tempUnexpected.getLabel(), 
-                            tempUnexpected.getValue().toString(), tempMissing.getLabel(), tempMissing.getValue().toString());
-                    if (tempUnexpected.getLabel().equalsIgnoreCase(tempMissing.getLabel())) {
-                        log.debug("Adding the entry to the list of modified modules and deleting from the other 2 lists.");
-                        
-                        // We are storing the whitelist value and the actual value so that we do not need to compare again when generating the reports.
-                        HashMap<String, String> tempHashMapToAdd = new HashMap<>();
-                        tempHashMapToAdd.put("Actual_Value", tempUnexpected.getValue().toString());
-                        Measurement toMeasurementToAdd = new MeasurementSha1((Sha1Digest)tempMissing.getValue(), tempMissing.getLabel(), tempHashMapToAdd);
-                        
-                        hostModifiedModules.add(toMeasurementToAdd);
-                        hostActualUnexpected.remove(tempUnexpected);
-                        hostActualMissing.remove(tempMissing);
-                    }
+            // index the missing modules by path so each unexpected module is matched with one lookup instead of a scan of the missing list
+            HashMap<String, Measurement> tempHostActualMissing = new HashMap<>();
+            for (Measurement tempMissing : hostActualMissing) {
+                tempHostActualMissing.put(tempMissing.getLabel().toLowerCase(Locale.ROOT), tempMissing);
+            }
+            Iterator<Measurement> it = hostActualUnexpected.iterator();
+            while (it.hasNext()) {
+                Measurement tempUnexpected = it.next();
+                Measurement tempMissing = tempHostActualMissing.remove(tempUnexpected.getLabel().toLowerCase(Locale.ROOT));
+                if (tempMissing != null) {
+                    log.debug("RaiseFaultForModifiedEntries: Module {} changed from hash {} to hash {}.", tempMissing.getLabel(), 
+                            tempMissing.getValue().toString(), tempUnexpected.getValue().toString());
+                    
+                    // We are storing the whitelist value and the actual value so that we do not need to compare again when generating the reports.
+                    HashMap<String, String> tempHashMapToAdd = new HashMap<>();
+                    tempHashMapToAdd.put("Actual_Value", tempUnexpected.getValue().toString());
+                    Measurement toMeasurementToAdd = new MeasurementSha1((Sha1Digest)tempMissing.getValue(), tempMissing.getLabel(), tempHashMapToAdd);
+                    
+                    hostModifiedModules.add(toMeasurementToAdd);
+                    modifiedMissing.add(tempMissing);
+                    it.remove();
                 }
-            }                        
+            }
+            hostActualMissing.removeAll(modifiedMissing);
             
             if (!hostModifiedModules.isEmpty()) {
                 log.debug("XmlMeasurementLogEquals : Host has updated #{} modules compared to the white list.", hostModifiedModules.size());
@@ -12,9 +12,9 @@ import com.intel.mtwilson.model.Measurement;
 import com.intel.mtwilson.model.PcrIndex;
 import com.intel.dcsg.cpg.crypto.Sha1Digest;
 import com.intel.dcsg.cpg.crypto.Sha256Digest;
-import com.intel.mtwilson.model.XmlMeasurementLog;
 import com.intel.mtwilson.policy.BaseRule;
 import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
 import com.intel.mtwilson.policy.RuleResult;
 import com.intel.mtwilson.policy.fault.XmlMeasurementLogMissing;
 import com.intel.mtwilson.policy.fault.XmlMeasurementValueMismatch;
@@ -55,14 +55,15 @@ public class XmlMeasurementLogIntegrity extends BaseRule {
     public RuleResult apply(HostReport hostReport) {
         log.debug("XmlMeasurementLogIntegrity: About to apply the XmlMeasurementLogIntegrity policy");
         RuleResult report = new RuleResult(this);
-        if( hostReport.pcrManifest.getMeasurementXml() == null || hostReport.pcrManifest.getMeasurementXml().isEmpty()) {
+        MeasurementIndex.Entries xmlMeasurementLog = hostReport.getMeasurementIndex().getXmlMeasurementLog();
+        if( xmlMeasurementLog == null ) {
             
             log.debug("XmlMeasurementLogIntegrity: XmlMeasurementLog missing fault is being raised.");
             report.fault(new XmlMeasurementLogMissing());
             
         } else {
 
-            List<Measurement> measurements = new XmlMeasurementLog(this.pcrIndex, hostReport.pcrManifest.getMeasurementXml()).getMeasurements();
+            List<Measurement> measurements = xmlMeasurementLog.getMeasurements();
             log.debug("XmlMeasurementLogIntegrity: Retrieved #{} of measurements from the log.", measurements.size());
             if( measurements.size() > 0 ) {
                 AbstractDigest actualValue = computeHistory(measurements); // calculate expected' based on history
@@ -84,9 +85,7 @@ public class XmlMeasurementLogIntegrity extends BaseRule {
             Sha1Digest result = Sha1Digest.ZERO;
             for (Measurement m : list) {
                 //result = result.extend(m.getValue().toString().getBytes());
-                log.debug("XmlMeasurementLogIntegrity-computeHistory: Current value of result is {}", result.toString());
-                result = result.extend(Sha1Digest.valueOfHex(m.getValue().toString()));
-                log.debug("XmlMeasurementLogIntegrity-computeHistory: Extended value of result is {}", result.toString());
+                result = result.extend(m.getValue().toByteArray());
             }
             return result;     
     }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package test.policy;
+
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.dcsg.cpg.crypto.Sha1Digest;
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.MeasurementSha1;
+import com.intel.mtwilson.model.PcrEventLogFactory;
+import com.intel.mtwilson.model.PcrIndex;
+import com.intel.mtwilson.model.PcrManifest;
+import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.MeasurementIndex;
+import com.intel.mtwilson.policy.RuleResult;
+import com.intel.mtwilson.policy.fault.PcrEventLogContainsUnexpectedEntries;
+import com.intel.mtwilson.policy.fault.PcrEventLogMissingExpectedEntries;
+import com.intel.mtwilson.policy.rule.PcrEventLogEquals;
+import com.intel.mtwilson.policy.rule.PcrEventLogIncludes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MeasurementIndexTest {
+
+    private Measurement measurement(String label) {
+        return new MeasurementSha1(Sha1Digest.digestOf(label.getBytes()), label);
+    }
+
+    private HostReport hostReport(List<Measurement> eventLog) {
+        PcrManifest pcrManifest = new PcrManifest();
+        pcrManifest.setPcrEventLog(PcrEventLogFactory.newInstance(DigestAlgorithm.SHA1, PcrIndex.PCR19, eventLog));
+        HostReport hostReport = new HostReport();
+        hostReport.pcrManifest = pcrManifest;
+        return hostReport;
+    }
+
+    @Test
+    public void testLookupByDigestAndPath() {
+        Measurement a = measurement("/boot/vmlinuz");
+        Measurement b = measurement("/boot/initrd");
+        HostReport hostReport = hostReport(Arrays.asList(a, b));
+        MeasurementIndex.Entries entries = hostReport.getMeasurementIndex().getPcrEventLog(DigestAlgorithm.SHA1, PcrIndex.PCR19);
+        assertEquals(2, entries.size());
+        assertTrue(entries.contains(new MeasurementSha1((Sha1Digest)a.getValue(), "different label")));
+        assertFalse(entries.contains(measurement("/boot/grub")));
+        assertSame(b, entries.get("/BOOT/INITRD"));
+        assertNull(hostReport.getMeasurementIndex().getPcrEventLog(DigestAlgorithm.SHA1, PcrIndex.PCR18));
+        assertNull(hostReport.getMeasurementIndex().getXmlMeasurementLog());
+        // the index is built once per pcr manifest
+        assertSame(hostReport.getMeasurementIndex(), hostReport.getMeasurementIndex());
+        hostReport.pcrManifest = new PcrManifest();
+        assertNull(hostReport.getMeasurementIndex().getPcrEventLog(DigestAlgorithm.SHA1, PcrIndex.PCR19));
+    }
+
+    @Test
+    public void testEventLogRulesUseIndex() {
+        Measurement a = measurement("a");
+        Measurement b = measurement("b");
+        Measurement c = measurement("c");
+        HostReport hostReport = hostReport(Arrays.asList(a, b));
+
+        RuleResult includes = new PcrEventLogIncludes(DigestAlgorithm.SHA1, PcrIndex.PCR19, new HashSet<>(Arrays.asList(a))).apply(hostReport);
+        assertTrue(includes.isTrusted());
+        includes = new PcrEventLogIncludes(DigestAlgorithm.SHA1, PcrIndex.PCR19, new HashSet<>(Arrays.asList(a, c))).apply(hostReport);
+        assertFalse(includes.isTrusted());
+        assertEquals(PcrEventLogMissingExpectedEntries.class, includes.getFaults().get(0).getClass());
+
+        PcrEventLogEquals equals = new PcrEventLogEquals(PcrEventLogFactory.newInstance(DigestAlgorithm.SHA1, PcrIndex.PCR19, new ArrayList<>(Arrays.asList(a, c))));
+        RuleResult result = equals.apply(hostReport);
+        assertEquals(2, result.getFaults().size());
+        assertEquals(PcrEventLogContainsUnexpectedEntries.class, result.getFaults().get(0).getClass());
+        assertEquals(PcrEventLogMissingExpectedEntries.class, result.getFaults().get(1).getClass());
+        assertTrue(equals.apply(hostReport(Arrays.asList(c, a))).isTrusted());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Compact encoding of the module event log, an alternative to the
+ * measureLog.xml modules section that the trust agent returns when the
+ * TpmQuoteRequest asks for eventLogFormat "binary".
+ *
+ * Layout: the 4-byte magic "MWEL" and a version byte, followed by one record
+ * per module: pcr bank (UTF), pcr index (1 byte), module name (UTF),
+ * digest length (1 byte), and the digest bytes. Strings are written with
+ * DataOutputStream.writeUTF.
+ */
+public class BinaryEventLog {
+    public static final String FORMAT = "binary";
+    private static final int MAGIC = 0x4d57454c; // "MWEL"
+    private static final int VERSION = 1;
+
+    public static class Writer {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(buffer);
+
+        public Writer() throws IOException {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        public void write(String pcrBank, int pcrIndex, String name, byte[] digest) throws IOException {
+            if( pcrIndex < 0 || pcrIndex > 255 ) {
+                throw new IllegalArgumentException("Invalid pcr index: " + pcrIndex);
+            }
+            if( digest.length > 255 ) {
+                throw new IllegalArgumentException("Invalid digest length: " + digest.length);
+            }
+            out.writeUTF(pcrBank);
+            out.writeByte(pcrIndex);
+            out.writeUTF(name);
+            out.writeByte(digest.length);
+            out.write(digest);
+        }
+
+        public byte[] toByteArray() throws IOException {
+            out.flush();
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Usage:  while( reader.next() ) { reader.getPcrBank() ... }
+     */
+    public static class Reader {
+        private final DataInputStream in;
+        private String pcrBank;
+        private int pcrIndex;
+        private String name;
+        private byte[] digest;
+
+        public Reader(byte[] eventLog) throws IOException {
+            this.in = new DataInputStream(new ByteArrayInputStream(eventLog));
+            if( in.readInt() != MAGIC || in.readUnsignedByte() != VERSION ) {
+                throw new IOException("Unsupported event log format");
+            }
+        }
+
+        /**
+         *
+         * @return true if the next module was read, false at the end of the event log
+         * @throws IOException if the event log is truncated
+         */
+        public boolean next() throws IOException {
+            if( in.available() == 0 ) {
+                return false;
+            }
+            try {
+                pcrBank = in.readUTF();
+                pcrIndex = in.readUnsignedByte();
+                name = in.readUTF();
+                digest = new byte[in.readUnsignedByte()];
+                in.readFully(digest);
+            }
+            catch(EOFException e) {
+                throw new IOException("Truncated event log", e);
+            }
+            return true;
+        }
+
+        public String getPcrBank() {
+            return pcrBank;
+        }
+
+        public int getPcrIndex() {
+            return pcrIndex;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getDigest() {
+            return digest;
+        }
+    }
+}
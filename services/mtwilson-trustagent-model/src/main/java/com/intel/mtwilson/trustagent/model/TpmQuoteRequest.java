@@ -5,6 +5,7 @@
 package com.intel.mtwilson.trustagent.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 import java.util.ArrayList;
 import org.apache.commons.lang.StringUtils;
@@ -18,6 +19,8 @@ public class TpmQuoteRequest {
     private byte[] nonce; // must be 20 bytes
     private int[] pcrs; // variable-length array of pcr index numbers, each one 0-23 
     private String pcrbanks; //the selected PCR banks (SHA1, SHA256, or both) for TPM 2.0
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String eventLogFormat; // null for the measureLog xml, or BinaryEventLog.FORMAT; omitted when null so older trust agents accept the request
 
     public String getPcrbanks() {
         return pcrbanks;
@@ -27,6 +30,14 @@ public class TpmQuoteRequest {
         this.pcrbanks = pcrBanks;
     }
     
+    public String getEventLogFormat() {
+        return eventLogFormat;
+    }
+
+    public void setEventLogFormat(String eventLogFormat) {
+        this.eventLogFormat = eventLogFormat;
+    }
+    
     public TpmQuoteRequest() {
         this.nonce = null;
         this.pcrs = null;
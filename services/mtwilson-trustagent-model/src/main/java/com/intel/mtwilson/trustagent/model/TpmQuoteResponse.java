@@ -4,6 +4,7 @@
  */
 package com.intel.mtwilson.trustagent.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
@@ -25,7 +26,9 @@ public class TpmQuoteResponse {
     @JsonDeserialize(using=X509CertificateDeserializer.class)
     public X509Certificate aik;
     public byte[] quote;
-    public String eventLog; // base64-encoded xml ....
+    public String eventLog; // base64-encoded xml ....  or base64-encoded BinaryEventLog if eventLogFormat is "binary"
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String eventLogFormat;
     public String tcbMeasurement;
     public String selectedPcrBanks;
     
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+
+import com.intel.mtwilson.trustagent.model.BinaryEventLog;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.commons.codec.binary.Hex;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class BinaryEventLogTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        byte[] sha1 = Hex.decodeHex("d70e9875afa574c58348f25ef1249671e396cbc6".toCharArray());
+        byte[] sha256 = new byte[32];
+        BinaryEventLog.Writer writer = new BinaryEventLog.Writer();
+        writer.write("SHA1", 19, "vmlinuz", sha1);
+        writer.write("SHA256", 17, "tb_policy", sha256);
+        byte[] eventLog = writer.toByteArray();
+
+        BinaryEventLog.Reader reader = new BinaryEventLog.Reader(eventLog);
+        assertTrue(reader.next());
+        assertEquals("SHA1", reader.getPcrBank());
+        assertEquals(19, reader.getPcrIndex());
+        assertEquals("vmlinuz", reader.getName());
+        assertArrayEquals(sha1, reader.getDigest());
+        assertTrue(reader.next());
+        assertEquals("SHA256", reader.getPcrBank());
+        assertEquals(17, reader.getPcrIndex());
+        assertEquals("tb_policy", reader.getName());
+        assertArrayEquals(sha256, reader.getDigest());
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectTruncatedEventLog() throws Exception {
+        BinaryEventLog.Writer writer = new BinaryEventLog.Writer();
+        writer.write("SHA1", 19, "vmlinuz", new byte[20]);
+        byte[] eventLog = writer.toByteArray();
+        BinaryEventLog.Reader reader = new BinaryEventLog.Reader(Arrays.copyOf(eventLog, eventLog.length - 1));
+        reader.next();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectXmlEventLog() throws Exception {
+        new BinaryEventLog.Reader("<modules></modules>".getBytes("UTF-8"));
+    }
+}
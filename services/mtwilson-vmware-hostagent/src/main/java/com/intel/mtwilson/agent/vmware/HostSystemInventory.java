@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.vmware;
+
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectSpec;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.PropertySpec;
+import com.vmware.vim25.SelectionSpec;
+import com.vmware.vim25.TraversalSpec;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VimPortType;
+import com.vmware.vim25.WaitOptions;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HostSystem references of one vCenter connection, by host name. Looking
+ * up a host by name used to search the whole inventory, once for every
+ * property that was read.
+ *
+ * The inventory is loaded with a property filter on a property collector
+ * created for this purpose, and kept current with WaitForUpdatesEx: each
+ * lookup first asks the collector for the changes since the last version,
+ * at most once per POLL_INTERVAL_MILLIS unless the host is not found. Hosts
+ * that are added, removed or renamed in vCenter are picked up that way.
+ *
+ * Addresses that are not the vCenter name of a host are resolved by
+ * VMwareClient with the search index and recorded here as aliases, which
+ * are dropped when the host leaves the inventory.
+ */
+class HostSystemInventory {
+    private static final Logger log = LoggerFactory.getLogger(HostSystemInventory.class);
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    private final VimPortType vimPort;
+    private final ManagedObjectReference propertyCollector;
+    private final ManagedObjectReference rootFolder;
+    private ManagedObjectReference collector = null; // created on first use
+    private String version = null;
+    private long polled = 0;
+    private final HashMap<String,ManagedObjectReference> hostsByName = new HashMap<>();
+    private final HashMap<String,String> namesByRef = new HashMap<>(); // managed object id -> host name
+    private final HashMap<String,ManagedObjectReference> aliases = new HashMap<>();
+
+    HostSystemInventory(VimPortType vimPort, ManagedObjectReference propertyCollector, ManagedObjectReference rootFolder) {
+        this.vimPort = vimPort;
+        this.propertyCollector = propertyCollector;
+        this.rootFolder = rootFolder;
+    }
+
+    /**
+     * Starting from the root folder, selects every HostSystem through the
+     * datacenter host folders and the compute resources.
+     *
+     * @param rootFolder
+     * @param properties the HostSystem properties to retrieve
+     * @return a filter spec for RetrievePropertiesEx or CreateFilter
+     */
+    static PropertyFilterSpec createHostSystemFilterSpec(ManagedObjectReference rootFolder, String[] properties) {
+        SelectionSpec visitFolders = new SelectionSpec();
+        visitFolders.setName("visitFolders");
+        TraversalSpec dcToHf = new TraversalSpec();
+        dcToHf.setName("dcToHf");
+        dcToHf.setType("Datacenter");
+        dcToHf.setPath("hostFolder");
+        dcToHf.setSkip(Boolean.FALSE);
+        dcToHf.setSelectSet(new SelectionSpec[]{visitFolders});
+        TraversalSpec crToH = new TraversalSpec();
+        crToH.setName("crToH");
+        crToH.setType("ComputeResource");
+        crToH.setPath("host");
+        crToH.setSkip(Boolean.FALSE);
+        TraversalSpec folderToChild = new TraversalSpec();
+        folderToChild.setName("visitFolders");
+        folderToChild.setType("Folder");
+        folderToChild.setPath("childEntity");
+        folderToChild.setSkip(Boolean.FALSE);
+        folderToChild.setSelectSet(new SelectionSpec[]{visitFolders, dcToHf, crToH});
+
+        PropertySpec propertySpec = new PropertySpec();
+        propertySpec.setType("HostSystem");
+        propertySpec.setAll(Boolean.FALSE);
+        propertySpec.setPathSet(properties);
+        ObjectSpec objectSpec = new ObjectSpec();
+        objectSpec.setObj(rootFolder);
+        objectSpec.setSkip(Boolean.FALSE);
+        objectSpec.setSelectSet(new SelectionSpec[]{folderToChild, dcToHf, crToH});
+        PropertyFilterSpec filterSpec = new PropertyFilterSpec();
+        filterSpec.setPropSet(new PropertySpec[]{propertySpec});
+        filterSpec.setObjectSet(new ObjectSpec[]{objectSpec});
+        return filterSpec;
+    }
+
+    /**
+     *
+     * @param hostname the vCenter name of the host, or an alias
+     * @return the host, or null if there is no such host in vCenter
+     * @throws RemoteException
+     */
+    synchronized ManagedObjectReference find(String hostname) throws RemoteException {
+        boolean updated = false;
+        if (System.currentTimeMillis() - polled >= POLL_INTERVAL_MILLIS) {
+            update();
+            updated = true;
+        }
+        ManagedObjectReference host = get(hostname);
+        if (host == null && !updated) {
+            update(); // the host may have been added since the last poll
+            host = get(hostname);
+        }
+        return host;
+    }
+
+    /**
+     *
+     * @param host
+     * @return the current vCenter name of the host, or null if it is not known
+     * @throws RemoteException
+     */
+    synchronized String getName(ManagedObjectReference host) throws RemoteException {
+        if (System.currentTimeMillis() - polled >= POLL_INTERVAL_MILLIS) {
+            update();
+        }
+        return namesByRef.get(host.getVal());
+    }
+
+    synchronized void addAlias(String hostname, ManagedObjectReference host) {
+        if (namesByRef.containsKey(host.getVal())) {
+            aliases.put(hostname, host);
+        }
+    }
+
+    /**
+     *
+     * @param hostname the vCenter name of the host, or an alias
+     * @return the host as of the last update, or null if it is not known
+     */
+    synchronized ManagedObjectReference get(String hostname) {
+        ManagedObjectReference host = hostsByName.get(hostname);
+        if (host == null) {
+            host = aliases.get(hostname);
+        }
+        return host;
+    }
+
+    private void update() throws RemoteException {
+        WaitOptions options = new WaitOptions();
+        options.setMaxWaitSeconds(0); // return the changes so far without waiting for more
+        try {
+            if (collector == null) {
+                collector = vimPort.createPropertyCollector(propertyCollector);
+                vimPort.createFilter(collector, createHostSystemFilterSpec(rootFolder, new String[]{"name"}), true);
+                version = "";
+            }
+            UpdateSet updates = vimPort.waitForUpdatesEx(collector, version, options);
+            while (updates != null) {
+                apply(updates);
+                version = updates.getVersion();
+                if (!Boolean.TRUE.equals(updates.getTruncated())) {
+                    break;
+                }
+                updates = vimPort.waitForUpdatesEx(collector, version, options);
+            }
+            polled = System.currentTimeMillis();
+        } catch (RemoteException e) {
+            // the next lookup loads the inventory again on a new collector
+            log.debug("Cannot update the vCenter host inventory: {}", e.toString());
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the changes reported by the property collector for the
+     * HostSystem name filter.
+     *
+     * @param updates
+     */
+    synchronized void apply(UpdateSet updates) {
+        if (updates.getFilterSet() == null) {
+            return;
+        }
+        for (PropertyFilterUpdate filterUpdate : updates.getFilterSet()) {
+            if (filterUpdate.getObjectSet() == null) {
+                continue;
+            }
+            for (ObjectUpdate objectUpdate : filterUpdate.getObjectSet()) {
+                ManagedObjectReference host = objectUpdate.getObj();
+                if (objectUpdate.getKind() == ObjectUpdateKind.leave) {
+                    remove(host);
+                    continue;
+                }
+                if (objectUpdate.getChangeSet() == null) {
+                    continue;
+                }
+                for (PropertyChange change : objectUpdate.getChangeSet()) {
+                    if ("name".equals(change.getName())) {
+                        String oldName = namesByRef.remove(host.getVal());
+                        if (oldName != null) {
+                            hostsByName.remove(oldName);
+                        }
+                        if (change.getOp() != PropertyChangeOp.remove && change.getVal() != null) {
+                            namesByRef.put(host.getVal(), (String) change.getVal());
+                            hostsByName.put((String) change.getVal(), host);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void remove(ManagedObjectReference host) {
+        String name = namesByRef.remove(host.getVal());
+        if (name != null) {
+            hostsByName.remove(name);
+        }
+        Iterator<Map.Entry<String,ManagedObjectReference>> it = aliases.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().getVal().equals(host.getVal())) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return hostsByName.size();
+    }
+
+    /**
+     * Destroys the property collector and forgets the inventory. The next
+     * lookup loads it again.
+     */
+    synchronized void close() {
+        if (collector != null) {
+            try {
+                vimPort.destroyPropertyCollector(collector);
+            } catch (Exception e) {
+                log.debug("Cannot destroy property collector: {}", e.toString());
+            }
+        }
+        collector = null;
+        version = null;
+        polled = 0;
+        hostsByName.clear();
+        namesByRef.clear();
+        aliases.clear();
+    }
+}
@@ -17,6 +17,7 @@ import com.vmware.vim25.mo.Folder;
 import com.vmware.vim25.mo.InventoryNavigator;
 import com.vmware.vim25.mo.ManagedEntity;
 import com.vmware.vim25.mo.ServiceInstance;
+import com.vmware.vim25.mo.util.MorUtil;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.math.BigInteger;
@@ -55,6 +56,9 @@ public class VMwareClient implements TlsClient {
     private Folder rootFolder;
     private static final double MIN_VCENTER_VERSION_FOR_MODULE_ATTESTATION  = 5.1;
     private static final double MIN_ESX_VERSION_FOR_MODULE_ATTESTATION  = 5.1;
+    private static final int PROPERTY_BATCH_SIZE = 100; // hosts per RetrievePropertiesEx request
+    private static final String[] HOST_DETAILS_PROPERTIES = {"name", "config.product.name", "config.product.version", "config.product.build", "hardware.systemInfo.vendor", "hardware.biosInfo.biosVersion"};
+    private HostSystemInventory inventory = null;
     //private VimService vimService;
     //private VimPortType vimPort;
     UserSession session = null;
@@ -115,6 +119,7 @@ public class VMwareClient implements TlsClient {
         try {
             if (isConnected()) {
                 isConnected = false;
+                closeInventory();
                 servInst.getServerConnection().logout();
             }
         } catch (Exception e) {
@@ -193,6 +198,21 @@ public class VMwareClient implements TlsClient {
 
         propCollectorRef = serviceContent.getPropertyCollector();
         rootRef = serviceContent.getRootFolder();
+        closeInventory(); // a previous session's property collector is gone with it
+    }
+
+    private synchronized HostSystemInventory getInventory() {
+        if (inventory == null) {
+            inventory = new HostSystemInventory(vimPort, propCollectorRef, rootRef);
+        }
+        return inventory;
+    }
+
+    private synchronized void closeInventory() {
+        if (inventory != null) {
+            inventory.close();
+            inventory = null;
+        }
     }
 
     private void printSessionDetails() {
@@ -252,17 +272,28 @@ public class VMwareClient implements TlsClient {
      * Issue #784 performance This method returns just the requested host, in
      * contrast to getEntitiesByType which returns all the hosts and then we
      * have to query each one to see if it's the one we want
+     *
+     * The host is looked up in the inventory of this connection first, by its
+     * vCenter name; other names and addresses are resolved with the search
+     * index once and then remembered.
      */
     public ManagedObjectReference getHostReference(String hostname) throws RemoteException {
+        ManagedObjectReference hostRef = getInventory().find(hostname);
+        if (hostRef != null) {
+            return hostRef;
+        }
         //ManagedObjectReference searchIndex;
         //vimPort.findByDnsName and vimPort.findByIp ....  first parameter is the searchindex mor, second is datacenter (optional, can be null), , third is the dnsname/ip,  fourth is true for vm or false for host.
         // page 20: obtain manageed obejct reference by accessor method, for searchindex
 //        ServiceContent sc = vimPort.retrieveServiceContent(hostRef)
         ManagedObjectReference searchIndex = serviceContent.getSearchIndex();
-        ManagedObjectReference hostRef = vimPort.findByDnsName(searchIndex, null, hostname, false);
+        hostRef = vimPort.findByDnsName(searchIndex, null, hostname, false);
         if (hostRef == null) {
             hostRef = vimPort.findByIp(searchIndex, null, hostname, false);
         }
+        if (hostRef != null) {
+            getInventory().addAlias(hostname, hostRef);
+        }
         return hostRef;
 
     }
@@ -284,8 +315,11 @@ public class VMwareClient implements TlsClient {
     }
 
     protected String getHostInfo(ManagedObjectReference hostObj) throws InvalidProperty, RuntimeFault, RemoteException {
-        ManagedEntity me = new InventoryNavigator(rootFolder).searchManagedEntity(hostObj.type, hostObj.val);
-        return me.getName();
+        String name = getInventory().getName(hostObj);
+        if (name != null) {
+            return name;
+        }
+        return (String) getMEProperties(hostObj, new String[]{"name"}).get("name");
     }
     
     protected String getHostInfo(ManagedEntity hostObj) throws InvalidProperty, RuntimeFault, RemoteException {
@@ -311,6 +345,12 @@ public class VMwareClient implements TlsClient {
         for (String s : properties) {
             log.debug("VSPHERE: properties: " + s);
         }
+        if ("HostSystem".equals(meType)) {
+            ManagedObjectReference hostRef = getInventory().find(meName);
+            if (hostRef != null) {
+                return getMEProperties(hostRef, properties);
+            }
+        }
         ManagedEntity me = new InventoryNavigator(rootFolder).searchManagedEntity(meType, meName);
         log.debug("VSPHERE: ManagedEntity: " + me.toString());
         Hashtable ht = me.getPropertiesByPaths(properties);
@@ -319,6 +359,109 @@ public class VMwareClient implements TlsClient {
         return ht;
     }
 
+    /**
+     * Retrieves the properties of one managed object in a single request.
+     *
+     * @param moRef
+     * @param properties property paths, for example "config.product.version"
+     * @return the properties that have a value
+     * @throws RemoteException
+     */
+    public Hashtable<String,Object> getMEProperties(ManagedObjectReference moRef, String[] properties) throws RemoteException {
+        Hashtable<String,Object> ht = retrieveProperties(Arrays.asList(moRef), moRef.getType(), properties).get(moRef.getVal());
+        if (ht == null) {
+            return new Hashtable<>();
+        }
+        return ht;
+    }
+
+    /**
+     * Retrieves the same properties of many hosts with one RetrievePropertiesEx
+     * request for every PROPERTY_BATCH_SIZE hosts, instead of one inventory
+     * search per host and property.
+     *
+     * @param hostRefs
+     * @param properties property paths, for example "config.product.version"
+     * @return the properties that have a value, by the value of each host reference
+     * @throws RemoteException
+     */
+    public Map<String,Hashtable<String,Object>> getHostProperties(List<ManagedObjectReference> hostRefs, String[] properties) throws RemoteException {
+        return retrieveProperties(hostRefs, "HostSystem", properties);
+    }
+
+    private Map<String,Hashtable<String,Object>> retrieveProperties(List<ManagedObjectReference> moRefs, String type, String[] properties) throws RemoteException {
+        HashMap<String,Hashtable<String,Object>> result = new HashMap<>();
+        for (int i = 0; i < moRefs.size(); i += PROPERTY_BATCH_SIZE) {
+            List<ManagedObjectReference> batch = moRefs.subList(i, Math.min(moRefs.size(), i + PROPERTY_BATCH_SIZE));
+            ObjectSpec[] objectSpecs = new ObjectSpec[batch.size()];
+            for (int j = 0; j < objectSpecs.length; j++) {
+                objectSpecs[j] = new ObjectSpec();
+                objectSpecs[j].setObj(batch.get(j));
+                objectSpecs[j].setSkip(Boolean.FALSE);
+            }
+            PropertySpec propertySpec = new PropertySpec();
+            propertySpec.setType(type);
+            propertySpec.setAll(Boolean.FALSE);
+            propertySpec.setPathSet(properties);
+            PropertyFilterSpec filterSpec = new PropertyFilterSpec();
+            filterSpec.setPropSet(new PropertySpec[]{propertySpec});
+            filterSpec.setObjectSet(objectSpecs);
+            for (ObjectContent objectContent : retrieveProperties(new PropertyFilterSpec[]{filterSpec})) {
+                result.put(objectContent.getObj().getVal(), toHashtable(objectContent));
+            }
+        }
+        return result;
+    }
+
+    private static Hashtable<String,Object> toHashtable(ObjectContent objectContent) {
+        Hashtable<String,Object> ht = new Hashtable<>();
+        if (objectContent.getPropSet() != null) {
+            for (DynamicProperty property : objectContent.getPropSet()) {
+                if (property.getVal() != null) {
+                    ht.put(property.getName(), property.getVal());
+                }
+            }
+        }
+        return ht;
+    }
+
+    /**
+     * Lists the hosts in a cluster with two property retrievals for the whole
+     * vCenter: the name, parent and connection state of every host, and then
+     * the names of their parents.
+     *
+     * @param clusterName the name of the cluster, or null for all hosts
+     * @return the name, parent and runtime.connectionState of each host in the cluster
+     * @throws RemoteException
+     */
+    private List<ObjectContent> getClusterHosts(String clusterName) throws RemoteException {
+        List<ObjectContent> hosts = retrieveProperties(new PropertyFilterSpec[]{HostSystemInventory.createHostSystemFilterSpec(rootRef, new String[]{"name", "parent", "runtime.connectionState"})});
+        if (clusterName == null) {
+            return hosts;
+        }
+        HashMap<String,ManagedObjectReference> parents = new HashMap<>();
+        for (ObjectContent host : hosts) {
+            ManagedObjectReference parent = (ManagedObjectReference) toHashtable(host).get("parent");
+            if (parent != null) {
+                parents.put(parent.getVal(), parent);
+            }
+        }
+        Map<String,Hashtable<String,Object>> parentProperties = retrieveProperties(new ArrayList<>(parents.values()), "ManagedEntity", new String[]{"name"});
+        ArrayList<ObjectContent> clusterHosts = new ArrayList<>();
+        for (ObjectContent host : hosts) {
+            Hashtable<String,Object> properties = toHashtable(host);
+            ManagedObjectReference parent = (ManagedObjectReference) properties.get("parent");
+            Hashtable<String,Object> parentHt = parent == null ? null : parentProperties.get(parent.getVal());
+            String parentName = parentHt == null ? null : (String) parentHt.get("name");
+            if (parentName != null && parentName.trim().equalsIgnoreCase(clusterName.trim())) {
+                clusterHosts.add(host);
+            } else {
+                log.debug(properties.get("name") + ": parent \"" + parentName + "\" does not match cluster name \"" + clusterName + "\"");
+            }
+        }
+        return clusterHosts;
+    }
+
     public List<String> getPropertyNames(TxtHostRecord hostObj) throws InvalidProperty, RuntimeFault, RemoteException, VMwareConnectionException {
         // Return object array
         ArrayList<String> list = new ArrayList<>();
@@ -373,23 +516,15 @@ public class VMwareClient implements TlsClient {
     }
     
     /**
-     * performance of this method is very bad, it has been observed at 1 second
-     * per iteration of the comparison loop. see getHostReference for obtaining
-     * a managed object reference for a specific host (instead of for all hosts
-     * and then querying each one for the name)
+     * Looks up the host by its vCenter name in the inventory of this
+     * connection. See getHostReference for a lookup that also accepts the
+     * DNS name or IP address of the host.
      */
     public ManagedEntity getManagedObjectReference(String hostName) throws InvalidProperty, RuntimeFault, RemoteException {
-        // Get the host objects in the vcenter
-        ManagedEntity[] hostObjects = getEntitiesByType("HostSystem");
-        if (hostObjects != null && hostObjects.length != 0) {
-            for (ManagedEntity hostObj : hostObjects) {
-                String hostNameFromVC = getHostInfo(hostObj);
-                log.debug("getHostObject - comparing hostNameFromVC {} requested hostName {}", new Object[]{hostNameFromVC, hostName});
-                if (hostNameFromVC.equals(hostName)) {
-                    log.debug(String.format("Found Managed Object Reference for host %s ", hostName));
-                    return hostObj;
-                }
-            }
+        ManagedObjectReference hostRef = getInventory().find(hostName);
+        if (hostRef != null) {
+            log.debug(String.format("Found Managed Object Reference for host %s ", hostName));
+            return MorUtil.createExactManagedEntity(servInst.getServerConnection(), hostRef);
         }
         // If the code reaches here that means that we did not find the host
         throw new ASException(ErrorCode.AS_HOST_NOT_FOUND_IN_VCENTER, hostName);
@@ -534,18 +669,12 @@ public class VMwareClient implements TlsClient {
                 doNotDisconnect = true;
             }
 
-            hostMOR = getDecendentMoRef(null, "HostSystem", hostObj.HostName);
+            hostMOR = getHostReference(hostObj.HostName);
             if (hostMOR == null) {
                 throw new Exception("Host specified does not exist in the vCenter.");
             }
 
-            hostObj.HostName = getStringMEProperty("HostSystem", hostObj.HostName, "name");
-            // hostObj.Description = serviceContent.getAbout().getVersion();
-            hostObj.VMM_OSName = getStringMEProperty("HostSystem", hostObj.HostName, "config.product.name");
-            hostObj.VMM_OSVersion = getStringMEProperty("HostSystem", hostObj.HostName, "config.product.version");
-            hostObj.VMM_Version = getStringMEProperty("HostSystem", hostObj.HostName, "config.product.build");
-            hostObj.BIOS_Oem = getStringMEProperty("HostSystem", hostObj.HostName, "hardware.systemInfo.vendor");
-            hostObj.BIOS_Version = getStringMEProperty("HostSystem", hostObj.HostName, "hardware.biosInfo.biosVersion");
+            setHostDetails(hostObj, getMEProperties(hostMOR, HOST_DETAILS_PROPERTIES));
 
         } catch (Exception ex) {
             throw new VMwareConnectionException(ex);
@@ -557,6 +686,21 @@ public class VMwareClient implements TlsClient {
         return hostObj;
     }
 
+    private void setHostDetails(TxtHostRecord hostObj, Hashtable<String,Object> properties) throws InvalidProperty {
+        for (String property : HOST_DETAILS_PROPERTIES) {
+            if (properties.get(property) == null) {
+                throw new InvalidProperty();
+            }
+        }
+        hostObj.HostName = properties.get("name").toString();
+        // hostObj.Description = serviceContent.getAbout().getVersion();
+        hostObj.VMM_OSName = properties.get("config.product.name").toString();
+        hostObj.VMM_OSVersion = properties.get("config.product.version").toString();
+        hostObj.VMM_Version = properties.get("config.product.build").toString();
+        hostObj.BIOS_Oem = properties.get("hardware.systemInfo.vendor").toString();
+        hostObj.BIOS_Version = properties.get("hardware.biosInfo.biosVersion").toString();
+    }
+
     /**
      * Added By: Sudhir on June 15, 2012
      *
@@ -570,9 +714,7 @@ public class VMwareClient implements TlsClient {
      * @throws Exception
      */
     public ArrayList getHostDetailsForCluster(String clusterName, String vCenterConnectionString) throws VMwareConnectionException, ASException {
-        ArrayList hostList;
         ArrayList hostDetailList = new ArrayList<TxtHostRecord>();
-        ManagedObjectReference clusterMOR = null;
         ConnectionString.VmwareConnectionString vmwareURL;
         try {
             vmwareURL = ConnectionString.VmwareConnectionString.forURL(vCenterConnectionString);
@@ -583,25 +725,22 @@ public class VMwareClient implements TlsClient {
             // Connect to the vCenter server with the passed in parameters,  but insecure tls policy since we don't know this host yet
             connect2(vmwareURL.toURL(), vmwareURL.getUsername(), vmwareURL.getPassword());
 
-            if (clusterName != null) {
-                clusterMOR = getDecendentMoRef(null, "ClusterComputeResource", clusterName);
-                if (clusterMOR == null) {
-                    throw new Exception("Cluster configuration not found in the vCenter database.");
-                }
+            List<ObjectContent> hosts = getClusterHosts(clusterName);
+            // no host has the cluster as its parent: either the cluster is empty or it does not exist
+            if (clusterName != null && hosts.isEmpty() && getDecendentMoRef(null, "ClusterComputeResource", clusterName) == null) {
+                throw new Exception("Cluster configuration not found in the vCenter database.");
             }
-
-            hostList = getDecendentMoRefs(clusterMOR, "HostSystem", null);
-            if (hostList.isEmpty()) {
-                return hostList;
+            ArrayList<ManagedObjectReference> hostRefs = new ArrayList<>();
+            for (ObjectContent host : hosts) {
+                hostRefs.add(host.getObj());
             }
-
-            for (int i = 0; i < hostList.size(); i++) {
-                log.debug("VSPHERE: Host " + i + " = " + hostList.get(i).toString());
-                String hostName = getStringMEProperty("HostSystem", hostList.get(i).toString(), "name");
+            Map<String,Hashtable<String,Object>> hostProperties = getHostProperties(hostRefs, HOST_DETAILS_PROPERTIES);
+            for (ManagedObjectReference hostRef : hostRefs) {
+                log.debug("VSPHERE: Host = " + hostRef.getVal());
                 TxtHostRecord hostObj = new TxtHostRecord();
-                hostObj.HostName = hostName;
                 hostObj.AddOn_Connection_String = vCenterConnectionString;
-                hostObj = getHostDetails(hostObj);
+                Hashtable<String,Object> properties = hostProperties.get(hostRef.getVal());
+                setHostDetails(hostObj, properties == null ? new Hashtable<String,Object>() : properties);
                 hostDetailList.add(hostObj);
             }
         } catch (Exception ex) {
@@ -662,31 +801,28 @@ public class VMwareClient implements TlsClient {
         ArrayList<TxtHostRecord> hostDetailList = new ArrayList<>();
         log.debug("Acquiring host systems...");
         
-        ManagedEntity[] mes = new InventoryNavigator(rootFolder).searchManagedEntities("HostSystem");
-        for (ManagedEntity me : mes) {
-            if (me.getParent().getName().trim().equalsIgnoreCase(clusterName.trim())) {
-                log.debug("Host System found for cluster " + clusterName + ": " + me.getName());
-                String connectionState = getMEProperty("HostSystem",  me.getName(), "runtime.connectionState").toString().trim();
-                if (connectionState.equalsIgnoreCase("connected")) {
-                    log.debug("Adding host {} to the list of connected servers.", me.getName());
-                    TxtHostRecord hostObj = new TxtHostRecord();
-                    hostObj.HostName = me.getName();
-                    hostObj.AddOn_Connection_String = vmwareConnectionString;
-                    hostObj.VMM_OSName = getMEProperty("HostSystem", hostObj.HostName, "config.product.name").toString();
-                    hostObj.VMM_OSVersion = getMEProperty("HostSystem", hostObj.HostName, "config.product.version").toString();
-                    hostObj.VMM_Version = getMEProperty("HostSystem", hostObj.HostName, "config.product.build").toString();
-                    hostObj.BIOS_Oem = getMEProperty("HostSystem", hostObj.HostName, "hardware.systemInfo.vendor").toString();
-                    hostObj.BIOS_Version = getMEProperty("HostSystem", hostObj.HostName, "hardware.biosInfo.biosVersion").toString();
-                    hostDetailList.add(hostObj);
-                } else {
-                    log.info("Host {} is not currently connected to the vCenter. So, it would not be used for registration.", me.getName());
-                }
-            }
-            else {
-                log.debug(me.getName() + ": parent \"" + me.getParent().getName() + "\" does not match cluster name \"" + clusterName + "\"");
+        ArrayList<ManagedObjectReference> connectedHosts = new ArrayList<>();
+        for (ObjectContent host : getClusterHosts(clusterName)) {
+            Hashtable<String,Object> properties = toHashtable(host);
+            log.debug("Host System found for cluster " + clusterName + ": " + properties.get("name"));
+            Object connectionState = properties.get("runtime.connectionState");
+            if (connectionState != null && connectionState.toString().trim().equalsIgnoreCase("connected")) {
+                log.debug("Adding host {} to the list of connected servers.", properties.get("name"));
+                connectedHosts.add(host.getObj());
+            } else {
+                log.info("Host {} is not currently connected to the vCenter. So, it would not be used for registration.", properties.get("name"));
             }
         }
         
+        Map<String,Hashtable<String,Object>> hostProperties = getHostProperties(connectedHosts, HOST_DETAILS_PROPERTIES);
+        for (ManagedObjectReference hostRef : connectedHosts) {
+            Hashtable<String,Object> properties = hostProperties.get(hostRef.getVal());
+            TxtHostRecord hostObj = new TxtHostRecord();
+            hostObj.AddOn_Connection_String = vmwareConnectionString;
+            setHostDetails(hostObj, properties == null ? new Hashtable<String,Object>() : properties);
+            hostDetailList.add(hostObj);
+        }
+        
         return hostDetailList;
     }
     
@@ -858,7 +994,12 @@ public class VMwareClient implements TlsClient {
      * @throws VMwareConnectionException
      */
     public String getHostAttestationReport(TxtHostRecord hostObj, String pcrList) throws VMwareConnectionException {
-        ManagedObjectReference hostMOR = getDecendentMoRef(null, "HostSystem", hostObj.HostName);
+        ManagedObjectReference hostMOR;
+        try {
+            hostMOR = getHostReference(hostObj.HostName);
+        } catch (RemoteException e) {
+            throw new VMwareConnectionException(e);
+        }
         if (hostMOR == null) {
             throw new VMwareConnectionException("Host specified does not exist in the vCenter.");
         }
@@ -913,7 +1054,11 @@ public class VMwareClient implements TlsClient {
              doNotDisconnect = true;
              */
 
-            Boolean tpmSupport = Boolean.parseBoolean(getStringMEProperty(hostMOR.type, hostName, "capability.tpmSupported"));
+            Hashtable<String,Object> hostProperties = getMEProperties(hostMOR, new String[]{"capability.tpmSupported", "config.product.version"});
+            if (hostProperties.get("capability.tpmSupported") == null || hostProperties.get("config.product.version") == null) {
+                throw new InvalidProperty();
+            }
+            Boolean tpmSupport = Boolean.parseBoolean(hostProperties.get("capability.tpmSupported").toString());
 
             // Lets create the start of the XML document
             // xtw = xof.createXMLStreamWriter(new FileWriter("c:\\temp\\nb_xml.xml"));
@@ -922,7 +1067,7 @@ public class VMwareClient implements TlsClient {
             xtw.writeStartElement("Host_Attestation_Report");
             xtw.writeAttribute("Host_Name", hostName);
             xtw.writeAttribute("vCenterVersion", serviceContent.getAbout().getVersion());
-            String hostVer = getStringMEProperty(hostMOR.type, hostName, "config.product.version");
+            String hostVer = hostProperties.get("config.product.version").toString();
             xtw.writeAttribute("HostVersion", hostVer);
             xtw.writeAttribute("TXT_Support", tpmSupport.toString());
 
@@ -1037,7 +1182,7 @@ public class VMwareClient implements TlsClient {
                 }
             } else if (tpmSupport == true && serviceContent.getAbout().getVersion().contains("5.0")) {
                 // Refresh the runtime information
-                HostRuntimeInfo runtimeInfo = (HostRuntimeInfo) getMEProperty(hostMOR.type, hostName, "runtime");
+                HostRuntimeInfo runtimeInfo = (HostRuntimeInfo) getMEProperties(hostMOR, new String[]{"runtime"}).get("runtime");
                 if( runtimeInfo != null ) {
                 // Now process the digest information
                 List<String> pcrs = Arrays.asList(pcrList.split(","));
@@ -1086,32 +1231,29 @@ public class VMwareClient implements TlsClient {
     private List<ObjectContent> retrievePropertiesAllObjects(List<PropertyFilterSpec> listpfs)
             throws VMwareConnectionException {
         
-        RetrieveOptions propObjectRetrieveOpts = new RetrieveOptions();
-        List<ObjectContent> listobjcontent = new ArrayList<>();
-
         try {
-            RetrieveResult rslts = vimPort.retrievePropertiesEx(propCollectorRef, (PropertyFilterSpec[])listpfs.toArray(), propObjectRetrieveOpts);
-            if (rslts != null && rslts.getObjects() != null && rslts.getObjects().length != 0) {
-                listobjcontent = Arrays.asList(rslts.objects);
-            }
-            String token = null;
-            if (rslts != null && rslts.getToken() != null) {
-                token = rslts.getToken();
-            }
-            while (token != null && !token.isEmpty()) {
-                rslts = vimPort.continueRetrievePropertiesEx(propCollectorRef, token);
-                token = null;
-                if (rslts != null) {
-                    token = rslts.getToken();
-                    if (rslts.getObjects() != null && rslts.getObjects().length != 0) {
-                        listobjcontent = Arrays.asList(rslts.getObjects());
-                    }
-                }
-            }
+            return retrieveProperties(listpfs.toArray(new PropertyFilterSpec[listpfs.size()]));
         } catch (Exception e) {
             throw new VMwareConnectionException(e);
         }
+    }
 
+    /**
+     * Retrieves the objects selected by the filter specs, following the
+     * continuation token until all the pages have been collected.
+     */
+    private List<ObjectContent> retrieveProperties(PropertyFilterSpec[] specs) throws RemoteException {
+        ArrayList<ObjectContent> listobjcontent = new ArrayList<>();
+        RetrieveResult rslts = vimPort.retrievePropertiesEx(propCollectorRef, specs, new RetrieveOptions());
+        while (rslts != null) {
+            if (rslts.getObjects() != null) {
+                listobjcontent.addAll(Arrays.asList(rslts.getObjects()));
+            }
+            if (rslts.getToken() == null || rslts.getToken().isEmpty()) {
+                break;
+            }
+            rslts = vimPort.continueRetrievePropertiesEx(propCollectorRef, rslts.getToken());
+        }
         return listobjcontent;
     }
 
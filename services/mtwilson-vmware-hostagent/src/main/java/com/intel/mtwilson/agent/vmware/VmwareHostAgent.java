@@ -28,6 +28,7 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -274,15 +275,17 @@ public class VmwareHostAgent implements HostAgent {
     public TxtHostRecord getHostDetails() throws IOException {
         try {
             TxtHostRecord host = new TxtHostRecord();
-            host.HostName = vmware.getStringMEProperty(hostMOR.type, hostname, "name");
+            // all the properties in one request instead of one inventory search for each
+            Hashtable<String,Object> properties = vmware.getMEProperties(hostMOR, new String[]{"name", "config.product.name", "config.product.version", "config.product.build", "hardware.systemInfo.vendor", "hardware.biosInfo.biosVersion", "summary.maxEVCModeKey"});
+            host.HostName = getString(properties, "name");
             // hostObj.Description = serviceContent.getAbout().getVersion();
-            host.VMM_Name = vmware.getStringMEProperty(hostMOR.type, hostname, "config.product.name"); 
-            host.VMM_OSName = vmware.getStringMEProperty(hostMOR.type, hostname, "config.product.name");
-            host.VMM_OSVersion = vmware.getStringMEProperty(hostMOR.type, hostname, "config.product.version");
-            host.VMM_Version = vmware.getStringMEProperty(hostMOR.type, hostname, "config.product.build");
-            host.BIOS_Oem = vmware.getStringMEProperty(hostMOR.type, hostname, "hardware.systemInfo.vendor");
-            host.BIOS_Name = vmware.getStringMEProperty(hostMOR.type, hostname, "hardware.systemInfo.vendor"); 
-            host.BIOS_Version = vmware.getStringMEProperty(hostMOR.type, hostname, "hardware.biosInfo.biosVersion");
+            host.VMM_Name = getString(properties, "config.product.name"); 
+            host.VMM_OSName = getString(properties, "config.product.name");
+            host.VMM_OSVersion = getString(properties, "config.product.version");
+            host.VMM_Version = getString(properties, "config.product.build");
+            host.BIOS_Oem = getString(properties, "hardware.systemInfo.vendor");
+            host.BIOS_Name = getString(properties, "hardware.systemInfo.vendor"); 
+            host.BIOS_Version = getString(properties, "hardware.biosInfo.biosVersion");
 
             /*
              // Possible values for this processor Info includes. So, if there is a "-", we are assuming that it is either a Sandy Bridge or a IVY bridge system
@@ -299,7 +302,7 @@ public class VmwareHostAgent implements HostAgent {
             // There is one more attribute in the vCenter that actually provides the processor name directly unlike the open source hosts where we
             // need to do the mapping
             // Possible values include: "intel-westmere", "intel-sandybridge"
-            String processorInfo = vmware.getStringMEProperty(hostMOR.type, hostname, "summary.maxEVCModeKey");
+            String processorInfo = getString(properties, "summary.maxEVCModeKey");
             if (processorInfo != null) {
                 processorInfo = processorInfo.toLowerCase();
                 if (processorInfo.contains("intel")) {
@@ -318,6 +321,12 @@ public class VmwareHostAgent implements HostAgent {
 
     }
 
+    private String getString(Hashtable<String,Object> properties, String propertyName) throws InvalidProperty {
+        Object value = properties.get(propertyName);
+        if (value == null) { throw new InvalidProperty(); }
+        return value.toString();
+    }
+
     @Override
     public String getHostAttestationReport(String pcrList, Nonce challenge) throws IOException {
         log.error("vmware does not support user-specified nonce, ignoring challenge: {}", challenge);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.vmware;
+
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.UpdateSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Applies property collector updates to the host inventory without a
+ * vCenter.
+ */
+public class HostSystemInventoryTest {
+
+    private ManagedObjectReference host(String id) {
+        ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType("HostSystem");
+        mor.setVal(id);
+        return mor;
+    }
+
+    private ObjectUpdate update(ObjectUpdateKind kind, ManagedObjectReference host, String name) {
+        ObjectUpdate objectUpdate = new ObjectUpdate();
+        objectUpdate.setKind(kind);
+        objectUpdate.setObj(host);
+        if (name != null) {
+            PropertyChange change = new PropertyChange();
+            change.setName("name");
+            change.setOp(PropertyChangeOp.assign);
+            change.setVal(name);
+            objectUpdate.setChangeSet(new PropertyChange[]{change});
+        }
+        return objectUpdate;
+    }
+
+    private UpdateSet updateSet(ObjectUpdate... objectUpdates) {
+        PropertyFilterUpdate filterUpdate = new PropertyFilterUpdate();
+        filterUpdate.setObjectSet(objectUpdates);
+        UpdateSet updateSet = new UpdateSet();
+        updateSet.setFilterSet(new PropertyFilterUpdate[]{filterUpdate});
+        return updateSet;
+    }
+
+    @Test
+    public void testEnterModifyLeave() {
+        HostSystemInventory inventory = new HostSystemInventory(null, null, null);
+        inventory.apply(updateSet(update(ObjectUpdateKind.enter, host("host-1"), "esxi1.example.com"), update(ObjectUpdateKind.enter, host("host-2"), "esxi2.example.com")));
+        assertEquals(2, inventory.size());
+        assertEquals("host-1", inventory.get("esxi1.example.com").getVal());
+        // renamed in vcenter
+        inventory.apply(updateSet(update(ObjectUpdateKind.modify, host("host-1"), "esxi1.corp.example.com")));
+        assertNull(inventory.get("esxi1.example.com"));
+        assertEquals("host-1", inventory.get("esxi1.corp.example.com").getVal());
+        // removed from vcenter
+        inventory.apply(updateSet(update(ObjectUpdateKind.leave, host("host-2"), null)));
+        assertNull(inventory.get("esxi2.example.com"));
+        assertEquals(1, inventory.size());
+    }
+
+    @Test
+    public void testAliasIsDroppedWhenHostLeaves() {
+        HostSystemInventory inventory = new HostSystemInventory(null, null, null);
+        inventory.apply(updateSet(update(ObjectUpdateKind.enter, host("host-1"), "esxi1.example.com")));
+        inventory.addAlias("10.1.71.155", host("host-1"));
+        inventory.addAlias("10.1.71.156", host("host-9")); // not in the inventory
+        assertEquals("host-1", inventory.get("10.1.71.155").getVal());
+        assertNull(inventory.get("10.1.71.156"));
+        inventory.apply(updateSet(update(ObjectUpdateKind.leave, host("host-1"), null)));
+        assertNull(inventory.get("10.1.71.155"));
+    }
+}
@@ -144,6 +144,7 @@ public class MleBO {
             mleJpaController.create(tblMle);
             // now add the PCRs that were validated above
             addPcrManifest(tblMle, mleData.getManifestList(), null, null);
+            MleVersion.increment(tblMle.getId());
 
         } catch (ASException ase) {
             //log.error("Exception while adding MLE data." + ase.getErrorMessage());
@@ -198,6 +199,7 @@ public class MleBO {
             // Bug: 4393 - Update the PCR list only if the user has specified an empty or valid PCRs
             if (mleData.getManifestList() != null)
                 updatePcrManifest(tblMle, mleData);
+            MleVersion.increment(tblMle.getId());
 
         } catch (ASException ase) {
             throw ase;
@@ -272,6 +274,7 @@ public class MleBO {
             deleteMleSource(mleName, mleVersion, osName, osVersion, oemName, mleUuid);
 
             mleJpaController.destroy(tblMle.getId());
+            MleVersion.increment(tblMle.getId());
 
         } catch (ASException ase) {
             throw ase;
@@ -769,6 +772,7 @@ public class MleBO {
 
             // Now add the pcr to the database.
             addPcrManifest(tblMle, pcrWhiteList, em, uuid);
+            MleVersion.increment(tblMle.getId());
 
         } catch (ASException ase) {
             throw ase;
@@ -841,6 +845,7 @@ public class MleBO {
             } else {
                 pcrManifestJpaController.edit_v2(tblPcr, em);
             }
+            MleVersion.increment(tblPcr.getMleId().getId());
 
         } catch (ASException ase) {
             throw ase;
@@ -908,6 +913,7 @@ public class MleBO {
             
             // Delete the PCR white list entry.
             pcrManifestJpaController.destroy(tblPcr.getId());
+            MleVersion.increment(mleObj.getId());
 
         } catch (ASException ase) {
             throw ase;
@@ -1063,6 +1069,7 @@ public class MleBO {
                 log.debug("ADDMLETIME: Using the new create method of having EM.");
                 moduleManifestJpaController.create_v2(newModuleRecord, em);
             }
+            MleVersion.increment(newModuleRecord.getMleId().getId());
             log.debug("ADDMLETIME: after insert {}", (System.currentTimeMillis() - addModule5));
 
         } catch (ASException ase) {
@@ -1170,6 +1177,7 @@ public class MleBO {
             } else {
                 moduleManifestJpaController.edit_v2(tblModule, em);
             }
+            MleVersion.increment(tblModule.getMleId().getId());
 
         } catch (ASException ase) {
             throw ase;
@@ -1256,6 +1264,7 @@ public class MleBO {
 
             if (tblModule != null) {
                 moduleManifestJpaController.destroy(tblModule.getId());
+                MleVersion.increment(tblModule.getMleId().getId());
             }
 
         } catch (ASException ase) {
@@ -12,8 +12,11 @@ import com.intel.mtwilson.trustagent.model.VMAttestationRequest;
 import com.intel.mtwilson.trustagent.model.VMAttestationResponse;
 import com.intel.mtwilson.trustagent.model.*;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import org.apache.commons.lang.StringUtils;
 
@@ -248,6 +251,29 @@ public class TrustAgentClient extends MtWilsonClient {
         return tpmQuoteResponse;
     }
     
+    /**
+     * 
+     * @param nonce
+     * @param pcrs
+     * @param pcrBank
+     * @param eventLogFormat null for the default modules xml, or BinaryEventLog.FORMAT
+     * @return 
+     */
+    public TpmQuoteResponse getTpmQuote(byte[] nonce, int[] pcrs, String pcrBank, String eventLogFormat) {
+        TpmQuoteRequest tpmQuoteRequest = new TpmQuoteRequest();
+        tpmQuoteRequest.setNonce(nonce);
+        tpmQuoteRequest.setPcrs(pcrs);
+        tpmQuoteRequest.setPcrbanks(pcrBank);
+        tpmQuoteRequest.setEventLogFormat(eventLogFormat);
+        log.debug("target: {}", getTarget().getUri().toString());
+        TpmQuoteResponse tpmQuoteResponse = getTarget()
+                .path("/tpm/quote")
+                .request()
+                .accept(MediaType.APPLICATION_XML)
+                .post(Entity.json(tpmQuoteRequest), TpmQuoteResponse.class);
+        return tpmQuoteResponse;
+    }
+    
     public TpmQuoteResponse getTpmQuote(byte[] nonce, int[] pcrs, String[] pcrBanks) {
         TpmQuoteRequest tpmQuoteRequest = new TpmQuoteRequest();
         tpmQuoteRequest.setNonce(nonce);
@@ -290,6 +316,27 @@ public class TrustAgentClient extends MtWilsonClient {
         return vmAttestationResponse;
     }
     
+//     * This API retrieves the VM attestation status of several VMs with a single request to the trust agent,
+//     * which asks vRTM for all of them at once.
+//     * @param vmInstanceIds
+//     * @return the status of each VM in the same order
+    public List<VMAttestationResponse> getVMAttestationStatus(List<String> vmInstanceIds) {
+        ArrayList<VMAttestationRequest> vmAttestationRequests = new ArrayList<>();
+        for(String vmInstanceId : vmInstanceIds) {
+            VMAttestationRequest vmAttestationRequest = new VMAttestationRequest();
+            vmAttestationRequest.setVmInstanceId(vmInstanceId);
+            vmAttestationRequests.add(vmAttestationRequest);
+        }
+        log.debug("target: {}", getTarget().getUri().toString());
+
+        List<VMAttestationResponse> vmAttestationResponses = getTarget()
+                .path("/vrtm/status/batch")
+                .request()
+                .accept(MediaType.APPLICATION_JSON)
+                .post(Entity.json(vmAttestationRequests), new GenericType<List<VMAttestationResponse>>() {});
+        return vmAttestationResponses;
+    }
+    
     
 //     * This API retrieves the complete VM attestation report including the following:
 //     * - Signed VM Quote having the nonce, vm instance id, and cumulative hash
@@ -61,6 +61,8 @@ public class TrustagentConfiguration {
     public final static String TRUSTAGENT_KEYSTORE_PASSWORD = "trustagent.keystore.password";
     public final static String DAA_ENABLED = "daa.enabled"; // default false for 1.2 and 2.0
     public final static String TPM_QUOTE_IPV4 = "tpm.quote.ipv4";
+    public final static String TPM_COMMAND_SESSION = "tpm.command.session"; // default true, run TPM 2.0 commands through one long-lived helper process
+    public final static String VRTM_STATUS_CACHE_SECONDS = "vrtm.status.cache.seconds"; // default 5, 0 to ask vRTM for every status request
     public static final String HARDWARE_UUID = "hardware.uuid";
     public static final String BINDING_KEY_NAME = "bind";
     public static final String BINDING_KEY_SECRET = "binding.key.secret";
@@ -72,6 +74,11 @@ public class TrustagentConfiguration {
     public final static String JETTY_THREAD_MIN = "jetty.thread.min";
     public final static String JETTY_THREAD_MAX = "jetty.thread.max";
                
+    private static final Object cachedConfigurationLock = new Object();
+    private static TrustagentConfiguration cachedConfiguration = null;
+    private static long cachedConfigurationLastModified = -1;
+    private static long cachedConfigurationLength = -1;
+               
     private Configuration conf;
 
     public Configuration getConf() {
@@ -324,6 +331,12 @@ public class TrustagentConfiguration {
     public boolean isTpmQuoteWithIpAddress() {
         return Boolean.valueOf(conf.get(TPM_QUOTE_IPV4, "true"));
     }
+    public boolean isTpmCommandSessionEnabled() {
+        return Boolean.valueOf(conf.get(TPM_COMMAND_SESSION, "true"));
+    }
+    public int getVrtmStatusCacheSeconds() {
+        return Integer.valueOf(conf.get(VRTM_STATUS_CACHE_SECONDS, "5"));
+    }
     
     public String getHardwareUuid() {
         return conf.get(HARDWARE_UUID, null);
@@ -377,6 +390,31 @@ public class TrustagentConfiguration {
         }
     }
     
+    /**
+     * Returns the configuration loaded by a previous call, reloading it only
+     * when trustagent.properties has been modified since, so request handlers
+     * like the tpm quote do not read (and possibly decrypt) the file every time.
+     * The returned instance is shared and must not be modified; setup tasks
+     * that write the configuration should use loadConfiguration.
+     * 
+     * @return
+     * @throws IOException 
+     */
+    public static TrustagentConfiguration getCachedConfiguration() throws IOException {
+        File file = new File(Folders.configuration() + File.separator + "trustagent.properties");
+        long lastModified = file.lastModified(); // 0 if the file does not exist
+        long length = file.length();
+        synchronized(cachedConfigurationLock) {
+            if( cachedConfiguration == null || lastModified != cachedConfigurationLastModified || length != cachedConfigurationLength ) {
+                log.debug("Loading trustagent configuration modified {}", lastModified);
+                cachedConfiguration = loadConfiguration();
+                cachedConfigurationLastModified = lastModified;
+                cachedConfigurationLength = length;
+            }
+            return cachedConfiguration;
+        }
+    }
+    
     // Helper methods for the Binding key
     public String getBindingKeySecretHex() {
         return conf.get(BINDING_KEY_SECRET); // intentionally no default - this must be generated during setup
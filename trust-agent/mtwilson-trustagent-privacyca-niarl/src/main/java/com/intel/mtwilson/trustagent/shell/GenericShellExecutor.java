@@ -77,6 +77,17 @@ abstract class GenericShellExecutor implements ShellExecutor {
 
         log.debug("Return code: " + returnCode);
         
+        return createResult(returnCode, line, returnCount);
+    }    
+    
+    /**
+     * 
+     * @param returnCode exit code of the command
+     * @param line last line of the command output
+     * @param returnCount number of space-separated values expected in the last line
+     * @return 
+     */
+    static CommandLineResult createResult(int returnCode, String line, int returnCount) {
         CommandLineResult toReturn = new CommandLineResult(returnCode, returnCount);
         toReturn.setReturnOutput(line);
         if ((returnCode == 0) && (returnCount != 0)) {
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.shell;
+
+import com.intel.mtwilson.Folders;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs the tpm2-* commands through one long-lived tpm2-session.sh helper
+ * process instead of starting a new shell for every TPM operation.
+ *
+ * Callers are queued and a single owner thread talks to the helper, so
+ * access to the TPM is serialized. Requests that are waiting together are
+ * written to the helper at once, and identical read-only requests that are
+ * not separated by another command (for example the asset tag index check
+ * from concurrent quotes) are run once and share the result.
+ *
+ * If the helper cannot be started, commands are run by the fallback
+ * executor from then on. If the helper exits, the requests in flight fail
+ * with an IOException (they are not retried because they may have changed
+ * the TPM) and the helper is restarted for the next request.
+ *
+ * A caller that is interrupted while waiting gets an InterruptedIOException
+ * and its request is not sent, unless the owner thread already sent it.
+ *
+ * The line protocol is described in tpm2-session.sh.
+ */
+class SessionShellExecutor implements ShellExecutor, Runnable {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SessionShellExecutor.class);
+    private static final Set<String> READ_ONLY_COMMANDS = new HashSet<>(Arrays.asList("tpm2-nvindex-exists.sh", "tpm2-nvread.sh", "tpm2-listpcrs.sh", "tpm2-getpcrbanks"));
+    /**
+     * All requests of a batch are written before the responses are read, so
+     * the responses of one batch must fit in the pipe buffer of the helper.
+     */
+    private static final int MAX_BATCH = 32;
+    private final ShellExecutor fallback;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private volatile boolean unavailable = false;
+    private Thread owner = null;
+    // only used by the owner thread
+    private Process helper = null;
+    private Writer helperInput = null;
+    private BufferedReader helperOutput = null;
+
+    private static class Request {
+        private final String line;
+        private final boolean readOnly;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int returnCode;
+        private String output;
+        private IOException error;
+        private boolean unavailable;
+        private volatile boolean cancelled = false;
+
+        public Request(String line, boolean readOnly) {
+            this.line = line;
+            this.readOnly = readOnly;
+        }
+
+        public void complete(int returnCode, String output) {
+            this.returnCode = returnCode;
+            this.output = output;
+            done.countDown();
+        }
+
+        public void fail(IOException error) {
+            if( done.getCount() == 0 ) {
+                return; // already completed
+            }
+            this.error = error;
+            done.countDown();
+        }
+
+        public void unavailable() {
+            this.unavailable = true;
+            done.countDown();
+        }
+    }
+
+    SessionShellExecutor(ShellExecutor fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public CommandLineResult executeTpmCommand(String command, String[] args, int returnCount) throws IOException {
+        String line = toRequestLine(command, args);
+        if( unavailable || line == null ) {
+            return fallback.executeTpmCommand(command, args, returnCount);
+        }
+        log.debug("TPM command session request: {}", command);
+        Request request = new Request(line, READ_ONLY_COMMANDS.contains(command));
+        start();
+        queue.add(request);
+        try {
+            request.done.await();
+        }
+        catch(InterruptedException e) {
+            request.cancelled = true;
+            queue.remove(request);
+            Thread.currentThread().interrupt();
+            log.debug("Interrupted while waiting for {}", command);
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for " + command);
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+        if( request.unavailable ) {
+            return fallback.executeTpmCommand(command, args, returnCount);
+        }
+        if( request.error != null ) {
+            throw new IOException("Cannot run " + command + " in TPM command session", request.error);
+        }
+        log.debug("Return code: {}", request.returnCode);
+        return GenericShellExecutor.createResult(request.returnCode, request.output, returnCount);
+    }
+
+    /**
+     *
+     * @param command
+     * @param args
+     * @return the request line, or null if the command cannot be sent in the line protocol
+     */
+    private String toRequestLine(String command, String[] args) {
+        StringBuilder line = new StringBuilder();
+        if( !appendField(line, command) ) {
+            return null;
+        }
+        for(String arg : args) {
+            line.append('\t');
+            if( !appendField(line, arg) ) {
+                return null;
+            }
+        }
+        return line.toString();
+    }
+
+    private boolean appendField(StringBuilder line, String field) {
+        // tabs separate fields and consecutive tabs are merged by the helper, so empty fields cannot be sent
+        if( field == null || field.isEmpty() || field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0 ) {
+            return false;
+        }
+        line.append(field);
+        return true;
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    private synchronized void start() {
+        if( owner == null ) {
+            owner = new Thread(this, "TpmCommandSession");
+            owner.setDaemon(true);
+            owner.start();
+        }
+    }
+
+    /**
+     * Starts the helper process. Tests override this to connect to a
+     * TPM simulator stand-in that speaks the same line protocol.
+     *
+     * @return
+     * @throws IOException
+     */
+    protected Process startHelper() throws IOException {
+        File script = new File(Folders.application() + File.separator + "bin" + File.separator + "tpm2-session.sh");
+        if( !script.exists() ) {
+            throw new FileNotFoundException(script.getAbsolutePath());
+        }
+        ProcessBuilder pb = new ProcessBuilder("/bin/bash", script.getAbsolutePath());
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return pb.start();
+    }
+
+    @Override
+    public void run() {
+        ArrayList<Request> batch = new ArrayList<>(MAX_BATCH);
+        while(true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                execute(batch);
+            }
+            catch(InterruptedException e) {
+                log.debug("TPM command session interrupted");
+            }
+            catch(RuntimeException e) {
+                log.error("TPM command session error", e);
+                for(Request request : batch) {
+                    request.fail(new IOException(e));
+                }
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void execute(List<Request> batch) {
+        if( helper == null ) {
+            try {
+                open();
+            }
+            catch(IOException e) {
+                log.warn("Cannot start TPM command session, running TPM commands individually: {}", e.getMessage());
+                unavailable = true;
+                for(Request request : batch) {
+                    request.unavailable();
+                }
+                return;
+            }
+        }
+        // identical read-only requests share one command unless another command is between them
+        ArrayList<List<Request>> commands = new ArrayList<>();
+        HashMap<String,List<Request>> reads = new HashMap<>();
+        for(Request request : batch) {
+            if( request.cancelled ) {
+                continue; // the caller was interrupted
+            }
+            if( request.readOnly ) {
+                List<Request> same = reads.get(request.line);
+                if( same != null ) {
+                    same.add(request);
+                    continue;
+                }
+                same = new ArrayList<>();
+                same.add(request);
+                reads.put(request.line, same);
+                commands.add(same);
+            }
+            else {
+                reads.clear();
+                ArrayList<Request> single = new ArrayList<>();
+                single.add(request);
+                commands.add(single);
+            }
+        }
+        long start = System.currentTimeMillis();
+        int completed = 0;
+        try {
+            for(List<Request> requests : commands) {
+                helperInput.write(requests.get(0).line);
+                helperInput.write('\n');
+            }
+            helperInput.flush();
+            for(List<Request> requests : commands) {
+                String response = helperOutput.readLine();
+                if( response == null ) {
+                    throw new EOFException("TPM command session ended");
+                }
+                int tab = response.indexOf('\t');
+                int returnCode = Integer.parseInt(tab < 0 ? response : response.substring(0, tab));
+                String output = tab < 0 ? "" : response.substring(tab + 1);
+                for(Request request : requests) {
+                    request.complete(returnCode, output);
+                }
+                completed++;
+            }
+            log.debug("performance: TPM command session ran {} commands for {} requests in {}ms", commands.size(), batch.size(), System.currentTimeMillis() - start);
+        }
+        catch(IOException | NumberFormatException e) {
+            log.error("TPM command session failed", e);
+            close();
+            IOException error = e instanceof IOException ? (IOException)e : new IOException(e);
+            for(int i = completed; i < commands.size(); i++) {
+                for(Request request : commands.get(i)) {
+                    request.fail(error);
+                }
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        helper = startHelper();
+        helperInput = new OutputStreamWriter(helper.getOutputStream(), StandardCharsets.UTF_8);
+        helperOutput = new BufferedReader(new InputStreamReader(helper.getInputStream(), StandardCharsets.UTF_8));
+        log.debug("Started TPM command session");
+    }
+
+    private void close() {
+        if( helper != null ) {
+            try {
+                helperInput.close();
+            }
+            catch(IOException e) {
+                log.debug("Cannot close TPM command session input", e);
+            }
+            helper.destroy();
+        }
+        helper = null;
+        helperInput = null;
+        helperOutput = null;
+    }
+}
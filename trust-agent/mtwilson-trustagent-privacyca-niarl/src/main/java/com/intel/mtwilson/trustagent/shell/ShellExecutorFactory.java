@@ -18,6 +18,7 @@ public class ShellExecutorFactory {
     private ShellExecutorFactory() { }
     
     static final ShellExecutor WINDOWSSHELL = new WindowsShellExecutor(), UNIXSHELL = new UnixShellExecutor();    
+    static final ShellExecutor UNIXSESSION = new SessionShellExecutor(UNIXSHELL);
     
     public static ShellExecutor getInstance(OS operatingSystem) {
         switch(operatingSystem) {
@@ -27,4 +28,21 @@ public class ShellExecutorFactory {
                 return UNIXSHELL;                
         }
     }
+    
+    /**
+     * Like getInstance but on Unix the commands are run through a single
+     * long-lived tpm2-session.sh helper process instead of a new process
+     * for each command.
+     * 
+     * @param operatingSystem
+     * @return 
+     */
+    public static ShellExecutor getSessionInstance(OS operatingSystem) {
+        switch(operatingSystem) {
+            case Windows:
+                return WINDOWSSHELL;
+            default:
+                return UNIXSESSION;
+        }
+    }
 }
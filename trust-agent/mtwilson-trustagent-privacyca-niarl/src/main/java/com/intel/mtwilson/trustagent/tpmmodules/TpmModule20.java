@@ -175,6 +175,14 @@ public class TpmModule20 implements TpmModuleProvider {
 
     @Override
     public ShellExecutor getShellExecutor() {
+        try {
+            if( TrustagentConfiguration.getCachedConfiguration().isTpmCommandSessionEnabled() ) {
+                return ShellExecutorFactory.getSessionInstance(ShellExecutorFactory.OS.Unix);
+            }
+        }
+        catch(IOException e) {
+            log.debug("Cannot load trustagent configuration", e);
+        }
         return ShellExecutorFactory.getInstance(ShellExecutorFactory.OS.Unix);
     }        
     
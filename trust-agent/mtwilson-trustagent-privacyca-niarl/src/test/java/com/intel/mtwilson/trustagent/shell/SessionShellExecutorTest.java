@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.shell;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs SessionShellExecutor against an in-process stand-in for the
+ * tpm2-session.sh helper backed by a simulated NV store.
+ */
+public class SessionShellExecutorTest {
+
+    /**
+     * Speaks the tpm2-session.sh line protocol; tpm2-nvwrite.sh takes the
+     * data as hex instead of a file name.
+     */
+    private static class SimulatorProcess extends Process implements Runnable {
+        private final PipedOutputStream stdin = new PipedOutputStream();
+        private final PipedInputStream stdout = new PipedInputStream(65536);
+        private final BufferedReader requests;
+        private final PrintStream responses;
+        private final HashMap<String,String> nv = new HashMap<>();
+        private final AtomicInteger commands = new AtomicInteger();
+        private final CountDownLatch received = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private final int exitAfter;
+
+        public SimulatorProcess(CountDownLatch release, int exitAfter) throws IOException {
+            this.release = release;
+            this.exitAfter = exitAfter;
+            requests = new BufferedReader(new InputStreamReader(new PipedInputStream(stdin, 65536), StandardCharsets.UTF_8));
+            responses = new PrintStream(new PipedOutputStream(stdout), true, "UTF-8");
+            Thread thread = new Thread(this, "TpmSimulator");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while((line = requests.readLine()) != null) {
+                    received.countDown();
+                    release.await();
+                    if( commands.incrementAndGet() > exitAfter ) {
+                        break;
+                    }
+                    String[] fields = line.split("\t");
+                    switch(fields[0]) {
+                        case "tpm2-nvdefine.sh":
+                            nv.put(fields[3], "");
+                            responses.print("0\t\n");
+                            break;
+                        case "tpm2-nvwrite.sh":
+                            nv.put(fields[2], fields[3]);
+                            responses.print("0\t\n");
+                            break;
+                        case "tpm2-nvindex-exists.sh":
+                            responses.print("0\t" + (nv.containsKey(fields[1]) ? "1" : "0") + "\n");
+                            break;
+                        case "tpm2-nvread.sh":
+                            if( nv.containsKey(fields[2]) ) {
+                                responses.print("0\t" + nv.get(fields[2]) + "\n");
+                            }
+                            else {
+                                responses.print("1\tfailed\n");
+                            }
+                            break;
+                        default:
+                            responses.print("127\t\n");
+                    }
+                }
+            }
+            catch(IOException | InterruptedException e) {
+                // test ended
+            }
+            responses.close();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return stdin;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return null;
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            responses.close();
+        }
+    }
+
+    private static class SimulatorShellExecutor extends SessionShellExecutor {
+        private final List<SimulatorProcess> started = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+        private final int exitAfter;
+
+        public SimulatorShellExecutor(CountDownLatch release, int exitAfter) {
+            super(new UnavailableShellExecutor());
+            this.release = release;
+            this.exitAfter = exitAfter;
+        }
+
+        @Override
+        protected Process startHelper() throws IOException {
+            SimulatorProcess process = new SimulatorProcess(release, exitAfter);
+            started.add(process);
+            return process;
+        }
+    }
+
+    private static class UnavailableShellExecutor implements ShellExecutor {
+        private final AtomicInteger commands = new AtomicInteger();
+
+        @Override
+        public CommandLineResult executeTpmCommand(String command, String[] args, int returnCount) throws IOException {
+            commands.incrementAndGet();
+            return GenericShellExecutor.createResult(2, "fallback", returnCount);
+        }
+    }
+
+    @Test
+    public void testReadAfterWrite() throws IOException {
+        SimulatorShellExecutor executor = new SimulatorShellExecutor(new CountDownLatch(0), Integer.MAX_VALUE);
+        assertEquals("0", executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getResult(0));
+        assertEquals(0, executor.executeTpmCommand("tpm2-nvdefine.sh", new String[] { "00", "00", "0x1c10110", "20", "0x02040002" }, 0).getReturnCode());
+        assertEquals(0, executor.executeTpmCommand("tpm2-nvwrite.sh", new String[] { "00", "0x1c10110", "abcdef" }, 0).getReturnCode());
+        assertEquals("1", executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getResult(0));
+        CommandLineResult result = executor.executeTpmCommand("tpm2-nvread.sh", new String[] { "00", "0x1c10110", "20" }, 1);
+        assertEquals(0, result.getReturnCode());
+        assertEquals("abcdef", result.getResult(0));
+        assertEquals(1, executor.executeTpmCommand("tpm2-nvread.sh", new String[] { "00", "0x1c10111", "20" }, 1).getReturnCode());
+        assertEquals(1, executor.started.size());
+        assertEquals(6, executor.started.get(0).commands.get());
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneCommand() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        final SimulatorShellExecutor executor = new SimulatorShellExecutor(release, Integer.MAX_VALUE);
+        // hold the first command in the simulator so the reads queue up behind it
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.executeTpmCommand("tpm2-nvdefine.sh", new String[] { "00", "00", "0x1c10110", "20", "0x02040002" }, 0);
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        first.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while(executor.started.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.started.get(0).received.await();
+        final int readers = 5;
+        final String[] results = new String[readers];
+        Thread[] threads = new Thread[readers];
+        for(int i=0; i<readers; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results[index] = executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getResult(0);
+                    }
+                    catch(IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        while(executor.getQueueSize() < readers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(readers, executor.getQueueSize());
+        release.countDown();
+        first.join();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        for(String result : results) {
+            assertEquals("1", result);
+        }
+        assertEquals(2, executor.started.get(0).commands.get());
+    }
+
+    @Test
+    public void testInterruptedRequestIsNotRun() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        final SimulatorShellExecutor executor = new SimulatorShellExecutor(release, Integer.MAX_VALUE);
+        // hold the first command in the simulator so the write stays queued
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.executeTpmCommand("tpm2-nvdefine.sh", new String[] { "00", "00", "0x1c10110", "20", "0x02040002" }, 0);
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        first.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while(executor.started.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.started.get(0).received.await();
+        final Exception[] failure = new Exception[1];
+        final boolean[] interruptFlag = new boolean[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.executeTpmCommand("tpm2-nvwrite.sh", new String[] { "00", "0x1c10110", "abcdef" }, 0);
+                }
+                catch(IOException e) {
+                    failure[0] = e;
+                    interruptFlag[0] = Thread.currentThread().isInterrupted();
+                }
+            }
+        });
+        writer.start();
+        while(executor.getQueueSize() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        writer.interrupt();
+        writer.join();
+        assertTrue(failure[0] instanceof InterruptedIOException);
+        assertTrue(interruptFlag[0]);
+        assertEquals(0, executor.getQueueSize());
+        release.countDown();
+        first.join();
+        // the index is defined but was never written
+        assertEquals("", executor.executeTpmCommand("tpm2-nvread.sh", new String[] { "00", "0x1c10110", "20" }, 0).getReturnOutput());
+        assertEquals(2, executor.started.get(0).commands.get());
+    }
+
+    @Test
+    public void testRestartAfterHelperExit() throws IOException {
+        SimulatorShellExecutor executor = new SimulatorShellExecutor(new CountDownLatch(0), 1);
+        assertEquals("0", executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getResult(0));
+        try {
+            executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1);
+            fail("Expected IOException when the helper exits");
+        }
+        catch(IOException e) {
+            // expected
+        }
+        assertEquals("0", executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getResult(0));
+        assertEquals(2, executor.started.size());
+    }
+
+    @Test
+    public void testFallbackWhenHelperUnavailable() throws IOException {
+        UnavailableShellExecutor fallback = new UnavailableShellExecutor();
+        SessionShellExecutor executor = new SessionShellExecutor(fallback) {
+            @Override
+            protected Process startHelper() throws IOException {
+                throw new IOException("no helper");
+            }
+        };
+        assertEquals("fallback", executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getReturnOutput());
+        assertEquals("fallback", executor.executeTpmCommand("tpm2-nvindex-exists.sh", new String[] { "0x1c10110" }, 1).getReturnOutput());
+        // empty arguments cannot be sent to the helper
+        assertEquals("fallback", executor.executeTpmCommand("tpm2-nvread.sh", new String[] { "", "0x1c10110", "20" }, 1).getReturnOutput());
+        assertEquals(3, fallback.commands.get());
+    }
+}
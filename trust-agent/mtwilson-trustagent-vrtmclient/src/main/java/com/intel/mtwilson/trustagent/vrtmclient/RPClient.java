@@ -10,12 +10,45 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.xml.bind.DatatypeConverter;
 
+/**
+ * Client for the rpcore RPC interface of vRTM.
+ * 
+ * The connection is kept open between calls, and several calls can be
+ * sent on it at once (see send(List)). The calls sent with send are
+ * queries, so if rpcore has closed a connection that was already used, or
+ * does not answer within the read timeout, the calls are sent again on a
+ * new connection. If rpcore closes a new connection after answering the
+ * first call, connections are not reused any more. Calls that create
+ * something in rpcore, like the VM attestation report, are sent with
+ * sendOnce instead and are never sent again.
+ * 
+ * Instances are not thread-safe; see RPClientPool.
+ */
 public class RPClient {
         private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RPClient.class);
+        private static final XmlMapper mapper = new XmlMapper();
+        private static volatile boolean keepAlive = true;
 	private InetSocketAddress rpcoreEndpoint;
         private Socket rpSock;  
+        private int answered = 0; // calls answered on the current connection
+        private int connectTimeout = 10000; // milliseconds
+        private int readTimeout = 60000; // milliseconds
+
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public void setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+        }
 
         public InetSocketAddress getRpcoreEndpoint() {
             return rpcoreEndpoint;
@@ -39,135 +72,221 @@ public class RPClient {
 	}
 	
 	public TCBuffer send(TCBuffer outTCBuffer) throws IOException {
+		return send(Collections.singletonList(outTCBuffer)).get(0);
+	}
+	
+	/**
+	 * Sends a call that is not safe to repeat on a new connection, so that
+	 * rpcore cannot have closed it while it was idle, and does not send it
+	 * again if the connection fails.
+	 * 
+	 * @param outTCBuffer
+	 * @return the response
+	 * @throws IOException 
+	 */
+	public TCBuffer sendOnce(TCBuffer outTCBuffer) throws IOException {
+		if( answered > 0 ) {
+			close();
+		}
+		connect();
+		ArrayList<TCBuffer> inTCBuffers = new ArrayList<>(1);
+		try {
+			exchange(Collections.singletonList(outTCBuffer), inTCBuffers);
+		}
+		catch(IOException e) {
+			close();
+			throw e;
+		}
+		if( !keepAlive ) {
+			close();
+		}
+		return inTCBuffers.get(0);
+	}
+	
+	private void connect() throws IOException {
+		if(rpSock.isClosed()){
+			rpSock = new Socket();
+		}
 		if(!rpSock.isConnected()){
-			rpSock.connect(rpcoreEndpoint);
+			try {
+				rpSock.connect(rpcoreEndpoint, connectTimeout);
+				rpSock.setSoTimeout(readTimeout);
+			}
+			catch(IOException e) {
+				close();
+				throw e;
+			}
+			answered = 0;
+		}
+	}
+	
+	/**
+	 * Writes all the calls before reading the responses, so the calls
+	 * take a single round trip to rpcore.
+	 * 
+	 * @param outTCBuffers
+	 * @return the responses in the same order as the calls
+	 * @throws IOException 
+	 */
+	public List<TCBuffer> send(List<TCBuffer> outTCBuffers) throws IOException {
+		ArrayList<TCBuffer> inTCBuffers = new ArrayList<>(outTCBuffers.size());
+		while(inTCBuffers.size() < outTCBuffers.size()) {
+			List<TCBuffer> pending = outTCBuffers.subList(inTCBuffers.size(), keepAlive ? outTCBuffers.size() : inTCBuffers.size() + 1);
+			connect();
+			boolean reused = answered > 0;
+			int before = inTCBuffers.size();
+			try {
+				exchange(pending, inTCBuffers);
+			}
+			catch(IOException e) {
+				int progress = inTCBuffers.size() - before;
+				close();
+				if( progress == 0 && !reused ) {
+					throw e;
+				}
+				if( e instanceof SocketTimeoutException ) {
+					log.debug("rpcore did not answer within {}ms after {} calls, reconnecting", readTimeout, progress);
+				}
+				else if( progress == 1 && !reused && keepAlive ) {
+					log.info("rpcore closed the connection after one call, not reusing connections");
+					keepAlive = false;
+				}
+				else {
+					log.debug("rpcore connection closed after {} calls, reconnecting", answered);
+				}
+				continue;
+			}
+			if( !keepAlive ) {
+				close();
+			}
 		}
+		return inTCBuffers;
+	}
+	
+	private void exchange(List<TCBuffer> outTCBuffers, List<TCBuffer> inTCBuffers) throws IOException {
 		ByteArrayOutputStream rpOutStream = new ByteArrayOutputStream();
-		/*String rpId = String.valueOf(outTCBuffer.getRpId());
-		byte[] arr = rpId.getBytes();
-		rpOutStream.write(arr);
-		rpOutStream.write('\0');*/
-
+		for(TCBuffer outTCBuffer : outTCBuffers) {
+			outTCBuffer.serializeTCBuffer(rpOutStream);
+		}
 		OutputStream rpcoreOut = rpSock.getOutputStream();
 		rpOutStream.writeTo(rpcoreOut);
-		rpOutStream.flush();
 		rpcoreOut.flush();
 		
-		outTCBuffer.serializeTCBuffer(rpcoreOut);
-		
 		InputStream rpcoreIn = rpSock.getInputStream();
-		TCBuffer inTCBuffer = new TCBuffer();
-		inTCBuffer.deSerializeTCBuffer(rpcoreIn);
-		
-		return inTCBuffer;
+		for(int i=0; i<outTCBuffers.size(); i++) {
+			TCBuffer inTCBuffer = new TCBuffer();
+			inTCBuffer.deSerializeTCBuffer(rpcoreIn);
+			inTCBuffers.add(inTCBuffer);
+			answered++;
+		}
 	}
 	
 	public void close(){
 		try{
-			rpSock.shutdownOutput();
-			rpSock.shutdownInput();
+			if(rpSock.isConnected() && !rpSock.isClosed()){
+				rpSock.shutdownOutput();
+				rpSock.shutdownInput();
+			}
 			rpSock.close();
 		}catch(Exception e){
                     log.error("Error during socket close.", e);
 		}
+		answered = 0;
 	}
         
-        // get the vm status from vrtm
-        public boolean getVmStatus(String vmInstanceId) throws IOException {
-            boolean retStatus = false;
-            
-            //Format xml request payload 
-            String xmlRPCBlob=  "<?xml version='1.0'?>" 
-                            + "<methodCall>"
-                            + "<methodName>get_verification_status</methodName>"
-                            + 	"<params>"
-                            +		"<param>"
-                            +			"<value><string>%s</string></value>"
-                            +		"</param>"
-                            +	"</params>"
-                            + "</methodCall>";
-            // Replace the %s of xmlRPCBlob by VMUUID, rpcore accept all method input arguments in base64 format
-            String base64InputArgument = String.format(xmlRPCBlob, DatatypeConverter.printBase64Binary((vmInstanceId).getBytes()));
-            log.debug("Sending {}", base64InputArgument);
-
-            TCBuffer tcBuffer = Factory.newTCBuffer(RPCCall.IS_VM_VERIFIED);	// Formuate tcbuffer structure
-            if (tcBuffer != null) {
-                tcBuffer.setRPCPayload(base64InputArgument.getBytes());
-
-                TCBuffer resultTcb = send(tcBuffer);    // send tcBuffer to rpcore 
-                /* Sample Output:
-                 <?xml version='1.0'?>
-                    <methodResponse>
-                        <params>
-                            <param>
-                                <value><string>MQ==</string></value>
-                            </param>
-                        </params>
-                    </methodResponse>
-                //decode MQ== to get vm status
-                */
-
-                if (resultTcb.getRPCPayloadSize() != 0) {
-                    String xml = resultTcb.getRPCPayload();
-                    log.debug("Method response: {}", xml);
+        /**
+         * Formats an XML-RPC call; rpcore accepts all method input arguments in base64 format
+         */
+        private TCBuffer newCall(RPCCall rpcCall, String methodName, String... args) {
+            TCBuffer tcBuffer = Factory.newTCBuffer(rpcCall);	// Formuate tcbuffer structure
+            if (tcBuffer == null) {
+                return null;
+            }
+            StringBuilder xmlRPCBlob = new StringBuilder();
+            xmlRPCBlob.append("<?xml version='1.0'?><methodCall><methodName>").append(methodName).append("</methodName><params>");
+            for(String arg : args) {
+                xmlRPCBlob.append("<param><value><string>").append(DatatypeConverter.printBase64Binary(arg.getBytes())).append("</string></value></param>");
+            }
+            xmlRPCBlob.append("</params></methodCall>");
+            log.debug("Sending {}", xmlRPCBlob);
+            tcBuffer.setRPCPayload(xmlRPCBlob.toString().getBytes());
+            return tcBuffer;
+        }
+        
+        /**
+         * 
+         * @param resultTcb
+         * @return the decoded first parameter of the method response, or null if the response is empty
+         */
+        private String parseResponse(TCBuffer resultTcb) throws IOException {
+            /* Sample Output:
+             <?xml version='1.0'?>
+                <methodResponse>
+                    <params>
+                        <param>
+                            <value><string>MQ==</string></value>
+                        </param>
+                    </params>
+                </methodResponse>
+            //decode MQ== to get the value
+            */
+            if (resultTcb.getRPCPayloadSize() == 0) {
+                return null;
+            }
+            String xml = resultTcb.getRPCPayload();
+            log.debug("Method response: {}", xml);
 
-                    XmlMapper mapper = new XmlMapper();
-                    MethodResponse response = mapper.readValue(xml, MethodResponse.class);
-                    Param param[] = response.getParams();
-                    Value value = param[0].getValue();
-                    byte[] retBytes = DatatypeConverter.parseBase64Binary(value.getString());
-                    String retValue = new String(retBytes, "UTF-8");
+            MethodResponse response = mapper.readValue(xml, MethodResponse.class);
+            Param param[] = response.getParams();
+            Value value = param[0].getValue();
+            byte[] retBytes = DatatypeConverter.parseBase64Binary(value.getString());
+            String retValue = new String(retBytes, "UTF-8");
 
-                    log.debug("vrtm return value: {}", retValue);  
-                    if (retValue.equals("1"))
-                        retStatus = true;
+            log.debug("vrtm return value: {}", retValue);  
+            return retValue;
+        }
+        
+        // get the vm status from vrtm
+        public boolean getVmStatus(String vmInstanceId) throws IOException {
+            Boolean status = getVmStatus(Collections.singletonList(vmInstanceId)).get(vmInstanceId);
+            return status != null && status;
+        }
+        
+        /**
+         * Gets the status of all the VMs in a single round trip to rpcore.
+         * 
+         * @param vmInstanceIds
+         * @return the status of each VM, in the same order
+         * @throws IOException 
+         */
+        public Map<String,Boolean> getVmStatus(List<String> vmInstanceIds) throws IOException {
+            LinkedHashMap<String,Boolean> statuses = new LinkedHashMap<>();
+            ArrayList<String> ids = new ArrayList<>();
+            ArrayList<TCBuffer> calls = new ArrayList<>();
+            for(String vmInstanceId : vmInstanceIds) {
+                TCBuffer tcBuffer = newCall(RPCCall.IS_VM_VERIFIED, "get_verification_status", vmInstanceId);
+                if (tcBuffer == null) {
+                    statuses.put(vmInstanceId, false);
+                    continue;
+                }
+                ids.add(vmInstanceId);
+                calls.add(tcBuffer);
+            }
+            if (!calls.isEmpty()) {
+                List<TCBuffer> results = send(calls);    // send tcBuffers to rpcore 
+                for(int i=0; i<ids.size(); i++) {
+                    String retValue = parseResponse(results.get(i));
+                    statuses.put(ids.get(i), "1".equals(retValue));
                 }
             }
-            
-            return retStatus;
+            return statuses;
         }
         
         public String getVMAttestationReportPath(String vmInstanceId, String nonce) throws IOException {
-            
-            //Format xml request payload 
-            String xmlRPCBlob=  "<?xml version='1.0'?>" 
-                            + "<methodCall>"
-                            + "<methodName>get_verification_status</methodName>"
-                            + 	"<params>"
-                            +		"<param>"
-                            +			"<value><string>%s</string></value>"
-                            +		"</param>"
-                            +		"<param>"
-                            +			"<value><string>%s</string></value>"
-                            +		"</param>"
-                            +	"</params>"
-                            + "</methodCall>";
-            String base64InputArgument = String.format(xmlRPCBlob, DatatypeConverter.printBase64Binary((vmInstanceId).getBytes()), 
-                    DatatypeConverter.printBase64Binary((nonce).getBytes()));
-            log.debug("Sending {}", base64InputArgument);
-
-            TCBuffer tcBuffer = Factory.newTCBuffer(RPCCall.GET_VM_ATTESTATION_REPORT_PATH);	// Formuate tcbuffer structure
+            TCBuffer tcBuffer = newCall(RPCCall.GET_VM_ATTESTATION_REPORT_PATH, "get_verification_status", vmInstanceId, nonce);
             if (tcBuffer != null) {
-                tcBuffer.setRPCPayload(base64InputArgument.getBytes());
-
-                TCBuffer resultTcb = send(tcBuffer);    // send tcBuffer to rpcore 
-
-                if (resultTcb.getRPCPayloadSize() != 0) {
-                    String xml = resultTcb.getRPCPayload();
-                    log.debug("Method response: {}", xml);
-
-                    XmlMapper mapper = new XmlMapper();
-                    MethodResponse response = mapper.readValue(xml, MethodResponse.class);
-                    Param param[] = response.getParams();
-                    Value value = param[0].getValue();
-                    byte[] retBytes = DatatypeConverter.parseBase64Binary(value.getString());
-                    String retValue = new String(retBytes, "UTF-8");
-
-                    log.debug("vrtm return value: {}", retValue);  
-                    return retValue;
-                } else {
-                    return null;
-                }
+                TCBuffer resultTcb = sendOnce(tcBuffer);    // send tcBuffer to rpcore, which creates the report 
+                return parseResponse(resultTcb);
             }
             return null;
         }
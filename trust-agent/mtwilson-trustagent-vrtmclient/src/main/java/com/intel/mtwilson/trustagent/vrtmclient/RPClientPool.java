@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.vrtmclient;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Keeps up to maxIdle open rpcore connections so concurrent requests do not
+ * each open and close a socket.
+ *
+ * A client is used by one thread at a time: borrow it, and then either
+ * release it when the call succeeded or invalidate it when the call failed.
+ */
+public class RPClientPool {
+    private final String hostName;
+    private final int port;
+    private final BlockingDeque<RPClient> idle;
+
+    public RPClientPool(String hostName, int port, int maxIdle) {
+        this.hostName = hostName;
+        this.port = port;
+        this.idle = new LinkedBlockingDeque<>(maxIdle);
+    }
+
+    public RPClient borrow() {
+        RPClient client = idle.pollFirst();
+        if( client == null ) {
+            client = new RPClient(hostName, port);
+        }
+        return client;
+    }
+
+    public void release(RPClient client) {
+        // most recently used first, so the same few connections are reused
+        if( !idle.offerFirst(client) ) {
+            client.close();
+        }
+    }
+
+    public void invalidate(RPClient client) {
+        client.close();
+    }
+
+    public void clear() {
+        RPClient client;
+        while( (client = idle.pollFirst()) != null ) {
+            client.close();
+        }
+    }
+}
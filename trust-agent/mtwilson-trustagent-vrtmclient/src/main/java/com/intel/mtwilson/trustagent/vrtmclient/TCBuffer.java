@@ -1,5 +1,7 @@
 package com.intel.mtwilson.trustagent.vrtmclient;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -131,38 +133,43 @@ public class TCBuffer {
 	}
 	/**
 	 * This function only set first 20 byte of TCBuffer
+	 * 
+	 * Reads exactly one frame, so several frames can be read from the
+	 * same connection.
 	 * @param tcBufferByteStream
 	 * @throws IOException
 	 */
 	public void deSerializeTCBuffer(InputStream in) throws IOException{
+		DataInputStream din = new DataInputStream(in);
 		byte[] bigBytes = new byte[4];
 		//in.read(bigBytes);
 		//setInternalValues(brpId, bigBytes);
-		int brpcCallIndexreturnValue = in.read(bigBytes);
-                if (brpcCallIndexreturnValue != 4) {
-                    throw new IOException("Error reading BRPC call index");
-                }
+		readFully(din, bigBytes, "Error reading BRPC call index");
                 setInternalValues(brpcCallIndex, bigBytes);
 		
-		int brpcPayloadSizeReturnValue = in.read(bigBytes);
-                if (brpcPayloadSizeReturnValue != 4) {
-                    throw new IOException("Error reading BRPC payload size");
-                }
+		readFully(din, bigBytes, "Error reading BRPC payload size");
 		setInternalValues(brpcPayloadSize, bigBytes);
                 
-		int brpcCallStatusReturnValue = in.read(bigBytes);
-                if (brpcCallStatusReturnValue != 4) {
-                    throw new IOException("Error reading BRPC call status");
-                }
+		readFully(din, bigBytes, "Error reading BRPC call status");
 		setInternalValues(brpcCallStatus, bigBytes);
                 
 		//in.read(bigBytes);
 		//setInternalValues(boriginalRpId, bigBytes);
 		
-                rpcPayload = new byte[getRPCPayloadSize()];
-		int rpcPayloadReturnValue = in.read(rpcPayload);
-                if (rpcPayloadReturnValue != rpcPayload.length && rpcPayloadReturnValue != -1) {
-                    throw new IOException("Error reading RPC payload");
+                int payloadSize = getRPCPayloadSize();
+                if (payloadSize < 0) {
+                    throw new IOException("Invalid RPC payload size");
                 }
+                rpcPayload = new byte[payloadSize];
+		readFully(din, rpcPayload, "Error reading RPC payload");
+	}
+	
+	private void readFully(DataInputStream in, byte[] bytes, String message) throws IOException {
+		try {
+			in.readFully(bytes);
+		}
+		catch(EOFException e) {
+			throw new EOFException(message);
+		}
 	}
 }
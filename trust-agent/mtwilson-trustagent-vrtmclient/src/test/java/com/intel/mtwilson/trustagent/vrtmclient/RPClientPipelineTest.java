@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.vrtmclient;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs RPClient against a local stand-in for rpcore that echoes the payload
+ * of each frame.
+ */
+public class RPClientPipelineTest {
+
+    private static class FakeRpcore implements Runnable {
+        private final ServerSocket server;
+        private final int callsPerConnection;
+        private final int hangAfter;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        public FakeRpcore(int callsPerConnection) throws IOException {
+            this(callsPerConnection, Integer.MAX_VALUE);
+        }
+
+        /**
+         *
+         * @param callsPerConnection
+         * @param hangAfter the number of calls answered on the first connection before it stops answering without closing it
+         */
+        public FakeRpcore(int callsPerConnection, int hangAfter) throws IOException {
+            this.server = new ServerSocket(0);
+            this.callsPerConnection = callsPerConnection;
+            this.hangAfter = hangAfter;
+            Thread thread = new Thread(this, "FakeRpcore");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(true) {
+                    try (Socket socket = server.accept()) {
+                        int connection = connections.incrementAndGet();
+                        for(int i=0; i<callsPerConnection; i++) {
+                            if( connection == 1 && i == hangAfter ) {
+                                break;
+                            }
+                            TCBuffer call = new TCBuffer();
+                            call.deSerializeTCBuffer(socket.getInputStream());
+                            TCBuffer response = new TCBuffer(call.getRPCCallIndex(), 0, call.getRPCPayload());
+                            response.serializeTCBuffer(socket.getOutputStream());
+                        }
+                        // let the client read the responses before the connection is closed
+                        if( connection != 1 || hangAfter == Integer.MAX_VALUE ) {
+                            socket.shutdownOutput();
+                        }
+                        while(socket.getInputStream().read() != -1) { }
+                    }
+                    catch(IOException e) {
+                        // client closed the connection
+                    }
+                }
+            }
+            finally {
+                try {
+                    server.close();
+                }
+                catch(IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private List<TCBuffer> calls(int count) {
+        ArrayList<TCBuffer> calls = new ArrayList<>();
+        for(int i=0; i<count; i++) {
+            calls.add(new TCBuffer(40, 0, "call" + i));
+        }
+        return calls;
+    }
+
+    private void assertEchoed(List<TCBuffer> responses, int count) {
+        assertEquals(count, responses.size());
+        for(int i=0; i<count; i++) {
+            assertEquals("call" + i, responses.get(i).getRPCPayload());
+        }
+    }
+
+    @Test
+    public void testPipelinedCallsOnOneConnection() throws IOException {
+        FakeRpcore rpcore = new FakeRpcore(Integer.MAX_VALUE);
+        RPClient client = new RPClient("127.0.0.1", rpcore.server.getLocalPort());
+        assertEchoed(client.send(calls(10)), 10);
+        assertEchoed(client.send(calls(3)), 3);
+        assertEquals(1, rpcore.connections.get());
+        client.close();
+    }
+
+    @Test
+    public void testReconnectWhenConnectionClosed() throws IOException {
+        FakeRpcore rpcore = new FakeRpcore(4);
+        RPClient client = new RPClient("127.0.0.1", rpcore.server.getLocalPort());
+        assertEchoed(client.send(calls(10)), 10);
+        assertEquals(3, rpcore.connections.get());
+        client.close();
+    }
+
+    @Test
+    public void testReconnectWhenRpcoreDoesNotAnswer() throws IOException {
+        FakeRpcore rpcore = new FakeRpcore(Integer.MAX_VALUE, 2);
+        RPClient client = new RPClient("127.0.0.1", rpcore.server.getLocalPort());
+        client.setReadTimeout(200);
+        assertEchoed(client.send(calls(2)), 2);
+        assertEchoed(client.send(calls(3)), 3);
+        assertEquals(2, rpcore.connections.get());
+        client.close();
+    }
+
+    @Test
+    public void testTimeoutWhenRpcoreHangs() throws IOException {
+        try (ServerSocket rpcore = new ServerSocket(0)) {
+            // connections are accepted by the backlog but never answered
+            RPClient client = new RPClient("127.0.0.1", rpcore.getLocalPort());
+            client.setReadTimeout(200);
+            long start = System.currentTimeMillis();
+            try {
+                client.send(calls(2));
+                fail("Expected SocketTimeoutException");
+            }
+            catch(SocketTimeoutException e) {
+                // expected
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(client.getRpSock().isClosed());
+        }
+    }
+
+    @Test
+    public void testSendOnceIsNotResent() throws IOException {
+        FakeRpcore rpcore = new FakeRpcore(1);
+        RPClient client = new RPClient("127.0.0.1", rpcore.server.getLocalPort());
+        assertEchoed(client.send(calls(1)), 1);
+        // the used connection is not trusted for a call that cannot be repeated
+        assertEquals("call0", client.sendOnce(calls(1).get(0)).getRPCPayload());
+        assertEquals(2, rpcore.connections.get());
+        client.close();
+
+        FakeRpcore closing = new FakeRpcore(0);
+        RPClient failing = new RPClient("127.0.0.1", closing.server.getLocalPort());
+        try {
+            failing.sendOnce(calls(1).get(0));
+            fail("Expected IOException when rpcore closes the connection");
+        }
+        catch(IOException e) {
+            // expected
+        }
+        assertEquals(1, closing.connections.get());
+    }
+}
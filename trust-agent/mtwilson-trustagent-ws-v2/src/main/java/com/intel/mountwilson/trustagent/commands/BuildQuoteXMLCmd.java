@@ -36,6 +36,9 @@ public class BuildQuoteXMLCmd implements ICommand {
             tpmQuoteResponse.aik = X509Util.decodePemCertificate(context.getAIKCertificate());
             tpmQuoteResponse.quote = context.getTpmQuote();
             tpmQuoteResponse.eventLog = context.getModules(); //base64-encoded  xml which the caller will interpret
+            if( context.getModules() != null ) {
+                tpmQuoteResponse.eventLogFormat = context.getEventLogFormat();
+            }
             tpmQuoteResponse.tcbMeasurement = context.getTcbMeasurement();
             tpmQuoteResponse.selectedPcrBanks = context.getSelectedPcrBanks();
             context.setTpmQuoteResponse(tpmQuoteResponse);
@@ -9,20 +9,32 @@ import com.intel.mountwilson.common.ErrorCode;
 import com.intel.mountwilson.common.ICommand;
 import com.intel.mountwilson.common.TAException;
 import com.intel.mountwilson.trustagent.data.TADataContext;
+import com.intel.mtwilson.trustagent.BootCache;
+import com.intel.mtwilson.trustagent.model.BinaryEventLog;
 import com.intel.mtwilson.util.exec.EscapeUtil;
 import com.intel.mtwilson.util.exec.ExecUtil;
 import com.intel.mtwilson.util.exec.Result;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.io.FileUtils;
 
 /**
  *
@@ -31,8 +43,33 @@ import org.apache.commons.io.FileUtils;
 public class GenerateModulesCmd implements ICommand {
 
     Logger log = LoggerFactory.getLogger(getClass().getName());
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+    /**
+     * The measure log does not change until the host reboots, so the
+     * module_analysis.sh script (which forks txt-stat) only runs for the
+     * first quote after each boot.
+     */
+    private static final BootCache<List<Module>> measureLogCache = new BootCache<>();
     private TADataContext context;
 
+    private static class Module {
+        private final String pcrBank;
+        private final String pcrNumber;
+        private final String name;
+        private final String value;
+
+        public Module(String pcrBank, String pcrNumber, String name, String value) {
+            this.pcrBank = pcrBank;
+            this.pcrNumber = pcrNumber;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
     public GenerateModulesCmd(TADataContext context) {
         this.context = context;
     }
@@ -40,7 +77,15 @@ public class GenerateModulesCmd implements ICommand {
     @Override
     public void execute() throws TAException {
         try {
-            getXmlFromMeasureLog();
+            List<Module> modules = measureLogCache.get();
+            if( modules == null ) {
+                modules = getXmlFromMeasureLog();
+                measureLogCache.put(modules);
+            }
+            else {
+                log.debug("Using measure log cached for this boot");
+            }
+            writeModules(modules);
 
         } catch (Exception ex) {
             throw new TAException(ErrorCode.ERROR, "Error while getting Module details.", ex);
@@ -53,7 +98,7 @@ public class GenerateModulesCmd implements ICommand {
      *
      * @author skaja
      */
-    private void getXmlFromMeasureLog() throws TAException, IOException {
+    private List<Module> getXmlFromMeasureLog() throws TAException, IOException {
         log.debug("About to run the command: " + context.getMeasureLogLaunchScript());
         long startTime = System.currentTimeMillis();
         String outputPath = String.format("%s.%s", context.getMeasureLogXmlFile().getAbsolutePath(), RandomUtil.randomHexString(16));
@@ -73,11 +118,12 @@ public class GenerateModulesCmd implements ICommand {
 
         File outputFile = new File(outputPath);
         if( outputFile.exists() ) {
-        String content = FileUtils.readFileToString(outputFile);
-        log.debug("Content of the XML file before getting modules: " + content);
-        
-        getModulesFromMeasureLogXml(content);
-        outputFile.delete();
+        try (InputStream in = new FileInputStream(outputFile)) {
+            return getModulesFromMeasureLogXml(in);
+        }
+        finally {
+            outputFile.delete();
+        }
         }
         else {
             throw new TAException(ErrorCode.BAD_REQUEST, "Cannot read module log");
@@ -88,34 +134,97 @@ public class GenerateModulesCmd implements ICommand {
     }
 
     /**
-     * Obtains <modules> tag under <txt> and add the string to TADataContext
+     * Obtains the module entries under <modules> in <txt>
+     * 
+     * The measure log is read with a streaming parser and only the module
+     * entries are kept.
      *
      * @author skaja
      */
-    private void getModulesFromMeasureLogXml(String xmlInput) throws TAException {
+    private List<Module> getModulesFromMeasureLogXml(InputStream xmlInput) throws TAException {
         try {
+            ArrayList<Module> modules = new ArrayList<>();
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xmlInput);
+            String pcrBank = null;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("module")) {
+                    String pcrNumber = null, name = null, value = null;
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        String element = reader.getLocalName();
+                        String text = reader.getElementText();
+                        switch (element) {
+                            case "pcrBank": pcrBank = text; break;
+                            case "pcrNumber": pcrNumber = text; break;
+                            case "name": name = text; break;
+                            case "value": value = text; break;
+                            default: break;
+                        }
+                    }
+                    modules.add(new Module(pcrBank, pcrNumber, name, value));
+                }
+            }
+            reader.close();
+            return Collections.unmodifiableList(modules);
+        } catch (Exception e) {
+            throw new TAException(ErrorCode.BAD_REQUEST, "Cannot find modules in the input xml", e);
+        }
+
+    }
 
-            // Since the output from the script will have lot of details and we are interested in just the module section, we will
-            // strip out the remaining data,
-            Pattern PATTERN = Pattern.compile("(<modules>.*</modules>)");
-            Matcher m = PATTERN.matcher(xmlInput);
-            while (m.find()) {
-                xmlInput = m.group(1);
+    /**
+     * Adds the modules to TADataContext, either as a compact modules xml
+     * or, if the caller requested it, as a BinaryEventLog.
+     */
+    private void writeModules(List<Module> modules) throws TAException {
+        try {
+            boolean binary = BinaryEventLog.FORMAT.equals(context.getEventLogFormat());
+            if( !binary ) {
+                context.setEventLogFormat(null); // unsupported formats get the default modules xml
             }
-            // removes any white space characters from the xml string
-            String moduleInfo = xmlInput.replaceAll(">\\s*<", "><");
-            
-            log.debug("Module information : " + moduleInfo);
+            ByteArrayOutputStream xmlBuffer = new ByteArrayOutputStream();
+            XMLStreamWriter xml = binary ? null : xmlOutputFactory.createXMLStreamWriter(xmlBuffer, "UTF-8");
+            BinaryEventLog.Writer bin = binary ? new BinaryEventLog.Writer() : null;
+            if( xml != null ) {
+                xml.writeStartElement("modules");
+            }
+            for (Module module : modules) {
+                if (bin != null) {
+                    bin.write(module.pcrBank == null ? "SHA1" : module.pcrBank.toUpperCase(), Integer.parseInt(module.pcrNumber.trim()), module.name, Hex.decodeHex(module.value.trim().toCharArray()));
+                } else {
+                    xml.writeStartElement("module");
+                    if (module.pcrBank != null) {
+                        writeElement(xml, "pcrBank", module.pcrBank);
+                    }
+                    writeElement(xml, "pcrNumber", module.pcrNumber);
+                    writeElement(xml, "name", module.name);
+                    writeElement(xml, "value", module.value);
+                    xml.writeEndElement();
+                }
+            }
+            byte[] moduleInfo;
+            if (xml != null) {
+                xml.writeEndElement();
+                xml.close();
+                moduleInfo = xmlBuffer.toByteArray();
+            } else {
+                moduleInfo = bin.toByteArray();
+            }
+            log.debug("Module information : {} modules in {} bytes", modules.size(), moduleInfo.length);
             
             // If we have XML data, we we will have issues mapping the response to the ClientRequestType using JaxB unmarshaller. So,
             // we will encode the string and send it.
-            moduleInfo = Base64.encodeBase64String(moduleInfo.getBytes());
-            context.setModules(moduleInfo);
+            context.setModules(Base64.encodeBase64String(moduleInfo));
             
 
         } catch (Exception e) {
-            throw new TAException(ErrorCode.BAD_REQUEST, "Cannot find modules in the input xml");
+            throw new TAException(ErrorCode.BAD_REQUEST, "Cannot write modules", e);
         }
 
     }
+
+    private void writeElement(XMLStreamWriter xml, String name, String text) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(text == null ? "" : text);
+        xml.writeEndElement();
+    }
 }
@@ -13,6 +13,7 @@ import com.intel.mountwilson.common.TAException;
 import com.intel.mountwilson.trustagent.data.TADataContext;
 import com.intel.mtwilson.Folders;
 import com.intel.mtwilson.trustagent.TrustagentConfiguration;
+import com.intel.mtwilson.trustagent.shell.CommandLineResult;
 import com.intel.mtwilson.trustagent.tpmmodules.Tpm;
 import com.intel.mtwilson.util.exec.EscapeUtil;
 import com.intel.mtwilson.util.exec.ExecUtil;
@@ -172,52 +173,26 @@ public class GenerateQuoteCmd implements ICommand {
                         }
                     }
 
-                    /* 1st: get pcrs - tpm2_listpcrs -g 0x4 -o pcrs.out
-                     *      This commmand returns specified PCR bank pcr values (all 24 pcrs in the bank)
-                    */
-                    CommandLine command1 = new CommandLine("tpm2_listpcrs");
-                    command1.addArgument("-L");
-                    command1.addArgument(quoteAlgWithPcrs);
-                    command1.addArgument("-o");
-                    command1.addArgument(EscapeUtil.doubleQuoteEscapeShellArgument(context.getPcrsFileName()));
-                    Result result1 = ExecUtil.execute(command1);
-                    if (result1.getExitCode() != 0) {
-                        log.error("Error running command [{}]: {}", command1.getExecutable(), result1.getStderr());
-                        throw new TAException(ErrorCode.ERROR, result1.getStderr());
-                    }
-                    log.debug("tpm2_listpcrs stdout: {}", result1.getStdout());
-    
-                    /* 2nd: get quote - tpm2_quote -k 0x80000001 -P abc123 -g 0x4 -l 16,17,18 -o outFile001 -X
-                     * this command returns two structures together
+                    /* get pcrs and quote - tpm2-getquote.sh runs
+                     *      tpm2_listpcrs -L <banks:pcrs> -o pcrs.out
+                     *      tpm2_quote -k 0x81000000 -P abc123 -L <banks:pcrs> -q <nonce> -o outFile001 -X
+                     * in the TPM command session shared with the other TPM 2.0 commands,
+                     * so the quote does not start a shell per command and is serialized
+                     * with them. The quote returns two structures together:
                         * the quoted information
                         * signature over quoted information
                     */
-                    TrustagentConfiguration TAconfig = TrustagentConfiguration.loadConfiguration();
-                    CommandLine command = new CommandLine("tpm2_quote");
-                    command.addArgument("-k");
-                    command.addArgument(TAconfig.getAikHandle());
-                    command.addArgument("-P");
-	            command.addArgument(identityAuthKey);
-                    command.addArgument("-L");
-                    command.addArgument(quoteAlgWithPcrs);
-                    command.addArgument("-q");
-                    command.addArgument(TpmUtils.byteArrayToHexString(nonce));
-                    //command.addArgument("-l");
-                    //command.addArgument(selectedPcrs.replaceAll("\\s+", ","));
-                    command.addArguments("-o");
-                    command.addArgument(EscapeUtil.doubleQuoteEscapeShellArgument(context.getQuoteFileName()));
-                    command.addArguments("-X");   
-                    //command.addArgument(EscapeUtil.doubleQuoteEscapeShellArgument(context.getNonceFileName()));
-                    //command.addArgument(EscapeUtil.doubleQuoteEscapeShellArgument(context.getAikBlobFileName()));
-                    Result result = ExecUtil.execute(command);
-                    if (result.getExitCode() != 0) {
-	                log.error("Error running command [{}]: {}", command.getExecutable(), result.getStderr());
-	                throw new TAException(ErrorCode.ERROR, result.getStderr());
-	            }
-	            log.debug("tpm2_quote stdout: {}", result.getStdout());
-	            log.debug("Create the quote {} ", context.getQuoteFileName());
+                    TrustagentConfiguration TAconfig = TrustagentConfiguration.getCachedConfiguration();
+                    String[] args = {TAconfig.getAikHandle(), identityAuthKey, quoteAlgWithPcrs, TpmUtils.byteArrayToHexString(nonce),
+                        context.getPcrsFileName(), context.getQuoteFileName()};
+                    CommandLineResult result = Tpm.getModule().getShellExecutor().executeTpmCommand("tpm2-getquote.sh", args, 1);
+                    if (result.getReturnCode() != 0) {
+                        log.error("Error running command [tpm2-getquote.sh]: {}", result.getReturnOutput());
+                        throw new TAException(ErrorCode.ERROR, result.getReturnOutput());
+                    }
+                    log.debug("Create the quote {} ", context.getQuoteFileName());
                     
-                    // 3rd: concatate the two output together and set the tpm quote return
+                    // then: concatate the two output together and set the tpm quote return
 	            byte [] pcrs;
                     byte [] quoteResult;
                     try (InputStream in = new FileResource(new File(context.getPcrsFileName())).getInputStream()) {
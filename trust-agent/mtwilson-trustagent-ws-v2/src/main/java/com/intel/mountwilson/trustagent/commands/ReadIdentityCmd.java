@@ -51,7 +51,7 @@ public class ReadIdentityCmd implements ICommand {
         */
         
         try {
-            TrustagentConfiguration configuration = TrustagentConfiguration.loadConfiguration();
+            TrustagentConfiguration configuration = TrustagentConfiguration.getCachedConfiguration();
             File aikCertificateFile = configuration.getAikCertificateFile();
             if( !aikCertificateFile.exists() ) {
                 log.error("Missing AIK certificate file: {}", aikCertificateFile.getAbsolutePath());
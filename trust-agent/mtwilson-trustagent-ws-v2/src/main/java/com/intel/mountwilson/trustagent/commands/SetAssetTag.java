@@ -14,6 +14,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.intel.dcsg.cpg.crypto.RandomUtil;
 import com.intel.mtwilson.codec.HexUtil;
+import com.intel.mtwilson.trustagent.BootCache;
 import com.intel.mountwilson.common.ErrorCode;
 import com.intel.mountwilson.common.TAConfig;
 import com.intel.mtwilson.util.exec.EscapeUtil;
@@ -69,9 +70,14 @@ public class SetAssetTag implements ICommand{
             //now index is created, write value to it
             String filename = writeHashToFile();  // store the hash as a binary file
             
-            if(!writeHashToNvram(filename, tpmNvramPass)) {
-                // need some type of exception here
-                log.error("Error writing hash to NVRAM");
+            try {
+                if(!writeHashToNvram(filename, tpmNvramPass)) {
+                    // need some type of exception here
+                    log.error("Error writing hash to NVRAM");
+                }
+            }
+            finally {
+                BootCache.ASSET_TAG.invalidate();
             }
             
             //last thing is, if we generated a new password, we need to register it
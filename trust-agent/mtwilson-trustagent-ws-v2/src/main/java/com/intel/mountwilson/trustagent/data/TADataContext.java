@@ -47,6 +47,15 @@ public class TADataContext {
     private String sessionId;
     private String tcbMeasurement;
     private String selectedPcrBanks;
+    private String eventLogFormat;
+
+    public String getEventLogFormat() {
+        return eventLogFormat;
+    }
+
+    public void setEventLogFormat(String eventLogFormat) {
+        this.eventLogFormat = eventLogFormat;
+    }
 
     public String getSelectedPcrBanks() {
         return selectedPcrBanks;
@@ -247,7 +256,7 @@ public class TADataContext {
 
     public String getIdentityAuthKey() {
         try {
-            TrustagentConfiguration configuration = TrustagentConfiguration.loadConfiguration();
+            TrustagentConfiguration configuration = TrustagentConfiguration.getCachedConfiguration();
             return configuration.getAikSecretHex();
             /*
             File aikAuthFile = ResourceFinder.getFile("trustagent.properties");
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Holds a value that does not change until the host reboots, such as the
+ * measure log or the asset tag in TPM NV, so it does not have to be read by
+ * forking the TPM tools for every quote.
+ *
+ * The value is stored with the kernel boot id and is discarded when the boot
+ * id changes. Where the boot id is not available (Windows) the value is kept
+ * for the life of the process, which never spans a reboot.
+ */
+public class BootCache<T> {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BootCache.class);
+    private static final File BOOT_ID_FILE = new File("/proc/sys/kernel/random/boot_id");
+    private static final String PROCESS_BOOT_ID = "process";
+
+    /**
+     * Asset tag hash read from TPM NV; an empty array means no asset tag
+     * is provisioned. Must be invalidated when the asset tag is written.
+     */
+    public static final BootCache<byte[]> ASSET_TAG = new BootCache<>();
+
+    private String bootId = null;
+    private T value = null;
+
+    public static String getBootId() {
+        if( BOOT_ID_FILE.exists() ) {
+            try {
+                return FileUtils.readFileToString(BOOT_ID_FILE).trim();
+            }
+            catch(IOException e) {
+                log.debug("Cannot read boot id from {}", BOOT_ID_FILE.getAbsolutePath(), e);
+            }
+        }
+        return PROCESS_BOOT_ID;
+    }
+
+    /**
+     *
+     * @return the cached value if it was stored during the current boot, or null
+     */
+    public synchronized T get() {
+        if( value == null ) {
+            return null;
+        }
+        if( !getBootId().equals(bootId) ) {
+            log.debug("Boot id changed, discarding cached value");
+            invalidate();
+            return null;
+        }
+        return value;
+    }
+
+    public synchronized void put(T value) {
+        this.bootId = getBootId();
+        this.value = value;
+    }
+
+    public synchronized void invalidate() {
+        this.bootId = null;
+        this.value = null;
+    }
+}
@@ -10,6 +10,7 @@ import com.intel.mountwilson.trustagent.commands.SetAssetTag;
 import com.intel.mountwilson.trustagent.commands.SetAssetTagWindows;
 import com.intel.mountwilson.trustagent.data.TADataContext;
 import com.intel.mtwilson.launcher.ws.ext.V2;
+import com.intel.mtwilson.trustagent.BootCache;
 import com.intel.mtwilson.trustagent.TrustagentConfiguration;
 import com.intel.mtwilson.trustagent.model.TagWriteRequest;
 import com.intel.mtwilson.trustagent.tpmmodules.TpmModuleProvider;
@@ -39,7 +40,13 @@ public class Tag {
         log.debug("writeTag uuid {} sha1 {}", tagInfo.getHardwareUuid(), Hex.encodeHexString(tagInfo.getTag()));       
         TrustagentConfiguration config = new TrustagentConfiguration(TAConfig.getConfiguration());        
         
-        Tpm.getModule().setAssetTag(config.getTpmOwnerSecret(), tagInfo.getTag());                
+        try {
+            Tpm.getModule().setAssetTag(config.getTpmOwnerSecret(), tagInfo.getTag());                
+        }
+        finally {
+            // the quote resource caches the asset tag until the next reboot
+            BootCache.ASSET_TAG.invalidate();
+        }
         
         log.debug("writeTag returning 204 status");
         response.setStatus(Response.Status.NO_CONTENT.getStatusCode());
@@ -17,7 +17,9 @@ import com.intel.dcsg.cpg.crypto.Sha1Digest;
 import com.intel.mountwilson.common.ErrorCode;
 import com.intel.mountwilson.trustagent.commands.ReadAssetTag;
 import com.intel.mountwilson.trustagent.commands.RetrieveTcbMeasurement;
+import com.intel.mtwilson.trustagent.BootCache;
 import com.intel.mtwilson.trustagent.TrustagentConfiguration;
+import com.intel.mtwilson.trustagent.tpmmodules.TpmModuleProvider;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -25,10 +27,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import com.intel.mtwilson.trustagent.model.TpmQuoteRequest;
 import com.intel.mtwilson.trustagent.model.TpmQuoteResponse;
-import com.intel.mtwilson.util.exec.EscapeUtil;
 import java.io.File;
-import com.intel.mtwilson.util.exec.ExecUtil;
-import com.intel.mtwilson.util.exec.Result;
 import gov.niarl.his.privacyca.TpmModule;
 import java.io.IOException;
 import java.util.logging.Level;
@@ -39,7 +38,6 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.exec.CommandLine;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -91,8 +89,8 @@ public class Tpm {
          * will again has its ip address so it will be double-hashed and fail
          * verification
          */
-        TrustagentConfiguration configuration = TrustagentConfiguration.loadConfiguration();
-        logPerformance("TrustagentConfiguration.loadConfiguration()");
+        TrustagentConfiguration configuration = TrustagentConfiguration.getCachedConfiguration();
+        logPerformance("TrustagentConfiguration.getCachedConfiguration()");
         if( configuration.isTpmQuoteWithIpAddress() ) {
             if( IPv4Address.isValid(request.getLocalAddr()) ) {
                 IPv4Address ipv4 = new IPv4Address(request.getLocalAddr());
@@ -114,23 +112,41 @@ public class Tpm {
             context.setSelectedPcrBanks("SHA1");
         else
             context.setSelectedPcrBanks(tpmQuoteRequest.getPcrbanks());
+        context.setEventLogFormat(tpmQuoteRequest.getEventLogFormat());
 
         /* If it is Windows host, Here we read Geotag from nvram index 0x40000010 and do sha1(nonce | geotag) and use the result as the nonce for TPM quote
            As of now, we still keep the same geotag provisioning mechanism by writing it to TPM. there are other approaches as well, but not in implementation.
         */  
         boolean isTagProvisioned = false;        
         byte[] ownerAuth = configuration.getTpmOwnerSecret();
-        byte[] assetTagHash = null;
-        try {
-            assetTagHash = com.intel.mtwilson.trustagent.tpmmodules.Tpm.getModule().readAssetTag(ownerAuth);
+        byte[] assetTagHash = BootCache.ASSET_TAG.get();
+        if( assetTagHash == null ) {
+            // only a tag that was read, or an index that is not defined, is cached; other errors fail this quote and are retried on the next one
+            try {
+                TpmModuleProvider tpm = com.intel.mtwilson.trustagent.tpmmodules.Tpm.getModule();
+                if( tpm.nvIndexExists(tpm.getAssetTagIndex()) ) {
+                    assetTagHash = tpm.readAssetTag(ownerAuth);
+                }
+                else {
+                    log.debug("Asset Tag index is not defined");
+                    assetTagHash = new byte[0];
+                }
+            } catch (TpmModule.TpmModuleException ex) {
+                log.debug("Could not read Asset Tag from TPM");
+                throw new TAException(ErrorCode.COMMAND_ERROR, "Cannot read asset tag", ex);
+            }
+            BootCache.ASSET_TAG.put(assetTagHash);
+            logPerformance("readAssetTag");
+        }
+        if( assetTagHash.length > 0 ) {
             log.debug("Asset Tag is: {}", assetTagHash);
             byte[] extendedNoncewithAssetTag = Sha1Digest.digestOf(tpmQuoteRequest.getNonce()).extend(assetTagHash).toByteArray();
             tpmQuoteRequest.setNonce(extendedNoncewithAssetTag);
             isTagProvisioned = true;
-        } catch (TpmModule.TpmModuleException ex) {
-            log.debug("Could not read Asset Tag from TPM");
+        }
+        else {
             log.debug("Asset Tag is not provisioned");
-        }               
+        }
 
         context.setNonce(Base64.encodeBase64String(tpmQuoteRequest.getNonce()));
         context.setSelectedPCRs(joinIntegers(tpmQuoteRequest.getPcrs(), ' '));
@@ -166,21 +182,15 @@ public class Tpm {
         }
 
         // delete temporary session directory
-        if (!osName.toLowerCase().contains("windows")) {
-            CommandLine command = new CommandLine("rm");
-            command.addArgument("-rf");
-            command.addArgument(EscapeUtil.doubleQuoteEscapeShellArgument(context.getDataFolder()));
-            Result result = ExecUtil.execute(command);
-            logPerformance("ExecUtil.execute(command)");
-            if (result.getExitCode() != 0) {
-                log.error("Error running command [{}]: {}", command.getExecutable(), result.getStderr());
-                throw new TAException(ErrorCode.ERROR, result.getStderr());
-            }
-            log.debug("command stdout: {}", result.getStdout());
-        } else {
-            // we should use more neutral ways to delete the folder
-            FileUtils.forceDelete(new File(context.getDataFolder())); 
+        File dataFolder = new File(context.getDataFolder());
+        try {
+            FileUtils.deleteDirectory(dataFolder);
+        }
+        catch(IOException e) {
+            log.error("Cannot delete session data folder {}", dataFolder.getAbsolutePath(), e);
+            throw new TAException(ErrorCode.ERROR, "Cannot delete session data folder");
         }
+        logPerformance("deleteDirectory");
         logPerformance("before return response");
         return response;
     }
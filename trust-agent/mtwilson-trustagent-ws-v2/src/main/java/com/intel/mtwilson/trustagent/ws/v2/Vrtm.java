@@ -12,11 +12,20 @@ import javax.ws.rs.core.MediaType;
 import com.intel.mtwilson.trustagent.model.VMQuoteResponse;
 import com.intel.mtwilson.trustagent.model.VMAttestationRequest;
 import com.intel.mtwilson.trustagent.model.VMAttestationResponse;
+import com.intel.mtwilson.trustagent.TrustagentConfiguration;
 import com.intel.mtwilson.trustagent.vrtmclient.RPClient;
+import com.intel.mtwilson.trustagent.vrtmclient.RPClientPool;
 import java.io.File;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.io.FileUtils;
 
 
@@ -35,6 +44,19 @@ public class Vrtm {
     private static final String measurementXMLFileName = "measurement.xml";
     private static final String trustPolicyFileName = "trustpolicy.xml";
     private static final String vmQuoteFileName = "signed_report.xml";
+    private static final RPClientPool rpcore = new RPClientPool("127.0.0.1", 16005, 8);
+    private static final int statusCacheMaxSize = 10000;
+    private static final ConcurrentHashMap<String,CachedStatus> statusCache = new ConcurrentHashMap<>();
+    
+    private static class CachedStatus {
+        private final boolean trustStatus;
+        private final long expires;
+
+        public CachedStatus(boolean trustStatus, long expires) {
+            this.trustStatus = trustStatus;
+            this.expires = expires;
+        }
+    }
     
     @POST
     @Path("/status")
@@ -43,18 +65,91 @@ public class Vrtm {
     public VMAttestationResponse getVMAttestationStatus(VMAttestationRequest vmAttestationRequest) throws TAException, IOException {
         
         String vmInstanceId = vmAttestationRequest.getVmInstanceId();
-        VMAttestationResponse vmAttestationResponse = new VMAttestationResponse();        
+        return getVMAttestationStatus(Collections.singletonList(vmInstanceId)).get(0);
 
-        RPClient rpcInstance = new RPClient("127.0.0.1", 16005); // create instance of RPClient
-        boolean vmstatus = rpcInstance.getVmStatus(vmInstanceId);    // send tcBuffer to rpcore 
-        rpcInstance.close();   // close RPClient
-        
-        //set report
-        vmAttestationResponse.setVmInstanceId(vmInstanceId);
-        vmAttestationResponse.setTrustStatus(vmstatus);
+    }
+    
+    /**
+     * Status of many VMs with a single call to vRTM.
+     * 
+     * JSON input [{"vm_instance_id":"dcc4a894-869b-479a-a24a-659eef7a54bd"},...]
+     * JSON output [{"vm_instance_id":"dcc4a894-869b-479a-a24a-659eef7a54bd","trust_status":true},...]
+     */
+    @POST
+    @Path("/status/batch")
+    @Produces({MediaType.APPLICATION_JSON})
+    @Consumes({MediaType.APPLICATION_JSON})
+    public List<VMAttestationResponse> getVMAttestationStatusBatch(List<VMAttestationRequest> vmAttestationRequests) throws TAException, IOException {
+        ArrayList<String> vmInstanceIds = new ArrayList<>();
+        for(VMAttestationRequest vmAttestationRequest : vmAttestationRequests) {
+            vmInstanceIds.add(vmAttestationRequest.getVmInstanceId());
+        }
+        return getVMAttestationStatus(vmInstanceIds);
+    }
+    
+    /**
+     * The orchestrator polls VM status continuously, so statuses are cached
+     * for vrtm.status.cache.seconds and the rest are requested from vRTM
+     * together.
+     */
+    private List<VMAttestationResponse> getVMAttestationStatus(List<String> vmInstanceIds) throws IOException {
+        long now = System.currentTimeMillis();
+        LinkedHashSet<String> missing = new LinkedHashSet<>();
+        for(String vmInstanceId : vmInstanceIds) {
+            CachedStatus cached = statusCache.get(vmInstanceId);
+            if( cached == null || cached.expires < now ) {
+                missing.add(vmInstanceId);
+            }
+        }
+        Map<String,Boolean> statuses = Collections.emptyMap();
+        if( !missing.isEmpty() ) {
+            log.debug("Requesting status of {} of {} VMs from vRTM", missing.size(), vmInstanceIds.size());
+            RPClient rpcInstance = rpcore.borrow();
+            try {
+                statuses = rpcInstance.getVmStatus(new ArrayList<>(missing));    // send tcBuffers to rpcore 
+                rpcore.release(rpcInstance);
+            }
+            catch(IOException | RuntimeException e) {
+                rpcore.invalidate(rpcInstance);
+                throw e;
+            }
+            long expires = now + TrustagentConfiguration.getCachedConfiguration().getVrtmStatusCacheSeconds() * 1000L;
+            if( expires > now ) {
+                if( statusCache.size() > statusCacheMaxSize ) {
+                    removeExpiredStatus(now);
+                }
+                for(Map.Entry<String,Boolean> status : statuses.entrySet()) {
+                    statusCache.put(status.getKey(), new CachedStatus(status.getValue(), expires));
+                }
+            }
+        }
         
-        return vmAttestationResponse;
-
+        ArrayList<VMAttestationResponse> vmAttestationResponses = new ArrayList<>();
+        for(String vmInstanceId : vmInstanceIds) {
+            Boolean vmstatus = statuses.get(vmInstanceId);
+            if( vmstatus == null ) {
+                CachedStatus cached = statusCache.get(vmInstanceId);
+                vmstatus = cached != null && cached.trustStatus;
+            }
+            VMAttestationResponse vmAttestationResponse = new VMAttestationResponse();        
+            //set report
+            vmAttestationResponse.setVmInstanceId(vmInstanceId);
+            vmAttestationResponse.setTrustStatus(vmstatus);
+            vmAttestationResponses.add(vmAttestationResponse);
+        }
+        return vmAttestationResponses;
+    }
+    
+    private void removeExpiredStatus(long now) {
+        Iterator<CachedStatus> it = statusCache.values().iterator();
+        while(it.hasNext()) {
+            if( it.next().expires < now ) {
+                it.remove();
+            }
+        }
+        if( statusCache.size() > statusCacheMaxSize ) {
+            statusCache.clear();
+        }
     }
 	
     @POST
@@ -68,9 +163,16 @@ public class Vrtm {
             String nonce = vmAttestationRequest.getNonce();
             
             // Call into the vRTM API and get the path information
-            RPClient rpcInstance = new RPClient("127.0.0.1", 16005);
-            String instanceFolderPath = rpcInstance.getVMAttestationReportPath(vmInstanceId, nonce);
-            rpcInstance.close();
+            RPClient rpcInstance = rpcore.borrow();
+            String instanceFolderPath;
+            try {
+                instanceFolderPath = rpcInstance.getVMAttestationReportPath(vmInstanceId, nonce);
+                rpcore.release(rpcInstance);
+            }
+            catch(IOException | RuntimeException e) {
+                rpcore.invalidate(rpcInstance);
+                throw e;
+            }
             
             if (instanceFolderPath == null || instanceFolderPath.isEmpty()) {
                 String errorInfo = "Error during retrieval of the instance path. Please verify the input parameters.";
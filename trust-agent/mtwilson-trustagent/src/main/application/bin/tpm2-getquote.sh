@@ -0,0 +1,35 @@
+#!/bin/bash
+# WARNING:
+# *** do NOT use TABS for indentation, use SPACES
+# *** TABS will cause errors in some linux distributions
+
+# Writes the selected PCR values and a quote over them, so that both are
+# read in one TPM command session request.
+
+if [[ $# != 6 ]]; then
+  echo -e "usage: \n  $0 <akhandle> <akpasswd> <pcrselection> <nonce> <pcrsfile> <quotefile>"
+  echo "  pcrselection is a list of bank:pcrs like 0x04:17,18+0x0B:17,18"
+  exit 2
+fi
+
+akHandle=$1
+akPasswd=$2
+pcrSelection=$3
+nonce=$4
+pcrsFile=$5
+quoteFile=$6
+
+rm -f "$pcrsFile" "$quoteFile"
+tpm2_listpcrs -L $pcrSelection -o "$pcrsFile" > /dev/null
+if [[ $? != 0 ]]; then
+  echo "failed: tpm2_listpcrs"
+  exit 1
+fi
+
+tpm2_quote -k $akHandle -P $akPasswd -L $pcrSelection -q $nonce -o "$quoteFile" -X > /dev/null
+if [[ $? != 0 ]]; then
+  echo "failed: tpm2_quote"
+  exit 1
+fi
+
+echo "done"
@@ -0,0 +1,36 @@
+#!/bin/bash
+# WARNING:
+# *** do NOT use TABS for indentation, use SPACES
+# *** TABS will cause errors in some linux distributions
+
+# Long-lived helper used by the trust agent to run the tpm2-* commands
+# without starting a new shell for every TPM operation.
+#
+# Reads one request per line on stdin: the command name followed by its
+# arguments, separated by tab characters. For each request it writes one
+# line on stdout: the exit code, a tab, and the last line of the command
+# output. Exits when stdin is closed.
+#
+# bash scripts in this directory are sourced in a subshell instead of being
+# executed, so only the tpm2-tools binaries they call are started.
+
+bindir=$(cd "$(dirname "$0")" && pwd)
+
+while IFS=$'\t' read -r -a request; do
+  command=${request[0]}
+  args=("${request[@]:1}")
+  if [[ -z "$command" || "$command" == */* || ! -f "$bindir/$command" ]]; then
+    printf '127\t\n'
+    continue
+  fi
+  read -r firstline < "$bindir/$command"
+  if [[ "$firstline" == "#!/bin/bash" ]]; then
+    output=$(set -- "${args[@]}"; . "$bindir/$command" < /dev/null 2> /dev/null)
+  else
+    output=$("$bindir/$command" "${args[@]}" < /dev/null 2> /dev/null)
+  fi
+  status=$?
+  # command substitution already removed trailing newlines
+  lastline=${output##*$'\n'}
+  printf '%s\t%s\n' "$status" "$lastline"
+done